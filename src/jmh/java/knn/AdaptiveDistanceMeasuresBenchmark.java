@@ -0,0 +1,74 @@
+package knn;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the calculation of adaptive distance measures (replacement of {@code createAdaptiveDistanceMeasures()})
+ * by scanning all pairs and via spatial indexes. Only datasets up to 10000 patterns are used (the scan is quadratic).
+ * Operation is the calculation of measures of all training patterns.
+ * @author Vladimr Lznika
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdaptiveDistanceMeasuresBenchmark {
+	
+	/**
+	 * Name of the bundled or synthetic dataset.
+	 */
+	@Param({"iris", "ionosphere", "breast_cancer", "synthetic-10000-4", "synthetic-10000-34", "synthetic-10000-128"})
+	public String dataset;
+	
+	/**
+	 * Search of nearest neighbors ({@code pairs} or {@code index}).
+	 */
+	@Param({"pairs", "index"})
+	public String search;
+	
+	/**
+	 * Training data of the dataset.
+	 */
+	private TrainingData trainingData;
+	
+	/**
+	 * Kernel of the Euclidean distance.
+	 */
+	private DistanceKernel distanceKernel;
+	
+	/**
+	 * Method loading the dataset.
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		trainingData = BenchmarkData.load(dataset).trainingData;
+		distanceKernel = DistanceKernel.forType(Classification.DISTANCE_EUCLIDEAN);
+	}
+	
+	/**
+	 * Method calculating adaptive distance measures of the training data.
+	 * @return	calculated measures
+	 */
+	@Benchmark
+	public double[] calculate() {
+		return new AdaptiveDistanceMeasures(trainingData, distanceKernel, search.equals("pairs") ? SpatialIndex.INDEX_NONE : SpatialIndex.INDEX_AUTO, 1).calculate();
+	}
+}
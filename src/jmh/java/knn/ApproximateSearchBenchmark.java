@@ -0,0 +1,129 @@
+package knn;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the classification of the testing set by the trained classifier with the linear scan ({@code searchEffort = 0})
+ * and with the approximate HNSW graph exploring different numbers of candidates (building of the graph isn't measured), both with {@code K = 5}.
+ * Operation is the classification of the whole testing set. The recall of nearest neighbors (the fraction of exact nearest
+ * neighbors found by the graph) and accuracies of both classifiers are printed after the setup of the trial.
+ * @author Vladimr Lznika
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApproximateSearchBenchmark {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 5;
+	
+	/**
+	 * Name of the bundled or synthetic dataset.
+	 */
+	@Param({"iris", "ionosphere", "breast_cancer", "synthetic-10000-34", "synthetic-50000-128"})
+	public String dataset;
+	
+	/**
+	 * Number of candidates explored by the graph (0 for the exact linear scan).
+	 */
+	@Param({"0", "16", "64", "256"})
+	public int searchEffort;
+	
+	/**
+	 * Trained classifier.
+	 */
+	private Classification classification;
+	
+	/**
+	 * Testing patterns of the dataset.
+	 */
+	private List<Pattern> testingSet;
+	
+	/**
+	 * Method loading the dataset, training the classifier and printing its recall.
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkData data = BenchmarkData.load(dataset);
+		testingSet = data.testingSet;
+		
+		Classification exact = new Classification(data.trainingData, testingSet, K_NUMBER, Classification.DISTANCE_EUCLIDEAN, 0, 1);
+		exact.train();
+		classification = exact;
+		
+		if(searchEffort > 0) {
+			classification = new Classification(data.trainingData, testingSet, K_NUMBER, Classification.DISTANCE_EUCLIDEAN, 0, 1);
+			classification.setIndexType(SpatialIndex.INDEX_HNSW);
+			classification.setSearchEffort(searchEffort);
+			classification.train();
+		}
+		
+		long foundCnt = 0;
+		long neighborCnt = 0;
+		
+		for(Pattern p : testingSet) {
+			int[] exactNeighbors = exact.getNearestNeighbors(p);
+			int[] approximateNeighbors = classification.getNearestNeighbors(p);
+			neighborCnt += exactNeighbors.length;
+			
+			for(int neighbor : approximateNeighbors) {
+				for(int exactNeighbor : exactNeighbors) {
+					if(neighbor == exactNeighbor) foundCnt++;
+				}
+			}
+		}
+		
+		System.out.println();
+		System.out.println("recall " + String.format("%.4f", (double)foundCnt / Math.max(neighborCnt, 1))
+				+ ", accuracy " + String.format("%.4f", getAccuracy(classification)) + ", exact accuracy " + String.format("%.4f", getAccuracy(exact)));
+	}
+	
+	/**
+	 * Method classifying the testing set by the trained classifier.
+	 * @return	classified patterns
+	 */
+	@Benchmark
+	public List<Pattern> classify() {
+		classification.classifyPatterns(testingSet);
+		return testingSet;
+	}
+	
+	/**
+	 * Method classifying the testing set and returning the accuracy of the classification.
+	 * @param classifier	trained classifier
+	 * @return	accuracy of the classification (a number between 0 and 1)
+	 */
+	private double getAccuracy(Classification classifier) {
+		int correctCnt = 0;
+		
+		classifier.classifyPatterns(testingSet);
+		
+		for(Pattern p : testingSet) {
+			if(p.getPatternClass().equals(p.getCorrectClass())) correctCnt++;
+		}
+		
+		return ((double)correctCnt) / testingSet.size();
+	}
+}
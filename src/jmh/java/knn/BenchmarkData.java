@@ -0,0 +1,144 @@
+package knn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class loading datasets of benchmarks. Bundled datasets ({@code iris}, {@code ionosphere}, {@code breast_cancer})
+ * are read from the directory given by the system property {@code knn.data} (default {@code data}), synthetic datasets
+ * are named {@code synthetic-<patterns>-<dimension>}. Classes of synthetic datasets are normal distributions
+ * with unit variance and means shifted along the diagonal.
+ * @author Vladimr Lznika
+ *
+ */
+final class BenchmarkData {
+	
+	/**
+	 * Number of testing patterns of synthetic datasets.
+	 */
+	private static final int SYNTHETIC_TESTING_SIZE = 500;
+	
+	/**
+	 * Number of classes of synthetic datasets.
+	 */
+	private static final int SYNTHETIC_CLASS_CNT = 3;
+	
+	/**
+	 * Prefix of names of synthetic datasets.
+	 */
+	private static final String SYNTHETIC_PREFIX = "synthetic-";
+	
+	/**
+	 * Training data of the dataset.
+	 */
+	final TrainingData trainingData;
+	
+	/**
+	 * Testing patterns of the dataset.
+	 */
+	final List<Pattern> testingSet;
+	
+	/**
+	 * Constructor of the dataset.
+	 * @param trainingData	training data
+	 * @param testingSet	testing patterns
+	 */
+	private BenchmarkData(TrainingData trainingData, List<Pattern> testingSet) {
+		this.trainingData = trainingData;
+		this.testingSet = testingSet;
+	}
+	
+	/**
+	 * Method loading the dataset with given name.
+	 * @param name	name of the bundled or synthetic dataset
+	 * @return	loaded dataset
+	 * @throws IOException if the bundled dataset can't be read
+	 */
+	static BenchmarkData load(String name) throws IOException {
+		if(name.startsWith(SYNTHETIC_PREFIX)) {
+			String[] sizes = name.substring(SYNTHETIC_PREFIX.length()).split("-");
+			int size = Integer.parseInt(sizes[0]);
+			int dimension = Integer.parseInt(sizes[1]);
+			TrainingData testingData = createSynthetic(SYNTHETIC_TESTING_SIZE, dimension, size + 1);
+			
+			return new BenchmarkData(createSynthetic(size, dimension, size), toPatterns(testingData));
+		}
+		
+		return new BenchmarkData(PatternReader.readTrainingData(getTrainingFile(name)), PatternReader.readPatterns(getTestingFile(name), false));
+	}
+	
+	/**
+	 * Method returning the file with training patterns of the bundled dataset.
+	 * @param name	name of the bundled dataset
+	 * @return	file with training patterns
+	 */
+	static File getTrainingFile(String name) {
+		return new File(getDirectory(name), name + ".trainingset");
+	}
+	
+	/**
+	 * Method returning the file with testing patterns of the bundled dataset.
+	 * @param name	name of the bundled dataset
+	 * @return	file with testing patterns
+	 */
+	static File getTestingFile(String name) {
+		return new File(getDirectory(name), name + ".testingset");
+	}
+	
+	/**
+	 * Method returning the directory of the bundled dataset.
+	 * @param name	name of the bundled dataset
+	 * @return	directory with files of the dataset
+	 */
+	private static File getDirectory(String name) {
+		File dataDirectory = new File(System.getProperty("knn.data", "data"));
+		
+		if(name.equals("iris")) return new File(dataDirectory, "Iris");
+		if(name.equals("ionosphere")) return new File(dataDirectory, "Ionosphere");
+		if(name.equals("breast_cancer")) return new File(dataDirectory, "Breast Cancer");
+		throw new IllegalArgumentException("Unknown dataset: "+name);
+	}
+	
+	/**
+	 * Method creating synthetic training data.
+	 * @param size		number of patterns
+	 * @param dimension	dimension of vectors
+	 * @param seed		seed of the random generator
+	 * @return	synthetic training data
+	 */
+	static TrainingData createSynthetic(int size, int dimension, long seed) {
+		Random random = new Random(seed);
+		TrainingData trainingData = new TrainingData(size);
+		double[] vector = new double[dimension];
+		
+		for(int i = 0; i < size; i++) {
+			int classId = random.nextInt(SYNTHETIC_CLASS_CNT);
+			
+			for(int d = 0; d < dimension; d++) {
+				vector[d] = classId * 0.7 + random.nextGaussian();
+			}
+			
+			trainingData.addPattern(vector, "class" + classId);
+		}
+		
+		return trainingData;
+	}
+	
+	/**
+	 * Method converting the training data to testing patterns (their class is the correct class).
+	 * @param trainingData	converted training data
+	 * @return	list of testing patterns
+	 */
+	private static List<Pattern> toPatterns(TrainingData trainingData) {
+		List<Pattern> patterns = new ArrayList<Pattern>(trainingData.size());
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			patterns.add(new Pattern(trainingData.getVector(i), trainingData.getPatternClass(i)));
+		}
+		
+		return patterns;
+	}
+}
@@ -0,0 +1,85 @@
+package knn;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@code Classification.classify()} from the creation of the classifier to the last classified pattern
+ * (including building of the spatial index) for different numbers of neighbors and indexes.
+ * Operation is the classification of the whole testing set of the dataset.
+ * @author Vladimr Lznika
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassificationBenchmark {
+	
+	/**
+	 * Name of the bundled or synthetic dataset.
+	 */
+	@Param({"iris", "ionosphere", "breast_cancer", "synthetic-10000-4", "synthetic-10000-34", "synthetic-10000-128",
+			"synthetic-50000-4", "synthetic-50000-34", "synthetic-50000-128"})
+	public String dataset;
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	@Param({"1", "5", "15"})
+	public int kNumber;
+	
+	/**
+	 * Search of nearest neighbors ({@code scan} or {@code index}).
+	 */
+	@Param({"scan", "index"})
+	public String search;
+	
+	/**
+	 * Training data of the dataset.
+	 */
+	private TrainingData trainingData;
+	
+	/**
+	 * Testing patterns of the dataset.
+	 */
+	private List<Pattern> testingSet;
+	
+	/**
+	 * Method loading the dataset.
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkData data = BenchmarkData.load(dataset);
+		trainingData = data.trainingData;
+		testingSet = data.testingSet;
+	}
+	
+	/**
+	 * Method creating the classifier and classifying the testing set.
+	 * @return	classified patterns
+	 */
+	@Benchmark
+	public List<Pattern> classify() {
+		Classification classification = new Classification(trainingData, testingSet, kNumber, Classification.DISTANCE_EUCLIDEAN, 0, 1);
+		classification.setIndexType(search.equals("scan") ? SpatialIndex.INDEX_NONE : SpatialIndex.INDEX_AUTO);
+		return classification.classify();
+	}
+}
@@ -0,0 +1,88 @@
+package knn;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of distance kernels. Operation is one distance between two consecutive training patterns
+ * (the first {@code PAIR_CNT + 1} patterns are used repeatedly).
+ * @author Vladimr Lznika
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+	
+	/**
+	 * Number of distances calculated by one invocation.
+	 */
+	private static final int PAIR_CNT = 64;
+	
+	/**
+	 * Name of the bundled or synthetic dataset.
+	 */
+	@Param({"iris", "ionosphere", "breast_cancer", "synthetic-10000-4", "synthetic-10000-34", "synthetic-10000-128"})
+	public String dataset;
+	
+	/**
+	 * Type of the distance (see {@code Classification.DISTANCE_*}).
+	 */
+	@Param({"1", "2"})
+	public int distanceType;
+	
+	/**
+	 * Training data of the dataset.
+	 */
+	private TrainingData trainingData;
+	
+	/**
+	 * Measured kernel.
+	 */
+	private DistanceKernel distanceKernel;
+	
+	/**
+	 * Method loading the dataset and creating the kernel.
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		trainingData = BenchmarkData.load(dataset).trainingData;
+		distanceKernel = DistanceKernel.forType(distanceType);
+	}
+	
+	/**
+	 * Method calculating distances between consecutive training patterns.
+	 * @return	sum of the distances
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PAIR_CNT)
+	public double rank() {
+		double[] vectors = trainingData.getVectors();
+		int dimension = trainingData.getDimension();
+		double sum = 0.0;
+		
+		for(int i = 1; i <= PAIR_CNT; i++) {
+			sum += distanceKernel.rank(vectors, trainingData.getOffset(i - 1), vectors, trainingData.getOffset(i), dimension, Double.POSITIVE_INFINITY);
+		}
+		
+		return sum;
+	}
+}
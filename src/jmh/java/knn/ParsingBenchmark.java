@@ -0,0 +1,84 @@
+package knn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of reading training files of the bundled datasets in the text format (replacement of {@code Main.getSetFromFile()})
+ * and as the binary dataset. Operation is one read file.
+ * @author Vladimr Lznika
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+	
+	/**
+	 * Name of the bundled dataset.
+	 */
+	@Param({"iris", "ionosphere", "breast_cancer"})
+	public String dataset;
+	
+	/**
+	 * Format of the read file ({@code text} or {@code binary}).
+	 */
+	@Param({"text", "binary"})
+	public String format;
+	
+	/**
+	 * File read by the benchmark.
+	 */
+	private File file;
+	
+	/**
+	 * Method preparing the read file (the binary dataset is written to a temporary file).
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = BenchmarkData.getTrainingFile(dataset);
+		
+		if(format.equals("binary")) {
+			File binaryFile = File.createTempFile("knn-benchmark", ".bin");
+			BinaryDataset.write(binaryFile, PatternReader.readTrainingData(file));
+			file = binaryFile;
+		}
+	}
+	
+	/**
+	 * Method deleting the temporary binary dataset.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if(format.equals("binary")) file.delete();
+	}
+	
+	/**
+	 * Method reading the training file.
+	 * @return	read training data
+	 * @throws IOException
+	 */
+	@Benchmark
+	public TrainingData read() throws IOException {
+		return format.equals("binary") ? BinaryDataset.read(file) : PatternReader.readTrainingData(file);
+	}
+}
@@ -0,0 +1,335 @@
+package knn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Instance of this class calculates adaptive distance measures of the training patterns. Adaptive distance measure
+ * of the pattern is its distance from the nearest pattern with different class. If the exact spatial index type is chosen
+ * and some exact index suits the distance function, the index is built over patterns of all other classes for every class
+ * and the measure is found by the query for one nearest neighbor. Otherwise all pairs of patterns are scanned, every pair
+ * only once (the distance is symmetric).
+ * Both ways are divided among given number of threads. Calculated measures can be saved to the file and loaded back,
+ * so they don't have to be calculated again for the same training data.
+ * @author Vladimr Lznika
+ *
+ */
+public class AdaptiveDistanceMeasures {
+	
+	/**
+	 * Number identifying the file with adaptive distance measures (and version of its format).
+	 */
+	private static final int FILE_MAGIC = 0x41444D02;
+	
+	/**
+	 * Training data, for which the measures are calculated.
+	 */
+	private final TrainingData trainingData;
+	
+	/**
+	 * Kernel of the distance function.
+	 */
+	private final DistanceKernel distanceKernel;
+	
+	/**
+	 * Type of the spatial index used for finding the nearest patterns ({@code SpatialIndex.INDEX_*}).
+	 */
+	private final int indexType;
+	
+	/**
+	 * Number of threads used for the calculation.
+	 */
+	private final int parallelism;
+	
+	/**
+	 * Constructor for the calculation. It stores passed parameters.
+	 * @param trainingData		training data, for which the measures are calculated
+	 * @param distanceKernel	kernel of the distance function
+	 * @param indexType			type of the spatial index ({@code SpatialIndex.INDEX_NONE} or approximate index for scanning all pairs,
+	 * 							{@code SpatialIndex.INDEX_AUTO} scans all pairs for the distance without the box bound and the metric)
+	 * @param parallelism		number of threads used for the calculation
+	 */
+	public AdaptiveDistanceMeasures(TrainingData trainingData, DistanceKernel distanceKernel, int indexType, int parallelism) {
+		this.trainingData = trainingData;
+		this.distanceKernel = distanceKernel;
+		this.indexType = indexType;
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Method calculating adaptive distance measures of all training patterns.
+	 * Patterns without any pattern of different class get {@code Double.MAX_VALUE}.
+	 * @return	array with adaptive distance measures (real distances) on indices of the patterns
+	 */
+	public double[] calculate() {
+		double[] ranks = usesIndex() ? calculateRanksByIndex() : calculateRanksByPairs();
+		double[] measures = new double[ranks.length];
+		
+		for(int i = 0; i < ranks.length; i++) {
+			measures[i] = (ranks[i] == Double.POSITIVE_INFINITY) ? Double.MAX_VALUE : distanceKernel.toDistance(ranks[i]);
+		}
+		
+		return measures;
+	}
+	
+	/**
+	 * Method checking, whether measures are found via the spatial index. Approximate indexes could miss the nearest pattern
+	 * and {@code SpatialIndex.INDEX_AUTO} builds no index for the distance without the box bound and the metric (e.g. the cosine distance).
+	 * @return	true if the exact index is built for the distance function
+	 */
+	private boolean usesIndex() {
+		if(indexType == SpatialIndex.INDEX_NONE || !SpatialIndex.isExact(indexType)) return false;
+		
+		return distanceKernel.hasBoxBound() || distanceKernel.isMetric();
+	}
+	
+	/**
+	 * Method finding ranking distances to the nearest pattern with different class by scanning all pairs of patterns.
+	 * Every pair is calculated once and updates both patterns. Rows of the pair matrix are assigned to threads
+	 * in turns (so all threads have similar amount of work), every thread holds its own minimums, which are merged at the end.
+	 * @return	array with ranking distances on indices of the patterns
+	 */
+	private double[] calculateRanksByPairs() {
+		final int size = trainingData.size();
+		final int taskCnt = Math.min(parallelism, Math.max(size, 1));
+		List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+		
+		for(int t = 0; t < taskCnt; t++) {
+			final int firstRow = t;
+			
+			tasks.add(new Callable<double[]>() {
+				@Override
+				public double[] call() {
+					double[] ranks = new double[size];
+					Arrays.fill(ranks, Double.POSITIVE_INFINITY);
+					double[] vectors = trainingData.getVectors();
+					int dimension = trainingData.getDimension();
+					
+					for(int i = firstRow; i < size; i += taskCnt) {
+						int classId = trainingData.getClassId(i);
+						int offset = trainingData.getOffset(i);
+						
+						for(int j = i + 1; j < size; j++) {
+							if(classId != trainingData.getClassId(j)) {
+								double rankLimit = Math.max(ranks[i], ranks[j]);
+								double rank = distanceKernel.rank(vectors, offset, vectors, trainingData.getOffset(j), dimension, rankLimit);
+								
+								if(rank < ranks[i]) ranks[i] = rank;
+								if(rank < ranks[j]) ranks[j] = rank;
+							}
+						}
+					}
+					
+					return ranks;
+				}
+			});
+		}
+		
+		double[] ranks = new double[size];
+		Arrays.fill(ranks, Double.POSITIVE_INFINITY);
+		
+		for(double[] taskRanks : invokeAll(tasks)) {
+			for(int i = 0; i < size; i++) {
+				if(taskRanks[i] < ranks[i]) ranks[i] = taskRanks[i];
+			}
+		}
+		
+		return ranks;
+	}
+	
+	/**
+	 * Method finding ranking distances to the nearest pattern with different class via spatial indexes.
+	 * For every class the index is built over patterns of all other classes and every pattern of the class
+	 * queries it for one nearest neighbor. Queries are divided among threads.
+	 * @return	array with ranking distances on indices of the patterns
+	 */
+	private double[] calculateRanksByIndex() {
+		final int size = trainingData.size();
+		final double[] ranks = new double[size];
+		Arrays.fill(ranks, Double.POSITIVE_INFINITY);
+		
+		for(int classId = 0; classId < trainingData.getLabelDictionary().size(); classId++) {
+			final int[] members = getPatterns(classId, true);
+			int[] enemies = getPatterns(classId, false);
+			
+			if(members.length == 0 || enemies.length == 0) continue;
+			
+			final SpatialIndex enemyIndex = SpatialIndex.build(indexType, trainingData, distanceKernel, enemies, false);
+			final int taskCnt = Math.min(parallelism, members.length);
+			List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+			
+			for(int t = 0; t < taskCnt; t++) {
+				final int firstMember = t;
+				
+				tasks.add(new Callable<double[]>() {
+					@Override
+					public double[] call() {
+						NeighborSelector neighborSelector = new NeighborSelector(1);
+						
+						for(int m = firstMember; m < members.length; m += taskCnt) {
+							neighborSelector.reset();
+							enemyIndex.search(trainingData.getVector(members[m]), neighborSelector);
+							ranks[members[m]] = neighborSelector.getDistance(0);
+						}
+						
+						return null;
+					}
+				});
+			}
+			
+			invokeAll(tasks);
+		}
+		
+		return ranks;
+	}
+	
+	/**
+	 * Method returning indices of the patterns with or without given class.
+	 * @param classId	identifier of the class
+	 * @param sameClass	true for patterns with given class, false for patterns of other classes
+	 * @return	indices of the patterns
+	 */
+	private int[] getPatterns(int classId, boolean sameClass) {
+		int[] patterns = new int[trainingData.size()];
+		int cnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if((trainingData.getClassId(i) == classId) == sameClass) patterns[cnt++] = i;
+		}
+		
+		return Arrays.copyOf(patterns, cnt);
+	}
+	
+	/**
+	 * Method running given tasks in the {@code ForkJoinPool} with the set parallelism (or in the current thread
+	 * for a single task) and returning their results.
+	 * @param tasks	tasks to run
+	 * @return	results of the tasks
+	 */
+	private List<double[]> invokeAll(List<Callable<double[]>> tasks) {
+		List<double[]> results = new ArrayList<double[]>();
+		
+		try {
+			if(tasks.size() == 1) {
+				results.add(tasks.get(0).call());
+				return results;
+			}
+			
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			
+			try {
+				for(Future<double[]> future : pool.invokeAll(tasks)) {
+					results.add(future.get());
+				}
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		catch(RuntimeException e) {
+			throw e;
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Calculation of adaptive distance measures was interrupted.", e);
+		}
+		catch(Exception e) {
+			throw new IllegalStateException(e);
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Method saving adaptive distance measures to the binary file. The file holds the signature, the type and parameters
+	 * of the distance function and the fingerprint of the training data, so the measures aren't used for different data.
+	 * @param file				file for the measures
+	 * @param trainingData		training data with calculated measures
+	 * @param distanceKernel	kernel of the distance function used for the calculation
+	 * @throws IOException
+	 */
+	public static void save(File file, TrainingData trainingData, DistanceKernel distanceKernel) throws IOException {
+		double[] parameters = distanceKernel.getParameters();
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		
+		try {
+			dos.writeInt(FILE_MAGIC);
+			dos.writeInt(distanceKernel.getSignature());
+			dos.writeInt(distanceKernel.getType());
+			dos.writeInt(parameters.length);
+			
+			for(double parameter : parameters) {
+				dos.writeDouble(parameter);
+			}
+			
+			dos.writeInt(trainingData.size());
+			dos.writeLong(trainingData.getFingerprint());
+			
+			for(int i = 0; i < trainingData.size(); i++) {
+				dos.writeDouble(trainingData.getAdaptiveDistanceMeasure(i));
+			}
+		}
+		finally {
+			dos.close();
+		}
+	}
+	
+	/**
+	 * Method loading adaptive distance measures from the binary file created by the {@code save} method.
+	 * The signature of the distance function is only a fast check, its type and parameters have to match exactly.
+	 * @param file				file with the measures
+	 * @param trainingData		training data, for which the measures are loaded
+	 * @param distanceKernel	kernel of the distance function used by the classifier
+	 * @return	array with adaptive distance measures or null if the file belongs to different data or distance function
+	 * @throws IOException
+	 */
+	public static double[] load(File file, TrainingData trainingData, DistanceKernel distanceKernel) throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		
+		try {
+			if(dis.readInt() != FILE_MAGIC || dis.readInt() != distanceKernel.getSignature()) return null;
+			
+			int type = dis.readInt();
+			int parameterCnt = dis.readInt();
+			
+			if(parameterCnt != distanceKernel.getParameters().length) return null;
+			
+			double[] parameters = new double[parameterCnt];
+			
+			for(int i = 0; i < parameters.length; i++) {
+				parameters[i] = dis.readDouble();
+			}
+			
+			if(!distanceKernel.isSameFunction(type, parameters) || dis.readInt() != trainingData.size()
+					|| dis.readLong() != trainingData.getFingerprint()) return null;
+			
+			double[] measures = new double[trainingData.size()];
+			
+			for(int i = 0; i < measures.length; i++) {
+				measures[i] = dis.readDouble();
+			}
+			
+			return measures;
+		}
+		finally {
+			dis.close();
+		}
+	}
+}
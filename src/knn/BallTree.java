@@ -0,0 +1,292 @@
+package knn;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Ball tree over the training data. Every node holds the center (mean) of its patterns and the radius of the ball
+ * containing them. Inner nodes split their patterns at the median of the projection to the line between two
+ * distant patterns. The lower bound of the distance to the node follows from the triangle inequality, so it works
+ * for every true metric (Euclidean and Manhattan) and it stays useful for higher dimensions, where the bounding
+ * boxes of the KD-tree overlap too much.
+ * @author Vladimr Lznika
+ *
+ */
+public class BallTree extends SpatialIndex {
+	
+	/**
+	 * Relative amount by which the lower bound is decreased, so the rounding errors can't prune the true neighbor.
+	 */
+	private static final double BOUND_SLACK = 1e-9;
+	
+	/**
+	 * Number of nodes in the tree.
+	 */
+	private int nodeCnt;
+	
+	/**
+	 * First position of the node patterns in the permutation.
+	 */
+	private int[] nodeFrom;
+	
+	/**
+	 * Position after the last node pattern in the permutation.
+	 */
+	private int[] nodeTo;
+	
+	/**
+	 * Left child of the node (-1 for leaves).
+	 */
+	private int[] nodeLeft;
+	
+	/**
+	 * Right child of the node (-1 for leaves).
+	 */
+	private int[] nodeRight;
+	
+	/**
+	 * Maximal ranking adaptive distance measure of the node patterns.
+	 */
+	private double[] nodeMaxRankMeasure;
+	
+	/**
+	 * Radius (real distance) of the node ball.
+	 */
+	private double[] nodeRadius;
+	
+	/**
+	 * Centers of the node balls (row-major, one row per node).
+	 */
+	private double[] nodeCenter;
+	
+	/**
+	 * Constructor building the tree over given training patterns.
+	 * @param trainingData					training data to index
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indices						indices of indexed training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 */
+	public BallTree(TrainingData trainingData, DistanceKernel distanceKernel, int[] indices, boolean useAdaptiveDistanceMeasures) {
+		super(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+		
+		int capacity = 2 * (indices.length / LEAF_SIZE + 1);
+		this.nodeCnt = 0;
+		this.nodeFrom = new int[capacity];
+		this.nodeTo = new int[capacity];
+		this.nodeLeft = new int[capacity];
+		this.nodeRight = new int[capacity];
+		this.nodeMaxRankMeasure = new double[capacity];
+		this.nodeRadius = new double[capacity];
+		this.nodeCenter = new double[capacity * trainingData.getDimension()];
+		
+		if(indices.length > 0) buildNode(0, indices.length, new double[indices.length]);
+	}
+	
+	/**
+	 * Constructor restoring the tree from the snapshot (nodes are read in the order written by {@code writeNodes}).
+	 * @param trainingData					indexed training data
+	 * @param distanceKernel				kernel of the distance function
+	 * @param permutation					indices of the training patterns in the order of the nodes
+	 * @param rankMeasures					ranking adaptive distance measures of the training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 * @param input							input of the snapshot
+	 * @throws IOException if the snapshot is damaged
+	 */
+	BallTree(TrainingData trainingData, DistanceKernel distanceKernel, int[] permutation, double[] rankMeasures, boolean useAdaptiveDistanceMeasures,
+			ModelSnapshot.Input input) throws IOException {
+		super(trainingData, distanceKernel, permutation, rankMeasures, useAdaptiveDistanceMeasures);
+		
+		this.nodeCnt = input.readInt();
+		this.nodeFrom = input.readInts();
+		this.nodeTo = input.readInts();
+		this.nodeLeft = input.readInts();
+		this.nodeRight = input.readInts();
+		this.nodeMaxRankMeasure = input.readDoubles();
+		this.nodeRadius = input.readDoubles();
+		this.nodeCenter = input.readDoubles();
+		
+		if(nodeCnt < 0 || nodeFrom.length < nodeCnt || nodeTo.length < nodeCnt || nodeLeft.length < nodeCnt || nodeRight.length < nodeCnt || nodeMaxRankMeasure.length < nodeCnt
+				|| nodeRadius.length < nodeCnt || nodeCenter.length < (long)nodeCnt * trainingData.getDimension()) {
+			throw new IOException("Snapshot is damaged (arrays of the tree are too short).");
+		}
+		
+		checkTreeNodes(nodeCnt, nodeFrom, nodeTo, nodeLeft, nodeRight);
+	}
+	
+	@Override
+	public int getType() {
+		return INDEX_BALL_TREE;
+	}
+	
+	@Override
+	protected void writeNodes(ModelSnapshot.Output output) throws IOException {
+		output.writeInt(nodeCnt);
+		output.writeInts(nodeFrom, nodeCnt);
+		output.writeInts(nodeTo, nodeCnt);
+		output.writeInts(nodeLeft, nodeCnt);
+		output.writeInts(nodeRight, nodeCnt);
+		output.writeDoubles(nodeMaxRankMeasure, nodeCnt);
+		output.writeDoubles(nodeRadius, nodeCnt);
+		output.writeDoubles(nodeCenter, nodeCnt * trainingData.getDimension());
+	}
+	
+	@Override
+	public void search(double[] vector, NeighborSelector neighborSelector) {
+		if(nodeCnt > 0) searchNode(0, lowerBound(0, vector), vector, neighborSelector);
+	}
+	
+	/**
+	 * Method searching given node. It's skipped if its lower bound is higher than the worst held neighbor,
+	 * otherwise its patterns are scanned (leaf) or its children are searched from the nearer one.
+	 * @param node				searched node
+	 * @param lowerBound		lower bound of the distance to the node
+	 * @param vector			tested vector
+	 * @param neighborSelector	selector, which will hold the neighbors
+	 */
+	private void searchNode(int node, double lowerBound, double[] vector, NeighborSelector neighborSelector) {
+		if(lowerBound > neighborSelector.worstDistance()) return;
+		
+		if(nodeLeft[node] < 0) {
+			scan(vector, nodeFrom[node], nodeTo[node], neighborSelector);
+			return;
+		}
+		
+		int left = nodeLeft[node];
+		int right = nodeRight[node];
+		double leftBound = lowerBound(left, vector);
+		double rightBound = lowerBound(right, vector);
+		
+		if(leftBound <= rightBound) {
+			searchNode(left, leftBound, vector, neighborSelector);
+			searchNode(right, rightBound, vector, neighborSelector);
+		}
+		else {
+			searchNode(right, rightBound, vector, neighborSelector);
+			searchNode(left, leftBound, vector, neighborSelector);
+		}
+	}
+	
+	/**
+	 * Method calculating the lower bound of distances from given vector to patterns of the node.
+	 * @param node		node of the tree
+	 * @param vector	tested vector
+	 * @return	ranking distance to the ball divided by the maximal ranking adaptive distance measure
+	 */
+	private double lowerBound(int node, double[] vector) {
+		int dimension = trainingData.getDimension();
+		double distance = distanceKernel.distance(vector, 0, nodeCenter, node * dimension, dimension);
+		double ballDistance = (distance - nodeRadius[node]) - BOUND_SLACK * (distance + nodeRadius[node]);
+		
+		if(ballDistance <= 0.0) return 0.0;
+		return distanceKernel.toRank(ballDistance) / nodeMaxRankMeasure[node];
+	}
+	
+	/**
+	 * Method building the node from given range of the permutation (and its subtree).
+	 * @param from	first position in the permutation
+	 * @param to	position after the last one in the permutation
+	 * @param keys	array used for keys of the median selection
+	 * @return	index of the built node
+	 */
+	private int buildNode(int from, int to, double[] keys) {
+		int node = addNode(from, to);
+		int dimension = trainingData.getDimension();
+		double[] vectors = trainingData.getVectors();
+		int centerOffset = node * dimension;
+		
+		for(int p = from; p < to; p++) {
+			int offset = trainingData.getOffset(permutation[p]);
+			
+			for(int d = 0; d < dimension; d++) {
+				nodeCenter[centerOffset + d] += vectors[offset + d];
+			}
+		}
+		
+		for(int d = 0; d < dimension; d++) {
+			nodeCenter[centerOffset + d] /= (to - from);
+		}
+		
+		int farthest = getFarthest(nodeCenter, centerOffset, from, to);
+		nodeRadius[node] = distanceKernel.distance(nodeCenter, centerOffset, vectors, trainingData.getOffset(farthest), dimension);
+		nodeMaxRankMeasure[node] = getMaxRankMeasure(from, to);
+		
+		if(to - from <= LEAF_SIZE || nodeRadius[node] == 0.0) return node;
+		
+		int pivot1 = farthest;
+		int pivot2 = getFarthest(vectors, trainingData.getOffset(pivot1), from, to);
+		int offset1 = trainingData.getOffset(pivot1);
+		int offset2 = trainingData.getOffset(pivot2);
+		
+		for(int p = from; p < to; p++) {
+			int offset = trainingData.getOffset(permutation[p]);
+			double projection = 0.0;
+			
+			for(int d = 0; d < dimension; d++) {
+				projection += (vectors[offset + d] - vectors[offset1 + d]) * (vectors[offset2 + d] - vectors[offset1 + d]);
+			}
+			
+			keys[p] = projection;
+		}
+		
+		int middle = (from + to) >>> 1;
+		select(keys, from, to, middle);
+		
+		int left = buildNode(from, middle, keys);
+		int right = buildNode(middle, to, keys);
+		nodeLeft[node] = left;
+		nodeRight[node] = right;
+		
+		return node;
+	}
+	
+	/**
+	 * Method finding the pattern from given range of the permutation, which is the farthest from given vector.
+	 * @param vectors	array containing the vector
+	 * @param offset	offset of the vector in the array
+	 * @param from		first position in the permutation
+	 * @param to		position after the last one in the permutation
+	 * @return	index of the farthest training pattern
+	 */
+	private int getFarthest(double[] vectors, int offset, int from, int to) {
+		int dimension = trainingData.getDimension();
+		int farthest = permutation[from];
+		double maxRank = -1.0;
+		
+		for(int p = from; p < to; p++) {
+			double rank = distanceKernel.rank(vectors, offset, trainingData.getVectors(), trainingData.getOffset(permutation[p]), dimension, Double.POSITIVE_INFINITY);
+			
+			if(rank > maxRank) {
+				maxRank = rank;
+				farthest = permutation[p];
+			}
+		}
+		
+		return farthest;
+	}
+	
+	/**
+	 * Method adding the leaf node for given range of the permutation. Arrays of nodes are enlarged if needed.
+	 * @param from	first position in the permutation
+	 * @param to	position after the last one in the permutation
+	 * @return	index of the new node
+	 */
+	private int addNode(int from, int to) {
+		if(nodeCnt == nodeFrom.length) {
+			int capacity = nodeFrom.length * 2;
+			nodeFrom = Arrays.copyOf(nodeFrom, capacity);
+			nodeTo = Arrays.copyOf(nodeTo, capacity);
+			nodeLeft = Arrays.copyOf(nodeLeft, capacity);
+			nodeRight = Arrays.copyOf(nodeRight, capacity);
+			nodeMaxRankMeasure = Arrays.copyOf(nodeMaxRankMeasure, capacity);
+			nodeRadius = Arrays.copyOf(nodeRadius, capacity);
+			nodeCenter = Arrays.copyOf(nodeCenter, capacity * trainingData.getDimension());
+		}
+		
+		nodeFrom[nodeCnt] = from;
+		nodeTo[nodeCnt] = to;
+		nodeLeft[nodeCnt] = -1;
+		nodeRight[nodeCnt] = -1;
+		
+		return nodeCnt++;
+	}
+}
@@ -0,0 +1,332 @@
+package knn;
+
+/**
+ * Instance of this class searches nearest neighbors of a block of tested vectors at once by the linear scan.
+ * Training patterns are scanned in tiles, which fit the processor cache, and every tile is compared with all tested
+ * vectors of the block before the next tile is loaded, so the training set is streamed from the memory once per block
+ * instead of once per tested vector. Top-{@code K} state of every tested vector is kept in its own selector
+ * between tiles.
+ * For the Euclidean distance squared distances are calculated by the expansion {@code |a|^2 + |b|^2 - 2 a.b}
+ * with precomputed norms of training vectors, so the inner loop is the dot product, which compares one training vector
+ * with four tested vectors at once (each loaded value is used four times). Vectors are centered by the mean
+ * of the training set first to limit the cancellation. The expanded distance is used only to skip patterns, which
+ * can't be nearer than the worst held neighbor even with the maximal rounding error, distances of the rest are calculated
+ * exactly, so found neighbors are the same as found by the scan of individual vectors. Centered training vectors
+ * are held in a copy, so the instance takes as much memory as the training set. Other distance functions
+ * are calculated directly by the distance kernel in the same tiles.
+ * @author Vladimr Lznika
+ *
+ */
+public class BatchSearch {
+	
+	/**
+	 * Approximate number of bytes of training vectors in one tile (about the size of the L2 cache).
+	 */
+	private static final int TILE_BYTES = 256 * 1024;
+	
+	/**
+	 * Number of tested vectors compared with one training vector at once by the dot product.
+	 */
+	private static final int QUERY_GROUP = 4;
+	
+	/**
+	 * Training data searched by the instance.
+	 */
+	private final TrainingData trainingData;
+	
+	/**
+	 * Kernel of the distance function.
+	 */
+	private final DistanceKernel distanceKernel;
+	
+	/**
+	 * Number of training patterns in one tile.
+	 */
+	private final int tileSize;
+	
+	/**
+	 * Adaptive distance measures of training patterns converted to ranking distances.
+	 */
+	private final double[] rankMeasures;
+	
+	/**
+	 * Mean of training vectors (null if the expansion isn't used).
+	 */
+	private final double[] mean;
+	
+	/**
+	 * Training vectors centered by the mean (null if the expansion isn't used).
+	 */
+	private final double[] centeredVectors;
+	
+	/**
+	 * Squared norms of centered training vectors (null if the expansion isn't used).
+	 */
+	private final double[] squaredNorms;
+	
+	/**
+	 * Norms of centered training vectors (null if the expansion isn't used).
+	 */
+	private final double[] norms;
+	
+	/**
+	 * Relative bound of the rounding error of the expanded squared distance (related to {@code (|a| + |b|)^2}).
+	 */
+	private final double errorFactor;
+	
+	/**
+	 * Constructor for the batch search. It precomputes centered training vectors and their norms
+	 * for the Euclidean distance.
+	 * @param trainingData		training data with adaptive distance measures
+	 * @param distanceKernel	kernel of the distance function
+	 */
+	public BatchSearch(TrainingData trainingData, DistanceKernel distanceKernel) {
+		int size = trainingData.size();
+		int dimension = trainingData.getDimension();
+		
+		this.trainingData = trainingData;
+		this.distanceKernel = distanceKernel;
+		this.tileSize = Math.max(QUERY_GROUP, TILE_BYTES / (8 * Math.max(1, dimension)));
+		this.rankMeasures = new double[size];
+		this.errorFactor = 2.0 * (dimension + 4) * Math.ulp(1.0);
+		
+		for(int i = 0; i < size; i++) {
+			rankMeasures[i] = distanceKernel.toRank(trainingData.getAdaptiveDistanceMeasure(i));
+		}
+		
+		if(distanceKernel instanceof EuclideanKernel) {
+			this.mean = calculateMean();
+			this.centeredVectors = new double[size * dimension];
+			this.squaredNorms = new double[size];
+			this.norms = new double[size];
+			
+			double[] vectors = trainingData.getVectors();
+			
+			for(int i = 0; i < size; i++) {
+				int offset = i * dimension;
+				center(vectors, trainingData.getOffset(i), centeredVectors, offset, dimension);
+				squaredNorms[i] = dot(centeredVectors, offset, centeredVectors, offset, dimension);
+				norms[i] = Math.sqrt(squaredNorms[i]);
+			}
+		}
+		else {
+			this.mean = null;
+			this.centeredVectors = null;
+			this.squaredNorms = null;
+			this.norms = null;
+		}
+	}
+	
+	/**
+	 * Method offering nearest training patterns of given tested vectors to their selectors (in the same way
+	 * as {@code ClassificationModel.search} offers them for one vector). Removed patterns are skipped.
+	 * Selectors aren't reset nor sorted by this method, evaluated distances (expanded and exact ones) are counted in them.
+	 * @param vectors			tested vectors (their dimension has to be checked by the caller)
+	 * @param vectorCnt			number of tested vectors in the block
+	 * @param neighborSelectors	selectors of tested vectors (on the same positions)
+	 */
+	public void search(double[][] vectors, int vectorCnt, NeighborSelector[] neighborSelectors) {
+		int size = trainingData.size();
+		long[] evaluatedCnts = new long[vectorCnt];
+		
+		if(centeredVectors == null) {
+			for(int from = 0; from < size; from += tileSize) {
+				scanTile(vectors, vectorCnt, neighborSelectors, from, Math.min(size, from + tileSize), evaluatedCnts);
+			}
+		}
+		else {
+			int dimension = trainingData.getDimension();
+			double[] queries = new double[vectorCnt * dimension];
+			double[] queryNorms = new double[vectorCnt];
+			double[] squaredQueryNorms = new double[vectorCnt];
+			
+			for(int q = 0; q < vectorCnt; q++) {
+				center(vectors[q], 0, queries, q * dimension, dimension);
+				squaredQueryNorms[q] = dot(queries, q * dimension, queries, q * dimension, dimension);
+				queryNorms[q] = Math.sqrt(squaredQueryNorms[q]);
+			}
+			
+			for(int from = 0; from < size; from += tileSize) {
+				scanTileExpanded(vectors, queries, queryNorms, squaredQueryNorms, vectorCnt, neighborSelectors,
+						from, Math.min(size, from + tileSize), evaluatedCnts);
+			}
+		}
+		
+		for(int q = 0; q < vectorCnt; q++) {
+			neighborSelectors[q].countDistances(evaluatedCnts[q]);
+		}
+	}
+	
+	/**
+	 * Method comparing all tested vectors with one tile of training patterns by the distance kernel.
+	 * @param vectors			tested vectors
+	 * @param vectorCnt			number of tested vectors
+	 * @param neighborSelectors	selectors of tested vectors
+	 * @param from				index of the first training pattern of the tile
+	 * @param to				index after the last training pattern of the tile
+	 * @param evaluatedCnts		numbers of evaluated distances of tested vectors
+	 */
+	private void scanTile(double[][] vectors, int vectorCnt, NeighborSelector[] neighborSelectors, int from, int to, long[] evaluatedCnts) {
+		for(int q = 0; q < vectorCnt; q++) {
+			for(int i = from; i < to; i++) {
+				if(trainingData.isRemoved(i)) continue;
+				
+				offerExact(vectors[q], i, neighborSelectors[q]);
+				evaluatedCnts[q]++;
+			}
+		}
+	}
+	
+	/**
+	 * Method comparing all tested vectors with one tile of training patterns by the expanded squared distance.
+	 * Groups of {@code QUERY_GROUP} tested vectors share loaded training values, remaining vectors are compared one by one.
+	 * @param vectors				tested vectors
+	 * @param queries				centered tested vectors in one array
+	 * @param queryNorms			norms of centered tested vectors
+	 * @param squaredQueryNorms		squared norms of centered tested vectors
+	 * @param vectorCnt				number of tested vectors
+	 * @param neighborSelectors		selectors of tested vectors
+	 * @param from					index of the first training pattern of the tile
+	 * @param to					index after the last training pattern of the tile
+	 * @param evaluatedCnts			numbers of evaluated distances of tested vectors
+	 */
+	private void scanTileExpanded(double[][] vectors, double[] queries, double[] queryNorms, double[] squaredQueryNorms, int vectorCnt,
+			NeighborSelector[] neighborSelectors, int from, int to, long[] evaluatedCnts) {
+		int dimension = trainingData.getDimension();
+		int q = 0;
+		
+		for(; q + QUERY_GROUP <= vectorCnt; q += QUERY_GROUP) {
+			int offset0 = q * dimension;
+			int offset1 = offset0 + dimension;
+			int offset2 = offset1 + dimension;
+			int offset3 = offset2 + dimension;
+			
+			for(int i = from; i < to; i++) {
+				if(trainingData.isRemoved(i)) continue;
+				
+				int offset = i * dimension;
+				double dot0 = 0.0, dot1 = 0.0, dot2 = 0.0, dot3 = 0.0;
+				
+				for(int d = 0; d < dimension; d++) {
+					double value = centeredVectors[offset + d];
+					dot0 += value * queries[offset0 + d];
+					dot1 += value * queries[offset1 + d];
+					dot2 += value * queries[offset2 + d];
+					dot3 += value * queries[offset3 + d];
+				}
+				
+				evaluatedCnts[q] += offerExpanded(vectors[q], i, dot0, queryNorms[q], squaredQueryNorms[q], neighborSelectors[q]);
+				evaluatedCnts[q + 1] += offerExpanded(vectors[q + 1], i, dot1, queryNorms[q + 1], squaredQueryNorms[q + 1], neighborSelectors[q + 1]);
+				evaluatedCnts[q + 2] += offerExpanded(vectors[q + 2], i, dot2, queryNorms[q + 2], squaredQueryNorms[q + 2], neighborSelectors[q + 2]);
+				evaluatedCnts[q + 3] += offerExpanded(vectors[q + 3], i, dot3, queryNorms[q + 3], squaredQueryNorms[q + 3], neighborSelectors[q + 3]);
+			}
+		}
+		
+		for(; q < vectorCnt; q++) {
+			for(int i = from; i < to; i++) {
+				if(trainingData.isRemoved(i)) continue;
+				
+				double dotProduct = dot(centeredVectors, i * dimension, queries, q * dimension, dimension);
+				evaluatedCnts[q] += offerExpanded(vectors[q], i, dotProduct, queryNorms[q], squaredQueryNorms[q], neighborSelectors[q]);
+			}
+		}
+	}
+	
+	/**
+	 * Method offering the training pattern to the selector by its expanded squared distance. The pattern is skipped
+	 * if the expanded distance lowered by the bound of its rounding error is higher than the worst held neighbor,
+	 * otherwise its exact distance is calculated and offered.
+	 * @param vector			tested vector
+	 * @param index				index of the training pattern
+	 * @param dotProduct		dot product of centered vectors
+	 * @param queryNorm			norm of the centered tested vector
+	 * @param squaredQueryNorm	squared norm of the centered tested vector
+	 * @param neighborSelector	selector of the tested vector
+	 * @return	number of evaluated distances (1 for the expanded distance, 2 if the exact one was calculated too)
+	 */
+	private int offerExpanded(double[] vector, int index, double dotProduct, double queryNorm, double squaredQueryNorm, NeighborSelector neighborSelector) {
+		double rankLimit = neighborSelector.worstDistance() * rankMeasures[index];
+		double normSum = queryNorm + norms[index];
+		double lowerBound = squaredQueryNorm + squaredNorms[index] - 2.0 * dotProduct - errorFactor * normSum * normSum;
+		
+		if(lowerBound > rankLimit) return 1;
+		
+		offerExact(vector, index, neighborSelector);
+		return 2;
+	}
+	
+	/**
+	 * Method offering the training pattern to the selector by its exact distance (abandoned once it can't be nearer
+	 * than the worst held neighbor).
+	 * @param vector			tested vector
+	 * @param index				index of the training pattern
+	 * @param neighborSelector	selector of the tested vector
+	 */
+	private void offerExact(double[] vector, int index, NeighborSelector neighborSelector) {
+		double rank = distanceKernel.rank(vector, 0, trainingData.getVectors(), trainingData.getOffset(index), trainingData.getDimension(),
+				neighborSelector.worstDistance() * rankMeasures[index]);
+		
+		if(rank != Double.POSITIVE_INFINITY) neighborSelector.offer(index, rank / rankMeasures[index]);
+	}
+	
+	/**
+	 * Method calculating the mean of training vectors, which aren't removed.
+	 * @return	mean vector
+	 */
+	private double[] calculateMean() {
+		int dimension = trainingData.getDimension();
+		double[] vectors = trainingData.getVectors();
+		double[] sum = new double[dimension];
+		int cnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(trainingData.isRemoved(i)) continue;
+			
+			int offset = trainingData.getOffset(i);
+			cnt++;
+			
+			for(int d = 0; d < dimension; d++) {
+				sum[d] += vectors[offset + d];
+			}
+		}
+		
+		for(int d = 0; d < dimension; d++) {
+			sum[d] = (cnt == 0) ? 0.0 : sum[d] / cnt;
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Method copying the vector centered by the mean of the training set.
+	 * @param source		array with the vector
+	 * @param sourceOffset	offset of the vector
+	 * @param target		array for the centered vector
+	 * @param targetOffset	offset of the centered vector
+	 * @param dimension		dimension of the vector
+	 */
+	private void center(double[] source, int sourceOffset, double[] target, int targetOffset, int dimension) {
+		for(int d = 0; d < dimension; d++) {
+			target[targetOffset + d] = source[sourceOffset + d] - mean[d];
+		}
+	}
+	
+	/**
+	 * Method calculating the dot product of two vectors.
+	 * @param vectors1	array with the first vector
+	 * @param offset1	offset of the first vector
+	 * @param vectors2	array with the second vector
+	 * @param offset2	offset of the second vector
+	 * @param dimension	dimension of vectors
+	 * @return	dot product
+	 */
+	private static double dot(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension) {
+		double sum = 0.0;
+		
+		for(int d = 0; d < dimension; d++) {
+			sum += vectors1[offset1 + d] * vectors2[offset2 + d];
+		}
+		
+		return sum;
+	}
+}
@@ -0,0 +1,248 @@
+package knn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class for reading and writing patterns in the compact binary format. The file starts with the header
+ * (magic number, number of patterns, dimension and the dictionary of class labels), which is followed by packed
+ * vectors (row-major doubles aligned to 8 bytes) and class identifiers. All numbers are little-endian.
+ * Files are read via {@code FileChannel.map}, so vectors are transferred from the page cache to the arrays
+ * in bulk without any parsing. The vectors are copied to the heap of each process (the training data and
+ * all indexes work with plain arrays), so the processes reading the same file don't share its pages.
+ * The header is validated before any array is allocated, so damaged files end with the {@code IOException}.
+ * @author Vladimr Lznika
+ *
+ */
+public class BinaryDataset {
+	
+	/**
+	 * Number identifying the binary dataset file (and version of its format).
+	 */
+	private static final int FILE_MAGIC = 0x4B4E4E01;
+	
+	/**
+	 * Charset of the class labels.
+	 */
+	private static final Charset LABEL_CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Maximal size of one mapped region of the file (multiple of 8 bytes).
+	 */
+	private static final long MAX_REGION_SIZE = 1L << 30;
+	
+	/**
+	 * Private constructor, class only holds static methods.
+	 */
+	private BinaryDataset() {
+	}
+	
+	/**
+	 * Method checking, whether given file starts with the magic number of the binary dataset.
+	 * @param file	checked file
+	 * @return	true if the file is the binary dataset
+	 * @throws IOException
+	 */
+	public static boolean isBinaryDataset(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		
+		try {
+			if(raf.length() < 4) return false;
+			return Integer.reverseBytes(raf.readInt()) == FILE_MAGIC;
+		}
+		finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Method writing the training data to the binary file (adaptive distance measures aren't written).
+	 * @param file			file for the dataset
+	 * @param trainingData	written training data
+	 * @throws IOException
+	 */
+	public static void write(File file, TrainingData trainingData) throws IOException {
+		LabelDictionary labelDictionary = trainingData.getLabelDictionary();
+		ByteBuffer header = ByteBuffer.allocate(getHeaderSize(labelDictionary)).order(ByteOrder.LITTLE_ENDIAN);
+		
+		header.putInt(FILE_MAGIC);
+		header.putInt(trainingData.size());
+		header.putInt(trainingData.getDimension());
+		header.putInt(labelDictionary.size());
+		
+		for(String label : labelDictionary.getLabels()) {
+			byte[] labelBytes = label.getBytes(LABEL_CHARSET);
+			header.putInt(labelBytes.length);
+			header.put(labelBytes);
+		}
+		
+		header.position(header.capacity());
+		header.flip();
+		
+		FileOutputStream fos = new FileOutputStream(file);
+		
+		try {
+			FileChannel channel = fos.getChannel();
+			writeFully(channel, header);
+			
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			double[] vectors = trainingData.getVectors();
+			
+			for(int i = 0; i < trainingData.size() * trainingData.getDimension(); i++) {
+				if(buffer.remaining() < 8) flush(channel, buffer);
+				buffer.putDouble(vectors[i]);
+			}
+			
+			for(int i = 0; i < trainingData.size(); i++) {
+				if(buffer.remaining() < 4) flush(channel, buffer);
+				buffer.putInt(trainingData.getClassId(i));
+			}
+			
+			flush(channel, buffer);
+		}
+		finally {
+			fos.close();
+		}
+	}
+	
+	/**
+	 * Method reading the training data from the binary file. The file is mapped to the memory and its vectors
+	 * and class identifiers are transferred to the arrays of the training data in bulk.
+	 * @param file	file with the dataset
+	 * @return	training data from the file
+	 * @throws IOException if the file isn't the binary dataset or it's damaged
+	 */
+	public static TrainingData read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), MAX_REGION_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+			
+			if(header.remaining() < 16 || header.getInt() != FILE_MAGIC) throw new IOException("File "+file.getPath()+" isn't the binary dataset.");
+			
+			int size = header.getInt();
+			int dimension = header.getInt();
+			int labelCnt = header.getInt();
+			
+			if(size < 0 || dimension < 0 || labelCnt < 0) throw new IOException("File "+file.getPath()+" is damaged (negative size in the header).");
+			if((long)size * dimension > Integer.MAX_VALUE) throw new IOException("File "+file.getPath()+" is damaged (too many values in vectors).");
+			if(labelCnt > header.remaining() / 4) throw new IOException("File "+file.getPath()+" is damaged (header is too short).");
+			
+			ArrayList<String> labels = new ArrayList<String>(labelCnt);
+			
+			for(int i = 0; i < labelCnt; i++) {
+				if(header.remaining() < 4) throw new IOException("File "+file.getPath()+" is damaged (header is too short).");
+				int length = header.getInt();
+				if(length < 0 || length > header.remaining()) throw new IOException("File "+file.getPath()+" is damaged (invalid length of the label).");
+				
+				byte[] labelBytes = new byte[length];
+				header.get(labelBytes);
+				labels.add(new String(labelBytes, LABEL_CHARSET));
+			}
+			
+			long vectorsPosition = align(header.position());
+			long classIdsPosition = vectorsPosition + 8L * size * dimension;
+			
+			if(channel.size() < classIdsPosition + 4L * size) throw new IOException("File "+file.getPath()+" is damaged (it's too short).");
+			
+			double[] vectors = new double[size * dimension];
+			int transferred = 0;
+			
+			while(transferred < vectors.length) {
+				long regionSize = Math.min(MAX_REGION_SIZE, 8L * (vectors.length - transferred));
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, vectorsPosition + 8L * transferred, regionSize);
+				int cnt = (int)(regionSize / 8);
+				region.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(vectors, transferred, cnt);
+				transferred += cnt;
+			}
+			
+			int[] classIds = new int[size];
+			MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, classIdsPosition, 4L * size);
+			region.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(classIds);
+			
+			for(int i = 0; i < size; i++) {
+				if(classIds[i] < 0 || classIds[i] >= labelCnt) throw new IOException("File "+file.getPath()+" is damaged (class of the pattern "+i+" isn't in the dictionary).");
+			}
+			
+			return new TrainingData(dimension, vectors, classIds, labels);
+		}
+		finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Method reading patterns from the binary file as testing patterns (their class from the file is the correct class).
+	 * @param file	file with the dataset
+	 * @return	list with patterns from the file
+	 * @throws IOException if the file isn't the binary dataset or it's damaged
+	 */
+	public static List<Pattern> readPatterns(File file) throws IOException {
+		TrainingData trainingData = read(file);
+		ArrayList<Pattern> patterns = new ArrayList<Pattern>(trainingData.size());
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			patterns.add(new Pattern(trainingData.getVector(i), trainingData.getPatternClass(i)));
+		}
+		
+		return patterns;
+	}
+	
+	/**
+	 * Method returning the size of the header (including the padding before vectors).
+	 * @param labelDictionary	dictionary of class labels written to the header
+	 * @return	size of the header in bytes
+	 */
+	private static int getHeaderSize(LabelDictionary labelDictionary) {
+		int size = 16;
+		
+		for(String label : labelDictionary.getLabels()) {
+			size += 4 + label.getBytes(LABEL_CHARSET).length;
+		}
+		
+		return (int)align(size);
+	}
+	
+	/**
+	 * Method aligning the position in the file to 8 bytes.
+	 * @param position	position in the file
+	 * @return	the nearest higher or equal position divisible by 8
+	 */
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+	
+	/**
+	 * Method writing the content of the buffer to the channel and clearing the buffer.
+	 * @param channel	channel of the file
+	 * @param buffer	buffer filled with data
+	 * @throws IOException
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		writeFully(channel, buffer);
+		buffer.clear();
+	}
+	
+	/**
+	 * Method writing all remaining bytes of the buffer to the channel.
+	 * @param channel	channel of the file
+	 * @param buffer	buffer with data
+	 * @throws IOException
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
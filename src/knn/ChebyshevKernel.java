@@ -0,0 +1,91 @@
+package knn;
+
+/**
+ * Kernel calculating the Chebyshev distance (the maximal difference of the features). Its ranking distance
+ * is the distance itself. The calculation is abandoned as soon as one difference exceeds the limit.
+ * @author Vladimr Lznika
+ *
+ */
+public class ChebyshevKernel extends DistanceKernel {
+	
+	@Override
+	public int getType() {
+		return Classification.DISTANCE_CHEBYSHEV;
+	}
+	
+	@Override
+	public double rank(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension, double rankLimit) {
+		double max = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = Math.abs(vectors1[offset1 + i] - vectors2[offset2 + i]);
+			if(diff > max) max = diff;
+			if(max > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return max;
+	}
+	
+	@Override
+	public double rank(double[] vector, float[] vectors2, int offset2, int dimension, double rankLimit) {
+		double max = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = Math.abs(vector[i] - vectors2[offset2 + i]);
+			if(diff > max) max = diff;
+			if(max > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return max;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, short[] codes, int offset2, int dimension, double rankLimit) {
+		double max = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i];
+			if(diff > max) max = diff;
+			if(max > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return max;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, byte[] codes, int offset2, int dimension, double rankLimit) {
+		double max = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i];
+			if(diff > max) max = diff;
+			if(max > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return max;
+	}
+	
+	@Override
+	public double boxRank(double[] vector, double[] boxMin, double[] boxMax, int boxOffset, int dimension) {
+		double max = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = 0.0;
+			if(vector[i] < boxMin[boxOffset + i]) diff = boxMin[boxOffset + i] - vector[i];
+			else if(vector[i] > boxMax[boxOffset + i]) diff = vector[i] - boxMax[boxOffset + i];
+			if(diff > max) max = diff;
+		}
+		
+		return max;
+	}
+	
+	@Override
+	public double toDistance(double rank) {
+		return rank;
+	}
+	
+	@Override
+	public double toRank(double distance) {
+		return distance;
+	}
+}
@@ -1,14 +1,18 @@
 package knn;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Instance of this class represents the "K Nearest Neighbors" classifier. It holds passed parameters such as what distance function
  * should be used or how many nearest neighbors should be used for classification. Based on these parameters it classifies
- * tested patterns via several methods.
+ * tested patterns via several methods. Training set is held in the columnar {@code TrainingData} and it's only read during
+ * the classification (adaptive distance measures are set once before the first tested pattern), so individual tested patterns
+ * can be classified from several threads at the same time.
  * @author Vladimr Lznika
  *
  */
@@ -24,15 +28,40 @@ public class Classification {
 	 */
 	public static final int DISTANCE_MANHATTAN = 2;
 	
+	/**
+	 * Constant value indicating the Chebyshev (maximum) distance function will be used.
+	 */
+	public static final int DISTANCE_CHEBYSHEV = 3;
+	
+	/**
+	 * Constant value indicating the Minkowski distance function (with the power {@code p}) will be used.
+	 */
+	public static final int DISTANCE_MINKOWSKI = 4;
+	
+	/**
+	 * Constant value indicating the cosine distance function ({@code 1 - cosine similarity}) will be used.
+	 */
+	public static final int DISTANCE_COSINE = 5;
+	
+	/**
+	 * Constant value indicating the Euclidean distance function with weights of features will be used.
+	 */
+	public static final int DISTANCE_WEIGHTED = 6;
+	
 	/**
 	 * Constant value indicating the adaptive distance measure will be used for training the classifier.
 	 */
 	public static final int USE_ADM = 1;
 	
+	/**
+	 * Number of testing patterns, below which the parallel classification task is not split anymore.
+	 */
+	private static final int CLASSIFICATION_TASK_SIZE = 32;
+	
 	/**
 	 * Set of patterns used as training samples.
 	 */
-	private List<Pattern> trainingSet;
+	private TrainingData trainingData;
 	
 	/**
 	 * Set of patterns that will be classified.
@@ -45,17 +74,116 @@ public class Classification {
 	private int kNumber;
 	
 	/**
-	 * Type of the distance function that will be used (1 - Euclidean; 2 - Manhattan).
+	 * Type of the distance function that will be used ({@code DISTANCE_*}: 1 - Euclidean; 2 - Manhattan; 3 - Chebyshev;
+	 * 4 - Minkowski; 5 - cosine; 6 - weighted Euclidean).
 	 */
 	private int distanceType;
 	
+	/**
+	 * Kernel of the distance function chosen by the {@code distanceType} (or passed with its parameters).
+	 */
+	private DistanceKernel distanceKernel;
+	
 	/**
 	 * Variable indicating, whether the adaptive distance measure will be used to train the classifier (1 - YES, other - NO).
 	 */
 	private int useAdaptiveDistanceMeasure;
 	
 	/**
-	 * Constructor for the classifier. It stores passed parameters.
+	 * Type of the spatial index used for searching nearest neighbors ({@code SpatialIndex.INDEX_*}).
+	 */
+	private int indexType;
+	
+	/**
+	 * Number of candidates explored by the approximate spatial index per query.
+	 */
+	private int searchEffort;
+	
+	/**
+	 * Type of the vote of nearest neighbors ({@code NeighborVote.VOTE_*}).
+	 */
+	private int voteType;
+	
+	/**
+	 * Number of tested patterns searched at once by the batch search (0 - patterns are searched one by one).
+	 */
+	private int batchSize;
+	
+	/**
+	 * Current model of the trained classifier (null until the classifier is trained). It's replaced by every update
+	 * of the training set, tested patterns are classified by the model, which was current when they started.
+	 */
+	private volatile ClassificationModel model;
+	
+	/**
+	 * File for storing calculated adaptive distance measures (null if they aren't stored).
+	 */
+	private File adaptiveDistanceMeasureFile;
+	
+	/**
+	 * Number of threads used for classification of the testing set (1 - sequential classification).
+	 */
+	private int parallelism;
+	
+	/**
+	 * Indicator whether the classifier was already trained (adaptive distance measures were set if requested).
+	 */
+	private boolean trained;
+	
+	/**
+	 * Pool of threads used for parallel classification (null until the first parallel classification).
+	 */
+	private ForkJoinPool pool;
+	
+	/**
+	 * Metrics collected by the classifier (null if they aren't collected).
+	 */
+	private volatile ClassificationMetrics metrics;
+	
+	/**
+	 * Cache of classes determined for tested vectors (null if they aren't cached).
+	 */
+	private volatile QueryCache queryCache;
+	
+	/**
+	 * Selectors keeping {@code K} nearest training patterns of the pattern currently classified by the thread.
+	 * Every thread has its own selector, so the scratch state is never shared.
+	 */
+	private final ThreadLocal<NeighborSelector> neighborSelectors = new ThreadLocal<NeighborSelector>() {
+		@Override
+		protected NeighborSelector initialValue() {
+			return new NeighborSelector(kNumber);
+		}
+	};
+	
+	/**
+	 * Selectors of the block of patterns currently classified by the thread via the batch search.
+	 */
+	private final ThreadLocal<NeighborSelector[]> batchSelectors = new ThreadLocal<NeighborSelector[]>() {
+		@Override
+		protected NeighborSelector[] initialValue() {
+			NeighborSelector[] selectors = new NeighborSelector[batchSize];
+			
+			for(int i = 0; i < batchSize; i++) {
+				selectors[i] = new NeighborSelector(kNumber);
+			}
+			
+			return selectors;
+		}
+	};
+	
+	/**
+	 * Votes of nearest neighbors of the pattern currently classified by the thread (with reused tables of votes).
+	 */
+	private final ThreadLocal<NeighborVote> neighborVotes = new ThreadLocal<NeighborVote>() {
+		@Override
+		protected NeighborVote initialValue() {
+			return new NeighborVote(voteType, distanceKernel);
+		}
+	};
+	
+	/**
+	 * Constructor for the classifier. It stores passed parameters and classifies the testing set sequentially.
 	 * @param trainingSet					training set for the classifier
 	 * @param testingSet					testing set to be classified
 	 * @param kNumber						number of nearest neighbors
@@ -63,207 +191,630 @@ public class Classification {
 	 * @param useAdaptiveDistanceMeasure	specify, whether the adaptive distance measure will be used
 	 */
 	public Classification(List<Pattern> trainingSet, List<Pattern> testingSet, int kNumber, int distanceType, int useAdaptiveDistanceMeasure) {
-		this.trainingSet = trainingSet;
+		this(trainingSet, testingSet, kNumber, distanceType, useAdaptiveDistanceMeasure, 1);
+	}
+	
+	/**
+	 * Constructor for the classifier. It stores passed parameters. Training set is copied to the columnar {@code TrainingData}.
+	 * @param trainingSet					training set for the classifier
+	 * @param testingSet					testing set to be classified
+	 * @param kNumber						number of nearest neighbors
+	 * @param distanceType					type of the distance function to use
+	 * @param useAdaptiveDistanceMeasure	specify, whether the adaptive distance measure will be used
+	 * @param parallelism					number of threads used for classification of the testing set
+	 */
+	public Classification(List<Pattern> trainingSet, List<Pattern> testingSet, int kNumber, int distanceType, int useAdaptiveDistanceMeasure, int parallelism) {
+		this(new TrainingData(trainingSet), testingSet, kNumber, distanceType, useAdaptiveDistanceMeasure, parallelism);
+	}
+	
+	/**
+	 * Constructor for the classifier. It stores passed parameters. Passed training data shouldn't be changed
+	 * by the caller after that.
+	 * @param trainingData					training set for the classifier
+	 * @param testingSet					testing set to be classified
+	 * @param kNumber						number of nearest neighbors
+	 * @param distanceType					type of the distance function to use
+	 * @param useAdaptiveDistanceMeasure	specify, whether the adaptive distance measure will be used
+	 * @param parallelism					number of threads used for classification of the testing set
+	 */
+	public Classification(TrainingData trainingData, List<Pattern> testingSet, int kNumber, int distanceType, int useAdaptiveDistanceMeasure, int parallelism) {
+		this(trainingData, testingSet, kNumber, DistanceKernel.forType(distanceType), useAdaptiveDistanceMeasure, parallelism);
+	}
+	
+	/**
+	 * Constructor for the classifier with the kernel of the distance function (e.g. the distance with parameters,
+	 * which can't be chosen only by its type). Passed training data shouldn't be changed by the caller after that.
+	 * @param trainingData					training set for the classifier
+	 * @param testingSet					testing set to be classified
+	 * @param kNumber						number of nearest neighbors
+	 * @param distanceKernel				kernel of the distance function to use
+	 * @param useAdaptiveDistanceMeasure	specify, whether the adaptive distance measure will be used
+	 * @param parallelism					number of threads used for classification of the testing set
+	 */
+	public Classification(TrainingData trainingData, List<Pattern> testingSet, int kNumber, DistanceKernel distanceKernel, int useAdaptiveDistanceMeasure, int parallelism) {
+		if(kNumber < 1) throw new IllegalArgumentException("Number of nearest neighbors has to be positive: "+kNumber);
+		if(parallelism < 1) throw new IllegalArgumentException("Number of threads has to be positive: "+parallelism);
+		
+		this.trainingData = trainingData;
 		this.testingSet = testingSet;
 		this.kNumber = kNumber;
-		this.distanceType = distanceType;
+		this.distanceType = distanceKernel.getType();
+		this.distanceKernel = distanceKernel;
 		this.useAdaptiveDistanceMeasure = useAdaptiveDistanceMeasure;
+		this.parallelism = parallelism;
+		this.indexType = SpatialIndex.INDEX_NONE;
+		this.searchEffort = HnswGraph.DEFAULT_EF;
+		this.trained = false;
+	}
+	
+	/**
+	 * Constructor for the classifier restored from the snapshot. Parameters of the classifier and its model are taken
+	 * from the snapshot, so it's trained without calculation of adaptive distance measures and building of the index.
+	 * The batch size, metrics and the cache can be set as for the new classifier.
+	 * @param snapshot		snapshot of the trained classifier
+	 * @param testingSet	testing set to be classified
+	 * @param parallelism	number of threads used for classification of the testing set
+	 */
+	public Classification(ModelSnapshot snapshot, List<Pattern> testingSet, int parallelism) {
+		this(snapshot.getModel().getTrainingData(), testingSet, snapshot.getKNumber(), snapshot.getModel().getDistanceKernel(),
+				snapshot.getUseAdaptiveDistanceMeasure(), parallelism);
+		
+		this.indexType = snapshot.getModel().getIndexType();
+		this.searchEffort = snapshot.getModel().getSearchEffort();
+		this.voteType = snapshot.getVoteType();
+		this.model = snapshot.getModel();
 	}
 	
 	/**
 	 * Main method of the classifier, which calls other methods providing necessary functions of the KNN classifier.
-	 * Based on passed parameter it may call method {@code createAdaptiveDistanceMeasures} for setting distance measures
-	 * to training patterns. It then takes individual testing patterns and sequentially calculates distance to
-	 * training patterns, sort them based on that distance and classifies the class of the tested pattern from first {@code K}
-	 * training patterns in sorted list. Lastly it copies the list of classified tested patterns to a new one and return it.
+	 * It trains the classifier via {@code train} method. It then takes individual testing patterns and classifies them
+	 * via {@code classifyPattern} method - sequentially or in the {@code ForkJoinPool} with given parallelism.
+	 * Lastly it copies the list of classified tested patterns to a new one and return it.
 	 * @return	the list with classified testing patterns (they have determined their class)
 	 * @throws IndexOutOfBoundsException
 	 */
 	public List<Pattern> classify() throws IndexOutOfBoundsException {
-		if(useAdaptiveDistanceMeasure == USE_ADM) { createAdaptiveDistanceMeasures(); System.out.println("Using ADM"); }
-		
-		for(Pattern testedPattern : testingSet) {
-			setDistances(testedPattern);
-			sortTrainingPatterns();
-			setClassifiedClass(testedPattern);
-		}
+		classifyPatterns(testingSet);
 		
 		ArrayList<Pattern> classifiedSet = new ArrayList<Pattern>(testingSet);
 		return classifiedSet;
 	}
 	
 	/**
-	 * Method that creates adaptive distance measure to all training patterns.
-	 * It iterates through the list for each training pattern calculating the distance between it
-	 * and all other patterns with different class. The nearest distance is then chosen as
-	 * the adaptive distance measure for the particular training pattern. The method for the distance
-	 * function is chosen based on the set parameter {@code distanceType}.
+	 * Method classifying given patterns (their classes are set in place). The classifier is trained first
+	 * if it wasn't trained yet. Patterns are classified in parallel if more threads were requested,
+	 * threads of the pool are kept for following calls. Parts of patterns are classified by {@code classifyBatch}.
+	 * @param patterns	list with patterns to classify
 	 * @throws IndexOutOfBoundsException
 	 */
-	private void createAdaptiveDistanceMeasures() throws IndexOutOfBoundsException {
-		for(int i = 0; i < trainingSet.size(); i++) {
-			
-			double distanceMeasure = Double.MAX_VALUE;
-			
-			for(int j = 0; j < trainingSet.size(); j++) {
-				if(!(trainingSet.get(i).getPatternClass().equals(trainingSet.get(j).getPatternClass()))) {
-					double currDistance = 0.0;
-					
-					switch(distanceType) {
-					case DISTANCE_EUCLIDEAN:
-						currDistance = calculateDistanceEuclidean(trainingSet.get(i).getVector(), trainingSet.get(j).getVector()); break;
-					case DISTANCE_MANHATTAN:
-						currDistance = calculateDistanceManhattan(trainingSet.get(i).getVector(), trainingSet.get(j).getVector()); break;
-					default:
-						currDistance = calculateDistanceEuclidean(trainingSet.get(i).getVector(), trainingSet.get(j).getVector()); break;
-					}
-					
-					if(currDistance < distanceMeasure) distanceMeasure = currDistance;
-				}
-			}
-			
-			trainingSet.get(i).setAdaptiveDistanceMeasure(distanceMeasure);
+	public void classifyPatterns(List<Pattern> patterns) throws IndexOutOfBoundsException {
+		train();
+		
+		long start = System.nanoTime();
+		
+		if(parallelism > 1 && patterns.size() > getTaskSize()) {
+			getPool().invoke(new ClassificationTask(patterns, 0, patterns.size()));
 		}
+		else {
+			classifyBatch(patterns);
+		}
+		
+		ClassificationMetrics currentMetrics = metrics;
+		if(currentMetrics != null) currentMetrics.addPhase(ClassificationMetrics.PHASE_CLASSIFY, System.nanoTime() - start);
 	}
 	
 	/**
-	 * This method sets the distance from passed testing pattern to all training patterns.
-	 * The method for the distance function is chosen based on the set parameter {@code distanceType}.
-	 * Calculated distance is also divided by the adaptive distance measure value (it's 1.0 if not calculated).
-	 * @param testedPattern	testing pattern for which the distance will be calculated
+	 * Method classifying given patterns by the calling thread. If the batch size is set, blocks of patterns are searched
+	 * at once via {@code classifyBlock}, otherwise patterns are classified one by one via {@code classifyPattern}.
+	 * It may be called from several threads at once (after the classifier was trained).
+	 * @param patterns	list with patterns to classify
 	 * @throws IndexOutOfBoundsException
 	 */
-	private void setDistances(Pattern testedPattern) throws IndexOutOfBoundsException {
-		for(Pattern trainingPattern : trainingSet) {
-			
-			double distance = 0.0;
-			
-			switch(distanceType) {
-			case DISTANCE_EUCLIDEAN:
-				distance = calculateDistanceEuclidean(testedPattern.getVector(), trainingPattern.getVector()); break;
-			case DISTANCE_MANHATTAN:
-				distance = calculateDistanceManhattan(testedPattern.getVector(), trainingPattern.getVector()); break;
-			default:
-				distance = calculateDistanceEuclidean(testedPattern.getVector(), trainingPattern.getVector()); break;
+	public void classifyBatch(List<Pattern> patterns) throws IndexOutOfBoundsException {
+		if(batchSize == 0) {
+			for(Pattern testedPattern : patterns) {
+				classifyPattern(testedPattern);
 			}
 			
-			trainingPattern.setDistance(distance / trainingPattern.getAdaptiveDistanceMeasure());
+			return;
+		}
+		
+		for(int from = 0; from < patterns.size(); from += batchSize) {
+			classifyBlock(patterns, from, Math.min(patterns.size(), from + batchSize));
+		}
+	}
+	
+	/**
+	 * Method returning the number of patterns, below which the parallel classification task is not split anymore.
+	 * @return	size of the task
+	 */
+	private int getTaskSize() {
+		return Math.max(CLASSIFICATION_TASK_SIZE, batchSize);
+	}
+	
+	/**
+	 * Method returning the pool of threads for parallel classification. It's created on the first call.
+	 * @return	the pool of threads
+	 */
+	private synchronized ForkJoinPool getPool() {
+		if(pool == null) pool = new ForkJoinPool(parallelism);
+		return pool;
+	}
+	
+	/**
+	 * Method preparing the classifier for classification of individual patterns. Based on passed parameter
+	 * it may call method {@code createAdaptiveDistanceMeasures} for setting distance measures to training patterns.
+	 * After that it builds the spatial index of the chosen type.
+	 * It's done only once, training set isn't changed by following calls. The model restored from the snapshot is used as it is.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public synchronized void train() throws IndexOutOfBoundsException {
+		if(trained) return;
+		
+		if(model != null) {
+			trained = true;
+			return;
+		}
+		
+		if(trainingData.size() > 0) distanceKernel.checkDimension(trainingData.getDimension());
+		
+		long start = System.nanoTime();
+		if(useAdaptiveDistanceMeasure == USE_ADM) { createAdaptiveDistanceMeasures(); System.out.println("Using ADM"); }
+		long admFinished = System.nanoTime();
+		model = new ClassificationModel(trainingData, distanceKernel, indexType, searchEffort, useAdaptiveDistanceMeasure == USE_ADM);
+		trained = true;
+		
+		if(metrics != null) {
+			if(useAdaptiveDistanceMeasure == USE_ADM) metrics.addPhase(ClassificationMetrics.PHASE_ADM, admFinished - start);
+			metrics.addPhase(ClassificationMetrics.PHASE_INDEX, System.nanoTime() - admFinished);
+		}
+	}
+	
+	/**
+	 * Method writing the trained classifier (it's trained first if it wasn't trained yet) to the snapshot file,
+	 * which can be loaded by {@code ModelSnapshot.read} without training the classifier again.
+	 * @param file	file for the snapshot
+	 * @throws IndexOutOfBoundsException
+	 * @throws IOException
+	 */
+	public synchronized void saveSnapshot(File file) throws IndexOutOfBoundsException, IOException {
+		train();
+		ModelSnapshot.write(file, model, kNumber, voteType);
+	}
+	
+	/**
+	 * Setter for the type of the spatial index used for searching nearest neighbors.
+	 * It has to be called before the classifier is trained.
+	 * @param indexType the indexType to set ({@code SpatialIndex.INDEX_*})
+	 */
+	public synchronized void setIndexType(int indexType) {
+		if(trained) throw new IllegalStateException("Index type can't be changed after the classifier was trained.");
+		this.indexType = indexType;
+	}
+	
+	/**
+	 * Setter for the number of candidates explored by the approximate spatial index per query. Higher number gives
+	 * higher recall of nearest neighbors and slower queries. It has to be called before the classifier is trained.
+	 * @param searchEffort the searchEffort to set
+	 */
+	public synchronized void setSearchEffort(int searchEffort) {
+		if(trained) throw new IllegalStateException("Search effort can't be changed after the classifier was trained.");
+		this.searchEffort = searchEffort;
+	}
+	
+	/**
+	 * Setter for the type of the vote of nearest neighbors. It has to be called before the classifier is trained.
+	 * @param voteType the voteType to set ({@code NeighborVote.VOTE_*})
+	 */
+	public synchronized void setVoteType(int voteType) {
+		if(trained) throw new IllegalStateException("Vote type can't be changed after the classifier was trained.");
+		if(voteType < NeighborVote.VOTE_MAJORITY || voteType > NeighborVote.VOTE_ADM) throw new IllegalArgumentException("Unknown type of the vote: "+voteType);
+		this.voteType = voteType;
+	}
+	
+	/**
+	 * Setter for the number of tested patterns searched at once. Blocks of patterns are compared with tiles
+	 * of the training set by the {@code BatchSearch}, so the training set is read from the memory once per block.
+	 * It's used only by the linear scan (patterns are searched one by one with the spatial index).
+	 * It has to be called before the classifier is trained.
+	 * @param batchSize the batchSize to set (0 - patterns are searched one by one)
+	 */
+	public synchronized void setBatchSize(int batchSize) {
+		if(trained) throw new IllegalStateException("Batch size can't be changed after the classifier was trained.");
+		if(batchSize < 0) throw new IllegalArgumentException("Batch size can't be negative: "+batchSize);
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Setter for the metrics collected by the classifier. Times of the training phases are collected only
+	 * if it's called before the classifier is trained.
+	 * @param metrics the metrics to set (null to stop collecting them)
+	 */
+	public void setMetrics(ClassificationMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Getter for the metrics collected by the classifier.
+	 * @return the metrics (null if they aren't collected)
+	 */
+	public ClassificationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Setter for the cache of classes determined for tested vectors. Repeated vectors are then classified
+	 * without the search of nearest neighbors until the training set is updated.
+	 * @param queryCache the queryCache to set (null to stop caching)
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+	
+	/**
+	 * Getter for the cache of classes determined for tested vectors.
+	 * @return the queryCache (null if they aren't cached)
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * Setter for the file, from which adaptive distance measures are loaded (if it exists and belongs to the same
+	 * training data and distance function) and to which calculated measures are saved.
+	 * It has to be called before the classifier is trained.
+	 * @param adaptiveDistanceMeasureFile the adaptiveDistanceMeasureFile to set
+	 */
+	public synchronized void setAdaptiveDistanceMeasureFile(File adaptiveDistanceMeasureFile) {
+		if(trained) throw new IllegalStateException("File for adaptive distance measures can't be changed after the classifier was trained.");
+		this.adaptiveDistanceMeasureFile = adaptiveDistanceMeasureFile;
+	}
+	
+	/**
+	 * Getter for the training data of the classifier. After the training, they are taken from the current model,
+	 * so they include updates of the training set.
+	 * @return the trainingData
+	 */
+	public TrainingData getTrainingData() {
+		ClassificationModel currentModel = model;
+		return (currentModel == null) ? trainingData : currentModel.getTrainingData();
+	}
+	
+	/**
+	 * Method adding training patterns to the trained classifier (it's trained first if it wasn't trained yet).
+	 * Adaptive distance measures (if they are used) and the spatial index are updated only for affected patterns
+	 * and the new model replaces the current one at once, so patterns may be classified during the update.
+	 * @param patterns	training patterns to add (with their classes)
+	 * @return	indices of added patterns in the training data
+	 * @throws IndexOutOfBoundsException if added patterns have different dimension than the training data
+	 */
+	public synchronized int[] addPatterns(List<Pattern> patterns) throws IndexOutOfBoundsException {
+		train();
+		
+		int firstAdded = model.getTrainingData().size();
+		model = model.addPatterns(patterns);
+		clearQueryCache();
+		
+		int[] indices = new int[patterns.size()];
+		
+		for(int i = 0; i < indices.length; i++) {
+			indices[i] = firstAdded + i;
 		}
+		
+		return indices;
+	}
+	
+	/**
+	 * Method removing training patterns from the trained classifier (it's trained first if it wasn't trained yet).
+	 * Removed patterns keep their indices, so indices of other patterns don't change. Adaptive distance measures (if they
+	 * are used) are recalculated only for patterns, which had removed patterns as the nearest pattern with different class.
+	 * @param indices	indices of the training patterns to remove
+	 * @throws IndexOutOfBoundsException if the pattern with given index doesn't exist
+	 * @throws IllegalArgumentException if the pattern was already removed
+	 */
+	public synchronized void removePatterns(int[] indices) throws IndexOutOfBoundsException, IllegalArgumentException {
+		train();
+		model = model.removePatterns(indices);
+		clearQueryCache();
 	}
 	
 	/**
-	 * Method for sorting out the list with training patterns based on the passed comparator.
+	 * Method removing entries of the replaced model from the cache (they would be ignored anyway), so they don't take memory.
 	 */
-	private void sortTrainingPatterns() {
-		PatternComparator pc = new PatternComparator();
-		Collections.sort(trainingSet, pc);
+	private void clearQueryCache() {
+		QueryCache currentCache = queryCache;
+		if(currentCache != null) currentCache.clear();
 	}
 	
 	/**
-	 * Method that determines the class for the passed testing pattern. It iterates through
-	 * first patterns of the training set (which should be sorted in ascending order)
-	 * based on the {@code kNumber} parameter and stores their classes
-	 * in the local list. Next to this list it also increments the number in other list on corresponding index.
-	 * The class that is present the most in the local list is then set to the pattern.
+	 * Method classifying single testing pattern. It selects {@code K} nearest training patterns via {@code findNearestNeighbors}
+	 * and classifies the class of the tested pattern from them via {@code setClassifiedClass}. It uses only the selector
+	 * of the current thread, so it may be called from several threads at once (after the classifier was trained).
+	 * If metrics are collected, the classification is measured by {@code classifyMeasuredPattern} instead.
+	 * If the query cache is set, the class is taken from it when the same vector was already classified by the current model.
 	 * @param testedPattern	pattern, which class will be determined
+	 * @throws IndexOutOfBoundsException
 	 */
-	private void setClassifiedClass(Pattern testedPattern) {
-		ArrayList<String> classes = new ArrayList<String>();
-		ArrayList<Integer> scores = new ArrayList<Integer>();
+	public void classifyPattern(Pattern testedPattern) throws IndexOutOfBoundsException {
+		ClassificationModel currentModel = model;
+		
+		if(currentModel == null) {
+			train();
+			currentModel = model;
+		}
+		
+		QueryCache currentCache = queryCache;
+		ClassificationMetrics currentMetrics = metrics;
 		
-		for(int i = 0; i < kNumber; i++) {
-			String currClass = trainingSet.get(i).getPatternClass();
+		if(currentCache != null) {
+			long start = System.nanoTime();
+			String cachedClass = currentCache.get(createCacheKey(testedPattern.getVector()), currentModel);
 			
-			if(classes.contains(currClass)) {
-				int index = classes.indexOf(currClass);
-				scores.set(index, scores.get(index) + 1);
-			}
-			else {
-				classes.add(currClass);
-				scores.add(1);
+			if(cachedClass != null) {
+				testedPattern.setPatternClass(cachedClass);
+				if(currentMetrics != null) currentMetrics.addQuery(System.nanoTime() - start, 0, 0, 0);
+				return;
 			}
 		}
 		
-		int maxScore = 0;
-		String selectedClass = null;
+		NeighborSelector neighborSelector = neighborSelectors.get();
 		
-		for(int i = 0; i < scores.size(); i++) {
-			if(scores.get(i) > maxScore) maxScore = scores.get(i); selectedClass = classes.get(i);
+		if(currentMetrics != null) {
+			classifyMeasuredPattern(currentModel, testedPattern, neighborSelector, currentMetrics);
+		}
+		else {
+			findNearestNeighbors(currentModel, testedPattern, neighborSelector);
+			setClassifiedClass(currentModel, testedPattern, neighborSelector);
 		}
 		
-		testedPattern.setPatternClass(selectedClass);
+		if(currentCache != null) currentCache.put(createCacheKey(testedPattern.getVector().clone()), currentModel, testedPattern.getPatternClass());
 	}
 	
 	/**
-	 * Method for calculating  the Euclidean distance between two given vectors.
-	 * It will return {@code IndexOutOfBoundsException} if vectors have different dimensions.
-	 * @param vector1 array of double values representing the vector
-	 * @param vector2 array of double values representing the vector
-	 * @return distance between two given vector (double)
+	 * Method creating the key of the tested vector in the query cache (with parameters of the classifier).
+	 * @param vector	tested vector
+	 * @return	key of the vector
 	 */
-	private double calculateDistanceEuclidean(double[] vector1, double[] vector2) {
-		double distance = 0.0;
+	private QueryCache.Key createCacheKey(double[] vector) {
+		return new QueryCache.Key(vector, kNumber, distanceKernel.getSignature(), useAdaptiveDistanceMeasure == USE_ADM, voteType);
+	}
+	
+	/**
+	 * Method classifying the block of testing patterns (at most {@code batchSize} of them) in the same way
+	 * as {@code classifyPattern}, but nearest neighbors of all patterns, which classes aren't cached, are searched
+	 * at once via {@code ClassificationModel.searchBatch}. If metrics are collected, the time of the search
+	 * is split evenly among searched patterns.
+	 * @param patterns	list with patterns
+	 * @param from		index of the first classified pattern
+	 * @param to		index after the last classified pattern
+	 * @throws IndexOutOfBoundsException
+	 */
+	private void classifyBlock(List<Pattern> patterns, int from, int to) throws IndexOutOfBoundsException {
+		ClassificationModel currentModel = model;
 		
-		if(vector1.length == vector2.length) {
-			double sum = 0.0;
-			for(int i = 0; i < vector1.length; i++) {
-				sum += Math.pow((vector1[i] - vector2[i]), 2.0);
+		if(currentModel == null) {
+			train();
+			currentModel = model;
+		}
+		
+		QueryCache currentCache = queryCache;
+		ClassificationMetrics currentMetrics = metrics;
+		NeighborSelector[] selectors = batchSelectors.get();
+		Pattern[] searched = new Pattern[to - from];
+		double[][] vectors = new double[to - from][];
+		int searchedCnt = 0;
+		
+		for(int i = from; i < to; i++) {
+			Pattern testedPattern = patterns.get(i);
+			
+			if(currentCache != null) {
+				long start = System.nanoTime();
+				String cachedClass = currentCache.get(createCacheKey(testedPattern.getVector()), currentModel);
+				
+				if(cachedClass != null) {
+					testedPattern.setPatternClass(cachedClass);
+					if(currentMetrics != null) currentMetrics.addQuery(System.nanoTime() - start, 0, 0, 0);
+					continue;
+				}
 			}
 			
-			distance = Math.sqrt(sum);
+			currentModel.getTrainingData().checkDimension(testedPattern.getVector());
+			selectors[searchedCnt].reset();
+			searched[searchedCnt] = testedPattern;
+			vectors[searchedCnt++] = testedPattern.getVector();
 		}
-		else {
-			throw new IndexOutOfBoundsException("Can't calculate distance between vectors!\n"
-					+ "Vector 1 length: "+vector1.length+", Vector 2 length: "+vector2.length+".");
+		
+		if(searchedCnt == 0) return;
+		
+		long start = System.nanoTime();
+		currentModel.searchBatch(vectors, searchedCnt, selectors);
+		long searchNanos = (System.nanoTime() - start) / searchedCnt;
+		
+		for(int i = 0; i < searchedCnt; i++) {
+			long selectionStart = System.nanoTime();
+			selectors[i].sortNeighbors();
+			long selected = System.nanoTime();
+			setClassifiedClass(currentModel, searched[i], selectors[i]);
+			long voted = System.nanoTime();
+			
+			if(currentMetrics != null) currentMetrics.addQuery(searchNanos, selected - selectionStart, voted - selected, selectors[i].getDistanceCnt());
+			if(currentCache != null) currentCache.put(createCacheKey(searched[i].getVector().clone()), currentModel, searched[i].getPatternClass());
 		}
+	}
+	
+	/**
+	 * Method classifying single testing pattern in the same way as {@code classifyPattern}, but it measures
+	 * the distance scan, sorting of nearest neighbors and voting separately and adds them to the metrics
+	 * with the number of evaluated distances.
+	 * @param currentModel		model of the trained classifier
+	 * @param testedPattern		pattern, which class will be determined
+	 * @param neighborSelector	selector of the current thread
+	 * @param currentMetrics	metrics of the classifier
+	 * @throws IndexOutOfBoundsException
+	 */
+	private void classifyMeasuredPattern(ClassificationModel currentModel, Pattern testedPattern, NeighborSelector neighborSelector, ClassificationMetrics currentMetrics) throws IndexOutOfBoundsException {
+		long start = System.nanoTime();
+		currentModel.getTrainingData().checkDimension(testedPattern.getVector());
+		neighborSelector.reset();
+		currentModel.search(testedPattern.getVector(), neighborSelector);
+		long searched = System.nanoTime();
+		neighborSelector.sortNeighbors();
+		long selected = System.nanoTime();
+		setClassifiedClass(currentModel, testedPattern, neighborSelector);
+		long voted = System.nanoTime();
 		
-		return distance;
+		currentMetrics.addQuery(searched - start, selected - searched, voted - selected, neighborSelector.getDistanceCnt());
 	}
 	
 	/**
-	 * Method for calculating  the Manhattan distance between two given vectors.
-	 * It will return {@code IndexOutOfBoundsException} if vectors have different dimensions.
-	 * @param vector1 array of double values representing the vector
-	 * @param vector2 array of double values representing the vector
-	 * @return distance between two given vector (double)
+	 * Method returning {@code K} training patterns nearest to the tested pattern (the classifier is trained first
+	 * if it wasn't trained yet). The class of the pattern isn't changed.
+	 * @param testedPattern	tested pattern
+	 * @return	indices of the nearest training patterns sorted from the nearest one
+	 * @throws IndexOutOfBoundsException
+	 */
+	public int[] getNearestNeighbors(Pattern testedPattern) throws IndexOutOfBoundsException {
+		return getNearestNeighbors(testedPattern, null);
+	}
+	
+	/**
+	 * Method returning {@code K} training patterns nearest to the tested pattern with their ranking distances
+	 * (e.g. squared Euclidean distances divided by adaptive distance measures), so they can be passed
+	 * to the {@code NeighborVote}. The class of the pattern isn't changed.
+	 * @param testedPattern	tested pattern
+	 * @param distances		array for ranking distances of returned neighbors with at least {@code K} values
+	 * 						(null if they aren't needed)
+	 * @return	indices of the nearest training patterns sorted from the nearest one
+	 * @throws IndexOutOfBoundsException
 	 */
-	private double calculateDistanceManhattan(double[] vector1, double[] vector2) {
-		double distance = 0.0;
+	public int[] getNearestNeighbors(Pattern testedPattern, double[] distances) throws IndexOutOfBoundsException {
+		train();
 		
-		if(vector1.length == vector2.length) {
-			double sum = 0.0;
-			for(int i = 0; i < vector1.length; i++) {
-				sum += Math.abs(vector1[i] - vector2[i]);
+		NeighborSelector neighborSelector = neighborSelectors.get();
+		findNearestNeighbors(model, testedPattern, neighborSelector);
+		
+		int[] neighbors = new int[neighborSelector.size()];
+		
+		for(int i = 0; i < neighbors.length; i++) {
+			neighbors[i] = neighborSelector.getIndex(i);
+			if(distances != null) distances[i] = neighborSelector.getDistance(i);
+		}
+		
+		return neighbors;
+	}
+	
+	/**
+	 * Method that creates adaptive distance measure to all training patterns. If the file for adaptive distance measures
+	 * was set and it holds measures for the same training data and distance function, they are loaded from it.
+	 * Otherwise they are calculated by the {@code AdaptiveDistanceMeasures} (with the chosen spatial index and number
+	 * of threads) and saved to the file.
+	 * @throws IndexOutOfBoundsException
+	 */
+	private void createAdaptiveDistanceMeasures() throws IndexOutOfBoundsException {
+		double[] measures = null;
+		
+		if(adaptiveDistanceMeasureFile != null && adaptiveDistanceMeasureFile.exists()) {
+			try {
+				measures = AdaptiveDistanceMeasures.load(adaptiveDistanceMeasureFile, trainingData, distanceKernel);
+			}
+			catch(IOException e) {
+				System.err.println("Adaptive distance measures couldn't be loaded: \n" + e.getMessage());
 			}
-			
-			distance = sum;
 		}
-		else {
-			throw new IndexOutOfBoundsException("Can't calculate distance between vectors!\n"
-					+ "Vector 1 length: "+vector1.length+", Vector 2 length: "+vector2.length+".");
+		
+		boolean calculated = (measures == null);
+		if(calculated) measures = new AdaptiveDistanceMeasures(trainingData, distanceKernel, indexType, parallelism).calculate();
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			trainingData.setAdaptiveDistanceMeasure(i, measures[i]);
 		}
 		
-		return distance;
+		if(calculated && adaptiveDistanceMeasureFile != null) {
+			try {
+				AdaptiveDistanceMeasures.save(adaptiveDistanceMeasureFile, trainingData, distanceKernel);
+			}
+			catch(IOException e) {
+				System.err.println("Adaptive distance measures couldn't be saved: \n" + e.getMessage());
+			}
+		}
 	}
 	
+	/**
+	 * This method selects {@code K} training patterns nearest to the passed testing pattern into the passed selector.
+	 * The selector holds ranking distances (e.g. squared Euclidean distances), which are also divided by the adaptive
+	 * distance measure value converted to the ranking distance. Patterns are searched by the model
+	 * (via the spatial index or the linear scan) and sorted from the nearest one.
+	 * @param currentModel		model of the trained classifier
+	 * @param testedPattern		testing pattern for which the neighbors will be selected
+	 * @param neighborSelector	selector of the current thread, which will hold the neighbors
+	 * @throws IndexOutOfBoundsException if the tested pattern has different dimension than training patterns
+	 */
+	private void findNearestNeighbors(ClassificationModel currentModel, Pattern testedPattern, NeighborSelector neighborSelector) throws IndexOutOfBoundsException {
+		currentModel.getTrainingData().checkDimension(testedPattern.getVector());
+		
+		neighborSelector.reset();
+		currentModel.search(testedPattern.getVector(), neighborSelector);
+		neighborSelector.sortNeighbors();
+	}
 	
 	/**
-	 * Private class implementing the Comparator interface for sorting collections with
-	 * the Pattern instances in ascending order.
+	 * Method that determines the class for the passed testing pattern from nearest neighbors held by the passed selector
+	 * (sorted in ascending order) via the {@code NeighborVote} of the current thread.
+	 * @param currentModel		model of the trained classifier
+	 * @param testedPattern		pattern, which class will be determined
+	 * @param neighborSelector	selector holding nearest neighbors of the pattern
+	 */
+	private void setClassifiedClass(ClassificationModel currentModel, Pattern testedPattern, NeighborSelector neighborSelector) {
+		testedPattern.setPatternClass(neighborVotes.get().voteClass(currentModel.getTrainingData(), neighborSelector.getIndices(),
+				neighborSelector.getDistances(), neighborSelector.size()));
+	}
+	
+	/**
+	 * Private class representing the part of the testing set classified in the {@code ForkJoinPool}.
+	 * Parts larger than {@code CLASSIFICATION_TASK_SIZE} (or the batch size) are split in halves.
 	 * @author Vladimr Lznika
 	 *
 	 */
-	private class PatternComparator implements Comparator<Pattern> {
-
+	private class ClassificationTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Classified patterns.
+		 */
+		private final List<Pattern> patterns;
+		
+		/**
+		 * Index of the first testing pattern of the part.
+		 */
+		private final int from;
+		
+		/**
+		 * Index after the last testing pattern of the part.
+		 */
+		private final int to;
+		
+		/**
+		 * Constructor for the task.
+		 * @param patterns	classified patterns
+		 * @param from		index of the first testing pattern
+		 * @param to		index after the last testing pattern
+		 */
+		public ClassificationTask(List<Pattern> patterns, int from, int to) {
+			this.patterns = patterns;
+			this.from = from;
+			this.to = to;
+		}
+		
 		@Override
-		public int compare(Pattern p1, Pattern p2) {
-			int result;
-			
-			if(p1.getDistance() > p2.getDistance()) result = 1;
-			else if(p1.getDistance() < p2.getDistance()) result = -1;
-			else result = 0;
-			
-			return result;
+		protected void compute() {
+			if(to - from <= getTaskSize()) {
+				classifyBatch(patterns.subList(from, to));
+			}
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ClassificationTask(patterns, from, middle), new ClassificationTask(patterns, middle, to));
+			}
 		}
-	} 
-}
\ No newline at end of file
+	}
+}
@@ -0,0 +1,218 @@
+package knn;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instance of this class collects metrics of the classification run: total times of individual phases
+ * (parsing, adaptive distance measures, index building, distance scan, neighbor selection, voting, writing),
+ * the number of classified patterns with the histogram of their latencies and the number of evaluated distances.
+ * Counters are {@code LongAdder}s, so threads classifying patterns at once don't contend. Times of per-query phases
+ * are summed over all threads, the number of queries per second is calculated from the wall time of the classification.
+ * Metrics are collected only if the instance is passed to the classifier (the hot path isn't timed otherwise).
+ * The summary is written in the machine-readable format {@code name=value} (one metric per line).
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationMetrics {
+	
+	/**
+	 * Constant value indicating the phase of parsing pattern files.
+	 */
+	public static final int PHASE_PARSE = 0;
+	
+	/**
+	 * Constant value indicating the phase of creating adaptive distance measures.
+	 */
+	public static final int PHASE_ADM = 1;
+	
+	/**
+	 * Constant value indicating the phase of building the model (the spatial index).
+	 */
+	public static final int PHASE_INDEX = 2;
+	
+	/**
+	 * Constant value indicating the phase of scanning distances to training patterns of one query.
+	 */
+	public static final int PHASE_SEARCH = 3;
+	
+	/**
+	 * Constant value indicating the phase of sorting selected nearest neighbors of one query.
+	 */
+	public static final int PHASE_SELECTION = 4;
+	
+	/**
+	 * Constant value indicating the phase of voting for the class of one query.
+	 */
+	public static final int PHASE_VOTE = 5;
+	
+	/**
+	 * Constant value indicating the phase of classifying the testing set (wall time, including waiting for threads).
+	 */
+	public static final int PHASE_CLASSIFY = 6;
+	
+	/**
+	 * Constant value indicating the phase of writing results.
+	 */
+	public static final int PHASE_WRITE = 7;
+	
+	/**
+	 * Names of the phases used in the summary (in the order of their constants).
+	 */
+	private static final String[] PHASE_NAMES = {"parse", "adm", "index", "search", "selection", "vote", "classify", "write"};
+	
+	/**
+	 * Percentiles of the latency written to the summary.
+	 */
+	private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+	
+	/**
+	 * Names of the percentiles used in the summary (in the order of {@code PERCENTILES}).
+	 */
+	private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+	
+	/**
+	 * Total times of the phases in nanoseconds.
+	 */
+	private final LongAdder[] phaseNanos;
+	
+	/**
+	 * Numbers of measured occurrences of the phases.
+	 */
+	private final LongAdder[] phaseCnts;
+	
+	/**
+	 * Number of evaluated distances to training patterns.
+	 */
+	private final LongAdder distanceCnt;
+	
+	/**
+	 * Histogram of latencies of classified patterns.
+	 */
+	private final LatencyHistogram queryLatency;
+	
+	/**
+	 * Constructor for empty metrics.
+	 */
+	public ClassificationMetrics() {
+		this.phaseNanos = new LongAdder[PHASE_NAMES.length];
+		this.phaseCnts = new LongAdder[PHASE_NAMES.length];
+		this.distanceCnt = new LongAdder();
+		this.queryLatency = new LatencyHistogram();
+		
+		for(int i = 0; i < PHASE_NAMES.length; i++) {
+			phaseNanos[i] = new LongAdder();
+			phaseCnts[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Method adding one occurrence of the phase.
+	 * @param phase	measured phase ({@code PHASE_*})
+	 * @param nanos	time of the phase in nanoseconds
+	 */
+	public void addPhase(int phase, long nanos) {
+		phaseNanos[phase].add(nanos);
+		phaseCnts[phase].increment();
+	}
+	
+	/**
+	 * Method adding one classified pattern. Its latency is the sum of given phases.
+	 * @param searchNanos		time of the distance scan in nanoseconds
+	 * @param selectionNanos	time of sorting nearest neighbors in nanoseconds
+	 * @param voteNanos			time of voting in nanoseconds
+	 * @param distances			number of evaluated distances
+	 */
+	public void addQuery(long searchNanos, long selectionNanos, long voteNanos, long distances) {
+		addPhase(PHASE_SEARCH, searchNanos);
+		addPhase(PHASE_SELECTION, selectionNanos);
+		addPhase(PHASE_VOTE, voteNanos);
+		distanceCnt.add(distances);
+		queryLatency.record(searchNanos + selectionNanos + voteNanos);
+	}
+	
+	/**
+	 * Method returning the total time of the phase.
+	 * @param phase	phase ({@code PHASE_*})
+	 * @return	time of the phase in nanoseconds
+	 */
+	public long getPhaseNanos(int phase) {
+		return phaseNanos[phase].sum();
+	}
+	
+	/**
+	 * Method returning the number of classified patterns.
+	 * @return	number of queries
+	 */
+	public long getQueryCnt() {
+		return queryLatency.getCount();
+	}
+	
+	/**
+	 * Method returning the number of evaluated distances to training patterns.
+	 * @return	number of evaluated distances
+	 */
+	public long getDistanceCnt() {
+		return distanceCnt.sum();
+	}
+	
+	/**
+	 * Getter for the histogram of latencies of classified patterns.
+	 * @return the queryLatency
+	 */
+	public LatencyHistogram getQueryLatency() {
+		return queryLatency;
+	}
+	
+	/**
+	 * Method writing the summary of metrics in the format {@code name=value} (times in milliseconds,
+	 * latencies in microseconds).
+	 * @param writer	writer for the summary
+	 * @throws IOException
+	 */
+	public void writeSummary(Writer writer) throws IOException {
+		long queryCnt = getQueryCnt();
+		long classifyNanos = getPhaseNanos(PHASE_CLASSIFY);
+		
+		writeMetric(writer, "queries", String.valueOf(queryCnt));
+		writeMetric(writer, "queries.per.second", format((classifyNanos == 0) ? 0.0 : queryCnt * 1e9 / classifyNanos));
+		writeMetric(writer, "distance.evaluations", String.valueOf(getDistanceCnt()));
+		writeMetric(writer, "distance.evaluations.per.query", format((queryCnt == 0) ? 0.0 : (double)getDistanceCnt() / queryCnt));
+		writeMetric(writer, "latency.mean.us", format(queryLatency.getMean() / 1e3));
+		
+		for(int i = 0; i < PERCENTILES.length; i++) {
+			writeMetric(writer, "latency." + PERCENTILE_NAMES[i] + ".us", format(queryLatency.getPercentile(PERCENTILES[i]) / 1e3));
+		}
+		
+		writeMetric(writer, "latency.max.us", format(queryLatency.getMax() / 1e3));
+		
+		for(int i = 0; i < PHASE_NAMES.length; i++) {
+			writeMetric(writer, "phase." + PHASE_NAMES[i] + ".count", String.valueOf(phaseCnts[i].sum()));
+			writeMetric(writer, "phase." + PHASE_NAMES[i] + ".ms", format(phaseNanos[i].sum() / 1e6));
+		}
+		
+		writer.flush();
+	}
+	
+	/**
+	 * Method writing one line of the summary.
+	 * @param writer	writer for the summary
+	 * @param name		name of the metric
+	 * @param value		value of the metric
+	 * @throws IOException
+	 */
+	private static void writeMetric(Writer writer, String name, String value) throws IOException {
+		writer.write(name + "=" + value + "\n");
+	}
+	
+	/**
+	 * Method formatting the decimal value of the metric.
+	 * @param value	value of the metric
+	 * @return	value with three decimal places
+	 */
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
@@ -0,0 +1,461 @@
+package knn;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Instance of this class is the state of the trained classifier: training data with adaptive distance measures
+ * and the spatial index over them. Model isn't changed after it was created, updates of the training set create
+ * a new model (copy-on-write), so tested patterns can be classified by the old model while the training set is updated.
+ * Updates change only affected entries. Adaptive distance measures are calculated for added patterns and changed only
+ * for patterns, which nearest pattern with different class changed (added pattern is nearer or the nearest one was removed),
+ * so the update takes linear time instead of recalculating all pairs. The spatial index isn't rebuilt by every update:
+ * removed patterns are excluded from its copy, lowered measures are updated in it, added patterns and patterns with
+ * raised measure (which could break bounds of the nodes) are scanned linearly next to the index search. The index is rebuilt
+ * once there are too many of such patterns.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationModel {
+	
+	/**
+	 * Fraction of the training set, which may be excluded from the index or scanned next to it before the index is rebuilt.
+	 */
+	private static final double REBUILD_FRACTION = 0.05;
+	
+	/**
+	 * Number of patterns, which may be always excluded from the index or scanned next to it.
+	 */
+	private static final int MIN_STALE_PATTERNS = 64;
+	
+	/**
+	 * Training data with adaptive distance measures.
+	 */
+	private final TrainingData trainingData;
+	
+	/**
+	 * Kernel of the distance function.
+	 */
+	private final DistanceKernel distanceKernel;
+	
+	/**
+	 * Type of the spatial index ({@code SpatialIndex.INDEX_*}).
+	 */
+	private final int indexType;
+	
+	/**
+	 * Number of candidates explored by the approximate spatial index.
+	 */
+	private final int searchEffort;
+	
+	/**
+	 * Indicator whether adaptive distance measures are calculated for updated patterns.
+	 */
+	private final boolean useAdaptiveDistanceMeasures;
+	
+	/**
+	 * Spatial index over the training data (null if the training data are scanned linearly).
+	 */
+	private final SpatialIndex spatialIndex;
+	
+	/**
+	 * Indices of the patterns, which are scanned linearly next to the index search (in ascending order).
+	 */
+	private final int[] unindexed;
+	
+	/**
+	 * Number of patterns excluded from the index or added to the unindexed patterns since the index was built.
+	 */
+	private final int staleCnt;
+	
+	/**
+	 * Search of blocks of tested vectors by the linear scan (null until the first block is searched).
+	 */
+	private volatile BatchSearch batchSearch;
+	
+	/**
+	 * Constructor for the model of the trained classifier. Adaptive distance measures have to be already set
+	 * in the training data (if they are used). It builds the spatial index of given type.
+	 * @param trainingData					training data with adaptive distance measures
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indexType						type of the spatial index ({@code SpatialIndex.INDEX_*})
+	 * @param searchEffort					number of candidates explored by the approximate spatial index
+	 * @param useAdaptiveDistanceMeasures	whether adaptive distance measures are calculated for updated patterns
+	 */
+	public ClassificationModel(TrainingData trainingData, DistanceKernel distanceKernel, int indexType, int searchEffort, boolean useAdaptiveDistanceMeasures) {
+		this(trainingData, distanceKernel, indexType, searchEffort, useAdaptiveDistanceMeasures,
+				buildIndex(indexType, searchEffort, trainingData, distanceKernel), new int[0], 0);
+	}
+	
+	/**
+	 * Constructor for the updated model (or the model restored from the snapshot).
+	 * @param trainingData					training data with adaptive distance measures
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indexType						type of the spatial index ({@code SpatialIndex.INDEX_*})
+	 * @param searchEffort					number of candidates explored by the approximate spatial index
+	 * @param useAdaptiveDistanceMeasures	whether adaptive distance measures are calculated for updated patterns
+	 * @param spatialIndex					spatial index over the training data
+	 * @param unindexed						indices of the patterns scanned next to the index search
+	 * @param staleCnt						number of patterns changed since the index was built
+	 */
+	ClassificationModel(TrainingData trainingData, DistanceKernel distanceKernel, int indexType, int searchEffort, boolean useAdaptiveDistanceMeasures,
+			SpatialIndex spatialIndex, int[] unindexed, int staleCnt) {
+		this.trainingData = trainingData;
+		this.distanceKernel = distanceKernel;
+		this.indexType = indexType;
+		this.searchEffort = searchEffort;
+		this.useAdaptiveDistanceMeasures = useAdaptiveDistanceMeasures;
+		this.spatialIndex = spatialIndex;
+		this.unindexed = unindexed;
+		this.staleCnt = staleCnt;
+	}
+	
+	/**
+	 * Getter for the training data of the model.
+	 * @return the trainingData
+	 */
+	public TrainingData getTrainingData() {
+		return trainingData;
+	}
+	
+	/**
+	 * Getter for the kernel of the distance function.
+	 * @return the distanceKernel
+	 */
+	public DistanceKernel getDistanceKernel() {
+		return distanceKernel;
+	}
+	
+	/**
+	 * Getter for the type of the spatial index.
+	 * @return the indexType ({@code SpatialIndex.INDEX_*})
+	 */
+	public int getIndexType() {
+		return indexType;
+	}
+	
+	/**
+	 * Getter for the number of candidates explored by the approximate spatial index.
+	 * @return the searchEffort
+	 */
+	public int getSearchEffort() {
+		return searchEffort;
+	}
+	
+	/**
+	 * Method returning whether adaptive distance measures are calculated for updated patterns.
+	 * @return the useAdaptiveDistanceMeasures
+	 */
+	public boolean usesAdaptiveDistanceMeasures() {
+		return useAdaptiveDistanceMeasures;
+	}
+	
+	/**
+	 * Getter for the spatial index over the training data.
+	 * @return the spatialIndex (null if the training data are scanned linearly)
+	 */
+	SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+	
+	/**
+	 * Getter for the indices of the patterns scanned next to the index search.
+	 * @return the unindexed (in ascending order)
+	 */
+	int[] getUnindexed() {
+		return unindexed;
+	}
+	
+	/**
+	 * Getter for the number of patterns changed since the index was built.
+	 * @return the staleCnt
+	 */
+	int getStaleCnt() {
+		return staleCnt;
+	}
+	
+	/**
+	 * Method offering {@code K} nearest training patterns of given vector to the selector. Offered distances are ranking
+	 * distances (e.g. squared Euclidean distances) divided by the adaptive distance measure value converted to the ranking
+	 * distance (it's 1.0 if not calculated). If the spatial index was built, it's searched and patterns, which aren't in it,
+	 * are scanned linearly. Otherwise all training patterns are scanned and once the selector holds {@code K} candidates,
+	 * the distance calculation is abandoned as soon as the partial sum shows that the training pattern can't be nearer
+	 * than the worst of them. Removed patterns are skipped. The selector isn't reset nor sorted by this method,
+	 * evaluated distances are counted in it.
+	 * @param vector			tested vector (its dimension has to be checked by the caller)
+	 * @param neighborSelector	selector, which will hold the neighbors
+	 */
+	public void search(double[] vector, NeighborSelector neighborSelector) {
+		if(spatialIndex != null) {
+			spatialIndex.search(vector, neighborSelector);
+			
+			for(int i : unindexed) {
+				offer(vector, i, neighborSelector);
+			}
+			
+			neighborSelector.countDistances(unindexed.length);
+		}
+		else {
+			for(int i = 0; i < trainingData.size(); i++) {
+				if(!trainingData.isRemoved(i)) offer(vector, i, neighborSelector);
+			}
+			
+			neighborSelector.countDistances(trainingData.size() - trainingData.getRemovedCnt());
+		}
+	}
+	
+	/**
+	 * Method offering nearest training patterns of a block of tested vectors to their selectors. If the training data
+	 * are scanned linearly, the block is searched by the {@code BatchSearch} (created on the first call), which streams
+	 * the training set once per block. Otherwise every vector is searched separately by {@code search}.
+	 * Selectors aren't reset nor sorted by this method, evaluated distances are counted in them.
+	 * @param vectors			tested vectors (their dimension has to be checked by the caller)
+	 * @param vectorCnt			number of tested vectors in the block
+	 * @param neighborSelectors	selectors of tested vectors (on the same positions)
+	 */
+	public void searchBatch(double[][] vectors, int vectorCnt, NeighborSelector[] neighborSelectors) {
+		if(spatialIndex != null) {
+			for(int q = 0; q < vectorCnt; q++) {
+				search(vectors[q], neighborSelectors[q]);
+			}
+			
+			return;
+		}
+		
+		BatchSearch currentBatchSearch = batchSearch;
+		
+		if(currentBatchSearch == null) {
+			synchronized(this) {
+				if(batchSearch == null) batchSearch = new BatchSearch(trainingData, distanceKernel);
+				currentBatchSearch = batchSearch;
+			}
+		}
+		
+		currentBatchSearch.search(vectors, vectorCnt, neighborSelectors);
+	}
+	
+	/**
+	 * Method creating the model with added training patterns. Adaptive distance measures (if they are used) are calculated
+	 * for added patterns and lowered for patterns with different class, which are nearer to added patterns than
+	 * to their previous nearest pattern with different class. Added patterns get indices following the current training data.
+	 * @param patterns	training patterns to add (with their classes)
+	 * @return	updated model
+	 * @throws IndexOutOfBoundsException if added patterns have different dimension than the training data
+	 */
+	public ClassificationModel addPatterns(List<Pattern> patterns) throws IndexOutOfBoundsException {
+		TrainingData updatedData = new TrainingData(trainingData);
+		SpatialIndex updatedIndex = (spatialIndex == null) ? null : spatialIndex.copy();
+		int firstAdded = updatedData.size();
+		
+		for(Pattern p : patterns) {
+			int added = updatedData.addPattern(p.getVector(), p.getPatternClass());
+			if(useAdaptiveDistanceMeasures) updateMeasuresAfterAdding(updatedData, updatedIndex, added);
+		}
+		
+		boolean[] unindexedFlags = getUnindexedFlags(updatedData);
+		Arrays.fill(unindexedFlags, firstAdded, updatedData.size(), true);
+		
+		return createUpdatedModel(updatedData, updatedIndex, unindexedFlags, staleCnt + patterns.size());
+	}
+	
+	/**
+	 * Method creating the model with removed training patterns. Removed patterns keep their indices, but they aren't
+	 * used as neighbors anymore. Adaptive distance measures (if they are used) are recalculated for patterns,
+	 * which had removed pattern as the nearest pattern with different class.
+	 * @param indices	indices of the training patterns to remove
+	 * @return	updated model
+	 * @throws IndexOutOfBoundsException if the pattern with given index doesn't exist
+	 * @throws IllegalArgumentException if the pattern was already removed
+	 */
+	public ClassificationModel removePatterns(int[] indices) throws IndexOutOfBoundsException, IllegalArgumentException {
+		TrainingData updatedData = new TrainingData(trainingData);
+		SpatialIndex updatedIndex = (spatialIndex == null) ? null : spatialIndex.copy();
+		boolean[] unindexedFlags = getUnindexedFlags(updatedData);
+		int updatedStaleCnt = staleCnt;
+		
+		for(int removed : indices) {
+			if(removed < 0 || removed >= updatedData.size()) throw new IndexOutOfBoundsException("Training pattern doesn't exist: "+removed);
+			if(updatedData.isRemoved(removed)) throw new IllegalArgumentException("Training pattern was already removed: "+removed);
+			
+			updatedData.removePattern(removed);
+			unindexedFlags[removed] = false;
+			
+			if(updatedIndex != null && updatedIndex.contains(removed)) {
+				updatedIndex.exclude(removed);
+				updatedStaleCnt++;
+			}
+			
+			if(useAdaptiveDistanceMeasures) updatedStaleCnt += updateMeasuresAfterRemoving(updatedData, updatedIndex, unindexedFlags, removed);
+		}
+		
+		return createUpdatedModel(updatedData, updatedIndex, unindexedFlags, updatedStaleCnt);
+	}
+	
+	/**
+	 * Method offering one training pattern to the selector.
+	 * @param vector			tested vector
+	 * @param index				index of the training pattern
+	 * @param neighborSelector	selector, which will hold the neighbors
+	 */
+	private void offer(double[] vector, int index, NeighborSelector neighborSelector) {
+		double rankMeasure = distanceKernel.toRank(trainingData.getAdaptiveDistanceMeasure(index));
+		double rank = distanceKernel.rank(vector, 0, trainingData.getVectors(), trainingData.getOffset(index), trainingData.getDimension(), neighborSelector.worstDistance() * rankMeasure);
+		
+		if(rank != Double.POSITIVE_INFINITY) neighborSelector.offer(index, rank / rankMeasure);
+	}
+	
+	/**
+	 * Method calculating the adaptive distance measure of the added pattern and lowering measures of patterns
+	 * with different class, for which the added pattern is the nearest one.
+	 * @param updatedData	updated training data
+	 * @param updatedIndex	updated spatial index (null if it isn't used)
+	 * @param added			index of the added pattern
+	 */
+	private void updateMeasuresAfterAdding(TrainingData updatedData, SpatialIndex updatedIndex, int added) {
+		double[] vectors = updatedData.getVectors();
+		int dimension = updatedData.getDimension();
+		int classId = updatedData.getClassId(added);
+		int offset = updatedData.getOffset(added);
+		double nearestRank = Double.POSITIVE_INFINITY;
+		
+		for(int i = 0; i < added; i++) {
+			if(updatedData.isRemoved(i) || updatedData.getClassId(i) == classId) continue;
+			
+			double rank = distanceKernel.rank(vectors, offset, vectors, updatedData.getOffset(i), dimension, Double.POSITIVE_INFINITY);
+			double distance = distanceKernel.toDistance(rank);
+			
+			if(rank < nearestRank) nearestRank = rank;
+			
+			if(distance < updatedData.getAdaptiveDistanceMeasure(i)) {
+				updatedData.setAdaptiveDistanceMeasure(i, distance);
+				if(updatedIndex != null) updatedIndex.lowerAdaptiveDistanceMeasure(i, distance);
+			}
+		}
+		
+		updatedData.setAdaptiveDistanceMeasure(added, (nearestRank == Double.POSITIVE_INFINITY) ? Double.MAX_VALUE : distanceKernel.toDistance(nearestRank));
+	}
+	
+	/**
+	 * Method recalculating adaptive distance measures of patterns, which had the removed pattern as the nearest
+	 * pattern with different class. Patterns with raised measure are excluded from the index and scanned linearly.
+	 * @param updatedData		updated training data
+	 * @param updatedIndex		updated spatial index (null if it isn't used)
+	 * @param unindexedFlags	indicators of patterns scanned next to the index search
+	 * @param removed			index of the removed pattern
+	 * @return	number of patterns excluded from the index
+	 */
+	private int updateMeasuresAfterRemoving(TrainingData updatedData, SpatialIndex updatedIndex, boolean[] unindexedFlags, int removed) {
+		double[] vectors = updatedData.getVectors();
+		int dimension = updatedData.getDimension();
+		int classId = updatedData.getClassId(removed);
+		int offset = updatedData.getOffset(removed);
+		int excludedCnt = 0;
+		
+		for(int i = 0; i < updatedData.size(); i++) {
+			if(updatedData.isRemoved(i) || updatedData.getClassId(i) == classId) continue;
+			
+			double rank = distanceKernel.rank(vectors, offset, vectors, updatedData.getOffset(i), dimension, Double.POSITIVE_INFINITY);
+			if(distanceKernel.toDistance(rank) > updatedData.getAdaptiveDistanceMeasure(i)) continue;
+			
+			double measure = getNearestDifferentDistance(updatedData, i);
+			if(measure == updatedData.getAdaptiveDistanceMeasure(i)) continue;
+			
+			updatedData.setAdaptiveDistanceMeasure(i, measure);
+			
+			if(updatedIndex != null && updatedIndex.contains(i)) {
+				updatedIndex.exclude(i);
+				unindexedFlags[i] = true;
+				excludedCnt++;
+			}
+		}
+		
+		return excludedCnt;
+	}
+	
+	/**
+	 * Method finding the distance from the pattern to the nearest pattern with different class, which wasn't removed.
+	 * @param data	training data
+	 * @param index	index of the pattern
+	 * @return	the distance or {@code Double.MAX_VALUE} if there isn't any pattern with different class
+	 */
+	private double getNearestDifferentDistance(TrainingData data, int index) {
+		double[] vectors = data.getVectors();
+		int classId = data.getClassId(index);
+		int offset = data.getOffset(index);
+		double nearestRank = Double.POSITIVE_INFINITY;
+		
+		for(int i = 0; i < data.size(); i++) {
+			if(data.isRemoved(i) || data.getClassId(i) == classId) continue;
+			
+			double rank = distanceKernel.rank(vectors, offset, vectors, data.getOffset(i), data.getDimension(), nearestRank);
+			if(rank < nearestRank) nearestRank = rank;
+		}
+		
+		return (nearestRank == Double.POSITIVE_INFINITY) ? Double.MAX_VALUE : distanceKernel.toDistance(nearestRank);
+	}
+	
+	/**
+	 * Method returning indicators of the patterns, which are scanned next to the index search.
+	 * @param updatedData	updated training data
+	 * @return	array with true on indices of unindexed patterns
+	 */
+	private boolean[] getUnindexedFlags(TrainingData updatedData) {
+		boolean[] unindexedFlags = new boolean[updatedData.size()];
+		
+		for(int i : unindexed) {
+			unindexedFlags[i] = true;
+		}
+		
+		return unindexedFlags;
+	}
+	
+	/**
+	 * Method creating the updated model. The spatial index is rebuilt over all patterns, which weren't removed,
+	 * if too many patterns were changed since it was built.
+	 * @param updatedData		updated training data
+	 * @param updatedIndex		updated spatial index (null if it isn't used)
+	 * @param unindexedFlags	indicators of patterns scanned next to the index search
+	 * @param updatedStaleCnt	number of patterns changed since the index was built
+	 * @return	updated model
+	 */
+	private ClassificationModel createUpdatedModel(TrainingData updatedData, SpatialIndex updatedIndex, boolean[] unindexedFlags, int updatedStaleCnt) {
+		if(updatedIndex == null) {
+			return new ClassificationModel(updatedData, distanceKernel, indexType, searchEffort, useAdaptiveDistanceMeasures, null, new int[0], 0);
+		}
+		
+		int liveCnt = updatedData.size() - updatedData.getRemovedCnt();
+		
+		if(updatedStaleCnt > Math.max(MIN_STALE_PATTERNS, liveCnt * REBUILD_FRACTION)) {
+			return new ClassificationModel(updatedData, distanceKernel, indexType, searchEffort, useAdaptiveDistanceMeasures);
+		}
+		
+		int[] updatedUnindexed = new int[updatedData.size()];
+		int cnt = 0;
+		
+		for(int i = 0; i < updatedData.size(); i++) {
+			if(unindexedFlags[i]) updatedUnindexed[cnt++] = i;
+		}
+		
+		return new ClassificationModel(updatedData, distanceKernel, indexType, searchEffort, useAdaptiveDistanceMeasures,
+				updatedIndex, Arrays.copyOf(updatedUnindexed, cnt), updatedStaleCnt);
+	}
+	
+	/**
+	 * Method building the spatial index over all patterns of the training data, which weren't removed.
+	 * @param indexType			type of the spatial index ({@code SpatialIndex.INDEX_*})
+	 * @param searchEffort		number of candidates explored by the approximate spatial index
+	 * @param trainingData		training data to index
+	 * @param distanceKernel	kernel of the distance function
+	 * @return	built index or null for {@code SpatialIndex.INDEX_NONE}
+	 */
+	private static SpatialIndex buildIndex(int indexType, int searchEffort, TrainingData trainingData, DistanceKernel distanceKernel) {
+		int[] indices = new int[trainingData.size() - trainingData.getRemovedCnt()];
+		int cnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(!trainingData.isRemoved(i)) indices[cnt++] = i;
+		}
+		
+		return SpatialIndex.build(indexType, trainingData, distanceKernel, indices, true, searchEffort);
+	}
+}
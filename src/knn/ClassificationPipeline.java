@@ -0,0 +1,323 @@
+package knn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instance of this class classifies testing patterns as a stream. Patterns are read in batches by the calling thread,
+ * classified and formatted by worker threads and written in the original order by the writer thread, so the first results
+ * are written while later patterns are still being read. The number of batches between reading and writing is limited
+ * (reading waits until the writer catches up), so the memory doesn't depend on the size of the testing set.
+ * Accuracy is counted by the writer as results are written.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationPipeline {
+	
+	/**
+	 * Number of testing patterns in one batch.
+	 */
+	private static final int BATCH_SIZE = 256;
+	
+	/**
+	 * Number of batches, which may be between reading and writing, per one worker thread.
+	 */
+	private static final int BATCHES_PER_WORKER = 4;
+	
+	/**
+	 * Interval in milliseconds, after which waiting threads check whether another thread failed.
+	 */
+	private static final long FAILURE_CHECK_INTERVAL = 100;
+	
+	/**
+	 * Trained classifier used by the workers.
+	 */
+	private final Classification classification;
+	
+	/**
+	 * Number of worker threads.
+	 */
+	private final int workerCnt;
+	
+	/**
+	 * Batches waiting for classification.
+	 */
+	private final LinkedBlockingQueue<Batch> classifyQueue;
+	
+	/**
+	 * Classified batches waiting for writing.
+	 */
+	private final LinkedBlockingQueue<Batch> writeQueue;
+	
+	/**
+	 * Permits for batches between reading and writing.
+	 */
+	private final Semaphore inFlightBatches;
+	
+	/**
+	 * The first exception thrown by the worker or the writer thread.
+	 */
+	private volatile Throwable failure;
+	
+	/**
+	 * Number of written patterns.
+	 */
+	private long writtenCnt;
+	
+	/**
+	 * Number of written patterns with correctly determined class.
+	 */
+	private long correctCnt;
+	
+	/**
+	 * Constructor for the pipeline.
+	 * @param classification	classifier used for classification of patterns
+	 * @param workerCnt			number of worker threads
+	 */
+	public ClassificationPipeline(Classification classification, int workerCnt) {
+		if(workerCnt < 1) throw new IllegalArgumentException("Number of threads has to be positive: "+workerCnt);
+		
+		this.classification = classification;
+		this.workerCnt = workerCnt;
+		this.classifyQueue = new LinkedBlockingQueue<Batch>();
+		this.writeQueue = new LinkedBlockingQueue<Batch>();
+		this.inFlightBatches = new Semaphore(workerCnt * BATCHES_PER_WORKER);
+	}
+	
+	/**
+	 * Method classifying all patterns from the reader and writing them by the result writer in its format.
+	 * Batches are formatted by the workers, which classified them. The result is finished by the accuracy
+	 * of the classification (the writer is closed). The classifier is trained before the first pattern is read.
+	 * If the classifier collects metrics, time of reading patterns and the wall time of the classification are added to them.
+	 * @param reader		reader of testing patterns
+	 * @param resultWriter	writer of classified patterns
+	 * @return	accuracy of the classification (a number between 0 and 1)
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 * @throws IndexOutOfBoundsException
+	 */
+	public double run(PatternReader reader, final ResultWriter resultWriter) throws IOException, NumberFormatException, IndexOutOfBoundsException {
+		classification.train();
+		
+		ClassificationMetrics metrics = classification.getMetrics();
+		long start = System.nanoTime();
+		long parseNanos = 0;
+		List<Thread> threads = new ArrayList<Thread>();
+		
+		for(int i = 0; i < workerCnt; i++) {
+			threads.add(new Thread("classification-worker-"+i) {
+				@Override
+				public void run() {
+					classifyBatches(resultWriter);
+				}
+			});
+		}
+		
+		Thread writerThread = new Thread("classification-writer") {
+			@Override
+			public void run() {
+				writeBatches(resultWriter);
+			}
+		};
+		threads.add(writerThread);
+		
+		for(Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		boolean finished = false;
+		
+		try {
+			long sequence = 0;
+			Batch batch = new Batch(sequence++);
+			Pattern pattern = null;
+			long readStart = System.nanoTime();
+			
+			while(failure == null && (pattern = reader.nextPattern(false)) != null) {
+				parseNanos += System.nanoTime() - readStart;
+				batch.patterns.add(pattern);
+				
+				if(batch.patterns.size() == BATCH_SIZE) {
+					submit(batch);
+					batch = new Batch(sequence++);
+				}
+				
+				readStart = System.nanoTime();
+			}
+			
+			if(failure == null && !batch.patterns.isEmpty()) submit(batch);
+			
+			for(int i = 0; i < workerCnt; i++) {
+				classifyQueue.put(Batch.END);
+			}
+			
+			for(Thread thread : threads) {
+				if(thread != writerThread) thread.join();
+			}
+			
+			writeQueue.put(Batch.END);
+			writerThread.join();
+			finished = true;
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+		}
+		finally {
+			if(!finished || failure != null) {
+				for(Thread thread : threads) {
+					thread.interrupt();
+				}
+			}
+		}
+		
+		if(failure != null) rethrow(failure);
+		
+		if(metrics != null) {
+			metrics.addPhase(ClassificationMetrics.PHASE_PARSE, parseNanos);
+			metrics.addPhase(ClassificationMetrics.PHASE_CLASSIFY, System.nanoTime() - start);
+		}
+		
+		double accuracy = ((double)correctCnt) / writtenCnt;
+		resultWriter.finish(accuracy);
+		
+		return accuracy;
+	}
+	
+	/**
+	 * Method passing the batch to workers. It waits for the permit, so there aren't too many batches in flight.
+	 * @param batch	batch of read patterns
+	 * @throws InterruptedException
+	 */
+	private void submit(Batch batch) throws InterruptedException {
+		while(!inFlightBatches.tryAcquire(FAILURE_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+			if(failure != null) return;
+		}
+		
+		classifyQueue.put(batch);
+	}
+	
+	/**
+	 * Method run by worker threads. It classifies and formats patterns of batches from the queue until the end mark is taken.
+	 * Any throwable is recorded as the failure, otherwise the batch would never be written and reading would wait for its permit.
+	 * @param resultWriter	writer of classified patterns
+	 */
+	private void classifyBatches(ResultWriter resultWriter) {
+		try {
+			Batch batch = null;
+			
+			while((batch = classifyQueue.take()) != Batch.END) {
+				classification.classifyBatch(batch.patterns);
+				batch.chunk = resultWriter.format(batch.patterns, 0, batch.patterns.size());
+				
+				writeQueue.put(batch);
+			}
+		}
+		catch(InterruptedException e) {
+			if(failure == null) fail(e);
+		}
+		catch(Throwable e) {
+			fail(e);
+		}
+	}
+	
+	/**
+	 * Method run by the writer thread. It writes formatted batches in the order, in which they were read,
+	 * counts correctly classified patterns and releases permits of written batches.
+	 * @param resultWriter	writer of classified patterns
+	 */
+	private void writeBatches(ResultWriter resultWriter) {
+		HashMap<Long, Batch> waitingBatches = new HashMap<Long, Batch>();
+		long nextSequence = 0;
+		
+		try {
+			Batch batch = null;
+			
+			while((batch = writeQueue.take()) != Batch.END) {
+				waitingBatches.put(batch.sequence, batch);
+				
+				while((batch = waitingBatches.remove(nextSequence)) != null) {
+					resultWriter.write(batch.chunk);
+					
+					for(Pattern p : batch.patterns) {
+						if(p.getPatternClass().equals(p.getCorrectClass())) correctCnt++;
+						writtenCnt++;
+					}
+					
+					nextSequence++;
+					inFlightBatches.release();
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			if(failure == null) fail(e);
+		}
+		catch(Throwable e) {
+			fail(e);
+		}
+	}
+	
+	/**
+	 * Method recording the first failure of any thread.
+	 * @param e	thrown exception
+	 */
+	private synchronized void fail(Throwable e) {
+		if(failure == null) failure = e;
+	}
+	
+	/**
+	 * Method throwing the recorded failure to the caller of the {@code run} method. Errors are thrown as they are,
+	 * checked exceptions other than {@code IOException} are wrapped.
+	 * @param e	recorded failure
+	 * @throws IOException
+	 */
+	private static void rethrow(Throwable e) throws IOException {
+		if(e instanceof IOException) throw (IOException)e;
+		if(e instanceof RuntimeException) throw (RuntimeException)e;
+		if(e instanceof Error) throw (Error)e;
+		throw new IllegalStateException("Classification pipeline failed.", e);
+	}
+	
+	/**
+	 * Private class holding the batch of testing patterns and its order in the input.
+	 * @author Vladimr Lznika
+	 *
+	 */
+	private static class Batch {
+		
+		/**
+		 * Mark of the end of the input.
+		 */
+		private static final Batch END = new Batch(-1);
+		
+		/**
+		 * Order of the batch in the input.
+		 */
+		private final long sequence;
+		
+		/**
+		 * Patterns of the batch.
+		 */
+		private final ArrayList<Pattern> patterns;
+		
+		/**
+		 * Formatted records of classified patterns (null until the batch is classified).
+		 */
+		private ResultWriter.Chunk chunk;
+		
+		/**
+		 * Constructor for the empty batch.
+		 * @param sequence	order of the batch in the input
+		 */
+		public Batch(long sequence) {
+			this.sequence = sequence;
+			this.patterns = new ArrayList<Pattern>(BATCH_SIZE);
+		}
+	}
+}
@@ -0,0 +1,470 @@
+package knn;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Instance of this class is a resident classification server. The classifier is trained (adaptive distance measures
+ * and the spatial index are prepared) and warmed up once at the start, then requests are answered until the server
+ * is closed. Clients connect to the local socket and send lines in the format of the pattern files
+ * ({@code vector} or {@code vector;class}, the class is ignored), the server answers every line with one line
+ * containing the classified class (or {@code ERROR message} if the line can't be classified) in the same order.
+ * A batch of vectors is sent simply as several lines at once. Training set can be updated by lines
+ * {@code ADD vector;class} (answered with the index of the added pattern) and {@code REMOVE index} (answered with {@code OK}),
+ * which are processed by the connection thread after all earlier lines of the same connection are answered, so the update
+ * affects only later lines of the connection. Lines of other connections, which are classified at the same time,
+ * may be classified before or after the update.
+ * Requests of all connections are put to one queue and classified in micro-batches by the batching thread:
+ * every batch takes all requests, which arrived while the previous batch was classified, so single requests
+ * don't wait for others and batches grow only under load.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationServer implements Closeable {
+	
+	/**
+	 * Maximal number of requests classified in one batch.
+	 */
+	private static final int MAX_BATCH_SIZE = 256;
+	
+	/**
+	 * Maximal number of requests of one connection, which are answered together.
+	 */
+	private static final int MAX_PENDING_REQUESTS = 1024;
+	
+	/**
+	 * Number of training patterns classified to warm up the classifier before the first request.
+	 */
+	private static final int WARMUP_PATTERNS = 1000;
+	
+	/**
+	 * Number of rounds of the warm-up.
+	 */
+	private static final int WARMUP_ROUNDS = 3;
+	
+	/**
+	 * Separator of the vector and the class in the request line.
+	 */
+	private static final String INFO_SEPARATOR = ";";
+	
+	/**
+	 * Separator of dimensions of the vector in the request line.
+	 */
+	private static final String VECTOR_SEPARATOR = ",";
+	
+	/**
+	 * Prefix of the answer to the request, which couldn't be classified.
+	 */
+	private static final String ERROR_PREFIX = "ERROR ";
+	
+	/**
+	 * Prefix of the request adding the training pattern.
+	 */
+	private static final String COMMAND_ADD = "ADD ";
+	
+	/**
+	 * Prefix of the request removing the training pattern.
+	 */
+	private static final String COMMAND_REMOVE = "REMOVE ";
+	
+	/**
+	 * Answer to the request removing the training pattern.
+	 */
+	private static final String ANSWER_OK = "OK";
+	
+	/**
+	 * Charset of the request and answer lines.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Classifier answering the requests.
+	 */
+	private final Classification classification;
+	
+	/**
+	 * Socket accepting connections of the clients.
+	 */
+	private final ServerSocket serverSocket;
+	
+	/**
+	 * Requests waiting for classification.
+	 */
+	private final LinkedBlockingQueue<Request> requests;
+	
+	/**
+	 * Indicator whether the server was closed.
+	 */
+	private volatile boolean closed;
+	
+	/**
+	 * Indicator whether the batching thread ended (queued and later requests are answered with the error).
+	 */
+	private volatile boolean batcherStopped;
+	
+	/**
+	 * Constructor for the server. It binds the socket to given port of the loopback address.
+	 * @param classification	classifier answering the requests
+	 * @param port				port of the server (0 - any free port)
+	 * @throws IOException
+	 */
+	public ClassificationServer(Classification classification, int port) throws IOException {
+		this.classification = classification;
+		this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		this.requests = new LinkedBlockingQueue<Request>();
+		this.closed = false;
+		this.batcherStopped = false;
+	}
+	
+	/**
+	 * Getter for the port, on which the server listens.
+	 * @return the port
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Method running the server. It trains and warms up the classifier, starts the batching thread and then accepts
+	 * connections (every connection is served by its own thread) until the server is closed.
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException
+	 */
+	public void run() throws IOException, IndexOutOfBoundsException {
+		classification.train();
+		warmUp();
+		
+		Thread batcher = new Thread("classification-batcher") {
+			@Override
+			public void run() {
+				classifyRequests();
+			}
+		};
+		batcher.setDaemon(true);
+		batcher.start();
+		
+		System.out.println("Server listening on port "+getPort()+".");
+		
+		try {
+			while(!closed) {
+				final Socket socket;
+				
+				try {
+					socket = serverSocket.accept();
+				}
+				catch(SocketException e) {
+					if(closed) break;
+					throw e;
+				}
+				
+				Thread connection = new Thread("classification-connection-"+socket.getPort()) {
+					@Override
+					public void run() {
+						serveConnection(socket);
+					}
+				};
+				connection.setDaemon(true);
+				connection.start();
+			}
+		}
+		finally {
+			close();
+			batcher.interrupt();
+		}
+	}
+	
+	/**
+	 * Method closing the server, so it doesn't accept new connections.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+	}
+	
+	/**
+	 * Method warming up the classifier by classification of training patterns, so the first requests
+	 * aren't slowed down by the compilation of the code.
+	 */
+	private void warmUp() {
+		TrainingData trainingData = classification.getTrainingData();
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		
+		for(int i = 0; i < Math.min(trainingData.size(), WARMUP_PATTERNS); i++) {
+			patterns.add(new Pattern(trainingData.getVector(i), null));
+		}
+		
+		for(int round = 0; round < WARMUP_ROUNDS; round++) {
+			classification.classifyPatterns(patterns);
+		}
+	}
+	
+	/**
+	 * Method serving one connection. It reads request lines and answers them in the same order. Lines, which
+	 * were already received together, are submitted before the first answer is awaited, so they are classified
+	 * in the same batches. Pending requests are answered before the line updating the training set is processed.
+	 * @param socket	socket of the connection
+	 */
+	private void serveConnection(Socket socket) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+			Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), CHARSET));
+			List<Request> pending = new ArrayList<Request>();
+			String line;
+			
+			while((line = reader.readLine()) != null) {
+				if(isUpdate(line)) writeAnswers(pending, writer);
+				if(!line.trim().isEmpty()) pending.add(submit(line));
+				
+				if(!reader.ready() || pending.size() >= MAX_PENDING_REQUESTS) writeAnswers(pending, writer);
+			}
+		}
+		catch(IOException e) {
+			if(!closed) System.err.println("Connection failed: \n" + e.getMessage());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			try {
+				socket.close();
+			}
+			catch(IOException e) {
+				System.err.println("Connection failed: \n" + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Method waiting for answers to pending requests of the connection and writing them.
+	 * @param pending	pending requests in the order of their lines (the list is cleared)
+	 * @param writer	writer of the connection
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static void writeAnswers(List<Request> pending, Writer writer) throws IOException, InterruptedException {
+		for(Request request : pending) {
+			writer.write(request.getAnswer());
+			writer.write('\n');
+		}
+		
+		writer.flush();
+		pending.clear();
+	}
+	
+	/**
+	 * Method checking, whether the request line updates the training set.
+	 * @param line	request line
+	 * @return	true if the line adds or removes the training pattern
+	 */
+	private static boolean isUpdate(String line) {
+		return line.startsWith(COMMAND_ADD) || line.startsWith(COMMAND_REMOVE);
+	}
+	
+	/**
+	 * Method parsing the request line and putting the request to the queue. Request, which can't be parsed,
+	 * and requests updating the training set are answered immediately.
+	 * @param line	request line
+	 * @return	submitted request
+	 */
+	private Request submit(String line) {
+		try {
+			if(line.startsWith(COMMAND_ADD)) {
+				String[] lineSplit = line.substring(COMMAND_ADD.length()).split(INFO_SEPARATOR, 2);
+				if(lineSplit.length < 2) return new Request(null, "Class of the added pattern is missing.");
+				
+				List<Pattern> added = new ArrayList<Pattern>();
+				added.add(new Pattern(parseVector(lineSplit[0]), lineSplit[1].trim(), lineSplit[1].trim()));
+				return new Request(String.valueOf(classification.addPatterns(added)[0]), null);
+			}
+			
+			if(line.startsWith(COMMAND_REMOVE)) {
+				classification.removePatterns(new int[] {Integer.parseInt(line.substring(COMMAND_REMOVE.length()).trim())});
+				return new Request(ANSWER_OK, null);
+			}
+			
+			double[] vector = parseVector(line.split(INFO_SEPARATOR, 2)[0]);
+			classification.getTrainingData().checkDimension(vector);
+			
+			Request request = new Request(new Pattern(vector, null));
+			requests.add(request);
+			if(batcherStopped) failQueuedRequests();
+			return request;
+		}
+		catch(NumberFormatException e) {
+			return new Request(null, "Wrong number format: "+e.getMessage());
+		}
+		catch(IndexOutOfBoundsException e) {
+			return new Request(null, "Unexpected vector size or index: "+e.getMessage().replace('\n', ' '));
+		}
+		catch(IllegalArgumentException e) {
+			return new Request(null, "Wrong parameter: "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Method parsing the vector from the request line.
+	 * @param vectorPart	part of the line with the vector
+	 * @return	parsed vector
+	 * @throws NumberFormatException
+	 */
+	private static double[] parseVector(String vectorPart) throws NumberFormatException {
+		String[] vectorSplit = vectorPart.split(VECTOR_SEPARATOR);
+		double[] vector = new double[vectorSplit.length];
+		
+		for(int i = 0; i < vector.length; i++) {
+			vector[i] = Double.parseDouble(vectorSplit[i].trim());
+		}
+		
+		return vector;
+	}
+	
+	/**
+	 * Method of the batching thread. It takes waiting requests in batches and classifies them.
+	 * If classification of the batch fails (including errors like {@code OutOfMemoryError}), its requests are classified
+	 * one by one, so only failed requests are answered with the error. When the thread ends for any reason,
+	 * requests of the unfinished batch and all queued requests are answered with the error, so no connection waits forever.
+	 */
+	private void classifyRequests() {
+		List<Request> batch = new ArrayList<Request>();
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		
+		try {
+			while(!closed) {
+				batch.add(requests.take());
+				requests.drainTo(batch, MAX_BATCH_SIZE - 1);
+				
+				for(Request request : batch) {
+					patterns.add(request.pattern);
+				}
+				
+				try {
+					classification.classifyPatterns(patterns);
+					
+					for(Request request : batch) {
+						request.complete(request.pattern.getPatternClass(), null);
+					}
+				}
+				catch(Throwable e) {
+					for(Request request : batch) {
+						try {
+							classification.classifyPattern(request.pattern);
+							request.complete(request.pattern.getPatternClass(), null);
+						}
+						catch(Throwable e1) {
+							request.complete(null, "Classification failed: "+e1);
+						}
+					}
+				}
+				
+				batch.clear();
+				patterns.clear();
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			batcherStopped = true;
+			
+			for(Request request : batch) {
+				request.complete(null, "Server is stopped.");
+			}
+			
+			failQueuedRequests();
+		}
+	}
+	
+	/**
+	 * Method answering all queued requests with the error, it's used after the batching thread ended.
+	 */
+	private void failQueuedRequests() {
+		Request request;
+		
+		while((request = requests.poll()) != null) {
+			request.complete(null, "Server is stopped.");
+		}
+	}
+	
+	/**
+	 * Instance of this class is one classification request waiting for its answer.
+	 */
+	private static class Request {
+		
+		/**
+		 * Classified pattern (null if the request failed before classification).
+		 */
+		private final Pattern pattern;
+		
+		/**
+		 * Latch released when the request is answered.
+		 */
+		private final CountDownLatch done;
+		
+		/**
+		 * Classified class.
+		 */
+		private String patternClass;
+		
+		/**
+		 * Error message (null if the request was classified).
+		 */
+		private String error;
+		
+		/**
+		 * Constructor for the request waiting for classification.
+		 * @param pattern	classified pattern
+		 */
+		public Request(Pattern pattern) {
+			this.pattern = pattern;
+			this.done = new CountDownLatch(1);
+		}
+		
+		/**
+		 * Constructor for the request, which is already answered.
+		 * @param patternClass	answer to the request (null if it failed)
+		 * @param error			error message (null if the request didn't fail)
+		 */
+		public Request(String patternClass, String error) {
+			this(null);
+			complete(patternClass, error);
+		}
+		
+		/**
+		 * Method answering the request. Request, which is already answered, isn't changed.
+		 * @param patternClass	classified class
+		 * @param error			error message (null if the request was classified)
+		 */
+		public synchronized void complete(String patternClass, String error) {
+			if(done.getCount() == 0) return;
+			
+			this.patternClass = patternClass;
+			this.error = error;
+			done.countDown();
+		}
+		
+		/**
+		 * Method waiting for the answer to the request.
+		 * @return	answer line (without the line separator)
+		 * @throws InterruptedException
+		 */
+		public String getAnswer() throws InterruptedException {
+			done.await();
+			return (error == null) ? patternClass : ERROR_PREFIX + error;
+		}
+	}
+}
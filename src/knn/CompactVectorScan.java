@@ -0,0 +1,380 @@
+package knn;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Instance of this class scans the training patterns linearly like the classifier without index, but it reads
+ * their vectors from the compact copy stored in single precision ({@code float}) or quantized to 16-bit or 8-bit codes
+ * with the scale and the minimum of every dimension. The scan reads 2 to 8 times less memory than the scan of doubles.
+ * The largest error of the compact vectors is measured while they are created, so every scanned distance gives
+ * the lower and the upper bound of the exact distance. Patterns, which can't be nearer than {@code K} upper bounds,
+ * are dropped during the scan and remaining candidates are re-ranked by the exact distance of their double vectors,
+ * so the index returns the same neighbors as the linear scan of doubles (bounds are widened to cover rounding
+ * of the calculation). Double vectors are still kept in the training data for the re-ranking.
+ * @author Vladimr Lznika
+ *
+ */
+public class CompactVectorScan extends SpatialIndex {
+	
+	/**
+	 * Relative widening of the bounds covering rounding errors of the calculation of distances.
+	 */
+	private static final double BOUND_SLACK = 1e-9;
+	
+	/**
+	 * Initial capacity of the array with candidates for the re-ranking.
+	 */
+	private static final int MIN_CANDIDATE_CAPACITY = 64;
+	
+	/**
+	 * Shift of 16-bit codes, so the lowest value of the dimension has the lowest code.
+	 */
+	private static final int INT16_BIAS = 32768;
+	
+	/**
+	 * Shift of 8-bit codes, so the lowest value of the dimension has the lowest code.
+	 */
+	private static final int INT8_BIAS = 128;
+	
+	/**
+	 * Type of the compact vectors ({@code SpatialIndex.INDEX_FLOAT}, {@code INDEX_INT16} or {@code INDEX_INT8}).
+	 */
+	private final int precision;
+	
+	/**
+	 * Row-major matrix of vectors in single precision in the order of the permutation (null for quantized vectors).
+	 */
+	private final float[] floatVectors;
+	
+	/**
+	 * Row-major matrix of 16-bit codes in the order of the permutation (null for other types).
+	 */
+	private final short[] shortCodes;
+	
+	/**
+	 * Row-major matrix of 8-bit codes in the order of the permutation (null for other types).
+	 */
+	private final byte[] byteCodes;
+	
+	/**
+	 * Lowest values of the dimensions (null for vectors in single precision).
+	 */
+	private final double[] minimums;
+	
+	/**
+	 * Differences of values represented by neighboring codes of the dimensions (null for vectors in single precision).
+	 */
+	private final double[] scales;
+	
+	/**
+	 * Upper bound of the distance between the exact vector and its compact copy.
+	 */
+	private final double maxError;
+	
+	/**
+	 * Adaptive distance measures of the training patterns as real distances (1.0 if they aren't used).
+	 */
+	private double[] measures;
+	
+	/**
+	 * Scratch states of the threads searching the index.
+	 */
+	private final ThreadLocal<ScanState> scanStates = new ThreadLocal<ScanState>() {
+		@Override
+		protected ScanState initialValue() {
+			return new ScanState(trainingData.getDimension());
+		}
+	};
+	
+	/**
+	 * Constructor for the index. It creates compact copies of indexed vectors and measures their largest error.
+	 * @param trainingData					training data to index
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indices						indices of indexed training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 * @param precision						type of the compact vectors ({@code INDEX_FLOAT}, {@code INDEX_INT16} or {@code INDEX_INT8})
+	 */
+	public CompactVectorScan(TrainingData trainingData, DistanceKernel distanceKernel, int[] indices, boolean useAdaptiveDistanceMeasures, int precision) {
+		super(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+		
+		int dimension = trainingData.getDimension();
+		double[] vectors = trainingData.getVectors();
+		double[] errors = new double[dimension];
+		this.precision = precision;
+		this.measures = new double[trainingData.size()];
+		
+		for(int i : indices) {
+			measures[i] = useAdaptiveDistanceMeasures ? trainingData.getAdaptiveDistanceMeasure(i) : 1.0;
+		}
+		
+		if(precision == INDEX_FLOAT) {
+			this.floatVectors = new float[indices.length * dimension];
+			this.shortCodes = null;
+			this.byteCodes = null;
+			this.minimums = null;
+			this.scales = null;
+			
+			for(int p = 0; p < indices.length; p++) {
+				int offset = trainingData.getOffset(indices[p]);
+				
+				for(int d = 0; d < dimension; d++) {
+					float value = (float)vectors[offset + d];
+					floatVectors[p * dimension + d] = value;
+					errors[d] = Math.max(errors[d], Math.abs(vectors[offset + d] - value));
+				}
+			}
+		}
+		else {
+			boolean int16 = (precision == INDEX_INT16);
+			int bias = int16 ? INT16_BIAS : INT8_BIAS;
+			this.floatVectors = null;
+			this.shortCodes = int16 ? new short[indices.length * dimension] : null;
+			this.byteCodes = int16 ? null : new byte[indices.length * dimension];
+			this.minimums = new double[dimension];
+			this.scales = new double[dimension];
+			
+			for(int d = 0; d < dimension; d++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				
+				for(int i : indices) {
+					double value = vectors[trainingData.getOffset(i) + d];
+					if(value < min) min = value;
+					if(value > max) max = value;
+				}
+				
+				minimums[d] = (indices.length == 0) ? 0.0 : min;
+				scales[d] = (max > min) ? (max - min) / (2 * bias - 1) : 1.0;
+			}
+			
+			for(int p = 0; p < indices.length; p++) {
+				int offset = trainingData.getOffset(indices[p]);
+				
+				for(int d = 0; d < dimension; d++) {
+					long code = Math.round((vectors[offset + d] - minimums[d]) / scales[d]);
+					code = Math.max(0, Math.min(2 * bias - 1, code)) - bias;
+					
+					if(int16) shortCodes[p * dimension + d] = (short)code;
+					else byteCodes[p * dimension + d] = (byte)code;
+					
+					double decoded = minimums[d] + (code + bias) * scales[d];
+					errors[d] = Math.max(errors[d], Math.abs(vectors[offset + d] - decoded));
+				}
+			}
+		}
+		
+		this.maxError = distanceKernel.distance(new double[dimension], 0, errors, 0, dimension);
+	}
+	
+	/**
+	 * Constructor restoring the index from the snapshot. Compact vectors are created again from the training data
+	 * (it takes one pass over the vectors), measures of the patterns are read as they were written by {@code writeNodes}.
+	 * @param trainingData					indexed training data
+	 * @param distanceKernel				kernel of the distance function
+	 * @param permutation					indices of the indexed training patterns
+	 * @param rankMeasures					ranking adaptive distance measures of the training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 * @param precision						type of the compact vectors ({@code INDEX_FLOAT}, {@code INDEX_INT16} or {@code INDEX_INT8})
+	 * @param input							input of the snapshot
+	 * @throws IOException if the snapshot is damaged
+	 */
+	CompactVectorScan(TrainingData trainingData, DistanceKernel distanceKernel, int[] permutation, double[] rankMeasures, boolean useAdaptiveDistanceMeasures,
+			int precision, ModelSnapshot.Input input) throws IOException {
+		this(trainingData, distanceKernel, permutation, useAdaptiveDistanceMeasures, precision);
+		
+		this.rankMeasures = rankMeasures;
+		this.measures = input.readDoubles();
+		
+		if(measures.length != rankMeasures.length) throw new IOException("Snapshot is damaged (measures don't match the index).");
+	}
+	
+	@Override
+	public int getType() {
+		return precision;
+	}
+	
+	@Override
+	protected void writeNodes(ModelSnapshot.Output output) throws IOException {
+		output.writeDoubles(measures, measures.length);
+	}
+	
+	@Override
+	public void search(double[] vector, NeighborSelector neighborSelector) {
+		ScanState state = scanStates.get();
+		NeighborSelector bounds = state.getBounds(neighborSelector.getCapacity());
+		double[] query = prepareQuery(vector, state);
+		int dimension = trainingData.getDimension();
+		double threshold = Double.POSITIVE_INFINITY;
+		int scannedCnt = 0;
+		
+		bounds.reset();
+		state.candidateCnt = 0;
+		
+		for(int p = 0; p < permutation.length; p++) {
+			int i = permutation[p];
+			if(rankMeasures[i] == NOT_INDEXED) continue;
+			
+			double rankLimit = (threshold == Double.POSITIVE_INFINITY) ? Double.POSITIVE_INFINITY
+					: distanceKernel.toRank((threshold * measures[i] + maxError) * (1.0 + BOUND_SLACK));
+			double rank = rankCompact(query, p * dimension, dimension, rankLimit);
+			scannedCnt++;
+			
+			if(rank == Double.POSITIVE_INFINITY) continue;
+			
+			double distance = distanceKernel.toDistance(rank);
+			double lowerBound = Math.max(0.0, distance - maxError) * (1.0 - BOUND_SLACK) / measures[i];
+			if(lowerBound > threshold) continue;
+			
+			bounds.offer(i, (distance + maxError) * (1.0 + BOUND_SLACK) / measures[i]);
+			threshold = bounds.worstDistance();
+			state.addCandidate(i, lowerBound, threshold);
+		}
+		
+		double[] vectors = trainingData.getVectors();
+		int rerankedCnt = 0;
+		
+		for(int c = 0; c < state.candidateCnt; c++) {
+			if(state.candidateBounds[c] > threshold) continue;
+			
+			int i = state.candidates[c];
+			double rank = distanceKernel.rank(vector, 0, vectors, trainingData.getOffset(i), dimension, neighborSelector.worstDistance() * rankMeasures[i]);
+			rerankedCnt++;
+			
+			if(rank != Double.POSITIVE_INFINITY) neighborSelector.offer(i, rank / rankMeasures[i]);
+		}
+		
+		neighborSelector.countDistances(scannedCnt + rerankedCnt);
+	}
+	
+	@Override
+	public SpatialIndex copy() {
+		CompactVectorScan index = (CompactVectorScan)super.copy();
+		index.measures = measures.clone();
+		return index;
+	}
+	
+	@Override
+	public void lowerAdaptiveDistanceMeasure(int index, double adaptiveDistanceMeasure) {
+		super.lowerAdaptiveDistanceMeasure(index, adaptiveDistanceMeasure);
+		if(useAdaptiveDistanceMeasures && contains(index)) measures[index] = adaptiveDistanceMeasure;
+	}
+	
+	/**
+	 * Method preparing the tested vector for the calculation with compact vectors. Vector is converted to the scale
+	 * of the codes for quantized vectors, otherwise it's used directly.
+	 * @param vector	tested vector
+	 * @param state		scratch state of the thread
+	 * @return	vector for the calculation with compact vectors
+	 */
+	private double[] prepareQuery(double[] vector, ScanState state) {
+		if(precision == INDEX_FLOAT) return vector;
+		
+		int bias = (precision == INDEX_INT16) ? INT16_BIAS : INT8_BIAS;
+		
+		for(int d = 0; d < vector.length; d++) {
+			state.scaledVector[d] = (vector[d] - minimums[d]) / scales[d] - bias;
+		}
+		
+		return state.scaledVector;
+	}
+	
+	/**
+	 * Method calculating the ranking distance between the prepared tested vector and the compact vector.
+	 * @param query		tested vector prepared by {@code prepareQuery}
+	 * @param offset	offset of the compact vector
+	 * @param dimension	dimension of the vectors
+	 * @param rankLimit	ranking distance, above which the exact value is not needed
+	 * @return	ranking distance or positive infinity if it exceeds the limit
+	 */
+	private double rankCompact(double[] query, int offset, int dimension, double rankLimit) {
+		switch(precision) {
+		case INDEX_FLOAT:
+			return distanceKernel.rank(query, floatVectors, offset, dimension, rankLimit);
+		case INDEX_INT16:
+			return distanceKernel.rank(query, scales, shortCodes, offset, dimension, rankLimit);
+		default:
+			return distanceKernel.rank(query, scales, byteCodes, offset, dimension, rankLimit);
+		}
+	}
+	
+	/**
+	 * Instance of this class holds the scratch state of one thread searching the index.
+	 */
+	private static class ScanState {
+		
+		/**
+		 * Selector of {@code K} lowest upper bounds.
+		 */
+		private NeighborSelector bounds;
+		
+		/**
+		 * Tested vector converted to the scale of the codes.
+		 */
+		private final double[] scaledVector;
+		
+		/**
+		 * Training patterns, which may be nearest neighbors.
+		 */
+		private int[] candidates;
+		
+		/**
+		 * Lower bounds of the candidates.
+		 */
+		private double[] candidateBounds;
+		
+		/**
+		 * Number of candidates.
+		 */
+		private int candidateCnt;
+		
+		/**
+		 * Constructor for the state.
+		 * @param dimension	dimension of the vectors
+		 */
+		public ScanState(int dimension) {
+			this.scaledVector = new double[dimension];
+			this.candidates = new int[MIN_CANDIDATE_CAPACITY];
+			this.candidateBounds = new double[MIN_CANDIDATE_CAPACITY];
+		}
+		
+		/**
+		 * Method returning the selector of upper bounds with given capacity.
+		 * @param capacity	number of nearest neighbors
+		 * @return	the selector (it's replaced if it has different capacity)
+		 */
+		public NeighborSelector getBounds(int capacity) {
+			if(bounds == null || bounds.getCapacity() != capacity) bounds = new NeighborSelector(capacity);
+			return bounds;
+		}
+		
+		/**
+		 * Method adding the candidate. When the array is full, candidates with lower bound above the threshold
+		 * are dropped first and the array is enlarged only if it's still more than half full.
+		 * @param index			index of the training pattern
+		 * @param lowerBound	lower bound of its distance
+		 * @param threshold		current threshold of lower bounds
+		 */
+		public void addCandidate(int index, double lowerBound, double threshold) {
+			if(candidateCnt == candidates.length) {
+				int cnt = 0;
+				
+				for(int c = 0; c < candidateCnt; c++) {
+					if(candidateBounds[c] > threshold) continue;
+					candidates[cnt] = candidates[c];
+					candidateBounds[cnt++] = candidateBounds[c];
+				}
+				
+				candidateCnt = cnt;
+				
+				if(candidateCnt > candidates.length / 2) {
+					candidates = Arrays.copyOf(candidates, 2 * candidates.length);
+					candidateBounds = Arrays.copyOf(candidateBounds, 2 * candidateBounds.length);
+				}
+			}
+			
+			candidates[candidateCnt] = index;
+			candidateBounds[candidateCnt++] = lowerBound;
+		}
+	}
+}
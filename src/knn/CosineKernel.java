@@ -0,0 +1,102 @@
+package knn;
+
+/**
+ * Kernel calculating the cosine distance ({@code 1 - cosine similarity}, a value between 0 and 2). Its ranking distance
+ * is the distance itself. The dot product and both norms are summed in one pass and the whole sum is needed,
+ * so the calculation isn't abandoned before the end (the limit is only compared with the result). Vectors of zero
+ * length have the distance 1 to all vectors. The cosine distance isn't a metric and the distance to the box doesn't
+ * bound it, so it can be searched only by the linear scan or the approximate HNSW graph, and it can't be calculated
+ * from quantized vectors (only differences of the features are stored).
+ * @author Vladimr Lznika
+ *
+ */
+public class CosineKernel extends DistanceKernel {
+	
+	@Override
+	public int getType() {
+		return Classification.DISTANCE_COSINE;
+	}
+	
+	@Override
+	public boolean isMetric() {
+		return false;
+	}
+	
+	@Override
+	public boolean hasBoxBound() {
+		return false;
+	}
+	
+	@Override
+	public double rank(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension, double rankLimit) {
+		double dot = 0.0;
+		double norm1 = 0.0;
+		double norm2 = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double value1 = vectors1[offset1 + i];
+			double value2 = vectors2[offset2 + i];
+			dot += value1 * value2;
+			norm1 += value1 * value1;
+			norm2 += value2 * value2;
+		}
+		
+		return limit(toCosineDistance(dot, norm1, norm2), rankLimit);
+	}
+	
+	@Override
+	public double rank(double[] vector, float[] vectors2, int offset2, int dimension, double rankLimit) {
+		double dot = 0.0;
+		double norm1 = 0.0;
+		double norm2 = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double value1 = vector[i];
+			double value2 = vectors2[offset2 + i];
+			dot += value1 * value2;
+			norm1 += value1 * value1;
+			norm2 += value2 * value2;
+		}
+		
+		return limit(toCosineDistance(dot, norm1, norm2), rankLimit);
+	}
+	
+	@Override
+	public double boxRank(double[] vector, double[] boxMin, double[] boxMax, int boxOffset, int dimension) {
+		return 0.0;
+	}
+	
+	@Override
+	public double toDistance(double rank) {
+		return rank;
+	}
+	
+	@Override
+	public double toRank(double distance) {
+		return distance;
+	}
+	
+	/**
+	 * Method calculating the cosine distance from the dot product and squared norms of vectors.
+	 * @param dot	dot product of vectors
+	 * @param norm1	squared norm of the first vector
+	 * @param norm2	squared norm of the second vector
+	 * @return	cosine distance (1.0 if any vector has zero length)
+	 */
+	private static double toCosineDistance(double dot, double norm1, double norm2) {
+		if(norm1 == 0.0 || norm2 == 0.0) return 1.0;
+		
+		double distance = 1.0 - dot / Math.sqrt(norm1 * norm2);
+		return Math.max(0.0, Math.min(2.0, distance));
+	}
+	
+	/**
+	 * Method comparing the ranking distance with the limit.
+	 * @param rank		ranking distance
+	 * @param rankLimit	ranking distance, above which the exact value is not needed
+	 * @return	ranking distance or positive infinity if it exceeds the limit
+	 */
+	private static double limit(double rank, double rankLimit) {
+		return (rank > rankLimit) ? Double.POSITIVE_INFINITY : rank;
+	}
+}
@@ -0,0 +1,409 @@
+package knn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Instance of this class evaluates the classifier by the k-fold cross-validation over the grid of parameters
+ * (given distance functions or all distance functions without parameters, with and without adaptive distance measures
+ * and all {@code K} up to the maximal one).
+ * Training patterns are split to folds (stratified by the class), every fold is classified by the classifier trained
+ * on the other folds. Nearest neighbors of every tested pattern are searched only once for every distance function
+ * and use of adaptive distance measures (up to the maximal {@code K}) and all lower {@code K} are voted from the same
+ * sorted neighbors. Distance functions, for which the set index can't be built, are searched by the linear scan.
+ * Folds and variants are evaluated in parallel by given number of threads.
+ * @author Vladimr Lznika
+ *
+ */
+public class CrossValidation {
+	
+	/**
+	 * Seed of the random generator shuffling patterns to folds (the same data are always split in the same way).
+	 */
+	private static final long FOLD_SEED = 42;
+	
+	/**
+	 * Types of the distance function evaluated by the grid, if no distance functions are set (all types without parameters).
+	 */
+	private static final int[] DEFAULT_DISTANCE_TYPES = {Classification.DISTANCE_EUCLIDEAN, Classification.DISTANCE_MANHATTAN,
+			Classification.DISTANCE_CHEBYSHEV, Classification.DISTANCE_COSINE};
+	
+	/**
+	 * Settings of the use of adaptive distance measures evaluated by the grid.
+	 */
+	private static final int[] ADAPTIVE_DISTANCE_MEASURE_SETTINGS = {0, Classification.USE_ADM};
+	
+	/**
+	 * Training data split to folds.
+	 */
+	private final TrainingData trainingData;
+	
+	/**
+	 * Number of folds.
+	 */
+	private final int foldCnt;
+	
+	/**
+	 * Maximal number of nearest neighbors evaluated by the grid.
+	 */
+	private final int maxKNumber;
+	
+	/**
+	 * Number of threads evaluating folds and variants.
+	 */
+	private final int parallelism;
+	
+	/**
+	 * Type of the spatial index used for searching nearest neighbors ({@code SpatialIndex.INDEX_*}).
+	 */
+	private int indexType;
+	
+	/**
+	 * Number of candidates explored by the approximate spatial index per query.
+	 */
+	private int searchEffort;
+	
+	/**
+	 * Type of the vote of nearest neighbors ({@code NeighborVote.VOTE_*}).
+	 */
+	private int voteType;
+	
+	/**
+	 * Kernels of distance functions evaluated by the grid.
+	 */
+	private List<DistanceKernel> distanceKernels;
+	
+	/**
+	 * Fold of every training pattern.
+	 */
+	private final int[] folds;
+	
+	/**
+	 * Constructor for the cross-validation. It splits training patterns to folds.
+	 * @param trainingData	training data split to folds
+	 * @param foldCnt		number of folds
+	 * @param maxKNumber	maximal number of nearest neighbors evaluated by the grid
+	 * @param parallelism	number of threads evaluating folds and variants
+	 */
+	public CrossValidation(TrainingData trainingData, int foldCnt, int maxKNumber, int parallelism) {
+		if(foldCnt < 2 || foldCnt > trainingData.size()) throw new IllegalArgumentException("Number of folds has to be between 2 and the number of training patterns: "+foldCnt);
+		if(maxKNumber < 1) throw new IllegalArgumentException("Number of nearest neighbors has to be positive: "+maxKNumber);
+		if(parallelism < 1) throw new IllegalArgumentException("Number of threads has to be positive: "+parallelism);
+		
+		this.trainingData = trainingData;
+		this.foldCnt = foldCnt;
+		this.maxKNumber = maxKNumber;
+		this.parallelism = parallelism;
+		this.indexType = SpatialIndex.INDEX_NONE;
+		this.searchEffort = HnswGraph.DEFAULT_EF;
+		this.voteType = NeighborVote.VOTE_MAJORITY;
+		this.distanceKernels = new ArrayList<DistanceKernel>();
+		this.folds = assignFolds();
+		
+		for(int distanceType : DEFAULT_DISTANCE_TYPES) {
+			distanceKernels.add(DistanceKernel.forType(distanceType));
+		}
+	}
+	
+	/**
+	 * Setter for the type of the spatial index used for searching nearest neighbors.
+	 * @param indexType the indexType to set ({@code SpatialIndex.INDEX_*})
+	 */
+	public void setIndexType(int indexType) {
+		this.indexType = indexType;
+	}
+	
+	/**
+	 * Setter for the number of candidates explored by the approximate spatial index per query.
+	 * @param searchEffort the searchEffort to set
+	 */
+	public void setSearchEffort(int searchEffort) {
+		this.searchEffort = searchEffort;
+	}
+	
+	/**
+	 * Setter for the type of the vote of nearest neighbors.
+	 * @param voteType the voteType to set ({@code NeighborVote.VOTE_*})
+	 */
+	public void setVoteType(int voteType) {
+		this.voteType = voteType;
+	}
+	
+	/**
+	 * Setter for kernels of distance functions evaluated by the grid (e.g. the distance function selected by the user
+	 * with its parameters). Without it, all distance functions without parameters are evaluated.
+	 * @param distanceKernels the distanceKernels to set
+	 */
+	public void setDistanceKernels(List<DistanceKernel> distanceKernels) {
+		if(distanceKernels.isEmpty()) throw new IllegalArgumentException("At least one distance function has to be evaluated.");
+		
+		this.distanceKernels = new ArrayList<DistanceKernel>(distanceKernels);
+	}
+	
+	/**
+	 * Method evaluating all folds for all variants of the grid. Every pair of the fold and the variant is one task.
+	 * @return	results for every distance function, use of adaptive distance measures and {@code K}
+	 * @throws IndexOutOfBoundsException
+	 */
+	public List<Result> run() throws IndexOutOfBoundsException {
+		List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+		
+		for(final DistanceKernel distanceKernel : distanceKernels) {
+			for(final int useAdaptiveDistanceMeasure : ADAPTIVE_DISTANCE_MEASURE_SETTINGS) {
+				for(int f = 0; f < foldCnt; f++) {
+					final int fold = f;
+					
+					tasks.add(new Callable<int[]>() {
+						@Override
+						public int[] call() {
+							return evaluateFold(fold, distanceKernel, useAdaptiveDistanceMeasure);
+						}
+					});
+				}
+			}
+		}
+		
+		List<int[]> correctCnts = invokeAll(tasks);
+		List<Result> results = new ArrayList<Result>();
+		int task = 0;
+		
+		for(DistanceKernel distanceKernel : distanceKernels) {
+			for(int useAdaptiveDistanceMeasure : ADAPTIVE_DISTANCE_MEASURE_SETTINGS) {
+				int[] variantCorrectCnts = new int[maxKNumber];
+				
+				for(int f = 0; f < foldCnt; f++) {
+					int[] foldCorrectCnts = correctCnts.get(task++);
+					
+					for(int k = 0; k < maxKNumber; k++) {
+						variantCorrectCnts[k] += foldCorrectCnts[k];
+					}
+				}
+				
+				for(int k = 0; k < maxKNumber; k++) {
+					results.add(new Result(distanceKernel.getType(), useAdaptiveDistanceMeasure, k + 1, variantCorrectCnts[k], trainingData.size()));
+				}
+			}
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Method returning the result with the highest accuracy (the first one of equal results).
+	 * @param results	results of the cross-validation
+	 * @return	the best result
+	 */
+	public static Result getBestResult(List<Result> results) {
+		Result best = null;
+		
+		for(Result result : results) {
+			if(best == null || result.getCorrectCnt() > best.getCorrectCnt()) best = result;
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Method classifying the fold by the classifier trained on other folds. Nearest neighbors of every tested pattern
+	 * are searched once up to the maximal {@code K} and every {@code K} votes from its first neighbors.
+	 * @param fold							tested fold
+	 * @param distanceKernel				kernel of the distance function
+	 * @param useAdaptiveDistanceMeasure	specify, whether the adaptive distance measure will be used
+	 * @return	numbers of correctly classified patterns for every {@code K} (on the index {@code K - 1})
+	 */
+	private int[] evaluateFold(int fold, DistanceKernel distanceKernel, int useAdaptiveDistanceMeasure) {
+		TrainingData foldTrainingData = new TrainingData(trainingData.size());
+		List<Pattern> testingSet = new ArrayList<Pattern>();
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(folds[i] == fold) testingSet.add(new Pattern(trainingData.getVector(i), trainingData.getPatternClass(i)));
+			else foldTrainingData.addPattern(trainingData.getVector(i), trainingData.getPatternClass(i));
+		}
+		
+		Classification classification = new Classification(foldTrainingData, testingSet, maxKNumber, distanceKernel, useAdaptiveDistanceMeasure, 1);
+		classification.setIndexType(SpatialIndex.suits(indexType, distanceKernel) ? indexType : SpatialIndex.INDEX_NONE);
+		classification.setSearchEffort(searchEffort);
+		
+		NeighborVote neighborVote = new NeighborVote(voteType, distanceKernel);
+		double[] distances = new double[maxKNumber];
+		int[] correctCnts = new int[maxKNumber];
+		
+		for(Pattern p : testingSet) {
+			int[] neighbors = classification.getNearestNeighbors(p, distances);
+			
+			for(int k = 1; k <= maxKNumber; k++) {
+				String votedClass = neighborVote.voteClass(foldTrainingData, neighbors, distances, Math.min(k, neighbors.length));
+				if(p.getCorrectClass().equals(votedClass)) correctCnts[k - 1]++;
+			}
+		}
+		
+		return correctCnts;
+	}
+	
+	/**
+	 * Method assigning training patterns to folds. Patterns are shuffled and then assigned to folds in turns
+	 * class by class, so every fold has about the same number of patterns of every class.
+	 * @return	fold of every training pattern
+	 */
+	private int[] assignFolds() {
+		int size = trainingData.size();
+		Integer[] order = new Integer[size];
+		Random random = new Random(FOLD_SEED);
+		
+		for(int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		
+		for(int i = size - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			Integer swapped = order[i];
+			order[i] = order[j];
+			order[j] = swapped;
+		}
+		
+		int[] classIds = new int[size];
+		
+		for(int i = 0; i < size; i++) {
+			classIds[i] = trainingData.getClassId(i);
+		}
+		
+		final int[] keys = classIds;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Integer.compare(keys[i1], keys[i2]);
+			}
+		});
+		
+		int[] patternFolds = new int[size];
+		
+		for(int p = 0; p < size; p++) {
+			patternFolds[order[p]] = p % foldCnt;
+		}
+		
+		return patternFolds;
+	}
+	
+	/**
+	 * Method running given tasks in the {@code ForkJoinPool} with the set parallelism and returning their results.
+	 * @param tasks	tasks to run
+	 * @return	results of the tasks
+	 */
+	private List<int[]> invokeAll(List<Callable<int[]>> tasks) {
+		List<int[]> results = new ArrayList<int[]>();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		
+		try {
+			for(Future<int[]> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Cross-validation was interrupted.", e);
+		}
+		finally {
+			pool.shutdown();
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Instance of this class is the result of the cross-validation for one variant of the grid.
+	 */
+	public static class Result {
+		
+		/**
+		 * Type of the distance function.
+		 */
+		private final int distanceType;
+		
+		/**
+		 * Use of adaptive distance measures (1 - YES).
+		 */
+		private final int useAdaptiveDistanceMeasure;
+		
+		/**
+		 * Number of nearest neighbors.
+		 */
+		private final int kNumber;
+		
+		/**
+		 * Number of correctly classified patterns of all folds.
+		 */
+		private final int correctCnt;
+		
+		/**
+		 * Number of classified patterns of all folds.
+		 */
+		private final int testedCnt;
+		
+		/**
+		 * Constructor for the result.
+		 * @param distanceType					type of the distance function
+		 * @param useAdaptiveDistanceMeasure	use of adaptive distance measures
+		 * @param kNumber						number of nearest neighbors
+		 * @param correctCnt					number of correctly classified patterns
+		 * @param testedCnt						number of classified patterns
+		 */
+		public Result(int distanceType, int useAdaptiveDistanceMeasure, int kNumber, int correctCnt, int testedCnt) {
+			this.distanceType = distanceType;
+			this.useAdaptiveDistanceMeasure = useAdaptiveDistanceMeasure;
+			this.kNumber = kNumber;
+			this.correctCnt = correctCnt;
+			this.testedCnt = testedCnt;
+		}
+		
+		/**
+		 * Getter for the type of the distance function.
+		 * @return the distanceType
+		 */
+		public int getDistanceType() {
+			return distanceType;
+		}
+		
+		/**
+		 * Getter for the use of adaptive distance measures.
+		 * @return the useAdaptiveDistanceMeasure
+		 */
+		public int getUseAdaptiveDistanceMeasure() {
+			return useAdaptiveDistanceMeasure;
+		}
+		
+		/**
+		 * Getter for the number of nearest neighbors.
+		 * @return the kNumber
+		 */
+		public int getKNumber() {
+			return kNumber;
+		}
+		
+		/**
+		 * Getter for the number of correctly classified patterns.
+		 * @return the correctCnt
+		 */
+		public int getCorrectCnt() {
+			return correctCnt;
+		}
+		
+		/**
+		 * Method returning the accuracy of the variant over all folds.
+		 * @return	accuracy (a number between 0 and 1)
+		 */
+		public double getAccuracy() {
+			return ((double)correctCnt) / testedCnt;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package knn;
+
+import java.util.Arrays;
+
+/**
+ * Abstract class for the distance functions used by the classifier. Kernels work on vectors stored in arrays
+ * at given offsets (so they can scan the row-major matrix of the {@code TrainingData} directly) and return
+ * the ranking distance, which is monotonic with the real distance but may be cheaper to calculate
+ * (e.g. the squared Euclidean distance without the square root). The kernel is chosen once for the whole run
+ * via {@code forType} method (or created with its parameters and passed to the classifier), so the innermost loops
+ * don't have to decide about the distance function and their call sites see only one kernel class.
+ * Kernels declare properties, on which indexes rely: whether the distance is a metric (the triangle inequality holds,
+ * so the ball tree and bounds of compact vectors may be used) and whether the distance to the box is a useful lower bound
+ * (so the KD-tree may be used). Partial sums of all kernels never decrease, so the calculation may be always abandoned
+ * once it exceeds the limit.
+ * @author Vladimr Lznika
+ *
+ */
+public abstract class DistanceKernel {
+	
+	/**
+	 * Method returning the kernel for given type of the distance function.
+	 * Unknown types use the Euclidean distance (as the classifier always did).
+	 * @param distanceType	type of the distance function ({@code Classification.DISTANCE_*})
+	 * @return	kernel calculating given distance
+	 */
+	public static DistanceKernel forType(int distanceType) {
+		switch(distanceType) {
+		case Classification.DISTANCE_EUCLIDEAN:
+			return new EuclideanKernel();
+		case Classification.DISTANCE_MANHATTAN:
+			return new ManhattanKernel();
+		case Classification.DISTANCE_CHEBYSHEV:
+			return new ChebyshevKernel();
+		case Classification.DISTANCE_MINKOWSKI:
+			return new MinkowskiKernel(MinkowskiKernel.DEFAULT_POWER);
+		case Classification.DISTANCE_COSINE:
+			return new CosineKernel();
+		case Classification.DISTANCE_WEIGHTED:
+			throw new IllegalArgumentException("Weighted distance needs weights of features, its kernel has to be created with them.");
+		default:
+			return new EuclideanKernel();
+		}
+	}
+	
+	/**
+	 * Method returning the kernel for given type of the distance function with its parameters (as returned
+	 * by {@code getParameters}). Types without parameters ignore them.
+	 * @param distanceType	type of the distance function ({@code Classification.DISTANCE_*})
+	 * @param parameters	parameters of the distance function
+	 * @return	kernel calculating given distance
+	 */
+	public static DistanceKernel forType(int distanceType, double[] parameters) {
+		if(distanceType == Classification.DISTANCE_MINKOWSKI && parameters.length > 0) return new MinkowskiKernel(parameters[0]);
+		if(distanceType == Classification.DISTANCE_WEIGHTED) return new WeightedEuclideanKernel(parameters);
+		
+		return forType(distanceType);
+	}
+	
+	/**
+	 * Method returning the type of the distance function calculated by the kernel.
+	 * @return	type of the distance function ({@code Classification.DISTANCE_*})
+	 */
+	public abstract int getType();
+	
+	/**
+	 * Method returning the signature of the distance function including its parameters. Kernels with different signatures
+	 * calculate different distances, but the signature is only a hash of parameters, so equal signatures have to be
+	 * confirmed by {@code isSameFunction} where it matters.
+	 * @return	signature of the distance function (the type for kernels without parameters)
+	 */
+	public int getSignature() {
+		return getType();
+	}
+	
+	/**
+	 * Method returning parameters of the distance function, so the same kernel can be created by {@code forType}.
+	 * @return	parameters of the distance function (empty for kernels without parameters)
+	 */
+	public double[] getParameters() {
+		return new double[0];
+	}
+	
+	/**
+	 * Method checking, whether the kernel calculates the distance function of given type with exactly the same parameters
+	 * (it's used to recognize stored adaptive distance measures and kernels of shard workers).
+	 * @param type			type of the distance function ({@code Classification.DISTANCE_*})
+	 * @param parameters	parameters of the distance function
+	 * @return	true if the kernel calculates the same distances
+	 */
+	public boolean isSameFunction(int type, double[] parameters) {
+		return getType() == type && Arrays.equals(getParameters(), parameters);
+	}
+	
+	/**
+	 * Method returning whether the distance is a metric (the triangle inequality holds). Ball tree and compact vectors
+	 * with error bounds can be used only with metric distances.
+	 * @return	true for metric distances
+	 */
+	public boolean isMetric() {
+		return true;
+	}
+	
+	/**
+	 * Method returning whether {@code boxRank} is a useful lower bound of distances to vectors inside the box.
+	 * Kernels without it return 0.0 from {@code boxRank} (it's still a valid bound, but the KD-tree can't prune anything).
+	 * @return	true if the distance to the box bounds distances to vectors inside it
+	 */
+	public boolean hasBoxBound() {
+		return true;
+	}
+	
+	/**
+	 * Method checking, whether the kernel can compare vectors of given dimension (e.g. it has weights for all features).
+	 * @param dimension	dimension of compared vectors
+	 * @throws IndexOutOfBoundsException if the kernel can't compare vectors of given dimension
+	 */
+	public void checkDimension(int dimension) throws IndexOutOfBoundsException {
+	}
+	
+	/**
+	 * Method calculating the ranking distance between two vectors stored in given arrays. Calculation is abandoned
+	 * once the partial sum exceeds given limit. Dimensions of the vectors have to be checked by the caller.
+	 * @param vectors1		array of double values containing the first vector
+	 * @param offset1		offset of the first vector in the array
+	 * @param vectors2		array of double values containing the second vector
+	 * @param offset2		offset of the second vector in the array
+	 * @param dimension		dimension of the vectors
+	 * @param rankLimit		ranking distance, above which the exact value is not needed
+	 * @return	ranking distance between given vectors or positive infinity if it exceeds the limit
+	 */
+	public abstract double rank(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension, double rankLimit);
+	
+	/**
+	 * Method calculating the ranking distance between the vector and the vector stored in single precision.
+	 * Calculation is abandoned once the partial sum exceeds given limit.
+	 * @param vector		array of double values representing the first vector
+	 * @param vectors2		array of float values containing the second vector
+	 * @param offset2		offset of the second vector in the array
+	 * @param dimension		dimension of the vectors
+	 * @param rankLimit		ranking distance, above which the exact value is not needed
+	 * @return	ranking distance between given vectors or positive infinity if it exceeds the limit
+	 */
+	public abstract double rank(double[] vector, float[] vectors2, int offset2, int dimension, double rankLimit);
+	
+	/**
+	 * Method calculating the ranking distance between the vector and the vector quantized to 16-bit codes. The first vector
+	 * has to be already converted to the scale of the codes (value {@code (x - min) / scale} shifted like the codes),
+	 * differences are multiplied back by scales of the dimensions. Calculation is abandoned once the partial sum exceeds given limit.
+	 * Compact vectors are used only with metric distances (see {@code isMetric}), so only metric kernels override this method.
+	 * @param scaledVector	array of double values representing the first vector converted to the scale of the codes
+	 * @param scales		scales of the dimensions (difference of values represented by neighboring codes)
+	 * @param codes			array of codes containing the second vector
+	 * @param offset2		offset of the second vector in the array
+	 * @param dimension		dimension of the vectors
+	 * @param rankLimit		ranking distance, above which the exact value is not needed
+	 * @return	ranking distance between given vectors or positive infinity if it exceeds the limit
+	 * @throws UnsupportedOperationException if the distance can't be calculated from quantized vectors
+	 */
+	public double rank(double[] scaledVector, double[] scales, short[] codes, int offset2, int dimension, double rankLimit) {
+		throw new UnsupportedOperationException("Distance of the type "+getType()+" can't be calculated from quantized vectors.");
+	}
+	
+	/**
+	 * Method calculating the ranking distance between the vector and the vector quantized to 8-bit codes
+	 * in the same way as for 16-bit codes (only metric kernels override this method).
+	 * @param scaledVector	array of double values representing the first vector converted to the scale of the codes
+	 * @param scales		scales of the dimensions (difference of values represented by neighboring codes)
+	 * @param codes			array of codes containing the second vector
+	 * @param offset2		offset of the second vector in the array
+	 * @param dimension		dimension of the vectors
+	 * @param rankLimit		ranking distance, above which the exact value is not needed
+	 * @return	ranking distance between given vectors or positive infinity if it exceeds the limit
+	 * @throws UnsupportedOperationException if the distance can't be calculated from quantized vectors
+	 */
+	public double rank(double[] scaledVector, double[] scales, byte[] codes, int offset2, int dimension, double rankLimit) {
+		throw new UnsupportedOperationException("Distance of the type "+getType()+" can't be calculated from quantized vectors.");
+	}
+	
+	/**
+	 * Method calculating the ranking distance from the vector to the nearest point of the axis-aligned box.
+	 * It's the lower bound of distances to all vectors inside the box.
+	 * @param vector		array of double values representing the vector
+	 * @param boxMin		array containing the lower corner of the box
+	 * @param boxMax		array containing the upper corner of the box
+	 * @param boxOffset		offset of the box corners in their arrays
+	 * @param dimension		dimension of the vectors
+	 * @return	ranking distance to the box (0.0 if the vector is inside)
+	 */
+	public abstract double boxRank(double[] vector, double[] boxMin, double[] boxMax, int boxOffset, int dimension);
+	
+	/**
+	 * Method converting the ranking distance to the real distance.
+	 * @param rank	ranking distance
+	 * @return	real distance
+	 */
+	public abstract double toDistance(double rank);
+	
+	/**
+	 * Method converting the real distance to the ranking distance.
+	 * @param distance	real distance
+	 * @return	ranking distance
+	 */
+	public abstract double toRank(double distance);
+	
+	/**
+	 * Method calculating the real distance between two vectors stored in given arrays.
+	 * @param vectors1		array of double values containing the first vector
+	 * @param offset1		offset of the first vector in the array
+	 * @param vectors2		array of double values containing the second vector
+	 * @param offset2		offset of the second vector in the array
+	 * @param dimension		dimension of the vectors
+	 * @return	distance between given vectors
+	 */
+	public double distance(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension) {
+		return toDistance(rank(vectors1, offset1, vectors2, offset2, dimension, Double.POSITIVE_INFINITY));
+	}
+}
@@ -0,0 +1,140 @@
+package knn;
+
+/**
+ * Kernel calculating the Euclidean distance. Its ranking distance is the squared Euclidean distance,
+ * so no square root is calculated while the neighbors are being selected. The loop is unrolled by four dimensions
+ * and the limit is checked once per four dimensions, the order of the summation is the same as in the plain loop.
+ * @author Vladimr Lznika
+ *
+ */
+public class EuclideanKernel extends DistanceKernel {
+	
+	@Override
+	public int getType() {
+		return Classification.DISTANCE_EUCLIDEAN;
+	}
+	
+	@Override
+	public double rank(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			double diff0 = vectors1[offset1 + i] - vectors2[offset2 + i];
+			double diff1 = vectors1[offset1 + i + 1] - vectors2[offset2 + i + 1];
+			double diff2 = vectors1[offset1 + i + 2] - vectors2[offset2 + i + 2];
+			double diff3 = vectors1[offset1 + i + 3] - vectors2[offset2 + i + 3];
+			sum += diff0 * diff0;
+			sum += diff1 * diff1;
+			sum += diff2 * diff2;
+			sum += diff3 * diff3;
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			double diff = vectors1[offset1 + i] - vectors2[offset2 + i];
+			sum += diff * diff;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] vector, float[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			double diff0 = vector[i] - vectors2[offset2 + i];
+			double diff1 = vector[i + 1] - vectors2[offset2 + i + 1];
+			double diff2 = vector[i + 2] - vectors2[offset2 + i + 2];
+			double diff3 = vector[i + 3] - vectors2[offset2 + i + 3];
+			sum += diff0 * diff0;
+			sum += diff1 * diff1;
+			sum += diff2 * diff2;
+			sum += diff3 * diff3;
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			double diff = vector[i] - vectors2[offset2 + i];
+			sum += diff * diff;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, short[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			double diff0 = (scaledVector[i] - codes[offset2 + i]) * scales[i];
+			double diff1 = (scaledVector[i + 1] - codes[offset2 + i + 1]) * scales[i + 1];
+			double diff2 = (scaledVector[i + 2] - codes[offset2 + i + 2]) * scales[i + 2];
+			double diff3 = (scaledVector[i + 3] - codes[offset2 + i + 3]) * scales[i + 3];
+			sum += diff0 * diff0;
+			sum += diff1 * diff1;
+			sum += diff2 * diff2;
+			sum += diff3 * diff3;
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			double diff = (scaledVector[i] - codes[offset2 + i]) * scales[i];
+			sum += diff * diff;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, byte[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			double diff0 = (scaledVector[i] - codes[offset2 + i]) * scales[i];
+			double diff1 = (scaledVector[i + 1] - codes[offset2 + i + 1]) * scales[i + 1];
+			double diff2 = (scaledVector[i + 2] - codes[offset2 + i + 2]) * scales[i + 2];
+			double diff3 = (scaledVector[i + 3] - codes[offset2 + i + 3]) * scales[i + 3];
+			sum += diff0 * diff0;
+			sum += diff1 * diff1;
+			sum += diff2 * diff2;
+			sum += diff3 * diff3;
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			double diff = (scaledVector[i] - codes[offset2 + i]) * scales[i];
+			sum += diff * diff;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double boxRank(double[] vector, double[] boxMin, double[] boxMax, int boxOffset, int dimension) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = 0.0;
+			if(vector[i] < boxMin[boxOffset + i]) diff = boxMin[boxOffset + i] - vector[i];
+			else if(vector[i] > boxMax[boxOffset + i]) diff = vector[i] - boxMax[boxOffset + i];
+			sum += diff * diff;
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public double toDistance(double rank) {
+		return Math.sqrt(rank);
+	}
+	
+	@Override
+	public double toRank(double distance) {
+		return distance * distance;
+	}
+}
@@ -0,0 +1,713 @@
+package knn;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Hierarchical navigable small world graph (HNSW) over the training data - the approximate spatial index. Every indexed
+ * pattern is a node linked to its near patterns in several layers: all nodes are in the bottom layer and every higher layer
+ * holds exponentially smaller random part of the nodes, so its links are longer. The query descends greedily from the top
+ * layer and then explores the bottom layer with the list of {@code ef} best candidates, the larger {@code ef}
+ * the higher recall and the slower query. Unlike trees, the graph doesn't guarantee exact neighbors, but the number of
+ * calculated distances grows roughly logarithmically with the size of the training set even for high dimensions.
+ * Candidates are found by the ranking distance, adaptive distance measures are applied only to the found candidates.
+ * Nodes are identified by their position in the permutation, links are stored in one array per node
+ * (blocks {@code count, links...} for every layer of the node) together with their ranking distances. During the building,
+ * the node may have up to twice the maximal number of links, then they are pruned to the maximal number at once.
+ * @author Vladimr Lznika
+ *
+ */
+public class HnswGraph extends SpatialIndex {
+	
+	/**
+	 * Default number of candidates explored by the query.
+	 */
+	public static final int DEFAULT_EF = 64;
+	
+	/**
+	 * Maximal number of links of the node in higher layers.
+	 */
+	private static final int MAX_LINKS = 16;
+	
+	/**
+	 * Maximal number of links of the node in the bottom layer.
+	 */
+	private static final int MAX_BOTTOM_LINKS = 2 * MAX_LINKS;
+	
+	/**
+	 * Number of candidates explored when the node is inserted.
+	 */
+	private static final int EF_CONSTRUCTION = 40;
+	
+	/**
+	 * Seed of the random generator of node layers (the graph is the same for the same training data).
+	 */
+	private static final long RANDOM_SEED = 42;
+	
+	/**
+	 * Multiplier of the random layer of the node.
+	 */
+	private static final double LEVEL_MULTIPLIER = 1.0 / Math.log(MAX_LINKS);
+	
+	/**
+	 * Links of the nodes in all their layers.
+	 */
+	private final int[][] links;
+	
+	/**
+	 * Ranking distances of the links (on the same positions as the links).
+	 */
+	private final double[][] linkRanks;
+	
+	/**
+	 * Number of candidates explored by the query.
+	 */
+	private final int ef;
+	
+	/**
+	 * Scratch state of the queries for every thread.
+	 */
+	private final ThreadLocal<SearchState> searchStates;
+	
+	/**
+	 * Node, from which all queries start.
+	 */
+	private int entryPoint;
+	
+	/**
+	 * Highest layer of the graph.
+	 */
+	private int maxLevel;
+	
+	/**
+	 * Constructor building the graph over given training patterns. Nodes are inserted in the order of the indices.
+	 * @param trainingData					training data to index
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indices						indices of indexed training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 * @param ef							number of candidates explored by the query
+	 */
+	public HnswGraph(TrainingData trainingData, DistanceKernel distanceKernel, int[] indices, boolean useAdaptiveDistanceMeasures, int ef) {
+		super(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+		
+		if(ef < 1) throw new IllegalArgumentException("Number of explored candidates has to be positive: "+ef);
+		
+		this.links = new int[indices.length][];
+		this.linkRanks = new double[indices.length][];
+		this.ef = ef;
+		this.searchStates = createSearchStates(indices.length);
+		this.entryPoint = -1;
+		this.maxLevel = -1;
+		
+		Random random = new Random(RANDOM_SEED);
+		SearchState state = searchStates.get();
+		
+		for(int node = 0; node < indices.length; node++) {
+			insert(node, (int)(-Math.log(1.0 - random.nextDouble()) * LEVEL_MULTIPLIER), state);
+		}
+		
+		for(int node = 0; node < indices.length; node++) {
+			for(int level = 0; blockOffset(level) < links[node].length; level++) {
+				pruneLinks(node, level, state);
+			}
+		}
+	}
+	
+	/**
+	 * Constructor restoring the graph from the snapshot (links are read in the order written by {@code writeNodes}).
+	 * @param trainingData					indexed training data
+	 * @param distanceKernel				kernel of the distance function
+	 * @param permutation					indices of the training patterns in the order of the nodes
+	 * @param rankMeasures					ranking adaptive distance measures of the training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 * @param input							input of the snapshot
+	 * @throws IOException if the snapshot is damaged
+	 */
+	HnswGraph(TrainingData trainingData, DistanceKernel distanceKernel, int[] permutation, double[] rankMeasures, boolean useAdaptiveDistanceMeasures,
+			ModelSnapshot.Input input) throws IOException {
+		super(trainingData, distanceKernel, permutation, rankMeasures, useAdaptiveDistanceMeasures);
+		
+		this.ef = input.readInt();
+		this.entryPoint = input.readInt();
+		this.maxLevel = input.readInt();
+		this.links = new int[permutation.length][];
+		this.linkRanks = new double[permutation.length][];
+		this.searchStates = createSearchStates(permutation.length);
+		
+		int[] lengths = input.readInts();
+		int[] flatLinks = input.readInts();
+		double[] flatRanks = input.readDoubles();
+		
+		if(ef < 1 || entryPoint < -1 || entryPoint >= permutation.length || lengths.length != permutation.length || flatRanks.length != flatLinks.length) {
+			throw new IOException("Snapshot is damaged (graph doesn't match the training data).");
+		}
+		
+		int position = 0;
+		
+		for(int node = 0; node < permutation.length; node++) {
+			if(lengths[node] < 0 || (long)position + lengths[node] > flatLinks.length) throw new IOException("Snapshot is damaged (links of the graph are too short).");
+			if(getLevelCnt(lengths[node]) < 0) throw new IOException("Snapshot is damaged (links of the node "+node+" don't form whole layers).");
+			
+			links[node] = Arrays.copyOfRange(flatLinks, position, position + lengths[node]);
+			linkRanks[node] = Arrays.copyOfRange(flatRanks, position, position + lengths[node]);
+			position += lengths[node];
+		}
+		
+		if((entryPoint < 0) ? (maxLevel != -1 || permutation.length > 0) : (getLevelCnt(links[entryPoint].length) != maxLevel + 1)) {
+			throw new IOException("Snapshot is damaged (entry point of the graph isn't in its highest layer).");
+		}
+		
+		checkLinks();
+	}
+	
+	@Override
+	public int getType() {
+		return INDEX_HNSW;
+	}
+	
+	@Override
+	protected void writeNodes(ModelSnapshot.Output output) throws IOException {
+		int[] lengths = new int[links.length];
+		int linkCnt = 0;
+		
+		for(int node = 0; node < links.length; node++) {
+			lengths[node] = links[node].length;
+			linkCnt += lengths[node];
+		}
+		
+		int[] flatLinks = new int[linkCnt];
+		double[] flatRanks = new double[linkCnt];
+		int position = 0;
+		
+		for(int node = 0; node < links.length; node++) {
+			System.arraycopy(links[node], 0, flatLinks, position, lengths[node]);
+			System.arraycopy(linkRanks[node], 0, flatRanks, position, lengths[node]);
+			position += lengths[node];
+		}
+		
+		output.writeInt(ef);
+		output.writeInt(entryPoint);
+		output.writeInt(maxLevel);
+		output.writeInts(lengths, lengths.length);
+		output.writeInts(flatLinks, linkCnt);
+		output.writeDoubles(flatRanks, linkCnt);
+	}
+	
+	@Override
+	public void search(double[] vector, NeighborSelector neighborSelector) {
+		if(entryPoint < 0) return;
+		
+		SearchState state = searchStates.get();
+		state.distanceCnt = 0;
+		int entry = descend(vector, 0, entryPoint, 0, state);
+		NeighborSelector candidates = searchLayer(vector, 0, entry, state.descendRank, Math.max(ef, neighborSelector.getCapacity()), 0, state);
+		
+		for(int c = 0; c < candidates.size(); c++) {
+			int i = permutation[candidates.getIndex(c)];
+			if(contains(i)) neighborSelector.offer(i, candidates.getDistance(c) / rankMeasures[i]);
+		}
+		
+		neighborSelector.countDistances(state.distanceCnt);
+	}
+	
+	/**
+	 * Method inserting the node to the graph. It's linked to its nearest nodes (chosen by the heuristic preferring
+	 * diverse directions and completed by the nearest remaining ones) in all its layers and these nodes are linked back to it.
+	 * @param node	inserted node
+	 * @param level	highest layer of the node
+	 * @param state	scratch state
+	 */
+	private void insert(int node, int level, SearchState state) {
+		links[node] = new int[blockOffset(level + 1)];
+		linkRanks[node] = new double[blockOffset(level + 1)];
+		
+		if(entryPoint < 0) {
+			entryPoint = node;
+			maxLevel = level;
+			return;
+		}
+		
+		double[] vectors = trainingData.getVectors();
+		int offset = nodeOffset(node);
+		int entry = descend(vectors, offset, entryPoint, level, state);
+		double entryRank = state.descendRank;
+		
+		for(int l = Math.min(level, maxLevel); l >= 0; l--) {
+			NeighborSelector candidates = searchLayer(vectors, offset, entry, entryRank, EF_CONSTRUCTION, l, state);
+			candidates.sortNeighbors();
+			entry = candidates.getIndex(0);
+			entryRank = candidates.getDistance(0);
+			
+			int candidateCnt = candidates.size();
+			int[] candidateNodes = state.getCandidateNodes(candidateCnt);
+			double[] candidateRanks = state.getCandidateRanks(candidateCnt);
+			
+			for(int c = 0; c < candidateCnt; c++) {
+				candidateNodes[c] = candidates.getIndex(c);
+				candidateRanks[c] = candidates.getDistance(c);
+			}
+			
+			int linkCnt = selectLinks(candidateNodes, candidateRanks, candidateCnt, maxLinks(l));
+			int block = blockOffset(l);
+			links[node][block] = linkCnt;
+			System.arraycopy(candidateNodes, 0, links[node], block + 1, linkCnt);
+			System.arraycopy(candidateRanks, 0, linkRanks[node], block + 1, linkCnt);
+			
+			for(int c = 0; c < linkCnt; c++) {
+				addLink(links[node][block + 1 + c], node, linkRanks[node][block + 1 + c], l, state);
+			}
+		}
+		
+		if(level > maxLevel) {
+			entryPoint = node;
+			maxLevel = level;
+		}
+	}
+	
+	/**
+	 * Method adding the link to the node. If the node has already twice the maximal number of links in the layer,
+	 * they are pruned to the maximal number.
+	 * @param node		node, which gets the link
+	 * @param linked	linked node
+	 * @param rank		ranking distance of the linked node
+	 * @param level		layer of the link
+	 * @param state		scratch state
+	 */
+	private void addLink(int node, int linked, double rank, int level, SearchState state) {
+		int[] nodeLinks = links[node];
+		double[] nodeLinkRanks = linkRanks[node];
+		int block = blockOffset(level);
+		
+		if(nodeLinks[block] == 2 * maxLinks(level)) pruneLinks(node, level, state);
+		
+		int linkCnt = nodeLinks[block];
+		nodeLinks[block + 1 + linkCnt] = linked;
+		nodeLinkRanks[block + 1 + linkCnt] = rank;
+		nodeLinks[block] = linkCnt + 1;
+	}
+	
+	/**
+	 * Method pruning links of the node in the layer to the maximal number. Links are selected again
+	 * from the current ones (by the same heuristic as links of the inserted node).
+	 * @param node	node, which links are pruned
+	 * @param level	layer of the links
+	 * @param state	scratch state
+	 */
+	private void pruneLinks(int node, int level, SearchState state) {
+		int[] nodeLinks = links[node];
+		double[] nodeLinkRanks = linkRanks[node];
+		int block = blockOffset(level);
+		int linkCnt = nodeLinks[block];
+		
+		if(linkCnt <= maxLinks(level)) return;
+		
+		int[] candidateNodes = state.getCandidateNodes(linkCnt);
+		double[] candidateRanks = state.getCandidateRanks(linkCnt);
+		
+		for(int c = 0; c < linkCnt; c++) {
+			int candidate = nodeLinks[block + 1 + c];
+			double candidateRank = nodeLinkRanks[block + 1 + c];
+			int position = c;
+			
+			while(position > 0 && candidateRanks[position - 1] > candidateRank) {
+				candidateNodes[position] = candidateNodes[position - 1];
+				candidateRanks[position] = candidateRanks[position - 1];
+				position--;
+			}
+			
+			candidateNodes[position] = candidate;
+			candidateRanks[position] = candidateRank;
+		}
+		
+		int selectedCnt = selectLinks(candidateNodes, candidateRanks, linkCnt, maxLinks(level));
+		nodeLinks[block] = selectedCnt;
+		System.arraycopy(candidateNodes, 0, nodeLinks, block + 1, selectedCnt);
+		System.arraycopy(candidateRanks, 0, nodeLinkRanks, block + 1, selectedCnt);
+	}
+	
+	/**
+	 * Method selecting links from candidates sorted by their ranking distance from the linked node. Candidate is selected
+	 * only if it's nearer to the linked node than to all already selected candidates, so links lead to different directions.
+	 * Remaining places are filled by the nearest rejected candidates. Selected candidates are moved to the start of the arrays
+	 * (in the order of their distance).
+	 * @param candidateNodes	candidate nodes sorted by the distance
+	 * @param candidateRanks	ranking distances of the candidates from the linked node
+	 * @param candidateCnt		number of candidates
+	 * @param maxLinkCnt		maximal number of selected candidates
+	 * @return	number of selected candidates
+	 */
+	private int selectLinks(int[] candidateNodes, double[] candidateRanks, int candidateCnt, int maxLinkCnt) {
+		double[] vectors = trainingData.getVectors();
+		int dimension = trainingData.getDimension();
+		int selectedCnt = 0;
+		
+		for(int c = 0; c < candidateCnt && selectedCnt < maxLinkCnt; c++) {
+			int offset = nodeOffset(candidateNodes[c]);
+			boolean diverse = true;
+			
+			for(int s = 0; s < selectedCnt && diverse; s++) {
+				double rank = distanceKernel.rank(vectors, offset, vectors, nodeOffset(candidateNodes[s]), dimension, candidateRanks[c]);
+				if(rank < candidateRanks[c]) diverse = false;
+			}
+			
+			if(diverse) {
+				int node = candidateNodes[c];
+				double rank = candidateRanks[c];
+				
+				for(int r = c; r > selectedCnt; r--) {
+					candidateNodes[r] = candidateNodes[r - 1];
+					candidateRanks[r] = candidateRanks[r - 1];
+				}
+				
+				candidateNodes[selectedCnt] = node;
+				candidateRanks[selectedCnt] = rank;
+				selectedCnt++;
+			}
+		}
+		
+		return Math.min(candidateCnt, maxLinkCnt);
+	}
+	
+	/**
+	 * Method descending greedily from the top layer to the layer above given one. In every layer it moves
+	 * to the linked node nearer to the query while there is any. Ranking distance of the found node is stored to the state.
+	 * @param query			array with the query vector
+	 * @param queryOffset	offset of the query vector in the array
+	 * @param entry			node, from which the descent starts
+	 * @param level			layer, above which the descent stops
+	 * @param state			scratch state
+	 * @return	the nearest found node
+	 */
+	private int descend(double[] query, int queryOffset, int entry, int level, SearchState state) {
+		double[] vectors = trainingData.getVectors();
+		int dimension = trainingData.getDimension();
+		int current = entry;
+		double currentRank = distanceKernel.rank(query, queryOffset, vectors, nodeOffset(current), dimension, Double.POSITIVE_INFINITY);
+		int evaluatedCnt = 1;
+		
+		for(int l = maxLevel; l > level; l--) {
+			boolean moved = true;
+			
+			while(moved) {
+				moved = false;
+				int[] nodeLinks = links[current];
+				int block = blockOffset(l);
+				
+				for(int j = 1; j <= nodeLinks[block]; j++) {
+					int neighbor = nodeLinks[block + j];
+					double rank = distanceKernel.rank(query, queryOffset, vectors, nodeOffset(neighbor), dimension, currentRank);
+					evaluatedCnt++;
+					
+					if(rank < currentRank) {
+						current = neighbor;
+						currentRank = rank;
+						moved = true;
+					}
+				}
+			}
+		}
+		
+		state.descendRank = currentRank;
+		state.distanceCnt += evaluatedCnt;
+		return current;
+	}
+	
+	/**
+	 * Method exploring one layer from the entry node. Candidates are explored from the nearest one, their linked nodes
+	 * become candidates if they are nearer than the worst of {@code ef} found nodes. It stops when the nearest unexplored
+	 * candidate is further than all found nodes.
+	 * @param query			array with the query vector
+	 * @param queryOffset	offset of the query vector in the array
+	 * @param entry			entry node of the layer
+	 * @param entryRank		ranking distance of the entry node
+	 * @param ef			number of found nodes
+	 * @param level			explored layer
+	 * @param state			scratch state
+	 * @return	selector with found nodes (valid until the next exploration by the thread)
+	 */
+	private NeighborSelector searchLayer(double[] query, int queryOffset, int entry, double entryRank, int ef, int level, SearchState state) {
+		double[] vectors = trainingData.getVectors();
+		int dimension = trainingData.getDimension();
+		NeighborSelector found = state.getFound(ef);
+		int evaluatedCnt = 0;
+		
+		state.startSearch();
+		state.visit(entry);
+		state.push(entry, entryRank);
+		found.offer(entry, entryRank);
+		
+		while(state.queueSize > 0 && state.queueRanks[0] <= found.worstDistance()) {
+			int node = state.pop();
+			int[] nodeLinks = links[node];
+			int block = blockOffset(level);
+			
+			for(int j = 1; j <= nodeLinks[block]; j++) {
+				int neighbor = nodeLinks[block + j];
+				if(!state.visit(neighbor)) continue;
+				
+				double rank = distanceKernel.rank(query, queryOffset, vectors, nodeOffset(neighbor), dimension, found.worstDistance());
+				evaluatedCnt++;
+				if(rank != Double.POSITIVE_INFINITY && found.offer(neighbor, rank)) state.push(neighbor, rank);
+			}
+		}
+		
+		state.distanceCnt += evaluatedCnt;
+		return found;
+	}
+	
+	/**
+	 * Method returning the offset of the node vector in the matrix of vectors.
+	 * @param node	node of the graph
+	 * @return	offset of the vector
+	 */
+	private int nodeOffset(int node) {
+		return trainingData.getOffset(permutation[node]);
+	}
+	
+	/**
+	 * Method creating the scratch states of the queries for every thread.
+	 * @param nodeCnt	number of nodes in the graph
+	 * @return	thread-local scratch states
+	 */
+	private static ThreadLocal<SearchState> createSearchStates(final int nodeCnt) {
+		return new ThreadLocal<SearchState>() {
+			@Override
+			protected SearchState initialValue() {
+				return new SearchState(nodeCnt);
+			}
+		};
+	}
+	
+	/**
+	 * Method checking links of the restored graph. Every layer of the node may hold at most twice the maximal number of links
+	 * and every link has to lead to the node, which has the same layer, so the queries can't leave the graph.
+	 * @throws IOException if the snapshot is damaged
+	 */
+	private void checkLinks() throws IOException {
+		for(int node = 0; node < links.length; node++) {
+			int[] nodeLinks = links[node];
+			
+			for(int level = 0; blockOffset(level) < nodeLinks.length; level++) {
+				int block = blockOffset(level);
+				if(nodeLinks[block] < 0 || nodeLinks[block] > 2 * maxLinks(level)) throw new IOException("Snapshot is damaged (invalid number of links of the node "+node+").");
+				
+				for(int j = 1; j <= nodeLinks[block]; j++) {
+					int neighbor = nodeLinks[block + j];
+					
+					if(neighbor < 0 || neighbor >= links.length || links[neighbor].length <= block) {
+						throw new IOException("Snapshot is damaged (invalid link of the node "+node+").");
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method returning the number of layers of the node with given length of the array of links.
+	 * @param length	length of the array of node links
+	 * @return	number of layers or -1 if the length doesn't match any number of whole layers
+	 */
+	private static int getLevelCnt(int length) {
+		int levelCnt = 1;
+		
+		while(blockOffset(levelCnt) < length) {
+			levelCnt++;
+		}
+		
+		return (blockOffset(levelCnt) == length) ? levelCnt : -1;
+	}
+	
+	/**
+	 * Method returning the maximal number of links in given layer.
+	 * @param level	layer of the graph
+	 * @return	maximal number of links
+	 */
+	private static int maxLinks(int level) {
+		return (level == 0) ? MAX_BOTTOM_LINKS : MAX_LINKS;
+	}
+	
+	/**
+	 * Method returning the position of the block of links of given layer in the array of node links
+	 * (every block has space for twice the maximal number of links).
+	 * @param level	layer of the graph
+	 * @return	position of the block
+	 */
+	private static int blockOffset(int level) {
+		return (level == 0) ? 0 : (2 * MAX_BOTTOM_LINKS + 1) + (level - 1) * (2 * MAX_LINKS + 1);
+	}
+	
+	/**
+	 * Instance of this class holds the scratch state of the graph exploration of one thread: marks of visited nodes,
+	 * the queue of candidates ordered by the ranking distance (binary min-heap) and the selector of found nodes.
+	 */
+	private static class SearchState {
+		
+		/**
+		 * Search number of the last visit of the node.
+		 */
+		private final int[] visits;
+		
+		/**
+		 * Number of the current search.
+		 */
+		private int searchNumber;
+		
+		/**
+		 * Nodes in the queue of candidates.
+		 */
+		private int[] queueNodes;
+		
+		/**
+		 * Ranking distances of the nodes in the queue of candidates.
+		 */
+		private double[] queueRanks;
+		
+		/**
+		 * Number of nodes in the queue of candidates.
+		 */
+		private int queueSize;
+		
+		/**
+		 * Selector of the found nodes.
+		 */
+		private NeighborSelector found;
+		
+		/**
+		 * Ranking distance of the node found by the last descent.
+		 */
+		private double descendRank;
+		
+		/**
+		 * Number of distances evaluated since the start of the current query.
+		 */
+		private long distanceCnt;
+		
+		/**
+		 * Temporary array for candidate links.
+		 */
+		private int[] candidateNodes;
+		
+		/**
+		 * Temporary array for ranking distances of candidate links.
+		 */
+		private double[] candidateRanks;
+		
+		/**
+		 * Constructor for the state.
+		 * @param nodeCnt	number of nodes of the graph
+		 */
+		public SearchState(int nodeCnt) {
+			this.visits = new int[nodeCnt];
+			this.searchNumber = 0;
+			this.queueNodes = new int[64];
+			this.queueRanks = new double[64];
+			this.queueSize = 0;
+			this.candidateNodes = new int[0];
+			this.candidateRanks = new double[0];
+		}
+		
+		/**
+		 * Method returning the empty selector for given number of found nodes.
+		 * @param ef	number of found nodes
+		 * @return	the selector
+		 */
+		public NeighborSelector getFound(int ef) {
+			if(found == null || found.getCapacity() != ef) found = new NeighborSelector(ef);
+			found.reset();
+			return found;
+		}
+		
+		/**
+		 * Method preparing the state for the new search (no node is visited and the queue is empty).
+		 */
+		public void startSearch() {
+			queueSize = 0;
+			
+			if(++searchNumber == Integer.MAX_VALUE) {
+				Arrays.fill(visits, 0);
+				searchNumber = 1;
+			}
+		}
+		
+		/**
+		 * Method marking the node as visited.
+		 * @param node	visited node
+		 * @return	false if the node was already visited in this search
+		 */
+		public boolean visit(int node) {
+			if(visits[node] == searchNumber) return false;
+			visits[node] = searchNumber;
+			return true;
+		}
+		
+		/**
+		 * Method adding the node to the queue of candidates.
+		 * @param node	added node
+		 * @param rank	ranking distance of the node
+		 */
+		public void push(int node, double rank) {
+			if(queueSize == queueNodes.length) {
+				queueNodes = Arrays.copyOf(queueNodes, 2 * queueSize);
+				queueRanks = Arrays.copyOf(queueRanks, 2 * queueSize);
+			}
+			
+			int i = queueSize++;
+			
+			while(i > 0) {
+				int parent = (i - 1) >>> 1;
+				if(queueRanks[parent] <= rank) break;
+				queueNodes[i] = queueNodes[parent];
+				queueRanks[i] = queueRanks[parent];
+				i = parent;
+			}
+			
+			queueNodes[i] = node;
+			queueRanks[i] = rank;
+		}
+		
+		/**
+		 * Method removing the nearest node from the queue of candidates.
+		 * @return	the nearest node
+		 */
+		public int pop() {
+			int top = queueNodes[0];
+			int node = queueNodes[--queueSize];
+			double rank = queueRanks[queueSize];
+			int i = 0;
+			int child;
+			
+			while((child = 2 * i + 1) < queueSize) {
+				if(child + 1 < queueSize && queueRanks[child + 1] < queueRanks[child]) child++;
+				if(queueRanks[child] >= rank) break;
+				queueNodes[i] = queueNodes[child];
+				queueRanks[i] = queueRanks[child];
+				i = child;
+			}
+			
+			queueNodes[i] = node;
+			queueRanks[i] = rank;
+			return top;
+		}
+		
+		/**
+		 * Method returning the temporary array for candidate links.
+		 * @param size	required size
+		 * @return	the array
+		 */
+		public int[] getCandidateNodes(int size) {
+			if(candidateNodes.length < size) candidateNodes = new int[size];
+			return candidateNodes;
+		}
+		
+		/**
+		 * Method returning the temporary array for ranking distances of candidate links.
+		 * @param size	required size
+		 * @return	the array
+		 */
+		public double[] getCandidateRanks(int size) {
+			if(candidateRanks.length < size) candidateRanks = new double[size];
+			return candidateRanks;
+		}
+	}
+}
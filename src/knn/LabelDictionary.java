@@ -0,0 +1,95 @@
+package knn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Instance of this class translates class labels of the patterns to integer identifiers and back.
+ * Identifiers are assigned in the order, in which labels were added (from 0), so they can be used
+ * as indices to arrays.
+ * @author Vladimr Lznika
+ *
+ */
+public class LabelDictionary {
+	
+	/**
+	 * Map from the label to its identifier.
+	 */
+	private final HashMap<String, Integer> ids;
+	
+	/**
+	 * Labels on the index of their identifier.
+	 */
+	private final ArrayList<String> labels;
+	
+	/**
+	 * Constructor for the empty dictionary.
+	 */
+	public LabelDictionary() {
+		this.ids = new HashMap<String, Integer>();
+		this.labels = new ArrayList<String>();
+	}
+	
+	/**
+	 * Constructor for the copy of the dictionary.
+	 * @param labelDictionary	copied dictionary
+	 */
+	public LabelDictionary(LabelDictionary labelDictionary) {
+		this.ids = new HashMap<String, Integer>(labelDictionary.ids);
+		this.labels = new ArrayList<String>(labelDictionary.labels);
+	}
+	
+	/**
+	 * Method returning the identifier of given label. The label is added to the dictionary if it's not present yet.
+	 * @param label	class label
+	 * @return	identifier of the label
+	 */
+	public int addLabel(String label) {
+		Integer id = ids.get(label);
+		
+		if(id == null) {
+			id = labels.size();
+			ids.put(label, id);
+			labels.add(label);
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Method returning the identifier of given label.
+	 * @param label	class label
+	 * @return	identifier of the label or -1 if it's not in the dictionary
+	 */
+	public int getId(String label) {
+		Integer id = ids.get(label);
+		return (id == null) ? -1 : id;
+	}
+	
+	/**
+	 * Method returning the label with given identifier.
+	 * @param id	identifier of the label
+	 * @return	class label
+	 */
+	public String getLabel(int id) {
+		return labels.get(id);
+	}
+	
+	/**
+	 * Getter for the number of labels in the dictionary.
+	 * @return the number of labels
+	 */
+	public int size() {
+		return labels.size();
+	}
+	
+	/**
+	 * Getter for all labels in the order of their identifiers.
+	 * @return the unmodifiable list of labels
+	 */
+	public List<String> getLabels() {
+		return Collections.unmodifiableList(labels);
+	}
+}
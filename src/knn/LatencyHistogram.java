@@ -0,0 +1,151 @@
+package knn;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instance of this class records latencies (in nanoseconds) to the histogram with logarithmic buckets.
+ * Every power of two is split to {@code SUB_BUCKET_CNT} linear buckets (like in HdrHistogram), so the relative error
+ * of reported percentiles is bounded (about 6 %) regardless of the magnitude and the histogram has fixed size.
+ * Values may be recorded from several threads at once without locking.
+ * @author Vladimr Lznika
+ *
+ */
+public class LatencyHistogram {
+	
+	/**
+	 * Number of bits of the value, which select the linear bucket inside the power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+	
+	/**
+	 * Number of linear buckets inside one power of two.
+	 */
+	private static final int SUB_BUCKET_CNT = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * Number of buckets covering all non-negative long values.
+	 */
+	private static final int BUCKET_CNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_CNT;
+	
+	/**
+	 * Numbers of values recorded in the buckets.
+	 */
+	private final AtomicLongArray counts;
+	
+	/**
+	 * Number of recorded values.
+	 */
+	private final LongAdder totalCnt;
+	
+	/**
+	 * Sum of recorded values.
+	 */
+	private final LongAdder sum;
+	
+	/**
+	 * Maximal recorded value.
+	 */
+	private final AtomicLong max;
+	
+	/**
+	 * Constructor for the empty histogram.
+	 */
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKET_CNT);
+		this.totalCnt = new LongAdder();
+		this.sum = new LongAdder();
+		this.max = new AtomicLong();
+	}
+	
+	/**
+	 * Method recording one value. Negative values are recorded as 0.
+	 * @param value	recorded latency in nanoseconds
+	 */
+	public void record(long value) {
+		if(value < 0) value = 0;
+		
+		counts.incrementAndGet(getBucket(value));
+		totalCnt.increment();
+		sum.add(value);
+		
+		long currentMax = max.get();
+		
+		while(value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+	
+	/**
+	 * Getter for the number of recorded values.
+	 * @return	number of recorded values
+	 */
+	public long getCount() {
+		return totalCnt.sum();
+	}
+	
+	/**
+	 * Method returning the mean of recorded values.
+	 * @return	mean value (0.0 if nothing was recorded)
+	 */
+	public double getMean() {
+		long cnt = totalCnt.sum();
+		return (cnt == 0) ? 0.0 : (double)sum.sum() / cnt;
+	}
+	
+	/**
+	 * Getter for the maximal recorded value.
+	 * @return	maximal value (0 if nothing was recorded)
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Method returning the value, below which lies given fraction of recorded values. It's the upper bound
+	 * of the bucket containing the value, so it isn't lower than the exact percentile.
+	 * @param fraction	fraction of the recorded values (e.g. 0.99 for the 99th percentile)
+	 * @return	value of the percentile (0 if nothing was recorded)
+	 */
+	public long getPercentile(double fraction) {
+		long cnt = totalCnt.sum();
+		if(cnt == 0) return 0;
+		
+		long target = Math.max(1, (long)Math.ceil(fraction * cnt));
+		long cumulativeCnt = 0;
+		
+		for(int b = 0; b < BUCKET_CNT; b++) {
+			cumulativeCnt += counts.get(b);
+			if(cumulativeCnt >= target) return Math.min(getUpperBound(b), max.get());
+		}
+		
+		return max.get();
+	}
+	
+	/**
+	 * Method returning the bucket of given value. Values lower than {@code SUB_BUCKET_CNT} have their own buckets,
+	 * higher values are placed by their highest bit and following {@code SUB_BUCKET_BITS} bits.
+	 * @param value	non-negative value
+	 * @return	index of the bucket
+	 */
+	private static int getBucket(long value) {
+		if(value < SUB_BUCKET_CNT) return (int)value;
+		
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_CNT + (int)(value >>> shift) - SUB_BUCKET_CNT;
+	}
+	
+	/**
+	 * Method returning the highest value placed to given bucket.
+	 * @param bucket	index of the bucket
+	 * @return	upper bound of the bucket
+	 */
+	private static long getUpperBound(int bucket) {
+		if(bucket < SUB_BUCKET_CNT) return bucket;
+		
+		int shift = bucket / SUB_BUCKET_CNT - 1;
+		long subBucket = bucket % SUB_BUCKET_CNT + SUB_BUCKET_CNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
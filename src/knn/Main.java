@@ -7,8 +7,10 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -24,9 +26,134 @@ public class Main {
 	private static final String INFO_PARSING_REGEX = ";";
 	
 	/**
-	 * Regular expression used in files to split individual dimensions.
+	 * Separator of the name and the value of optional arguments from the command line.
 	 */
-	private static final String VECTOR_PARSING_REGEX = ",";
+	private static final String OPTION_SEPARATOR = "=";
+	
+	/**
+	 * Number of arguments that have to be passed from the command line.
+	 */
+	private static final int REQUIRED_ARGS_CNT = 5;
+	
+	/**
+	 * Command converting the file with patterns to the binary dataset.
+	 */
+	private static final String COMMAND_CONVERT = "convert";
+	
+	/**
+	 * Number of arguments of the {@code convert} command (including the command).
+	 */
+	private static final int CONVERT_ARGS_CNT = 3;
+	
+	/**
+	 * Command starting the resident classification server.
+	 */
+	private static final String COMMAND_SERVER = "server";
+	
+	/**
+	 * Command running the cross-validation over the grid of parameters.
+	 */
+	private static final String COMMAND_CROSS_VALIDATION = "crossvalidate";
+	
+	/**
+	 * Number of arguments of the {@code crossvalidate} command (including the command), which have to be passed.
+	 */
+	private static final int CROSS_VALIDATION_ARGS_CNT = 4;
+	
+	/**
+	 * First argument indicating the reduction of the training set.
+	 */
+	private static final String COMMAND_REDUCE = "reduce";
+	
+	/**
+	 * Number of arguments of the reduction of the training set (including the command).
+	 */
+	private static final int REDUCE_ARGS_CNT = 5;
+	
+	/**
+	 * Names of reduction methods on indices of their constants ({@code TrainingSetReduction.REDUCTION_*}).
+	 */
+	private static final String[] REDUCTION_METHODS = {null, "cnn", "enn", "adm"};
+	
+	/**
+	 * First argument indicating the start of the worker holding one shard of the training set.
+	 */
+	private static final String COMMAND_WORKER = "worker";
+	
+	/**
+	 * Number of arguments of the worker (including the command).
+	 */
+	private static final int WORKER_ARGS_CNT = 4;
+	
+	/**
+	 * First argument indicating the classification by the coordinator of workers.
+	 */
+	private static final String COMMAND_COORDINATE = "coordinate";
+	
+	/**
+	 * First argument indicating the training of the classifier, which is written to the snapshot file.
+	 */
+	private static final String COMMAND_TRAIN = "train";
+	
+	/**
+	 * Number of arguments of the training to the snapshot (including the command).
+	 */
+	private static final int TRAIN_ARGS_CNT = 6;
+	
+	/**
+	 * First argument indicating the classification by the classifier loaded from the snapshot file.
+	 */
+	private static final String COMMAND_CLASSIFY = "classify";
+	
+	/**
+	 * Number of arguments of the classification by the snapshot (including the command).
+	 */
+	private static final int CLASSIFY_ARGS_CNT = 3;
+	
+	/**
+	 * Separator of addresses of workers in the optional argument {@code workers}.
+	 */
+	private static final String WORKER_SEPARATOR = ",";
+	
+	/**
+	 * Port of the classification server used when it's not specified.
+	 */
+	private static final String DEFAULT_SERVER_PORT = "5555";
+	
+	/**
+	 * Value of the {@code storage} argument scanning vectors in double precision.
+	 */
+	private static final String STORAGE_DOUBLE = "double";
+	
+	/**
+	 * Value of the {@code storage} argument scanning vectors stored in single precision.
+	 */
+	private static final String STORAGE_FLOAT = "float";
+	
+	/**
+	 * Value of the {@code storage} argument scanning vectors quantized to 16-bit codes.
+	 */
+	private static final String STORAGE_INT16 = "int16";
+	
+	/**
+	 * Value of the {@code storage} argument scanning vectors quantized to 8-bit codes.
+	 */
+	private static final String STORAGE_INT8 = "int8";
+	
+	/**
+	 * Values of the {@code vote} argument (in the order of {@code NeighborVote.VOTE_*} constants).
+	 */
+	private static final String[] VOTE_TYPES = {"majority", "distance", "gaussian", "adm"};
+	
+	/**
+	 * Values of the {@code output} argument (in the order of {@code ResultWriter.FORMAT_*} constants).
+	 */
+	private static final String[] RESULT_FORMATS = {null, "text", "classes", "csv", "binary"};
+	
+	/**
+	 * Value of the {@code metrics} argument writing the summary of metrics to the standard output.
+	 */
+	private static final String METRICS_STANDARD_OUTPUT = "-";
 	
 	/**
 	 * File with the training patterns.
@@ -53,6 +180,36 @@ public class Main {
 	 */
 	private static int useAdaptiveDistanceMeasure;
 	
+	/**
+	 * Number of threads used for classification.
+	 */
+	private static int threadCnt;
+	
+	/**
+	 * Type of the spatial index used for searching nearest neighbors.
+	 */
+	private static int indexType;
+	
+	/**
+	 * File for storing adaptive distance measures (null if they aren't stored).
+	 */
+	private static File adaptiveDistanceMeasureFile;
+	
+	/**
+	 * Indicator whether the testing set is classified as a stream.
+	 */
+	private static boolean streamTestingSet;
+	
+	/**
+	 * Format of the result file ({@code ResultWriter.FORMAT_*}).
+	 */
+	private static int resultFormat;
+	
+	/**
+	 * Metrics of the classification (null if they aren't collected).
+	 */
+	private static ClassificationMetrics metrics;
+	
 	/**
 	 * Instance of the KNN classifier.
 	 */
@@ -67,28 +224,114 @@ public class Main {
 	 * Main method of the program. It takes arguments from the command line, stores them in variables and passes them
 	 * to {@code Classification} instance. It then invokes {@code classify} method to classify testing patterns and writes
 	 * them to the file via {@code writeResultSet} method.
-	 * @param args	arguments from the command line (there have to exactly 5 of them)
+	 * Required arguments may be followed by optional arguments in format {@code name=value}
+	 * ({@code threads} - number of threads used for classification,
+	 * {@code index} - spatial index: 0 - none, 1 - KD-tree, 2 - ball tree, 3 - chosen by the dimension, 4 - approximate HNSW graph,
+	 * {@code storage} - {@code float}, {@code int16} or {@code int8} to scan compact vectors and re-rank candidates
+	 * by double vectors (without the spatial index),
+	 * {@code ef} - number of candidates explored by the approximate index (higher - better recall, slower queries),
+	 * {@code p} - power of the Minkowski distance (3 by default),
+	 * {@code weights} - file with weights of features for the weighted Euclidean distance (numbers separated by commas or whitespace),
+	 * {@code vote} - vote of nearest neighbors: {@code majority}, {@code distance} (inverse distance), {@code gaussian}
+	 * (Gaussian of the distance) or {@code adm} (weighted by adaptive distance measures),
+	 * {@code batch} - number of tested patterns searched at once by the linear scan (0 - one by one),
+	 * {@code admfile} - file, where adaptive distance measures are stored for following runs,
+	 * {@code cache} - number of tested vectors, which classes are cached for repeated vectors (0 - no cache),
+	 * {@code stream} - 1 to classify the testing set as a stream via {@code ClassificationPipeline},
+	 * {@code output} - format of the result file written by {@code ResultWriter}: {@code text} (vectors and classes),
+	 * {@code classes} (classes without vectors), {@code csv} or {@code binary} (identifiers of classes),
+	 * {@code metrics} - file, where the summary of metrics (phase times, latencies, evaluated distances) is written,
+	 * {@code -} for the standard output).
+	 * If the first argument is {@code convert}, the file with patterns is converted to the binary dataset instead.
+	 * If the first argument is {@code server}, the testing file is omitted and the resident {@code ClassificationServer}
+	 * is started instead (optional argument {@code port} specifies its port).
+	 * If the first argument is {@code crossvalidate}, it's followed by the path to the training file, the number of folds
+	 * and the maximal number of nearest neighbors and the cross-validation via {@code CrossValidation} is run instead
+	 * (optional arguments {@code threads}, {@code index}, {@code ef}, {@code vote}, {@code distance}, {@code p} and {@code weights}
+	 * may follow; without {@code distance}, all distance functions without parameters are evaluated).
+	 * If the first argument is {@code reduce}, it's followed by paths to the training file, the testing file and the file
+	 * for the reduced training set and by the reduction method ({@code cnn}, {@code enn} or {@code adm}); the training set
+	 * is reduced via {@code TrainingSetReduction} and the testing set is classified with both training sets
+	 * (optional arguments {@code k}, {@code distance}, {@code adm}, {@code threads}, {@code index}, {@code vote},
+	 * {@code p} and {@code weights} may follow).
+	 * If the first argument is {@code worker}, it's followed by the path to the training file, the index of the shard
+	 * and the number of shards and the {@code ShardWorker} holding every N-th training pattern is started (optional arguments
+	 * {@code port}, {@code distance}, {@code p}, {@code weights}, {@code index}, {@code ef} and {@code threads} may follow).
+	 * If the first argument is {@code coordinate}, it's followed by the same arguments as for the classification except
+	 * the training file and the testing set is classified by the {@code ShardCoordinator} of workers given by the optional
+	 * argument {@code workers} ({@code host:port} separated by commas; optional arguments {@code vote}, {@code p},
+	 * {@code weights}, {@code output} and {@code shutdown} - 1 to stop workers after the classification may follow).
+	 * If the first argument is {@code train}, it's followed by the path to the training file, the path to the snapshot file
+	 * and the same arguments as for the classification after the testing file; the classifier is trained and written
+	 * to the snapshot via {@code ModelSnapshot} (optional arguments of the training may follow).
+	 * If the first argument is {@code classify}, it's followed by paths to the snapshot file and the testing file
+	 * and the testing set is classified by the classifier loaded from the snapshot (optional arguments {@code threads},
+	 * {@code batch}, {@code cache}, {@code stream}, {@code output} and {@code metrics} may follow).
+	 * @param args	arguments from the command line (there have to be at least 5 of them)
 	 */
 	public static void main(String[] args) {	
 		
-		if(args.length != 5) {
+		boolean convert = (args.length > 0 && args[0].equals(COMMAND_CONVERT));
+		boolean server = (args.length > 0 && args[0].equals(COMMAND_SERVER));
+		boolean crossValidation = (args.length > 0 && args[0].equals(COMMAND_CROSS_VALIDATION));
+		boolean reduce = (args.length > 0 && args[0].equals(COMMAND_REDUCE));
+		boolean worker = (args.length > 0 && args[0].equals(COMMAND_WORKER));
+		boolean coordinate = (args.length > 0 && args[0].equals(COMMAND_COORDINATE));
+		boolean train = (args.length > 0 && args[0].equals(COMMAND_TRAIN));
+		boolean classify = (args.length > 0 && args[0].equals(COMMAND_CLASSIFY));
+		int requiredArgsCnt = convert ? CONVERT_ARGS_CNT : (crossValidation ? CROSS_VALIDATION_ARGS_CNT : (reduce ? REDUCE_ARGS_CNT : (worker ? WORKER_ARGS_CNT
+				: (train ? TRAIN_ARGS_CNT : (classify ? CLASSIFY_ARGS_CNT : REQUIRED_ARGS_CNT)))));
+		
+		if(convert ? args.length != CONVERT_ARGS_CNT : args.length < requiredArgsCnt) {
 			System.err.println("You have to pass two argumets: path to the file with training dataset"
 					+ ", path to the file with testing dataset,"
 					+ " number of nearest neighbors used for classification (make sure this number doesn't exceed number of training patterns in first file),"
-					+ "specify the distance function (1 - Euclidian, 2 - Manhattan)"
-					+ " and specify, whether adaptive distance measure should be used (1 - YES).");
+					+ "specify the distance function (1 - Euclidian, 2 - Manhattan, 3 - Chebyshev, 4 - Minkowski, 5 - cosine, 6 - weighted Euclidean)"
+					+ " and specify, whether adaptive distance measure should be used (1 - YES)."
+					+ " Optionally add threads=N to classify with N threads"
+					+ ", index=I to search neighbors in the spatial index (0 - none, 1 - KD-tree, 2 - ball tree, 3 - auto, 4 - approximate HNSW graph)"
+					+ ", ef=N to explore N candidates by the approximate index"
+					+ ", p=P to set the power of the Minkowski distance"
+					+ ", weights=PATH to read weights of features for the weighted Euclidean distance"
+					+ ", vote=majority|distance|gaussian|adm to weight votes of neighbors"
+					+ ", storage=float|int16|int8 to scan compact vectors without the spatial index"
+					+ ", batch=N to search N tested patterns at once by the linear scan"
+					+ ", admfile=PATH to store adaptive distance measures for following runs"
+					+ ", cache=N to cache classes of N tested vectors for repeated vectors"
+					+ ", stream=1 to read, classify and write the testing set as a stream"
+					+ ", output=text|classes|csv|binary to choose the format of the result file"
+					+ " and metrics=PATH to write the summary of metrics to the file (metrics=- for the standard output)."
+					+ " To convert the file with patterns to the binary dataset pass: convert, path to the file and path to the binary file."
+					+ " To start the classification server pass server instead of the path to the testing file"
+					+ " (optionally add port=P to listen on the port P)."
+					+ " To run the cross-validation of distance functions, ADM settings and K pass: crossvalidate,"
+					+ " path to the training file, number of folds and maximal K (optionally add threads, index, ef, vote"
+					+ " and distance with p or weights to evaluate only that distance function)."
+					+ " To reduce the training set pass: reduce, path to the training file, path to the testing file, path to the reduced"
+					+ " training file and the method cnn|enn|adm (optionally add k, distance, adm, threads, index, vote, p and weights)."
+					+ " To start the worker holding one shard of the training set pass: worker, path to the training file, index of the shard"
+					+ " and number of shards (optionally add port, distance, p, weights, index, ef and threads)."
+					+ " To classify by workers pass coordinate instead of the path to the training file and add workers=HOST:PORT,HOST:PORT"
+					+ " (optionally add vote, p, weights, output and shutdown=1 to stop workers)."
+					+ " To train the classifier to the snapshot pass: train, path to the training file, path to the snapshot file, K, distance"
+					+ " and ADM (optionally add options of the training)."
+					+ " To classify by the snapshot pass: classify, path to the snapshot file and path to the testing file"
+					+ " (optionally add threads, batch, cache, stream, output and metrics).");
 		}
 		else {
 			try{
-				trainingSetFile = new File(args[0]);
-				testingSetFile = new File(args[1]);
-				kNumber = Integer.parseInt(args[2]);
-				distanceType = Integer.parseInt(args[3]);
-				useAdaptiveDistanceMeasure = Integer.parseInt(args[4]);
-				knnClassification = new Classification(getSetFromFile(trainingSetFile, true), getSetFromFile(testingSetFile, false), kNumber, distanceType, useAdaptiveDistanceMeasure);
-				resultSet = knnClassification.classify();
-				writeResultSet(resultSet, getAccuracy(resultSet));
-				System.out.println("Classification finished.");
+				if(convert) {
+					convertSetFile(new File(args[1]), new File(args[2]));
+					System.out.println("Conversion finished.");
+				}
+				else if(server) runServer(args);
+				else if(crossValidation) crossValidate(args);
+				else if(reduce) reduceTrainingSet(args);
+				else if(worker) runWorker(args);
+				else if(coordinate) classifyByWorkers(args);
+				else if(train) trainSnapshot(args);
+				else if(classify) classifyBySnapshot(args);
+				else classifySetFiles(args);
 			}
 			catch(NullPointerException e1) {
 				System.err.println("No path to the file: \n" + e1.getMessage());
@@ -105,6 +348,9 @@ public class Main {
 			catch(IndexOutOfBoundsException e5) {
 				System.err.println("Unexpected vector sizes: \n" + e5.getMessage());
 			}
+			catch(IllegalArgumentException e6) {
+				System.err.println("Wrong parameter: \n" + e6.getMessage());
+			}
 			finally {
 				System.out.println("Program exiting.");
 				System.exit(0);
@@ -113,44 +359,643 @@ public class Main {
 	}
 	
 	/**
-	 * Method reading patterns from given file and storing them to the list.
-	 * Based on the {@code isTrainingSet} parameter it determines whether to create training or testing patterns.
-	 * @param file			the file with patterns in specific format
-	 * @param isTrainingSet	indicator, whether file contains training or testing patterns
-	 * @return	list with patterns from the file
+	 * Method classifying the testing set based on the arguments from the command line. It passes them
+	 * to {@code Classification} instance, invokes {@code classify} method to classify testing patterns and writes
+	 * them to the file via {@code writeResultSet} method.
+	 * @param args	arguments from the command line
 	 * @throws FileNotFoundException
 	 * @throws IOException
 	 * @throws NumberFormatException
 	 */
-	private static List<Pattern> getSetFromFile(File file, boolean isTrainingSet) throws FileNotFoundException, IOException, NumberFormatException {
-		ArrayList<Pattern> setFromFile = new ArrayList<Pattern>();
+	private static void classifySetFiles(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		trainingSetFile = new File(args[0]);
+		testingSetFile = new File(args[1]);
+		kNumber = Integer.parseInt(args[2]);
+		distanceType = Integer.parseInt(args[3]);
+		useAdaptiveDistanceMeasure = Integer.parseInt(args[4]);
+		threadCnt = Integer.parseInt(getOption(args, "threads", "1"));
+		indexType = getIndexType(args, REQUIRED_ARGS_CNT);
+		streamTestingSet = getOption(args, "stream", "0").equals("1");
+		resultFormat = getResultFormat(args, REQUIRED_ARGS_CNT);
+		metrics = (getOption(args, "metrics", null) != null) ? new ClassificationMetrics() : null;
 		
-		BufferedReader br = new BufferedReader(new FileReader(file));
+		long start = System.nanoTime();
+		List<Pattern> testingSet = streamTestingSet ? new ArrayList<Pattern>() : getSetFromFile(testingSetFile, false);
+		TrainingData trainingData = getTrainingDataFromFile(trainingSetFile);
+		if(metrics != null) metrics.addPhase(ClassificationMetrics.PHASE_PARSE, System.nanoTime() - start);
+		
+		knnClassification = new Classification(trainingData, testingSet, kNumber, createDistanceKernel(args), useAdaptiveDistanceMeasure, threadCnt);
+		knnClassification.setMetrics(metrics);
+		setClassificationOptions(args);
+		classifyTestingSet(args, REQUIRED_ARGS_CNT);
+	}
+	
+	/**
+	 * Method classifying the testing set by the prepared classifier (as a stream or at once) and writing the result file,
+	 * statistics of the query cache and collected metrics.
+	 * @param args				arguments from the command line
+	 * @param requiredArgsCnt	number of required arguments
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void classifyTestingSet(String[] args, int requiredArgsCnt) throws FileNotFoundException, IOException, NumberFormatException {
+		if(streamTestingSet) {
+			classifySetStream();
+		}
+		else {
+			resultSet = knnClassification.classify();
+			
+			long start = System.nanoTime();
+			writeResultSet(resultSet, getAccuracy(resultSet), knnClassification.getTrainingData().getLabelDictionary());
+			if(metrics != null) metrics.addPhase(ClassificationMetrics.PHASE_WRITE, System.nanoTime() - start);
+		}
+		
+		System.out.println("Classification finished.");
+		
+		QueryCache queryCache = knnClassification.getQueryCache();
+		if(queryCache != null) System.out.println("Query cache hits: "+queryCache.getHitCnt()+", misses: "+queryCache.getMissCnt()+", evictions: "+queryCache.getEvictionCnt()+".");
+		if(metrics != null) writeMetrics(getOption(args, "metrics", null, requiredArgsCnt));
+	}
+	
+	/**
+	 * Method training the classifier based on the arguments from the command line and writing it to the snapshot file
+	 * (the command {@code train} is followed by the path to the training file, the path to the snapshot file
+	 * and the same arguments as for the classification after the testing file).
+	 * @param args	arguments from the command line
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void trainSnapshot(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		trainingSetFile = new File(args[1]);
+		kNumber = Integer.parseInt(args[3]);
+		distanceType = Integer.parseInt(args[4]);
+		useAdaptiveDistanceMeasure = Integer.parseInt(args[5]);
+		threadCnt = Integer.parseInt(getOption(args, "threads", "1"));
+		indexType = getIndexType(args, TRAIN_ARGS_CNT);
+		
+		long start = System.nanoTime();
+		knnClassification = new Classification(getTrainingDataFromFile(trainingSetFile), new ArrayList<Pattern>(), kNumber,
+				createDistanceKernel(args, TRAIN_ARGS_CNT), useAdaptiveDistanceMeasure, threadCnt);
+		setClassificationOptions(args);
+		knnClassification.saveSnapshot(new File(args[2]));
+		
+		System.out.println("Snapshot of the classifier written to "+args[2]+" in "+(System.nanoTime() - start)/1000000+" ms.");
+	}
+	
+	/**
+	 * Method classifying the testing set by the classifier loaded from the snapshot file
+	 * (the command {@code classify} is followed by paths to the snapshot file and the testing file).
+	 * The result file is written in the same way as by the classification from the training file.
+	 * @param args	arguments from the command line
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void classifyBySnapshot(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		testingSetFile = new File(args[2]);
+		threadCnt = Integer.parseInt(getOption(args, "threads", "1", CLASSIFY_ARGS_CNT));
+		streamTestingSet = getOption(args, "stream", "0", CLASSIFY_ARGS_CNT).equals("1");
+		resultFormat = getResultFormat(args, CLASSIFY_ARGS_CNT);
+		metrics = (getOption(args, "metrics", null, CLASSIFY_ARGS_CNT) != null) ? new ClassificationMetrics() : null;
+		
+		long start = System.nanoTime();
+		ModelSnapshot snapshot = ModelSnapshot.read(new File(args[1]));
+		long loadTime = System.nanoTime() - start;
+		TrainingData trainingData = snapshot.getModel().getTrainingData();
+		System.out.println("Snapshot loaded in "+loadTime/1000000+" ms ("+(trainingData.size() - trainingData.getRemovedCnt())+" training patterns, K = "+snapshot.getKNumber()+").");
+		
+		List<Pattern> testingSet = streamTestingSet ? new ArrayList<Pattern>() : getSetFromFile(testingSetFile, false);
+		if(metrics != null) metrics.addPhase(ClassificationMetrics.PHASE_PARSE, System.nanoTime() - start);
+		
+		knnClassification = new Classification(snapshot, testingSet, threadCnt);
+		knnClassification.setMetrics(metrics);
+		knnClassification.setBatchSize(Integer.parseInt(getOption(args, "batch", "0", CLASSIFY_ARGS_CNT)));
+		
+		int cacheSize = Integer.parseInt(getOption(args, "cache", "0", CLASSIFY_ARGS_CNT));
+		if(cacheSize > 0) knnClassification.setQueryCache(new QueryCache(cacheSize));
+		
+		classifyTestingSet(args, CLASSIFY_ARGS_CNT);
+	}
+	
+	/**
+	 * Method writing the summary of collected metrics to given file or to the standard output.
+	 * @param path	path to the file or {@code -} for the standard output
+	 * @throws IOException
+	 */
+	private static void writeMetrics(String path) throws IOException {
+		if(path.equals(METRICS_STANDARD_OUTPUT)) {
+			metrics.writeSummary(new OutputStreamWriter(System.out));
+			return;
+		}
+		
+		BufferedWriter bw = new BufferedWriter(new FileWriter(new File(path)));
+		
+		try {
+			metrics.writeSummary(bw);
+		}
+		finally {
+			bw.close();
+		}
+	}
+	
+	/**
+	 * Method starting the resident classification server based on the arguments from the command line
+	 * (the command {@code server} is followed by the same arguments as for the classification except the testing file).
+	 * The training set is loaded and the classifier is trained only once, then the server answers requests until
+	 * the program is terminated.
+	 * @param args	arguments from the command line
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void runServer(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		trainingSetFile = new File(args[1]);
+		kNumber = Integer.parseInt(args[2]);
+		distanceType = Integer.parseInt(args[3]);
+		useAdaptiveDistanceMeasure = Integer.parseInt(args[4]);
+		threadCnt = Integer.parseInt(getOption(args, "threads", "1"));
+		indexType = getIndexType(args, REQUIRED_ARGS_CNT);
+		
+		knnClassification = new Classification(getTrainingDataFromFile(trainingSetFile), new ArrayList<Pattern>(), kNumber, createDistanceKernel(args), useAdaptiveDistanceMeasure, threadCnt);
+		setClassificationOptions(args);
+		
+		ClassificationServer classificationServer = new ClassificationServer(knnClassification, Integer.parseInt(getOption(args, "port", DEFAULT_SERVER_PORT)));
+		
+		try {
+			classificationServer.run();
+		}
+		finally {
+			classificationServer.close();
+		}
+	}
+	
+	/**
+	 * Method running the cross-validation based on the arguments from the command line. It prints accuracies
+	 * of all variants of the grid in the CSV format and the best variant.
+	 * @param args	arguments from the command line
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void crossValidate(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		trainingSetFile = new File(args[1]);
+		threadCnt = Integer.parseInt(getOption(args, "threads", "1", CROSS_VALIDATION_ARGS_CNT));
+		indexType = getIndexType(args, CROSS_VALIDATION_ARGS_CNT);
+		
+		CrossValidation crossValidation = new CrossValidation(getTrainingDataFromFile(trainingSetFile), Integer.parseInt(args[2]), Integer.parseInt(args[3]), threadCnt);
+		crossValidation.setIndexType(indexType);
+		crossValidation.setSearchEffort(Integer.parseInt(getOption(args, "ef", String.valueOf(HnswGraph.DEFAULT_EF), CROSS_VALIDATION_ARGS_CNT)));
+		crossValidation.setVoteType(getVoteType(args, CROSS_VALIDATION_ARGS_CNT));
+		
+		String distanceOption = getOption(args, "distance", null, CROSS_VALIDATION_ARGS_CNT);
+		
+		if(distanceOption != null) {
+			distanceType = Integer.parseInt(distanceOption);
+			crossValidation.setDistanceKernels(Collections.singletonList(createDistanceKernel(args, CROSS_VALIDATION_ARGS_CNT)));
+		}
+		
+		List<CrossValidation.Result> results = crossValidation.run();
+		System.out.println("distance,adm,k,accuracy");
+		
+		for(CrossValidation.Result result : results) {
+			System.out.println(result.getDistanceType()+","+result.getUseAdaptiveDistanceMeasure()+","+result.getKNumber()+","+result.getAccuracy());
+		}
+		
+		CrossValidation.Result best = CrossValidation.getBestResult(results);
+		System.out.println("Best: distance "+best.getDistanceType()+", ADM "+best.getUseAdaptiveDistanceMeasure()+", K "+best.getKNumber()
+				+", accuracy "+best.getAccuracy()*100+"%");
+		System.out.println("Cross-validation finished.");
+	}
+	
+	/**
+	 * Method starting the worker holding one shard of the training set based on the arguments from the command line.
+	 * Only patterns of the shard are loaded, then the worker answers requests of coordinators until it's stopped.
+	 * @param args	arguments from the command line
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void runWorker(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		trainingSetFile = new File(args[1]);
+		distanceType = Integer.parseInt(getOption(args, "distance", String.valueOf(Classification.DISTANCE_EUCLIDEAN), WORKER_ARGS_CNT));
+		threadCnt = Integer.parseInt(getOption(args, "threads", "1", WORKER_ARGS_CNT));
+		indexType = getIndexType(args, WORKER_ARGS_CNT);
+		
+		int shard = Integer.parseInt(args[2]);
+		int shardCnt = Integer.parseInt(args[3]);
+		if(shardCnt < 1 || shard < 0 || shard >= shardCnt) throw new IllegalArgumentException("Wrong index of the shard: "+shard+" of "+shardCnt);
+		
+		ShardWorker shardWorker = new ShardWorker(ShardWorker.readShard(trainingSetFile, shard, shardCnt), shard, shardCnt, createDistanceKernel(args, WORKER_ARGS_CNT), indexType,
+				Integer.parseInt(getOption(args, "ef", String.valueOf(HnswGraph.DEFAULT_EF), WORKER_ARGS_CNT)), threadCnt, Integer.parseInt(getOption(args, "port", "0", WORKER_ARGS_CNT)));
 		
-		int patternCnt = Integer.parseInt(br.readLine());
-		String[] myLineSplit = null;
-		String[] myVectorSplit = null;
-		double[] parsedVector = null;
+		try {
+			shardWorker.run();
+		}
+		finally {
+			shardWorker.close();
+		}
+	}
+	
+	/**
+	 * Method classifying the testing set by workers holding shards of the training set based on the arguments
+	 * from the command line (the command {@code coordinate} is followed by the same arguments as for the classification
+	 * except the training file). Classified patterns are written to the file via {@code writeResultSet} method.
+	 * @param args	arguments from the command line
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void classifyByWorkers(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		testingSetFile = new File(args[1]);
+		kNumber = Integer.parseInt(args[2]);
+		distanceType = Integer.parseInt(args[3]);
+		useAdaptiveDistanceMeasure = Integer.parseInt(args[4]);
+		resultFormat = getResultFormat(args, REQUIRED_ARGS_CNT);
+		
+		String workers = getOption(args, "workers", null);
+		if(workers == null) throw new IllegalArgumentException("Addresses of workers are missing (workers=HOST:PORT,HOST:PORT).");
+		
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		
+		for(String worker : workers.split(WORKER_SEPARATOR)) {
+			int portSeparator = worker.lastIndexOf(':');
+			if(portSeparator < 0) throw new IllegalArgumentException("Address of the worker has to be in format HOST:PORT: "+worker);
+			addresses.add(new InetSocketAddress(worker.substring(0, portSeparator), Integer.parseInt(worker.substring(portSeparator + 1))));
+		}
+		
+		List<Pattern> testingSet = getSetFromFile(testingSetFile, false);
+		ShardCoordinator shardCoordinator = new ShardCoordinator(addresses, kNumber, createDistanceKernel(args), useAdaptiveDistanceMeasure, getVoteType(args, REQUIRED_ARGS_CNT));
+		
+		try {
+			shardCoordinator.classifyPatterns(testingSet);
+			if(getOption(args, "shutdown", "0").equals("1")) shardCoordinator.shutdownWorkers();
+		}
+		finally {
+			shardCoordinator.close();
+		}
 		
-		for(int i = 0; i < patternCnt; i++) {
-			myLineSplit = br.readLine().split(INFO_PARSING_REGEX);
-			myVectorSplit = myLineSplit[0].split(VECTOR_PARSING_REGEX);
-			parsedVector = new double[myVectorSplit.length];
+		resultSet = testingSet;
+		writeResultSet(resultSet, getAccuracy(resultSet), shardCoordinator.getLabelDictionary());
+		System.out.println("Classification by "+addresses.size()+" workers ("+shardCoordinator.size()+" training patterns) finished.");
+	}
+	
+	/**
+	 * Method reducing the training set based on the arguments from the command line. The reduced training set
+	 * is written to the file in the text format (adaptive distance measures aren't written, they are calculated
+	 * again for the reduced set). The testing set is then classified with the original and the reduced training set
+	 * and sizes, accuracies and times of both classifications are printed.
+	 * @param args	arguments from the command line
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void reduceTrainingSet(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		trainingSetFile = new File(args[1]);
+		testingSetFile = new File(args[2]);
+		kNumber = Integer.parseInt(getOption(args, "k", "3", REDUCE_ARGS_CNT));
+		distanceType = Integer.parseInt(getOption(args, "distance", String.valueOf(Classification.DISTANCE_EUCLIDEAN), REDUCE_ARGS_CNT));
+		useAdaptiveDistanceMeasure = Integer.parseInt(getOption(args, "adm", "0", REDUCE_ARGS_CNT));
+		threadCnt = Integer.parseInt(getOption(args, "threads", "1", REDUCE_ARGS_CNT));
+		indexType = getIndexType(args, REDUCE_ARGS_CNT);
+		
+		int method = getReductionMethod(args[4]);
+		DistanceKernel distanceKernel = createDistanceKernel(args, REDUCE_ARGS_CNT);
+		TrainingData trainingData = getTrainingDataFromFile(trainingSetFile);
+		distanceKernel.checkDimension(trainingData.getDimension());
+		
+		long start = System.nanoTime();
+		TrainingData reducedData = new TrainingSetReduction(trainingData, distanceKernel, kNumber, indexType, threadCnt).reduce(method);
+		long reductionTime = System.nanoTime() - start;
+		writeTrainingData(new File(args[3]), reducedData);
+		
+		int size = trainingData.size() - trainingData.getRemovedCnt();
+		System.out.println("Training set reduced by "+args[4]+" from "+size+" to "+reducedData.size()+" patterns ("
+				+(size > 0 ? reducedData.size()*100.0/size : 0.0)+"%) in "+reductionTime/1000000+" ms.");
+		
+		List<Pattern> testingSet = getSetFromFile(testingSetFile, false);
+		printReducedAccuracy("Original", trainingData, testingSet, distanceKernel, args);
+		printReducedAccuracy("Reduced", reducedData, testingSet, distanceKernel, args);
+		System.out.println("Reduction finished.");
+	}
+	
+	/**
+	 * Method classifying the testing set with given training data and printing the accuracy and the time of the classification.
+	 * @param name				name of the training data in the printed line
+	 * @param trainingData		training data used for the classification
+	 * @param testingSet		testing patterns (their classes are overwritten)
+	 * @param distanceKernel	kernel of the distance function
+	 * @param args				arguments from the command line
+	 * @throws IndexOutOfBoundsException
+	 */
+	private static void printReducedAccuracy(String name, TrainingData trainingData, List<Pattern> testingSet, DistanceKernel distanceKernel, String[] args) throws IndexOutOfBoundsException {
+		Classification classification = new Classification(trainingData, testingSet, kNumber, distanceKernel, useAdaptiveDistanceMeasure, threadCnt);
+		classification.setIndexType(indexType);
+		classification.setSearchEffort(Integer.parseInt(getOption(args, "ef", String.valueOf(HnswGraph.DEFAULT_EF), REDUCE_ARGS_CNT)));
+		classification.setVoteType(getVoteType(args, REDUCE_ARGS_CNT));
+		
+		long start = System.nanoTime();
+		List<Pattern> classifiedSet = classification.classify();
+		long time = System.nanoTime() - start;
+		
+		System.out.println(name+" training set ("+trainingData.size()+" patterns): accuracy "+getAccuracy(classifiedSet)*100+"%, classified in "+time/1000000+" ms.");
+	}
+	
+	/**
+	 * Method returning the reduction method given by its name.
+	 * @param name	name of the method ({@code cnn}, {@code enn} or {@code adm})
+	 * @return	reduction method ({@code TrainingSetReduction.REDUCTION_*})
+	 */
+	private static int getReductionMethod(String name) {
+		for(int method = TrainingSetReduction.REDUCTION_CNN; method < REDUCTION_METHODS.length; method++) {
+			if(REDUCTION_METHODS[method].equals(name)) return method;
+		}
+		
+		throw new IllegalArgumentException("Unknown reduction method: "+name);
+	}
+	
+	/**
+	 * Method writing the training data to the file in the text format. The first line contains the number of patterns,
+	 * following lines have format {@code features separated by commas;class}.
+	 * @param file			file for the training data
+	 * @param trainingData	written training data (removed patterns are skipped)
+	 * @throws IOException
+	 */
+	private static void writeTrainingData(File file, TrainingData trainingData) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		
+		try {
+			bw.write((trainingData.size() - trainingData.getRemovedCnt())+"\n");
 			
-			for(int j = 0; j < myVectorSplit.length; j++) {
-				parsedVector[j] = Double.parseDouble(myVectorSplit[j]);
+			for(int i = 0; i < trainingData.size(); i++) {
+				if(trainingData.isRemoved(i)) continue;
+				
+				double[] vector = trainingData.getVector(i);
+				StringBuilder line = new StringBuilder();
+				
+				for(int d = 0; d < vector.length; d++) {
+					if(d > 0) line.append(',');
+					line.append(vector[d]);
+				}
+				
+				line.append(INFO_PARSING_REGEX).append(trainingData.getPatternClass(i)).append('\n');
+				bw.write(line.toString());
 			}
+		}
+		finally {
+			bw.close();
+		}
+	}
+	
+	/**
+	 * Method passing optional arguments from the command line, which configure the training, to the classifier
+	 * (the spatial index, the number of candidates explored by the approximate index, the vote of nearest neighbors,
+	 * the number of patterns searched at once, the file for adaptive distance measures and the size of the query cache).
+	 * @param args	arguments from the command line
+	 * @throws NumberFormatException
+	 */
+	private static void setClassificationOptions(String[] args) throws NumberFormatException {
+		knnClassification.setIndexType(indexType);
+		knnClassification.setSearchEffort(Integer.parseInt(getOption(args, "ef", String.valueOf(HnswGraph.DEFAULT_EF))));
+		knnClassification.setVoteType(getVoteType(args, REQUIRED_ARGS_CNT));
+		knnClassification.setBatchSize(Integer.parseInt(getOption(args, "batch", "0")));
+		
+		if(getOption(args, "admfile", null) != null) {
+			adaptiveDistanceMeasureFile = new File(getOption(args, "admfile", null));
+			knnClassification.setAdaptiveDistanceMeasureFile(adaptiveDistanceMeasureFile);
+		}
+		
+		int cacheSize = Integer.parseInt(getOption(args, "cache", "0"));
+		if(cacheSize > 0) knnClassification.setQueryCache(new QueryCache(cacheSize));
+	}
+	
+	/**
+	 * Method classifying the testing set as a stream. Patterns are read from the testing file, classified
+	 * and written to the result file by the {@code ClassificationPipeline}, so the testing set isn't held in the memory.
+	 * Only testing files in the text format can be streamed. The accuracy is printed, if the result format doesn't hold it.
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void classifySetStream() throws FileNotFoundException, IOException, NumberFormatException {
+		if(BinaryDataset.isBinaryDataset(testingSetFile)) throw new IllegalArgumentException("Only testing files in the text format can be classified as a stream.");
+		
+		PatternReader reader = new PatternReader(testingSetFile);
+		ResultWriter resultWriter = null;
+		
+		try {
+			resultWriter = new ResultWriter(new File(testingSetFile.getPath()+".result"), resultFormat, knnClassification.getTrainingData().getLabelDictionary(), threadCnt);
+			double accuracy = new ClassificationPipeline(knnClassification, threadCnt).run(reader, resultWriter);
+			printAccuracy(accuracy);
+		}
+		finally {
+			reader.close();
+			if(resultWriter != null) resultWriter.close();
+		}
+	}
+	
+	/**
+	 * Method converting the file with patterns in the text format to the binary dataset.
+	 * @param input		file with patterns in the text format
+	 * @param output	file for the binary dataset
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static void convertSetFile(File input, File output) throws FileNotFoundException, IOException, NumberFormatException {
+		BinaryDataset.write(output, getTrainingDataFromFile(input));
+	}
+	
+	/**
+	 * Method reading the training data from given file. The file may be in the text format or the binary dataset.
+	 * Patterns from the text file are added to the training data directly by the {@code PatternReader}.
+	 * @param file	the file with training patterns
+	 * @return	training data from the file
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static TrainingData getTrainingDataFromFile(File file) throws FileNotFoundException, IOException, NumberFormatException {
+		if(BinaryDataset.isBinaryDataset(file)) return BinaryDataset.read(file);
+		
+		return PatternReader.readTrainingData(file);
+	}
+	
+	/**
+	 * Method returning the type of the spatial index chosen by optional arguments {@code index} and {@code storage}.
+	 * Compact storage of vectors ({@code float}, {@code int16} or {@code int8}) is used for the linear scan,
+	 * so it can't be combined with other indexes.
+	 * @param args				arguments from the command line
+	 * @param requiredArgsCnt	number of required arguments
+	 * @return	type of the spatial index ({@code SpatialIndex.INDEX_*})
+	 * @throws NumberFormatException
+	 */
+	private static int getIndexType(String[] args, int requiredArgsCnt) throws NumberFormatException {
+		int type = Integer.parseInt(getOption(args, "index", String.valueOf(SpatialIndex.INDEX_NONE), requiredArgsCnt));
+		String storage = getOption(args, "storage", STORAGE_DOUBLE, requiredArgsCnt);
+		
+		if(storage.equals(STORAGE_DOUBLE)) return type;
+		if(type != SpatialIndex.INDEX_NONE) throw new IllegalArgumentException("Compact storage can be used only without the spatial index: "+storage);
+		
+		if(storage.equals(STORAGE_FLOAT)) return SpatialIndex.INDEX_FLOAT;
+		if(storage.equals(STORAGE_INT16)) return SpatialIndex.INDEX_INT16;
+		if(storage.equals(STORAGE_INT8)) return SpatialIndex.INDEX_INT8;
+		
+		throw new IllegalArgumentException("Unknown storage of vectors: "+storage);
+	}
+	
+	/**
+	 * Method creating the kernel of the distance function chosen by the required argument. The Minkowski distance
+	 * takes its power from the optional argument {@code p}, the weighted Euclidean distance reads weights of features
+	 * from the file given by the optional argument {@code weights}.
+	 * @param args	arguments from the command line
+	 * @return	kernel of the distance function
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static DistanceKernel createDistanceKernel(String[] args) throws FileNotFoundException, IOException, NumberFormatException {
+		return createDistanceKernel(args, REQUIRED_ARGS_CNT);
+	}
+	
+	/**
+	 * Method creating the kernel of the distance function in the same way as {@code createDistanceKernel},
+	 * when optional arguments follow given number of required arguments.
+	 * @param args				arguments from the command line
+	 * @param requiredArgsCnt	number of required arguments
+	 * @return	kernel of the distance function
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static DistanceKernel createDistanceKernel(String[] args, int requiredArgsCnt) throws FileNotFoundException, IOException, NumberFormatException {
+		if(distanceType == Classification.DISTANCE_MINKOWSKI) {
+			return new MinkowskiKernel(Double.parseDouble(getOption(args, "p", String.valueOf(MinkowskiKernel.DEFAULT_POWER), requiredArgsCnt)));
+		}
+		
+		if(distanceType == Classification.DISTANCE_WEIGHTED) {
+			String weightsPath = getOption(args, "weights", null, requiredArgsCnt);
+			if(weightsPath == null) throw new IllegalArgumentException("Weighted Euclidean distance needs the file with weights of features (weights=PATH).");
 			
-			Pattern newPattern = null;
-			
-			if(isTrainingSet) newPattern = new Pattern(parsedVector, myLineSplit[1], myLineSplit[1]);
-			else newPattern = new Pattern(parsedVector, myLineSplit[1]);
+			return new WeightedEuclideanKernel(readWeights(new File(weightsPath)));
+		}
+		
+		return DistanceKernel.forType(distanceType);
+	}
+	
+	/**
+	 * Method reading weights of features from the file. Weights are numbers separated by commas, semicolons or whitespace.
+	 * @param file	file with weights
+	 * @return	weights of features
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static double[] readWeights(File file) throws FileNotFoundException, IOException, NumberFormatException {
+		List<Double> weights = new ArrayList<Double>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		
+		try {
+			String line;
 			
-			setFromFile.add(newPattern);
+			while((line = br.readLine()) != null) {
+				for(String value : line.trim().split("[,;\\s]+")) {
+					if(!value.isEmpty()) weights.add(Double.parseDouble(value));
+				}
+			}
+		}
+		finally {
+			br.close();
 		}
 		
-		br.close();
-		return setFromFile;
+		double[] result = new double[weights.size()];
+		
+		for(int i = 0; i < result.length; i++) {
+			result[i] = weights.get(i);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Method returning the type of the vote of nearest neighbors chosen by the optional argument {@code vote}.
+	 * @param args				arguments from the command line
+	 * @param requiredArgsCnt	number of required arguments
+	 * @return	type of the vote ({@code NeighborVote.VOTE_*})
+	 */
+	private static int getVoteType(String[] args, int requiredArgsCnt) {
+		String vote = getOption(args, "vote", VOTE_TYPES[NeighborVote.VOTE_MAJORITY], requiredArgsCnt);
+		
+		for(int type = 0; type < VOTE_TYPES.length; type++) {
+			if(VOTE_TYPES[type].equals(vote)) return type;
+		}
+		
+		throw new IllegalArgumentException("Unknown vote of nearest neighbors: "+vote);
+	}
+	
+	/**
+	 * Method returning the format of the result file chosen by the optional argument {@code output}.
+	 * @param args				arguments from the command line
+	 * @param requiredArgsCnt	number of required arguments
+	 * @return	format of the result file ({@code ResultWriter.FORMAT_*})
+	 */
+	private static int getResultFormat(String[] args, int requiredArgsCnt) {
+		String name = getOption(args, "output", RESULT_FORMATS[ResultWriter.FORMAT_TEXT], requiredArgsCnt);
+		
+		for(int format = ResultWriter.FORMAT_TEXT; format < RESULT_FORMATS.length; format++) {
+			if(RESULT_FORMATS[format].equals(name)) return format;
+		}
+		
+		throw new IllegalArgumentException("Unknown format of the result: "+name);
+	}
+	
+	/**
+	 * Method returning the value of the optional argument from the command line.
+	 * Optional arguments follow the required ones and have format {@code name=value}.
+	 * @param args			arguments from the command line
+	 * @param name			name of the optional argument
+	 * @param defaultValue	value returned if the argument wasn't passed
+	 * @return	value of the optional argument
+	 */
+	private static String getOption(String[] args, String name, String defaultValue) {
+		return getOption(args, name, defaultValue, REQUIRED_ARGS_CNT);
+	}
+	
+	/**
+	 * Method returning the value of the optional argument from the command line, which follows given number
+	 * of required arguments.
+	 * @param args				arguments from the command line
+	 * @param name				name of the optional argument
+	 * @param defaultValue		value returned if the argument wasn't passed
+	 * @param requiredArgsCnt	number of required arguments
+	 * @return	value of the optional argument
+	 */
+	private static String getOption(String[] args, String name, String defaultValue, int requiredArgsCnt) {
+		for(int i = requiredArgsCnt; i < args.length; i++) {
+			String[] optionSplit = args[i].split(OPTION_SEPARATOR, 2);
+			if(optionSplit.length == 2 && optionSplit[0].equals(name)) return optionSplit[1];
+		}
+		
+		return defaultValue;
+	}
+	
+	/**
+	 * Method reading patterns from given file and storing them to the list.
+	 * Based on the {@code isTrainingSet} parameter it determines whether to create training or testing patterns.
+	 * The text file is read as a stream by the {@code PatternReader} (the line with the number of patterns isn't needed),
+	 * the binary dataset is read via {@code BinaryDataset} (its patterns are always read as testing patterns).
+	 * @param file			the file with patterns in specific format
+	 * @param isTrainingSet	indicator, whether file contains training or testing patterns
+	 * @return	list with patterns from the file
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private static List<Pattern> getSetFromFile(File file, boolean isTrainingSet) throws FileNotFoundException, IOException, NumberFormatException {
+		if(!isTrainingSet && BinaryDataset.isBinaryDataset(file)) return BinaryDataset.readPatterns(file);
+		
+		return PatternReader.readPatterns(file, isTrainingSet);
 	}
 	
 	/**
@@ -172,23 +1017,34 @@ public class Main {
 	}
 	
 	/**
-	 * Method for writing classified testing patterns to the file is specific format.
-	 * It writes the lines in this order: {@code vector;classified class;correct class}.
-	 * It also appends the accuracy of the classification as % to the end of the file.
-	 * @param resultSet	list with classified testing patterns
-	 * @param accuracy	accuracy of the classification
+	 * Method for writing classified testing patterns to the file in the chosen format via {@code ResultWriter}.
+	 * The text format has lines in this order: {@code vector;classified class;correct class} and the accuracy
+	 * of the classification as % appended to the end of the file. Chunks of patterns are formatted by all threads.
+	 * @param resultSet			list with classified testing patterns
+	 * @param accuracy			accuracy of the classification
+	 * @param labelDictionary	dictionary of class labels of the training data (for the binary format)
 	 * @throws IOException
 	 */
-	private static void writeResultSet(List<Pattern> resultSet, double accuracy) throws IOException  {
-		BufferedWriter bw = new BufferedWriter(new FileWriter(new File(testingSetFile.getPath()+".result")));
+	private static void writeResultSet(List<Pattern> resultSet, double accuracy, LabelDictionary labelDictionary) throws IOException  {
+		ResultWriter resultWriter = new ResultWriter(new File(testingSetFile.getPath()+".result"), resultFormat, labelDictionary, Math.max(threadCnt, 1));
 		
-		for(Pattern p : resultSet) {
-			String line = Arrays.toString(p.getVector()) + INFO_PARSING_REGEX + p.getPatternClass() + INFO_PARSING_REGEX + p.getCorrectClass() + "\n";
-			bw.write(line);
+		try {
+			resultWriter.write(resultSet);
+			resultWriter.finish(accuracy);
+		}
+		finally {
+			resultWriter.close();
 		}
 		
-		bw.write("Accuracy result: "+accuracy*100+"%");
-		bw.close();
+		printAccuracy(accuracy);
+	}
+	
+	/**
+	 * Method printing the accuracy of the classification to the standard output, if the format of the result file doesn't hold it.
+	 * @param accuracy	accuracy of the classification
+	 */
+	private static void printAccuracy(double accuracy) {
+		if(resultFormat == ResultWriter.FORMAT_CSV || resultFormat == ResultWriter.FORMAT_BINARY) System.out.println("Accuracy result: "+accuracy*100+"%");
 	}
 	
 	/*private static void transferData(File input, File output) throws IOException {
@@ -0,0 +1,118 @@
+package knn;
+
+/**
+ * Kernel calculating the Manhattan distance. Its ranking distance is the distance itself. The loop is unrolled
+ * by four dimensions and the limit is checked once per four dimensions, the order of the summation is the same
+ * as in the plain loop.
+ * @author Vladimr Lznika
+ *
+ */
+public class ManhattanKernel extends DistanceKernel {
+	
+	@Override
+	public int getType() {
+		return Classification.DISTANCE_MANHATTAN;
+	}
+	
+	@Override
+	public double rank(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			sum += Math.abs(vectors1[offset1 + i] - vectors2[offset2 + i]);
+			sum += Math.abs(vectors1[offset1 + i + 1] - vectors2[offset2 + i + 1]);
+			sum += Math.abs(vectors1[offset1 + i + 2] - vectors2[offset2 + i + 2]);
+			sum += Math.abs(vectors1[offset1 + i + 3] - vectors2[offset2 + i + 3]);
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			sum += Math.abs(vectors1[offset1 + i] - vectors2[offset2 + i]);
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] vector, float[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			sum += Math.abs(vector[i] - vectors2[offset2 + i]);
+			sum += Math.abs(vector[i + 1] - vectors2[offset2 + i + 1]);
+			sum += Math.abs(vector[i + 2] - vectors2[offset2 + i + 2]);
+			sum += Math.abs(vector[i + 3] - vectors2[offset2 + i + 3]);
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			sum += Math.abs(vector[i] - vectors2[offset2 + i]);
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, short[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			sum += Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i];
+			sum += Math.abs(scaledVector[i + 1] - codes[offset2 + i + 1]) * scales[i + 1];
+			sum += Math.abs(scaledVector[i + 2] - codes[offset2 + i + 2]) * scales[i + 2];
+			sum += Math.abs(scaledVector[i + 3] - codes[offset2 + i + 3]) * scales[i + 3];
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			sum += Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i];
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, byte[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		int i = 0;
+		
+		for(; i + 4 <= dimension; i += 4) {
+			sum += Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i];
+			sum += Math.abs(scaledVector[i + 1] - codes[offset2 + i + 1]) * scales[i + 1];
+			sum += Math.abs(scaledVector[i + 2] - codes[offset2 + i + 2]) * scales[i + 2];
+			sum += Math.abs(scaledVector[i + 3] - codes[offset2 + i + 3]) * scales[i + 3];
+			if(sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		for(; i < dimension; i++) {
+			sum += Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i];
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double boxRank(double[] vector, double[] boxMin, double[] boxMax, int boxOffset, int dimension) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			if(vector[i] < boxMin[boxOffset + i]) sum += boxMin[boxOffset + i] - vector[i];
+			else if(vector[i] > boxMax[boxOffset + i]) sum += vector[i] - boxMax[boxOffset + i];
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public double toDistance(double rank) {
+		return rank;
+	}
+	
+	@Override
+	public double toRank(double distance) {
+		return distance;
+	}
+}
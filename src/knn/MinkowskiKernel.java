@@ -0,0 +1,129 @@
+package knn;
+
+/**
+ * Kernel calculating the Minkowski distance with the power {@code p} ({@code (sum |x - y|^p)^(1/p)}). Its ranking distance
+ * is the sum of powers without the root. The distance is a metric only for {@code p >= 1}. Powers are calculated
+ * by {@code Math.pow}, so the kernel is slower than kernels for special powers (Manhattan for 1, Euclidean for 2).
+ * The limit is checked once per four dimensions.
+ * @author Vladimr Lznika
+ *
+ */
+public class MinkowskiKernel extends DistanceKernel {
+	
+	/**
+	 * Power used when it isn't specified.
+	 */
+	public static final double DEFAULT_POWER = 3.0;
+	
+	/**
+	 * Power of the differences.
+	 */
+	private final double power;
+	
+	/**
+	 * Constructor for the kernel.
+	 * @param power	power of the differences (has to be positive)
+	 */
+	public MinkowskiKernel(double power) {
+		if(!(power > 0.0) || Double.isInfinite(power)) throw new IllegalArgumentException("Power of the Minkowski distance has to be positive: "+power);
+		this.power = power;
+	}
+	
+	/**
+	 * Getter for the power of the differences.
+	 * @return the power
+	 */
+	public double getPower() {
+		return power;
+	}
+	
+	@Override
+	public int getType() {
+		return Classification.DISTANCE_MINKOWSKI;
+	}
+	
+	@Override
+	public int getSignature() {
+		return 31 * getType() + Double.hashCode(power);
+	}
+	
+	@Override
+	public double[] getParameters() {
+		return new double[] {power};
+	}
+	
+	@Override
+	public boolean isMetric() {
+		return power >= 1.0;
+	}
+	
+	@Override
+	public double rank(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			sum += Math.pow(Math.abs(vectors1[offset1 + i] - vectors2[offset2 + i]), power);
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] vector, float[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			sum += Math.pow(Math.abs(vector[i] - vectors2[offset2 + i]), power);
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, short[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			sum += Math.pow(Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i], power);
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, byte[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			sum += Math.pow(Math.abs(scaledVector[i] - codes[offset2 + i]) * scales[i], power);
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double boxRank(double[] vector, double[] boxMin, double[] boxMax, int boxOffset, int dimension) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			if(vector[i] < boxMin[boxOffset + i]) sum += Math.pow(boxMin[boxOffset + i] - vector[i], power);
+			else if(vector[i] > boxMax[boxOffset + i]) sum += Math.pow(vector[i] - boxMax[boxOffset + i], power);
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public double toDistance(double rank) {
+		return Math.pow(rank, 1.0 / power);
+	}
+	
+	@Override
+	public double toRank(double distance) {
+		return Math.pow(distance, power);
+	}
+}
@@ -0,0 +1,612 @@
+package knn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instance of this class is the trained classifier loaded from the snapshot file, so it can classify without parsing
+ * the training set, calculating adaptive distance measures and building the spatial index again. The snapshot holds
+ * parameters of the classifier ({@code K}, the distance function with its parameters, the use of adaptive distance
+ * measures, the type of the index, the search effort and the vote), the training data (vectors, the dictionary of class
+ * labels, class identifiers, adaptive distance measures and removed patterns) and the structure of the spatial index
+ * (KD-tree, ball tree and HNSW graph are stored with their nodes, compact vectors are created again from the stored data).
+ * All numbers are little-endian and arrays are aligned to 8 bytes like in the {@code BinaryDataset}. The file is read
+ * via {@code FileChannel.map}, arrays are transferred from mapped regions in bulk without any parsing. Identifiers and indices
+ * (classes, removed patterns, nodes of trees and links of the graph) are range-checked, so the damaged file ends with the {@code IOException}.
+ * @author Vladimr Lznika
+ *
+ */
+public class ModelSnapshot {
+	
+	/**
+	 * Number identifying the snapshot file (and version of its format).
+	 */
+	private static final int FILE_MAGIC = 0x4B4E5301;
+	
+	/**
+	 * Charset of the class labels.
+	 */
+	private static final Charset LABEL_CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Maximal size of one mapped region of the file (multiple of 8 bytes).
+	 */
+	private static final long MAX_REGION_SIZE = 1L << 30;
+	
+	/**
+	 * Model of the trained classifier.
+	 */
+	private final ClassificationModel model;
+	
+	/**
+	 * Number of nearest neighbors used for classification.
+	 */
+	private final int kNumber;
+	
+	/**
+	 * Variable indicating, whether adaptive distance measures are used (1 - YES, other - NO).
+	 */
+	private final int useAdaptiveDistanceMeasure;
+	
+	/**
+	 * Type of the vote of nearest neighbors ({@code NeighborVote.VOTE_*}).
+	 */
+	private final int voteType;
+	
+	/**
+	 * Constructor for the loaded snapshot.
+	 * @param model							model of the trained classifier
+	 * @param kNumber						number of nearest neighbors
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used
+	 * @param voteType						type of the vote of nearest neighbors
+	 */
+	private ModelSnapshot(ClassificationModel model, int kNumber, int useAdaptiveDistanceMeasure, int voteType) {
+		this.model = model;
+		this.kNumber = kNumber;
+		this.useAdaptiveDistanceMeasure = useAdaptiveDistanceMeasure;
+		this.voteType = voteType;
+	}
+	
+	/**
+	 * Getter for the model of the trained classifier.
+	 * @return the model
+	 */
+	public ClassificationModel getModel() {
+		return model;
+	}
+	
+	/**
+	 * Getter for the number of nearest neighbors.
+	 * @return the kNumber
+	 */
+	public int getKNumber() {
+		return kNumber;
+	}
+	
+	/**
+	 * Getter for the indicator of adaptive distance measures.
+	 * @return the useAdaptiveDistanceMeasure (1 - YES, other - NO)
+	 */
+	public int getUseAdaptiveDistanceMeasure() {
+		return useAdaptiveDistanceMeasure;
+	}
+	
+	/**
+	 * Getter for the type of the vote of nearest neighbors.
+	 * @return the voteType ({@code NeighborVote.VOTE_*})
+	 */
+	public int getVoteType() {
+		return voteType;
+	}
+	
+	/**
+	 * Method writing the trained classifier to the snapshot file.
+	 * @param file		file for the snapshot
+	 * @param model		model of the trained classifier
+	 * @param kNumber	number of nearest neighbors
+	 * @param voteType	type of the vote of nearest neighbors ({@code NeighborVote.VOTE_*})
+	 * @throws IOException
+	 */
+	public static void write(File file, ClassificationModel model, int kNumber, int voteType) throws IOException {
+		TrainingData trainingData = model.getTrainingData();
+		DistanceKernel distanceKernel = model.getDistanceKernel();
+		LabelDictionary labelDictionary = trainingData.getLabelDictionary();
+		Output output = new Output(new FileOutputStream(file));
+		
+		try {
+			output.writeInt(FILE_MAGIC);
+			output.writeInt(kNumber);
+			output.writeInt(model.usesAdaptiveDistanceMeasures() ? Classification.USE_ADM : 0);
+			output.writeInt(voteType);
+			output.writeInt(model.getIndexType());
+			output.writeInt(model.getSearchEffort());
+			output.writeInt(distanceKernel.getType());
+			output.writeDoubles(distanceKernel.getParameters(), distanceKernel.getParameters().length);
+			
+			output.writeInt(trainingData.size());
+			output.writeInt(Math.max(trainingData.getDimension(), 0));
+			output.writeInt(labelDictionary.size());
+			
+			for(String label : labelDictionary.getLabels()) {
+				output.writeString(label);
+			}
+			
+			int[] classIds = new int[trainingData.size()];
+			double[] measures = new double[trainingData.size()];
+			int[] removed = new int[trainingData.getRemovedCnt()];
+			int removedCnt = 0;
+			
+			for(int i = 0; i < trainingData.size(); i++) {
+				classIds[i] = trainingData.getClassId(i);
+				measures[i] = trainingData.getAdaptiveDistanceMeasure(i);
+				if(trainingData.isRemoved(i)) removed[removedCnt++] = i;
+			}
+			
+			output.writeDoubles(trainingData.getVectors(), trainingData.size() * Math.max(trainingData.getDimension(), 0));
+			output.writeInts(classIds, classIds.length);
+			output.writeDoubles(measures, measures.length);
+			output.writeInts(removed, removedCnt);
+			
+			SpatialIndex spatialIndex = model.getSpatialIndex();
+			
+			if(spatialIndex == null) output.writeInt(SpatialIndex.INDEX_NONE);
+			else spatialIndex.writeSnapshot(output);
+			
+			output.writeInts(model.getUnindexed(), model.getUnindexed().length);
+			output.writeInt(model.getStaleCnt());
+		}
+		finally {
+			output.close();
+		}
+	}
+	
+	/**
+	 * Method reading the trained classifier from the snapshot file created by the {@code write} method.
+	 * @param file	file with the snapshot
+	 * @return	loaded snapshot
+	 * @throws IOException if the file isn't the snapshot or it's damaged
+	 */
+	public static ModelSnapshot read(File file) throws IOException {
+		Input input = new Input(file);
+		
+		try {
+			if(input.size() < 4 || input.readInt() != FILE_MAGIC) throw new IOException("File "+file.getPath()+" isn't the snapshot of the classifier.");
+			
+			int kNumber = input.readInt();
+			int useAdaptiveDistanceMeasure = input.readInt();
+			int voteType = input.readInt();
+			int indexType = input.readInt();
+			int searchEffort = input.readInt();
+			int distanceType = input.readInt();
+			DistanceKernel distanceKernel = readDistanceKernel(input, distanceType);
+			
+			int size = input.readInt();
+			int dimension = input.readInt();
+			int labelCnt = input.readInt();
+			
+			if(kNumber < 1 || voteType < NeighborVote.VOTE_MAJORITY || voteType > NeighborVote.VOTE_ADM || size < 0 || dimension < 0 || labelCnt < 0) throw new IOException("File "+file.getPath()+" is damaged (invalid parameters of the model).");
+			
+			List<String> labels = new ArrayList<String>();
+			
+			for(int c = 0; c < labelCnt; c++) {
+				labels.add(input.readString());
+			}
+			
+			double[] vectors = input.readDoubles();
+			int[] classIds = input.readInts();
+			double[] measures = input.readDoubles();
+			int[] removed = input.readInts();
+			
+			if(vectors.length != (long)size * dimension || classIds.length != size || measures.length != size) throw new IOException("File "+file.getPath()+" is damaged (sizes of arrays differ).");
+			
+			try {
+				distanceKernel.checkDimension(dimension);
+			}
+			catch(IndexOutOfBoundsException e) {
+				throw new IOException("File "+file.getPath()+" is damaged (distance function doesn't match the dimension).");
+			}
+			
+			checkRange(classIds, labelCnt, "class identifiers");
+			checkRange(removed, size, "removed patterns");
+			
+			TrainingData trainingData = new TrainingData(dimension, vectors, classIds, labels);
+			boolean useAdaptiveDistanceMeasures = (useAdaptiveDistanceMeasure == Classification.USE_ADM);
+			
+			for(int i = 0; i < size; i++) {
+				trainingData.setAdaptiveDistanceMeasure(i, measures[i]);
+			}
+			
+			for(int i : removed) {
+				trainingData.removePattern(i);
+			}
+			
+			SpatialIndex spatialIndex = SpatialIndex.readSnapshot(input, trainingData, distanceKernel);
+			int[] unindexed = input.readInts();
+			int staleCnt = input.readInt();
+			
+			checkRange(unindexed, size, "unindexed patterns");
+			if(staleCnt < 0) throw new IOException("Snapshot is damaged (negative number of changed patterns).");
+			
+			ClassificationModel model = new ClassificationModel(trainingData, distanceKernel, indexType, searchEffort, useAdaptiveDistanceMeasures, spatialIndex, unindexed, staleCnt);
+			return new ModelSnapshot(model, kNumber, useAdaptiveDistanceMeasure, voteType);
+		}
+		finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * Method reading parameters of the distance function and creating its kernel. The kernel has to calculate
+	 * exactly the written function (unknown types or invalid parameters mean the damaged snapshot).
+	 * @param input			input of the snapshot
+	 * @param distanceType	type of the distance function
+	 * @return	kernel of the distance function
+	 * @throws IOException if the snapshot is damaged
+	 */
+	private static DistanceKernel readDistanceKernel(Input input, int distanceType) throws IOException {
+		double[] parameters = input.readDoubles();
+		DistanceKernel distanceKernel;
+		
+		try {
+			distanceKernel = DistanceKernel.forType(distanceType, parameters);
+		}
+		catch(IllegalArgumentException e) {
+			throw new IOException("Snapshot is damaged (invalid distance function: "+e.getMessage()+").");
+		}
+		
+		if(!distanceKernel.isSameFunction(distanceType, parameters)) throw new IOException("Snapshot is damaged (unknown distance function: "+distanceType+").");
+		return distanceKernel;
+	}
+	
+	/**
+	 * Method checking, whether all values of the read array lie in the range from 0 to given bound.
+	 * @param values	read values
+	 * @param bound		bound of the range (exclusive)
+	 * @param name		name of the values for the error message
+	 * @throws IOException if some value lies outside of the range
+	 */
+	private static void checkRange(int[] values, int bound, String name) throws IOException {
+		for(int value : values) {
+			if(value < 0 || value >= bound) throw new IOException("Snapshot is damaged ("+name+" exceed the training data: "+value+").");
+		}
+	}
+	
+	/**
+	 * Method aligning the position in the file to 8 bytes.
+	 * @param position	position in the file
+	 * @return	the nearest higher or equal position divisible by 8
+	 */
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+	
+	/**
+	 * Instance of this class writes values of the snapshot to the file through the buffer. Arrays are written
+	 * with their length and aligned to 8 bytes.
+	 */
+	static class Output {
+		
+		/**
+		 * Stream of the file.
+		 */
+		private final FileOutputStream stream;
+		
+		/**
+		 * Channel of the file.
+		 */
+		private final FileChannel channel;
+		
+		/**
+		 * Buffer of written values.
+		 */
+		private final ByteBuffer buffer;
+		
+		/**
+		 * Position in the file after the buffered values.
+		 */
+		private long position;
+		
+		/**
+		 * Constructor for the output.
+		 * @param stream	stream of the file
+		 */
+		public Output(FileOutputStream stream) {
+			this.stream = stream;
+			this.channel = stream.getChannel();
+			this.buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			this.position = 0;
+		}
+		
+		/**
+		 * Method writing the integer.
+		 * @param value	written value
+		 * @throws IOException
+		 */
+		public void writeInt(int value) throws IOException {
+			ensureRemaining(4);
+			buffer.putInt(value);
+			position += 4;
+		}
+		
+		/**
+		 * Method writing the string in UTF-8 with its length.
+		 * @param value	written value
+		 * @throws IOException
+		 */
+		public void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes(LABEL_CHARSET);
+			writeInt(bytes.length);
+			
+			for(byte b : bytes) {
+				ensureRemaining(1);
+				buffer.put(b);
+				position++;
+			}
+		}
+		
+		/**
+		 * Method writing the array of integers.
+		 * @param values	array with written values
+		 * @param cnt		number of written values from the start of the array
+		 * @throws IOException
+		 */
+		public void writeInts(int[] values, int cnt) throws IOException {
+			writeInt(cnt);
+			pad();
+			
+			for(int i = 0; i < cnt; i++) {
+				ensureRemaining(4);
+				buffer.putInt(values[i]);
+			}
+			
+			position += 4L * cnt;
+		}
+		
+		/**
+		 * Method writing the array of doubles.
+		 * @param values	array with written values
+		 * @param cnt		number of written values from the start of the array
+		 * @throws IOException
+		 */
+		public void writeDoubles(double[] values, int cnt) throws IOException {
+			writeInt(cnt);
+			pad();
+			
+			for(int i = 0; i < cnt; i++) {
+				ensureRemaining(8);
+				buffer.putDouble(values[i]);
+			}
+			
+			position += 8L * cnt;
+		}
+		
+		/**
+		 * Method closing the file (buffered values are written first).
+		 * @throws IOException
+		 */
+		public void close() throws IOException {
+			try {
+				flush();
+			}
+			finally {
+				stream.close();
+			}
+		}
+		
+		/**
+		 * Method writing zero bytes up to the position divisible by 8.
+		 * @throws IOException
+		 */
+		private void pad() throws IOException {
+			while(position < align(position)) {
+				ensureRemaining(1);
+				buffer.put((byte)0);
+				position++;
+			}
+		}
+		
+		/**
+		 * Method writing the buffer to the file if it has less than given number of free bytes.
+		 * @param cnt	number of bytes, which will be put to the buffer
+		 * @throws IOException
+		 */
+		private void ensureRemaining(int cnt) throws IOException {
+			if(buffer.remaining() < cnt) flush();
+		}
+		
+		/**
+		 * Method writing the content of the buffer to the file and clearing the buffer.
+		 * @throws IOException
+		 */
+		private void flush() throws IOException {
+			buffer.flip();
+			
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			buffer.clear();
+		}
+	}
+	
+	/**
+	 * Instance of this class reads values of the snapshot from the file mapped to the memory. The file is mapped
+	 * in regions (at most {@code MAX_REGION_SIZE} bytes), arrays are transferred from regions in bulk.
+	 */
+	static class Input {
+		
+		/**
+		 * Opened file.
+		 */
+		private final RandomAccessFile file;
+		
+		/**
+		 * Channel of the file.
+		 */
+		private final FileChannel channel;
+		
+		/**
+		 * Currently mapped region of the file.
+		 */
+		private MappedByteBuffer region;
+		
+		/**
+		 * Position of the mapped region in the file.
+		 */
+		private long regionStart;
+		
+		/**
+		 * Position of the next read value in the file.
+		 */
+		private long position;
+		
+		/**
+		 * Constructor for the input. It opens the file and maps its first region.
+		 * @param file	file with the snapshot
+		 * @throws IOException
+		 */
+		public Input(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			this.channel = this.file.getChannel();
+			this.position = 0;
+			map(0);
+		}
+		
+		/**
+		 * Method returning the size of the file.
+		 * @return	size of the file in bytes
+		 * @throws IOException
+		 */
+		public long size() throws IOException {
+			return channel.size();
+		}
+		
+		/**
+		 * Method reading the integer.
+		 * @return	read value
+		 * @throws IOException if the file ends
+		 */
+		public int readInt() throws IOException {
+			ensureAvailable(4);
+			int value = region.getInt((int)(position - regionStart));
+			position += 4;
+			return value;
+		}
+		
+		/**
+		 * Method reading the string written with its length.
+		 * @return	read value
+		 * @throws IOException if the file ends
+		 */
+		public String readString() throws IOException {
+			int length = readInt();
+			if(length < 0) throw new IOException("Snapshot is damaged (negative length of the string).");
+			
+			ensureAvailable(length);
+			byte[] bytes = new byte[length];
+			region.position((int)(position - regionStart));
+			region.get(bytes);
+			position += length;
+			
+			return new String(bytes, LABEL_CHARSET);
+		}
+		
+		/**
+		 * Method reading the array of integers written with its length.
+		 * @return	read values
+		 * @throws IOException if the file ends
+		 */
+		public int[] readInts() throws IOException {
+			int[] values = new int[readLength(4)];
+			int transferred = 0;
+			
+			while(transferred < values.length) {
+				ensureAvailable(4);
+				int cnt = (int)Math.min(values.length - transferred, (regionStart + region.capacity() - position) / 4);
+				region.position((int)(position - regionStart));
+				region.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, transferred, cnt);
+				transferred += cnt;
+				position += 4L * cnt;
+			}
+			
+			return values;
+		}
+		
+		/**
+		 * Method reading the array of doubles written with its length.
+		 * @return	read values
+		 * @throws IOException if the file ends
+		 */
+		public double[] readDoubles() throws IOException {
+			double[] values = new double[readLength(8)];
+			int transferred = 0;
+			
+			while(transferred < values.length) {
+				ensureAvailable(8);
+				int cnt = (int)Math.min(values.length - transferred, (regionStart + region.capacity() - position) / 8);
+				region.position((int)(position - regionStart));
+				region.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values, transferred, cnt);
+				transferred += cnt;
+				position += 8L * cnt;
+			}
+			
+			return values;
+		}
+		
+		/**
+		 * Method closing the file.
+		 * @throws IOException
+		 */
+		public void close() throws IOException {
+			file.close();
+		}
+		
+		/**
+		 * Method reading the length of the array and skipping the padding before its values.
+		 * The length is checked against the rest of the file, so damaged files don't allocate huge arrays.
+		 * @param valueSize	size of one value of the array in bytes
+		 * @return	length of the array
+		 * @throws IOException if the file ends
+		 */
+		private int readLength(int valueSize) throws IOException {
+			int length = readInt();
+			position = align(position);
+			
+			if(length < 0 || position + (long)valueSize * length > channel.size()) throw new IOException("Snapshot is damaged (array exceeds the file).");
+			return length;
+		}
+		
+		/**
+		 * Method mapping the region of the file starting at given position, if the current region doesn't hold
+		 * given number of bytes from the position of the next value.
+		 * @param cnt	number of needed bytes
+		 * @throws IOException if the file ends
+		 */
+		private void ensureAvailable(int cnt) throws IOException {
+			if(position + cnt <= regionStart + region.capacity()) return;
+			if(position + cnt > channel.size()) throw new IOException("Snapshot is damaged (it's too short).");
+			
+			map(position);
+		}
+		
+		/**
+		 * Method mapping the region of the file starting at given position.
+		 * @param start	position of the region in the file
+		 * @throws IOException
+		 */
+		private void map(long start) throws IOException {
+			regionStart = start;
+			region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAX_REGION_SIZE, channel.size() - start));
+			region.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+}
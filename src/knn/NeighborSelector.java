@@ -0,0 +1,215 @@
+package knn;
+
+/**
+ * Instance of this class selects {@code K} nearest neighbors from the stream of offered candidates.
+ * It keeps only the {@code K} best candidates in a bounded max-heap over primitive arrays, so the worst of them
+ * is always on the top and can be replaced in logarithmic time. Ties in the distance are resolved
+ * in favour of the candidate with lower index (the same result as the stable sort of the training set would give).
+ * Instance is meant to be reused for all queries of one thread.
+ * @author Vladimr Lznika
+ *
+ */
+public class NeighborSelector {
+	
+	/**
+	 * Maximal number of candidates held by the selector.
+	 */
+	private final int capacity;
+	
+	/**
+	 * Distances of the held candidates (heap ordered until {@code sortNeighbors} is called).
+	 */
+	private final double[] distances;
+	
+	/**
+	 * Indices of the held candidates in the training set (heap ordered until {@code sortNeighbors} is called).
+	 */
+	private final int[] indices;
+	
+	/**
+	 * Current number of the held candidates.
+	 */
+	private int size;
+	
+	/**
+	 * Number of distances evaluated for the current query (counted by searches, which report it).
+	 */
+	private long distanceCnt;
+	
+	/**
+	 * Constructor for the selector. It allocates arrays for given number of neighbors.
+	 * @param capacity	number of nearest neighbors to keep
+	 */
+	public NeighborSelector(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("Number of nearest neighbors has to be positive: "+capacity);
+		this.capacity = capacity;
+		this.distances = new double[capacity];
+		this.indices = new int[capacity];
+		this.size = 0;
+	}
+	
+	/**
+	 * Method removing all held candidates, so the selector can be used for the next query.
+	 */
+	public void reset() {
+		size = 0;
+		distanceCnt = 0;
+	}
+	
+	/**
+	 * Method returning the distance a candidate has to beat to be accepted. It's positive infinity
+	 * until the selector holds {@code K} candidates.
+	 * @return	distance of the worst held candidate
+	 */
+	public double worstDistance() {
+		return (size < capacity) ? Double.POSITIVE_INFINITY : distances[0];
+	}
+	
+	/**
+	 * Method offering a candidate to the selector. It's accepted if there are less than {@code K} candidates
+	 * or if it's nearer than the worst held candidate, which is then dropped.
+	 * @param index		index of the candidate in the training set
+	 * @param distance	distance of the candidate from the tested pattern
+	 * @return	true if the candidate was accepted
+	 */
+	public boolean offer(int index, double distance) {
+		if(size < capacity) {
+			int i = size++;
+			
+			while(i > 0) {
+				int parent = (i - 1) >>> 1;
+				if(!isWorse(distance, index, distances[parent], indices[parent])) break;
+				distances[i] = distances[parent];
+				indices[i] = indices[parent];
+				i = parent;
+			}
+			
+			distances[i] = distance;
+			indices[i] = index;
+			return true;
+		}
+		
+		if(!isWorse(distances[0], indices[0], distance, index)) return false;
+		siftDown(distance, index, size);
+		return true;
+	}
+	
+	/**
+	 * Method sorting held candidates in ascending order of their distance (heap sort in place).
+	 * After this call, methods {@code getIndex} and {@code getDistance} return neighbors from the nearest one.
+	 * The selector has to be reset before offering next candidates.
+	 */
+	public void sortNeighbors() {
+		for(int end = size - 1; end > 0; end--) {
+			double topDistance = distances[0];
+			int topIndex = indices[0];
+			siftDown(distances[end], indices[end], end);
+			distances[end] = topDistance;
+			indices[end] = topIndex;
+		}
+	}
+	
+	/**
+	 * Method adding to the number of distances evaluated for the current query. Searches count evaluations
+	 * in local variables and add them once, so the innermost loops aren't slowed down.
+	 * @param cnt	number of evaluated distances
+	 */
+	public void countDistances(long cnt) {
+		distanceCnt += cnt;
+	}
+	
+	/**
+	 * Getter for the number of distances evaluated for the current query.
+	 * @return the distanceCnt
+	 */
+	public long getDistanceCnt() {
+		return distanceCnt;
+	}
+	
+	/**
+	 * Getter for the maximal number of held candidates.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Getter for the number of held candidates.
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Getter for the training set index of the held candidate.
+	 * @param i	position of the candidate
+	 * @return	index of the candidate in the training set
+	 */
+	public int getIndex(int i) {
+		return indices[i];
+	}
+	
+	/**
+	 * Getter for the training set indices of held candidates. Only first {@code size} values are valid
+	 * and they are sorted only after {@code sortNeighbors} was called.
+	 * @return the indices
+	 */
+	public int[] getIndices() {
+		return indices;
+	}
+	
+	/**
+	 * Getter for distances of held candidates. Only first {@code size} values are valid
+	 * and they are sorted only after {@code sortNeighbors} was called.
+	 * @return the distances
+	 */
+	public double[] getDistances() {
+		return distances;
+	}
+	
+	/**
+	 * Getter for the distance of the held candidate.
+	 * @param i	position of the candidate
+	 * @return	distance of the candidate
+	 */
+	public double getDistance(int i) {
+		return distances[i];
+	}
+	
+	/**
+	 * Method placing given candidate to the top of the heap with given size and restoring the heap order.
+	 * @param distance	distance of the placed candidate
+	 * @param index		index of the placed candidate
+	 * @param heapSize	number of candidates in the heap
+	 */
+	private void siftDown(double distance, int index, int heapSize) {
+		int i = 0;
+		int child;
+		
+		while((child = 2 * i + 1) < heapSize) {
+			if(child + 1 < heapSize && isWorse(distances[child + 1], indices[child + 1], distances[child], indices[child])) child++;
+			if(!isWorse(distances[child], indices[child], distance, index)) break;
+			distances[i] = distances[child];
+			indices[i] = indices[child];
+			i = child;
+		}
+		
+		distances[i] = distance;
+		indices[i] = index;
+	}
+	
+	/**
+	 * Method comparing two candidates. Candidate is worse if it's further or if it's in the same distance
+	 * and has higher index.
+	 * @param distance1	distance of the first candidate
+	 * @param index1	index of the first candidate
+	 * @param distance2	distance of the second candidate
+	 * @param index2	index of the second candidate
+	 * @return	true if the first candidate is worse than the second one
+	 */
+	private static boolean isWorse(double distance1, int index1, double distance2, int index2) {
+		return distance1 > distance2 || (distance1 == distance2 && index1 > index2);
+	}
+}
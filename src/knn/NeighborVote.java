@@ -0,0 +1,191 @@
+package knn;
+
+import java.util.Arrays;
+
+/**
+ * Instance of this class determines the class of the tested pattern from its nearest neighbors. Votes are counted
+ * over integer class identifiers in the primitive table, which is reused by following votes (only classes, which got
+ * a vote, are cleared), so voting doesn't allocate anything. The table grows when the training set gains new classes.
+ * Neighbors may vote with the same weight (majority), with the weight decreasing with their distance
+ * (inverse distance or Gaussian) or with the weight given by their adaptive distance measure. Ties are broken
+ * deterministically in favor of the class, which has the nearest neighbor (neighbors with the same distance are sorted
+ * by their index). Instance isn't thread safe, every thread has to use its own one.
+ * @author Vladimr Lznika
+ *
+ */
+public class NeighborVote {
+	
+	/**
+	 * Constant value indicating every neighbor has one vote.
+	 */
+	public static final int VOTE_MAJORITY = 0;
+	
+	/**
+	 * Constant value indicating the vote of the neighbor is the inverse of its distance. If some neighbors have
+	 * zero distance, only they vote (with the same weight).
+	 */
+	public static final int VOTE_INVERSE_DISTANCE = 1;
+	
+	/**
+	 * Constant value indicating the vote of the neighbor is the Gaussian of its distance. The width of the Gaussian
+	 * is the distance of the farthest voting neighbor.
+	 */
+	public static final int VOTE_GAUSSIAN = 2;
+	
+	/**
+	 * Constant value indicating the vote of the neighbor is its adaptive distance measure (the distance
+	 * to the nearest pattern of other class), so neighbors lying deep inside their class vote stronger than neighbors
+	 * at the class border. Neighbors vote with the same weight if adaptive distance measures aren't set.
+	 */
+	public static final int VOTE_ADM = 3;
+	
+	/**
+	 * Type of the vote ({@code VOTE_*}).
+	 */
+	private final int voteType;
+	
+	/**
+	 * Kernel of the distance function converting ranking distances of neighbors to distances.
+	 */
+	private final DistanceKernel distanceKernel;
+	
+	/**
+	 * Sums of votes of classes (indexed by the class identifier).
+	 */
+	private double[] scores;
+	
+	/**
+	 * Position of the nearest neighbor of every class among voting neighbors (indexed by the class identifier).
+	 */
+	private int[] firstPositions;
+	
+	/**
+	 * Identifiers of classes, which got a vote in the current vote (in the order of their nearest neighbors).
+	 */
+	private int[] votedClassIds;
+	
+	/**
+	 * Constructor for the vote.
+	 * @param voteType			type of the vote ({@code VOTE_*})
+	 * @param distanceKernel	kernel of the distance function used for searching neighbors
+	 */
+	public NeighborVote(int voteType, DistanceKernel distanceKernel) {
+		if(voteType < VOTE_MAJORITY || voteType > VOTE_ADM) throw new IllegalArgumentException("Unknown type of the vote: "+voteType);
+		
+		this.voteType = voteType;
+		this.distanceKernel = distanceKernel;
+		this.scores = new double[0];
+		this.firstPositions = new int[0];
+		this.votedClassIds = new int[0];
+	}
+	
+	/**
+	 * Getter for the type of the vote.
+	 * @return the voteType ({@code VOTE_*})
+	 */
+	public int getVoteType() {
+		return voteType;
+	}
+	
+	/**
+	 * Method determining the class identifier from first {@code neighborCnt} nearest neighbors. Neighbors sorted
+	 * up to higher {@code K} can be voted for every lower {@code K} (e.g. by the cross-validation).
+	 * @param trainingData	training data of the neighbors
+	 * @param neighbors		indices of nearest training patterns sorted from the nearest one
+	 * @param distances		ranking distances of the neighbors (as held by the {@code NeighborSelector}),
+	 * 						they may be null for the majority vote
+	 * @param neighborCnt	number of neighbors, which vote
+	 * @return	identifier of the determined class (-1 if there are no neighbors)
+	 */
+	public int vote(TrainingData trainingData, int[] neighbors, double[] distances, int neighborCnt) {
+		if(neighborCnt == 0) return -1;
+		
+		ensureCapacity(trainingData.getLabelDictionary().size(), neighborCnt);
+		
+		double width = (voteType == VOTE_GAUSSIAN) ? distanceKernel.toDistance(distances[neighborCnt - 1]) : 0.0;
+		boolean exactOnly = (voteType == VOTE_INVERSE_DISTANCE && distances[0] == 0.0);
+		int votedCnt = 0;
+		
+		for(int i = 0; i < neighborCnt; i++) {
+			int classId = trainingData.getClassId(neighbors[i]);
+			
+			if(firstPositions[classId] < 0) {
+				firstPositions[classId] = i;
+				votedClassIds[votedCnt++] = classId;
+			}
+			
+			scores[classId] += getWeight(trainingData, neighbors[i], distances, i, width, exactOnly);
+		}
+		
+		int selectedClassId = votedClassIds[0];
+		
+		for(int c = 1; c < votedCnt; c++) {
+			int classId = votedClassIds[c];
+			if(scores[classId] > scores[selectedClassId]) selectedClassId = classId;
+		}
+		
+		for(int c = 0; c < votedCnt; c++) {
+			scores[votedClassIds[c]] = 0.0;
+			firstPositions[votedClassIds[c]] = -1;
+		}
+		
+		return selectedClassId;
+	}
+	
+	/**
+	 * Method determining the class label from first {@code neighborCnt} nearest neighbors via {@code vote}.
+	 * @param trainingData	training data of the neighbors
+	 * @param neighbors		indices of nearest training patterns sorted from the nearest one
+	 * @param distances		ranking distances of the neighbors (they may be null for the majority vote)
+	 * @param neighborCnt	number of neighbors, which vote
+	 * @return	determined class (null if there are no neighbors)
+	 */
+	public String voteClass(TrainingData trainingData, int[] neighbors, double[] distances, int neighborCnt) {
+		int classId = vote(trainingData, neighbors, distances, neighborCnt);
+		return (classId < 0) ? null : trainingData.getLabelDictionary().getLabel(classId);
+	}
+	
+	/**
+	 * Method returning the weight of the vote of one neighbor.
+	 * @param trainingData	training data of the neighbors
+	 * @param index			index of the neighbor in the training data
+	 * @param distances		ranking distances of the neighbors
+	 * @param position		position of the neighbor among nearest neighbors
+	 * @param width			width of the Gaussian
+	 * @param exactOnly		indicator whether only neighbors with zero distance vote
+	 * @return	weight of the vote
+	 */
+	private double getWeight(TrainingData trainingData, int index, double[] distances, int position, double width, boolean exactOnly) {
+		switch(voteType) {
+			case VOTE_INVERSE_DISTANCE:
+				if(exactOnly) return (distances[position] == 0.0) ? 1.0 : 0.0;
+				return 1.0 / distanceKernel.toDistance(distances[position]);
+			case VOTE_GAUSSIAN:
+				if(width == 0.0) return 1.0;
+				double relativeDistance = distanceKernel.toDistance(distances[position]) / width;
+				return Math.exp(-0.5 * relativeDistance * relativeDistance);
+			case VOTE_ADM:
+				return trainingData.getAdaptiveDistanceMeasure(index);
+			default:
+				return 1.0;
+		}
+	}
+	
+	/**
+	 * Method enlarging tables of the vote, so they hold given number of classes and voting neighbors.
+	 * @param classCnt		number of classes
+	 * @param neighborCnt	number of voting neighbors
+	 */
+	private void ensureCapacity(int classCnt, int neighborCnt) {
+		if(scores.length < classCnt) {
+			int oldLength = scores.length;
+			int newLength = Math.max(classCnt, 2 * oldLength);
+			
+			scores = Arrays.copyOf(scores, newLength);
+			firstPositions = Arrays.copyOf(firstPositions, newLength);
+			Arrays.fill(firstPositions, oldLength, newLength, -1);
+		}
+		
+		if(votedClassIds.length < Math.min(classCnt, neighborCnt)) votedClassIds = new int[Math.min(classCnt, neighborCnt)];
+	}
+}
@@ -25,12 +25,6 @@ public class Pattern {
 	 */
 	private String correctClass;
 	
-	/**
-	 * Distance of the pattern from another based on their vectors. It's used solely for storing the distance
-	 * between training patterns and test pattern being classified (it's not stored for testing patterns themselves). 
-	 */
-	private double distance;
-	
 	/**
 	 * Adaptive distance measure is calculated for training patterns based on their distance from nearest pattern
 	 * with different class.
@@ -56,7 +50,6 @@ public class Pattern {
 		this.vector = vector;
 		this.patternClass = patternClass;
 		this.correctClass = correctClass;
-		this.distance = Double.MAX_VALUE;
 		this.adaptiveDistanceMeasure = 1.0;
 	}
 
@@ -84,14 +77,6 @@ public class Pattern {
 		return correctClass;
 	}
 
-	/**
-	 * Getter for the set distance on this training pattern.
-	 * @return the distance
-	 */
-	public double getDistance() {
-		return distance;
-	}
-
 	/**
 	 * Getter for the adaptive distance measure on this training patterns.
 	 * @return the adaptiveDistanceMeasure
@@ -108,14 +93,6 @@ public class Pattern {
 		this.patternClass = patternClass;
 	}
 
-	/**
-	 * Setter for the distance of this training pattern.
-	 * @param distance the distance to set
-	 */
-	public void setDistance(double distance) {
-		this.distance = distance;
-	}
-
 	/**
 	 * Setter for the adaptive distance measure of this training pattern.
 	 * @param adaptiveDistanceMeasure the adaptiveDistanceMeasure to set
@@ -0,0 +1,500 @@
+package knn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Instance of this class reads patterns in the text format ({@code vector;class}, dimensions separated by {@code ,})
+ * from the channel as a stream. Bytes are parsed directly in the buffer: numbers are converted without creating
+ * intermediate strings and class labels are looked up in the table of already seen labels, so reading
+ * of one pattern doesn't allocate anything. The line with the number of patterns at the start of the file isn't needed,
+ * lines without the class separator are skipped. Vector of the current pattern is held in the reused array,
+ * which is valid only until the next pattern is read.
+ * @author Vladimr Lznika
+ *
+ */
+public class PatternReader implements Closeable {
+	
+	/**
+	 * Initial size of the buffer for the read bytes.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Initial capacity of the table of class labels (power of two).
+	 */
+	private static final int LABEL_TABLE_SIZE = 16;
+	
+	/**
+	 * Maximal number of significant digits, which can be converted to the double exactly without the library method.
+	 */
+	private static final int MAX_EXACT_DIGITS = 15;
+	
+	/**
+	 * Powers of ten, which are exactly representable by double values.
+	 */
+	private static final double[] EXACT_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	/**
+	 * Charset of the class labels.
+	 */
+	private static final Charset LABEL_CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Channel with patterns.
+	 */
+	private final ReadableByteChannel channel;
+	
+	/**
+	 * Buffer with read bytes, bytes between {@code lineStart} and its position weren't parsed yet.
+	 */
+	private ByteBuffer buffer;
+	
+	/**
+	 * Position of the first byte of the not yet parsed line in the buffer.
+	 */
+	private int lineStart;
+	
+	/**
+	 * Indicator, whether the end of the channel was reached.
+	 */
+	private boolean endOfInput;
+	
+	/**
+	 * Vector of the current pattern.
+	 */
+	private double[] vector;
+	
+	/**
+	 * Class label of the current pattern.
+	 */
+	private String patternClass;
+	
+	/**
+	 * Number of the line with the current pattern (from 1).
+	 */
+	private long lineNumber;
+	
+	/**
+	 * Bytes of the already seen class labels (open addressing table).
+	 */
+	private byte[][] labelBytes;
+	
+	/**
+	 * Already seen class labels on the same positions as their bytes.
+	 */
+	private String[] labels;
+	
+	/**
+	 * Number of labels in the table.
+	 */
+	private int labelCnt;
+	
+	/**
+	 * Constructor for the reader of given channel.
+	 * @param channel	channel with patterns in the text format
+	 */
+	public PatternReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.lineStart = 0;
+		this.endOfInput = false;
+		this.vector = new double[0];
+		this.lineNumber = 0;
+		this.labelBytes = new byte[LABEL_TABLE_SIZE][];
+		this.labels = new String[LABEL_TABLE_SIZE];
+		this.labelCnt = 0;
+	}
+	
+	/**
+	 * Constructor for the reader of given file.
+	 * @param file	file with patterns in the text format
+	 * @throws IOException
+	 */
+	public PatternReader(File file) throws IOException {
+		this(new FileInputStream(file).getChannel());
+	}
+	
+	/**
+	 * Method reading all patterns from the file in the text format to the training data.
+	 * Patterns are added directly from the reused vector, no {@code Pattern} instances are created.
+	 * @param file	file with training patterns
+	 * @return	training data from the file
+	 * @throws IOException
+	 * @throws NumberFormatException if some value of the vector isn't a number
+	 */
+	public static TrainingData readTrainingData(File file) throws IOException, NumberFormatException {
+		TrainingData trainingData = new TrainingData();
+		PatternReader reader = new PatternReader(file);
+		
+		try {
+			while(reader.next()) {
+				trainingData.addPattern(reader.getVector(), reader.getPatternClass());
+			}
+		}
+		finally {
+			reader.close();
+		}
+		
+		return trainingData;
+	}
+	
+	/**
+	 * Method reading all patterns from the file in the text format to the list.
+	 * @param file				file with patterns
+	 * @param isTrainingSet		indicator, whether training or testing patterns should be created
+	 * @return	list with patterns from the file
+	 * @throws IOException
+	 * @throws NumberFormatException if some value of the vector isn't a number
+	 */
+	public static List<Pattern> readPatterns(File file, boolean isTrainingSet) throws IOException, NumberFormatException {
+		ArrayList<Pattern> patterns = new ArrayList<Pattern>();
+		PatternReader reader = new PatternReader(file);
+		
+		try {
+			Pattern pattern = null;
+			
+			while((pattern = reader.nextPattern(isTrainingSet)) != null) {
+				patterns.add(pattern);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		
+		return patterns;
+	}
+	
+	/**
+	 * Method reading the next pattern from the channel. After that its vector and class are available
+	 * via {@code getVector} and {@code getPatternClass} methods.
+	 * @return	true if the pattern was read, false at the end of the channel
+	 * @throws IOException
+	 * @throws NumberFormatException if some value of the vector isn't a number
+	 */
+	public boolean next() throws IOException, NumberFormatException {
+		while(true) {
+			int lineEnd = findLineEnd();
+			if(lineEnd < 0) return false;
+			
+			lineNumber++;
+			int nextLineStart = lineEnd + 1;
+			while(lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+			
+			boolean parsed = parseLine(lineStart, lineEnd);
+			lineStart = nextLineStart;
+			
+			if(parsed) return true;
+		}
+	}
+	
+	/**
+	 * Method reading the next pattern from the channel as the new instance of the {@code Pattern}.
+	 * Its vector is a copy, so the instance stays valid after reading next patterns.
+	 * @param isTrainingPattern	indicator, whether the training or the testing pattern should be created
+	 * @return	the pattern or null at the end of the channel
+	 * @throws IOException
+	 * @throws NumberFormatException if some value of the vector isn't a number
+	 */
+	public Pattern nextPattern(boolean isTrainingPattern) throws IOException, NumberFormatException {
+		if(!next()) return null;
+		
+		double[] vectorCopy = vector.clone();
+		if(isTrainingPattern) return new Pattern(vectorCopy, patternClass, patternClass);
+		else return new Pattern(vectorCopy, patternClass);
+	}
+	
+	/**
+	 * Getter for the vector of the current pattern. The array is reused for following patterns.
+	 * @return the vector
+	 */
+	public double[] getVector() {
+		return vector;
+	}
+	
+	/**
+	 * Getter for the class label of the current pattern.
+	 * @return the patternClass
+	 */
+	public String getPatternClass() {
+		return patternClass;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/**
+	 * Method finding the end of the line starting at {@code lineStart}. Bytes are read from the channel
+	 * if the line isn't complete in the buffer. The last line doesn't have to end with the line break.
+	 * @return	position of the line break (or the end of the last line) or -1 if there is no other line
+	 * @throws IOException
+	 */
+	private int findLineEnd() throws IOException {
+		int searchFrom = lineStart;
+		
+		while(true) {
+			byte[] bytes = buffer.array();
+			int end = buffer.position();
+			
+			for(int i = searchFrom; i < end; i++) {
+				if(bytes[i] == '\n') return i;
+			}
+			
+			if(endOfInput) {
+				if(lineStart == end) return -1;
+				
+				ensureFree(1);
+				buffer.put((byte)'\n');
+				return end;
+			}
+			
+			searchFrom = end - lineStart;
+			ensureFree(BUFFER_SIZE / 2);
+			searchFrom += lineStart;
+			
+			if(channel.read(buffer) < 0) endOfInput = true;
+		}
+	}
+	
+	/**
+	 * Method ensuring there is at least given number of free bytes in the buffer. Already parsed lines are
+	 * removed and the buffer is enlarged if needed, {@code lineStart} then points to the start of the buffer.
+	 * @param free	required number of free bytes
+	 */
+	private void ensureFree(int free) {
+		if(buffer.remaining() >= free) return;
+		
+		int unparsed = buffer.position() - lineStart;
+		
+		if(buffer.capacity() - unparsed < free) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, unparsed + free));
+			larger.put(buffer.array(), lineStart, unparsed);
+			buffer = larger;
+		}
+		else {
+			System.arraycopy(buffer.array(), lineStart, buffer.array(), 0, unparsed);
+			buffer.position(unparsed);
+		}
+		
+		lineStart = 0;
+	}
+	
+	/**
+	 * Method parsing the line with the pattern. Lines without the class separator are skipped
+	 * (e.g. the line with the number of patterns or empty lines).
+	 * @param start	position of the first byte of the line
+	 * @param end	position after the last byte of the line
+	 * @return	true if the line contained the pattern
+	 * @throws NumberFormatException if some value of the vector isn't a number
+	 */
+	private boolean parseLine(int start, int end) throws NumberFormatException {
+		byte[] bytes = buffer.array();
+		int classSeparator = -1;
+		int dimension = 1;
+		
+		for(int i = start; i < end; i++) {
+			if(bytes[i] == ';') {
+				classSeparator = i;
+				break;
+			}
+			if(bytes[i] == ',') dimension++;
+		}
+		
+		if(classSeparator < 0) return false;
+		
+		if(vector.length != dimension) vector = new double[dimension];
+		
+		int valueStart = start;
+		
+		for(int d = 0; d < dimension; d++) {
+			int valueEnd = valueStart;
+			while(valueEnd < classSeparator && bytes[valueEnd] != ',') valueEnd++;
+			
+			vector[d] = parseDouble(bytes, valueStart, valueEnd);
+			valueStart = valueEnd + 1;
+		}
+		
+		int labelEnd = classSeparator + 1;
+		while(labelEnd < end && bytes[labelEnd] != ';') labelEnd++;
+		
+		patternClass = getLabel(bytes, classSeparator + 1, labelEnd);
+		return true;
+	}
+	
+	/**
+	 * Method converting the decimal number in given bytes to the double value. Numbers with at most 15 significant digits
+	 * and small exponent are converted exactly by one multiplication or division by the power of ten, other numbers
+	 * are passed to the {@code Double.parseDouble} method.
+	 * @param bytes	array with the number
+	 * @param start	position of the first byte of the number
+	 * @param end	position after the last byte of the number
+	 * @return	the double value of the number
+	 * @throws NumberFormatException if the bytes don't contain a number
+	 */
+	private double parseDouble(byte[] bytes, int start, int end) throws NumberFormatException {
+		while(start < end && (bytes[start] == ' ' || bytes[start] == '\t')) start++;
+		while(end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == '\t')) end--;
+		
+		int i = start;
+		boolean negative = false;
+		
+		if(i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = (bytes[i] == '-');
+			i++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean anyDigit = false;
+		boolean point = false;
+		
+		for(; i < end; i++) {
+			byte b = bytes[i];
+			
+			if(b >= '0' && b <= '9') {
+				anyDigit = true;
+				if(mantissa == 0 && b == '0') {
+					if(point) exponent--;
+					continue;
+				}
+				if(digits == MAX_EXACT_DIGITS) return parseDoubleSlow(bytes, start, end);
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if(point) exponent--;
+			}
+			else if(b == '.' && !point) point = true;
+			else break;
+		}
+		
+		if(!anyDigit) return parseDoubleSlow(bytes, start, end);
+		
+		if(i < end) {
+			if(bytes[i] != 'e' && bytes[i] != 'E') return parseDoubleSlow(bytes, start, end);
+			i++;
+			
+			boolean negativeExponent = false;
+			if(i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+				negativeExponent = (bytes[i] == '-');
+				i++;
+			}
+			
+			if(i == end) return parseDoubleSlow(bytes, start, end);
+			
+			int explicitExponent = 0;
+			for(; i < end; i++) {
+				if(bytes[i] < '0' || bytes[i] > '9' || explicitExponent > 9999) return parseDoubleSlow(bytes, start, end);
+				explicitExponent = explicitExponent * 10 + (bytes[i] - '0');
+			}
+			
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		
+		double value;
+		
+		if(mantissa == 0) value = 0.0;
+		else if(exponent == 0) value = mantissa;
+		else if(exponent > 0 && exponent < EXACT_POWERS_OF_TEN.length) value = mantissa * EXACT_POWERS_OF_TEN[exponent];
+		else if(exponent < 0 && -exponent < EXACT_POWERS_OF_TEN.length) value = mantissa / EXACT_POWERS_OF_TEN[-exponent];
+		else return parseDoubleSlow(bytes, start, end);
+		
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Method converting the number in given bytes to the double value via {@code Double.parseDouble} method.
+	 * @param bytes	array with the number
+	 * @param start	position of the first byte of the number
+	 * @param end	position after the last byte of the number
+	 * @return	the double value of the number
+	 * @throws NumberFormatException if the bytes don't contain a number
+	 */
+	private double parseDoubleSlow(byte[] bytes, int start, int end) throws NumberFormatException {
+		String value = new String(bytes, start, end - start, LABEL_CHARSET);
+		
+		try {
+			return Double.parseDouble(value);
+		}
+		catch(NumberFormatException e) {
+			throw new NumberFormatException("Line "+lineNumber+": "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Method returning the class label in given bytes. The label is looked up in the table of already seen labels,
+	 * the new string is created only for the label, which wasn't seen yet.
+	 * @param bytes	array with the label
+	 * @param start	position of the first byte of the label
+	 * @param end	position after the last byte of the label
+	 * @return	the class label
+	 */
+	private String getLabel(byte[] bytes, int start, int end) {
+		int hash = 1;
+		
+		for(int i = start; i < end; i++) {
+			hash = 31 * hash + bytes[i];
+		}
+		
+		int mask = labels.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		
+		while(labels[slot] != null) {
+			byte[] candidate = labelBytes[slot];
+			
+			if(candidate.length == end - start) {
+				int i = 0;
+				while(i < candidate.length && candidate[i] == bytes[start + i]) i++;
+				if(i == candidate.length) return labels[slot];
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		labelBytes[slot] = Arrays.copyOfRange(bytes, start, end);
+		labels[slot] = new String(bytes, start, end - start, LABEL_CHARSET);
+		String label = labels[slot];
+		
+		if(++labelCnt * 2 > labels.length) rehashLabels();
+		
+		return label;
+	}
+	
+	/**
+	 * Method doubling the size of the table of class labels.
+	 */
+	private void rehashLabels() {
+		byte[][] oldBytes = labelBytes;
+		String[] oldLabels = labels;
+		labelBytes = new byte[oldLabels.length * 2][];
+		labels = new String[oldLabels.length * 2];
+		int mask = labels.length - 1;
+		
+		for(int j = 0; j < oldLabels.length; j++) {
+			if(oldLabels[j] == null) continue;
+			
+			int hash = 1;
+			for(byte b : oldBytes[j]) {
+				hash = 31 * hash + b;
+			}
+			
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while(labels[slot] != null) slot = (slot + 1) & mask;
+			
+			labelBytes[slot] = oldBytes[j];
+			labels[slot] = oldLabels[j];
+		}
+	}
+}
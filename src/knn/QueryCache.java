@@ -0,0 +1,288 @@
+package knn;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instance of this class caches classes determined for tested vectors, so repeated vectors aren't searched again.
+ * Entries are keyed by the vector together with the number of nearest neighbors, the distance function, the use
+ * of adaptive distance measures and the type of the vote, and they hold the model of the classifier, by which they were determined. Entries
+ * of the older model are ignored (and dropped), so the cache is invalidated by every update of the training set.
+ * The cache is bounded by the number of entries and the least recently used entries are evicted. It's split
+ * to segments by the hash of the key, which are locked separately, so threads classifying patterns at once
+ * rarely wait for each other. Every entry holds a copy of the vector, so it takes about {@code 8 * dimension + 100} bytes.
+ * @author Vladimr Lznika
+ *
+ */
+public class QueryCache {
+	
+	/**
+	 * Maximal number of separately locked segments (smaller caches have one segment per entry).
+	 */
+	private static final int SEGMENT_CNT = 16;
+	
+	/**
+	 * Segments with entries in the order of their use.
+	 */
+	private final Segment[] segments;
+	
+	/**
+	 * Number of lookups, which found the entry.
+	 */
+	private final LongAdder hitCnt;
+	
+	/**
+	 * Number of lookups, which didn't find the entry (or found the entry of the older model).
+	 */
+	private final LongAdder missCnt;
+	
+	/**
+	 * Number of entries evicted because the cache was full.
+	 */
+	private final LongAdder evictionCnt;
+	
+	/**
+	 * Constructor for the empty cache.
+	 * @param capacity	maximal number of entries
+	 */
+	public QueryCache(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity of the query cache has to be positive: "+capacity);
+		
+		this.segments = new Segment[Math.min(SEGMENT_CNT, capacity)];
+		this.hitCnt = new LongAdder();
+		this.missCnt = new LongAdder();
+		this.evictionCnt = new LongAdder();
+		
+		for(int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment((capacity + segments.length - 1 - i) / segments.length);
+		}
+	}
+	
+	/**
+	 * Method returning the cached class of the tested vector.
+	 * @param key	key of the tested vector
+	 * @param model	current model of the classifier
+	 * @return	cached class or null if it isn't cached for given model
+	 */
+	public String get(Key key, ClassificationModel model) {
+		Segment segment = getSegment(key);
+		CachedClass entry;
+		
+		synchronized(segment) {
+			entry = segment.get(key);
+			if(entry != null && entry.model != model) { segment.remove(key); entry = null; }
+		}
+		
+		if(entry == null) {
+			missCnt.increment();
+			return null;
+		}
+		
+		hitCnt.increment();
+		return entry.patternClass;
+	}
+	
+	/**
+	 * Method caching the class of the tested vector determined by given model.
+	 * @param key			key of the tested vector (its vector mustn't be changed after that)
+	 * @param model			model, by which the class was determined
+	 * @param patternClass	determined class (nothing is cached if it's null)
+	 */
+	public void put(Key key, ClassificationModel model, String patternClass) {
+		if(patternClass == null) return;
+		
+		Segment segment = getSegment(key);
+		
+		synchronized(segment) {
+			segment.put(key, new CachedClass(model, patternClass));
+		}
+	}
+	
+	/**
+	 * Method removing all entries (statistics are kept).
+	 */
+	public void clear() {
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				segment.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Method returning the number of cached entries.
+	 * @return	number of entries
+	 */
+	public int size() {
+		int size = 0;
+		
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				size += segment.size();
+			}
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Method returning the number of lookups, which found the entry.
+	 * @return	number of hits
+	 */
+	public long getHitCnt() {
+		return hitCnt.sum();
+	}
+	
+	/**
+	 * Method returning the number of lookups, which didn't find the entry.
+	 * @return	number of misses
+	 */
+	public long getMissCnt() {
+		return missCnt.sum();
+	}
+	
+	/**
+	 * Method returning the number of entries evicted because the cache was full.
+	 * @return	number of evictions
+	 */
+	public long getEvictionCnt() {
+		return evictionCnt.sum();
+	}
+	
+	/**
+	 * Method returning the segment of given key.
+	 * @param key	key of the tested vector
+	 * @return	segment holding the key
+	 */
+	private Segment getSegment(Key key) {
+		int hash = key.hash;
+		return segments[((hash ^ (hash >>> 16)) & 0x7fffffff) % segments.length];
+	}
+	
+	/**
+	 * Instance of this class is the key of the tested vector. Its hash is calculated once.
+	 */
+	public static class Key {
+		
+		/**
+		 * Tested vector.
+		 */
+		private final double[] vector;
+		
+		/**
+		 * Number of nearest neighbors.
+		 */
+		private final int kNumber;
+		
+		/**
+		 * Type of the distance function.
+		 */
+		private final int distanceType;
+		
+		/**
+		 * Indicator whether adaptive distance measures are used.
+		 */
+		private final boolean useAdaptiveDistanceMeasures;
+		
+		/**
+		 * Type of the vote of nearest neighbors.
+		 */
+		private final int voteType;
+		
+		/**
+		 * Hash of the key.
+		 */
+		private final int hash;
+		
+		/**
+		 * Constructor for the key. The vector isn't copied.
+		 * @param vector						tested vector
+		 * @param kNumber						number of nearest neighbors
+		 * @param distanceType					type of the distance function
+		 * @param useAdaptiveDistanceMeasures	whether adaptive distance measures are used
+		 * @param voteType						type of the vote of nearest neighbors
+		 */
+		public Key(double[] vector, int kNumber, int distanceType, boolean useAdaptiveDistanceMeasures, int voteType) {
+			this.vector = vector;
+			this.kNumber = kNumber;
+			this.distanceType = distanceType;
+			this.useAdaptiveDistanceMeasures = useAdaptiveDistanceMeasures;
+			this.voteType = voteType;
+			this.hash = (((Arrays.hashCode(vector) * 31 + kNumber) * 31 + distanceType) * 31 + (useAdaptiveDistanceMeasures ? 1 : 0)) * 31 + voteType;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) return true;
+			if(!(obj instanceof Key)) return false;
+			
+			Key key = (Key)obj;
+			return hash == key.hash && kNumber == key.kNumber && distanceType == key.distanceType
+					&& useAdaptiveDistanceMeasures == key.useAdaptiveDistanceMeasures && voteType == key.voteType && Arrays.equals(vector, key.vector);
+		}
+	}
+	
+	/**
+	 * Instance of this class is the cached class with the model, by which it was determined.
+	 */
+	private static class CachedClass {
+		
+		/**
+		 * Model, by which the class was determined.
+		 */
+		private final ClassificationModel model;
+		
+		/**
+		 * Determined class.
+		 */
+		private final String patternClass;
+		
+		/**
+		 * Constructor for the entry.
+		 * @param model			model, by which the class was determined
+		 * @param patternClass	determined class
+		 */
+		public CachedClass(ClassificationModel model, String patternClass) {
+			this.model = model;
+			this.patternClass = patternClass;
+		}
+	}
+	
+	/**
+	 * Instance of this class is one segment of the cache. It's the map in the access order, which evicts
+	 * the least recently used entry once it holds more entries than its capacity.
+	 */
+	private class Segment extends LinkedHashMap<Key, CachedClass> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Maximal number of entries of the segment.
+		 */
+		private final int capacity;
+		
+		/**
+		 * Constructor for the empty segment.
+		 * @param capacity	maximal number of entries
+		 */
+		public Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, CachedClass> eldest) {
+			if(size() <= capacity) return false;
+			
+			evictionCnt.increment();
+			return true;
+		}
+	}
+}
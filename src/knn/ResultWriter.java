@@ -0,0 +1,629 @@
+package knn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Instance of this class writes classified testing patterns to the result file. Records are formatted directly
+ * to reusable byte chunks (doubles by the fast formatter, which falls back to {@code Double.toString} only for values
+ * needing many digits or the exponent), so lines aren't built as strings. Chunks of patterns are formatted in parallel
+ * and written in their order through the {@code FileChannel}. Formats of the result:
+ * {@code FORMAT_TEXT} - lines {@code [vector];classified class;correct class} and the accuracy at the end,
+ * {@code FORMAT_CLASSES} - the same lines without the vector,
+ * {@code FORMAT_CSV} - lines {@code v1,v2,...,classified class,correct class} without the accuracy,
+ * {@code FORMAT_BINARY} - the header (magic number, number of records and the dictionary of class labels
+ * like in the {@code BinaryDataset}) followed by little-endian pairs of identifiers of the classified and the correct class
+ * (-1 for the correct class, which isn't in the dictionary).
+ * @author Vladimr Lznika
+ *
+ */
+public class ResultWriter {
+	
+	/**
+	 * Constant value indicating the text result with vectors (the format written by the classification before).
+	 */
+	public static final int FORMAT_TEXT = 1;
+	
+	/**
+	 * Constant value indicating the text result without vectors.
+	 */
+	public static final int FORMAT_CLASSES = 2;
+	
+	/**
+	 * Constant value indicating the CSV result.
+	 */
+	public static final int FORMAT_CSV = 3;
+	
+	/**
+	 * Constant value indicating the binary result with identifiers of classes.
+	 */
+	public static final int FORMAT_BINARY = 4;
+	
+	/**
+	 * Number identifying the binary result file (and version of its format).
+	 */
+	private static final int FILE_MAGIC = 0x4B4E5201;
+	
+	/**
+	 * Charset of the text results (the same as the one used by {@code FileWriter}).
+	 */
+	private static final Charset TEXT_CHARSET = Charset.defaultCharset();
+	
+	/**
+	 * Charset of the class labels in the binary result.
+	 */
+	private static final Charset LABEL_CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Separator of the vector and classes in text lines.
+	 */
+	private static final String INFO_SEPARATOR = ";";
+	
+	/**
+	 * Separator of values in CSV lines.
+	 */
+	private static final char CSV_SEPARATOR = ',';
+	
+	/**
+	 * Number of patterns formatted in one chunk.
+	 */
+	private static final int CHUNK_SIZE = 1024;
+	
+	/**
+	 * Number of chunks, which may be formatted ahead of writing, per one thread.
+	 */
+	private static final int CHUNKS_PER_THREAD = 2;
+	
+	/**
+	 * Initial capacity of the chunk in bytes.
+	 */
+	private static final int INITIAL_CHUNK_CAPACITY = 1 << 16;
+	
+	/**
+	 * Limit of the scaled double, below which its digits are found exactly in the long (every double below it
+	 * has the spacing smaller than 1/8, so at most one integer rounds to it).
+	 */
+	private static final double EXACT_DIGITS_LIMIT = 1e15;
+	
+	/**
+	 * Powers of ten as doubles (all of them are exact).
+	 */
+	private static final double[] DOUBLE_POWERS = new double[19];
+	
+	/**
+	 * Powers of ten as longs.
+	 */
+	private static final long[] LONG_POWERS = new long[19];
+	
+	static {
+		DOUBLE_POWERS[0] = 1.0;
+		LONG_POWERS[0] = 1L;
+		
+		for(int i = 1; i < LONG_POWERS.length; i++) {
+			DOUBLE_POWERS[i] = DOUBLE_POWERS[i - 1] * 10.0;
+			LONG_POWERS[i] = LONG_POWERS[i - 1] * 10L;
+		}
+	}
+	
+	/**
+	 * Stream of the result file.
+	 */
+	private final FileOutputStream stream;
+	
+	/**
+	 * Channel of the result file.
+	 */
+	private final FileChannel channel;
+	
+	/**
+	 * Format of the result ({@code FORMAT_*}).
+	 */
+	private final int format;
+	
+	/**
+	 * Dictionary of class labels written to the binary result (null for text formats).
+	 */
+	private final LabelDictionary labelDictionary;
+	
+	/**
+	 * Number of threads formatting chunks.
+	 */
+	private final int parallelism;
+	
+	/**
+	 * Encoded class labels (labels repeat in every line, so they are encoded only once).
+	 */
+	private final ConcurrentHashMap<String, byte[]> encodedLabels;
+	
+	/**
+	 * Chunks, which were written and can be reused.
+	 */
+	private final ConcurrentLinkedQueue<Chunk> freeChunks;
+	
+	/**
+	 * Number of written records.
+	 */
+	private long recordCnt;
+	
+	/**
+	 * Pool of threads formatting chunks (created on the first parallel write).
+	 */
+	private ForkJoinPool pool;
+	
+	/**
+	 * Constructor for the writer. It creates the result file (and writes the header of the binary result).
+	 * @param file				result file
+	 * @param format			format of the result ({@code FORMAT_*})
+	 * @param labelDictionary	dictionary of class labels of the training data (used only by the binary result)
+	 * @param parallelism		number of threads formatting chunks of patterns
+	 * @throws IOException
+	 */
+	public ResultWriter(File file, int format, LabelDictionary labelDictionary, int parallelism) throws IOException {
+		if(format < FORMAT_TEXT || format > FORMAT_BINARY) throw new IllegalArgumentException("Unknown format of the result: "+format);
+		if(parallelism < 1) throw new IllegalArgumentException("Number of threads has to be positive: "+parallelism);
+		
+		this.format = format;
+		this.labelDictionary = (format == FORMAT_BINARY) ? new LabelDictionary(labelDictionary) : null;
+		this.parallelism = parallelism;
+		this.encodedLabels = new ConcurrentHashMap<String, byte[]>();
+		this.freeChunks = new ConcurrentLinkedQueue<Chunk>();
+		this.recordCnt = 0;
+		this.stream = new FileOutputStream(file);
+		this.channel = stream.getChannel();
+		
+		if(format == FORMAT_BINARY) {
+			try {
+				writeHeader();
+			}
+			catch(IOException e) {
+				stream.close();
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Getter for the format of the result.
+	 * @return the format ({@code FORMAT_*})
+	 */
+	public int getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Method writing classified patterns. Chunks of patterns are formatted by the pool of threads (if more threads
+	 * were requested) while the calling thread writes already formatted chunks in their order.
+	 * @param patterns	classified patterns
+	 * @throws IOException
+	 */
+	public void write(final List<Pattern> patterns) throws IOException {
+		int chunkCnt = (patterns.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		
+		if(parallelism == 1 || chunkCnt <= 1) {
+			for(int from = 0; from < patterns.size(); from += CHUNK_SIZE) {
+				write(format(patterns, from, Math.min(patterns.size(), from + CHUNK_SIZE)));
+			}
+			
+			return;
+		}
+		
+		ForkJoinPool formatPool = getPool();
+		ArrayDeque<ForkJoinTask<Chunk>> formattedChunks = new ArrayDeque<ForkJoinTask<Chunk>>();
+		int submittedCnt = 0;
+		
+		for(int c = 0; c < chunkCnt; c++) {
+			while(submittedCnt < chunkCnt && submittedCnt < c + parallelism * CHUNKS_PER_THREAD) {
+				final int from = submittedCnt * CHUNK_SIZE;
+				
+				formattedChunks.add(formatPool.submit(new Callable<Chunk>() {
+					@Override
+					public Chunk call() {
+						return format(patterns, from, Math.min(patterns.size(), from + CHUNK_SIZE));
+					}
+				}));
+				submittedCnt++;
+			}
+			
+			write(formattedChunks.poll().join());
+		}
+	}
+	
+	/**
+	 * Method formatting given range of patterns to the chunk. It may be called from several threads at once.
+	 * @param patterns	classified patterns
+	 * @param from		index of the first formatted pattern
+	 * @param to		index after the last formatted pattern
+	 * @return	chunk with formatted records
+	 */
+	Chunk format(List<Pattern> patterns, int from, int to) {
+		Chunk chunk = freeChunks.poll();
+		if(chunk == null) chunk = new Chunk();
+		
+		chunk.clear();
+		
+		for(int i = from; i < to; i++) {
+			Pattern p = patterns.get(i);
+			
+			switch(format) {
+			case FORMAT_TEXT:
+				formatVector(chunk, p.getVector());
+				chunk.put(encodeLabel(INFO_SEPARATOR));
+				formatClasses(chunk, p, INFO_SEPARATOR);
+				break;
+			case FORMAT_CLASSES:
+				formatClasses(chunk, p, INFO_SEPARATOR);
+				break;
+			case FORMAT_CSV:
+				formatCsv(chunk, p);
+				break;
+			default:
+				chunk.putInt(getClassId(p.getPatternClass()));
+				chunk.putInt(getClassId(p.getCorrectClass()));
+			}
+			
+			chunk.recordCnt++;
+		}
+		
+		return chunk;
+	}
+	
+	/**
+	 * Method writing the formatted chunk to the file. Chunks have to be written in the order of their patterns
+	 * by one thread, the chunk is reused after that.
+	 * @param chunk	chunk with formatted records
+	 * @throws IOException
+	 */
+	void write(Chunk chunk) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(chunk.bytes, 0, chunk.length);
+		
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		
+		recordCnt += chunk.recordCnt;
+		freeChunks.add(chunk);
+	}
+	
+	/**
+	 * Method finishing the result and closing the file. Text results end with the accuracy of the classification as %,
+	 * the binary result gets the number of written records to its header.
+	 * @param accuracy	accuracy of the classification (a number between 0 and 1)
+	 * @throws IOException
+	 */
+	public void finish(double accuracy) throws IOException {
+		try {
+			if(format == FORMAT_TEXT || format == FORMAT_CLASSES) {
+				ByteBuffer footer = ByteBuffer.wrap(("Accuracy result: "+accuracy*100+"%").getBytes(TEXT_CHARSET));
+				
+				while(footer.hasRemaining()) {
+					channel.write(footer);
+				}
+			}
+			else if(format == FORMAT_BINARY) {
+				ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+				count.putInt(0, (int)recordCnt);
+				channel.write(count, 4);
+			}
+		}
+		finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Method closing the file without finishing the result (e.g. after the classification failed).
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized(this) {
+			if(pool != null) pool.shutdown();
+		}
+		
+		stream.close();
+	}
+	
+	/**
+	 * Method returning the pool of threads formatting chunks. It's created on the first call.
+	 * @return	the pool of threads
+	 */
+	private synchronized ForkJoinPool getPool() {
+		if(pool == null) pool = new ForkJoinPool(parallelism);
+		return pool;
+	}
+	
+	/**
+	 * Method writing the header of the binary result (the number of records is written by {@code finish}).
+	 * @throws IOException
+	 */
+	private void writeHeader() throws IOException {
+		int size = 12;
+		
+		for(String label : labelDictionary.getLabels()) {
+			size += 4 + label.getBytes(LABEL_CHARSET).length;
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(FILE_MAGIC);
+		header.putInt(0);
+		header.putInt(labelDictionary.size());
+		
+		for(String label : labelDictionary.getLabels()) {
+			byte[] labelBytes = label.getBytes(LABEL_CHARSET);
+			header.putInt(labelBytes.length);
+			header.put(labelBytes);
+		}
+		
+		header.flip();
+		
+		while(header.hasRemaining()) {
+			channel.write(header);
+		}
+	}
+	
+	/**
+	 * Method formatting the vector in the format of {@code Arrays.toString}.
+	 * @param chunk		chunk for formatted record
+	 * @param vector	formatted vector
+	 */
+	private void formatVector(Chunk chunk, double[] vector) {
+		if(vector == null) {
+			chunk.put(encodeLabel("null"));
+			return;
+		}
+		
+		chunk.put((byte)'[');
+		
+		for(int d = 0; d < vector.length; d++) {
+			if(d > 0) {
+				chunk.put((byte)',');
+				chunk.put((byte)' ');
+			}
+			
+			chunk.putDouble(vector[d]);
+		}
+		
+		chunk.put((byte)']');
+	}
+	
+	/**
+	 * Method formatting classified and correct class of the pattern and the end of the line.
+	 * @param chunk		chunk for formatted record
+	 * @param pattern	classified pattern
+	 * @param separator	separator of classes
+	 */
+	private void formatClasses(Chunk chunk, Pattern pattern, String separator) {
+		chunk.put(encodeLabel(String.valueOf(pattern.getPatternClass())));
+		chunk.put(encodeLabel(separator));
+		chunk.put(encodeLabel(String.valueOf(pattern.getCorrectClass())));
+		chunk.put((byte)'\n');
+	}
+	
+	/**
+	 * Method formatting the pattern as the CSV line. Classes containing separators or quotes are quoted.
+	 * @param chunk		chunk for formatted record
+	 * @param pattern	classified pattern
+	 */
+	private void formatCsv(Chunk chunk, Pattern pattern) {
+		double[] vector = pattern.getVector();
+		
+		for(int d = 0; d < vector.length; d++) {
+			chunk.putDouble(vector[d]);
+			chunk.put((byte)CSV_SEPARATOR);
+		}
+		
+		chunk.put(encodeLabel(quoteCsv(String.valueOf(pattern.getPatternClass()))));
+		chunk.put((byte)CSV_SEPARATOR);
+		chunk.put(encodeLabel(quoteCsv(String.valueOf(pattern.getCorrectClass()))));
+		chunk.put((byte)'\n');
+	}
+	
+	/**
+	 * Method quoting the value of the CSV line, if it contains the separator, quotes or the end of the line.
+	 * @param value	value of the CSV line
+	 * @return	value, which can be written to the CSV line
+	 */
+	private static String quoteCsv(String value) {
+		if(value.indexOf(CSV_SEPARATOR) < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+	
+	/**
+	 * Method returning the encoded text (class label or separator). Texts are encoded once and then taken from the map.
+	 * @param text	encoded text
+	 * @return	bytes of the text in the charset of text results
+	 */
+	private byte[] encodeLabel(String text) {
+		byte[] bytes = encodedLabels.get(text);
+		
+		if(bytes == null) {
+			bytes = text.getBytes(TEXT_CHARSET);
+			encodedLabels.put(text, bytes);
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * Method returning the identifier of the class in the dictionary of the binary result.
+	 * @param patternClass	class label
+	 * @return	identifier of the class (-1 if it isn't in the dictionary)
+	 */
+	private int getClassId(String patternClass) {
+		if(patternClass == null) return -1;
+		return labelDictionary.getId(patternClass);
+	}
+	
+	/**
+	 * Class holding formatted records of one chunk of patterns in the growing array of bytes.
+	 * @author Vladimr Lznika
+	 *
+	 */
+	static class Chunk {
+		
+		/**
+		 * Formatted bytes.
+		 */
+		private byte[] bytes;
+		
+		/**
+		 * Number of formatted bytes.
+		 */
+		private int length;
+		
+		/**
+		 * Number of formatted records.
+		 */
+		private int recordCnt;
+		
+		/**
+		 * Constructor for the empty chunk.
+		 */
+		public Chunk() {
+			this.bytes = new byte[INITIAL_CHUNK_CAPACITY];
+		}
+		
+		/**
+		 * Method removing all formatted records.
+		 */
+		public void clear() {
+			length = 0;
+			recordCnt = 0;
+		}
+		
+		/**
+		 * Method appending the byte.
+		 * @param b	appended byte
+		 */
+		public void put(byte b) {
+			ensureCapacity(1);
+			bytes[length++] = b;
+		}
+		
+		/**
+		 * Method appending the array of bytes.
+		 * @param b	appended bytes
+		 */
+		public void put(byte[] b) {
+			ensureCapacity(b.length);
+			System.arraycopy(b, 0, bytes, length, b.length);
+			length += b.length;
+		}
+		
+		/**
+		 * Method appending the little-endian integer.
+		 * @param value	appended value
+		 */
+		public void putInt(int value) {
+			ensureCapacity(4);
+			bytes[length++] = (byte)value;
+			bytes[length++] = (byte)(value >>> 8);
+			bytes[length++] = (byte)(value >>> 16);
+			bytes[length++] = (byte)(value >>> 24);
+		}
+		
+		/**
+		 * Method appending the double in the same format as {@code Double.toString}. Values from 10^-3 to 10^7
+		 * are written directly, if they are given exactly by at most 15 digits: the shortest number of decimal places
+		 * is found, for which the rounded scaled value divided back gives the same double. Other values are formatted
+		 * by {@code Double.toString}.
+		 * @param value	appended value
+		 */
+		public void putDouble(double value) {
+			if(value == 0.0) {
+				putAscii((Double.doubleToRawLongBits(value) < 0) ? "-0.0" : "0.0");
+				return;
+			}
+			
+			double abs = Math.abs(value);
+			
+			if(abs >= 1e-3 && abs < 1e7) {
+				for(int places = 1; places < DOUBLE_POWERS.length; places++) {
+					double scaled = abs * DOUBLE_POWERS[places];
+					if(scaled >= EXACT_DIGITS_LIMIT) break;
+					
+					long digits = Math.round(scaled);
+					
+					if(digits / DOUBLE_POWERS[places] == abs) {
+						putDecimal(value < 0.0, digits, places);
+						return;
+					}
+				}
+			}
+			
+			putAscii(Double.toString(value));
+		}
+		
+		/**
+		 * Method appending the decimal number with given digits and number of decimal places. Digits are written
+		 * from the last one (in the int, if they fit in it).
+		 * @param negative	whether the number is negative
+		 * @param digits	all digits of the number
+		 * @param places	number of decimal places (at least 1)
+		 */
+		private void putDecimal(boolean negative, long digits, int places) {
+			int digitCnt = places + 1;
+			
+			while(digitCnt < LONG_POWERS.length && digits >= LONG_POWERS[digitCnt]) {
+				digitCnt++;
+			}
+			
+			ensureCapacity(digitCnt + 2);
+			if(negative) bytes[length++] = '-';
+			
+			int position = length + digitCnt;
+			length = position + 1;
+			
+			if(digits <= Integer.MAX_VALUE) {
+				int rest = (int)digits;
+				
+				for(int i = 0; i < digitCnt; i++) {
+					if(i == places) bytes[position--] = '.';
+					bytes[position--] = (byte)('0' + rest % 10);
+					rest /= 10;
+				}
+			}
+			else {
+				long rest = digits;
+				
+				for(int i = 0; i < digitCnt; i++) {
+					if(i == places) bytes[position--] = '.';
+					bytes[position--] = (byte)('0' + rest % 10);
+					rest /= 10;
+				}
+			}
+		}
+		
+		/**
+		 * Method appending the string consisting of ASCII characters.
+		 * @param text	appended string
+		 */
+		private void putAscii(String text) {
+			ensureCapacity(text.length());
+			
+			for(int i = 0; i < text.length(); i++) {
+				bytes[length++] = (byte)text.charAt(i);
+			}
+		}
+		
+		/**
+		 * Method enlarging the array of bytes, so it has space for given number of bytes.
+		 * @param cnt	number of appended bytes
+		 */
+		private void ensureCapacity(int cnt) {
+			if(length + cnt > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + cnt));
+		}
+	}
+}
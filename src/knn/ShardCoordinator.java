@@ -0,0 +1,579 @@
+package knn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Instance of this class classifies patterns by the training set split among several {@code ShardWorker} processes.
+ * The coordinator holds only class identifiers and adaptive distance measures of all training patterns (without vectors),
+ * workers hold vectors of their shards. Tested vectors are sent to all workers in blocks, every worker returns its local
+ * {@code K} nearest patterns and the coordinator merges them by the global index of the pattern into one selector,
+ * so the result is the same as the search in the whole training set, and the class is determined by the {@code NeighborVote}.
+ * Requests are written to all workers before their answers are read, so workers search at the same time.
+ * If adaptive distance measures are used, every worker finds the nearest pattern with different class inside its shard first,
+ * then vectors of every shard are sent in blocks to other workers, which return nearer patterns with different class,
+ * and final measures are sent back to the workers. Instance isn't thread safe.
+ * @author Vladimr Lznika
+ *
+ */
+public class ShardCoordinator implements Closeable {
+	
+	/**
+	 * Number of tested vectors sent to workers in one request.
+	 */
+	private static final int SEARCH_BLOCK_SIZE = 256;
+	
+	/**
+	 * Number of training patterns, for which the nearest pattern with different class is searched in one request.
+	 */
+	private static final int MEASURE_BLOCK_SIZE = 1024;
+	
+	/**
+	 * Connections to workers on indices of their shards.
+	 */
+	private final Shard[] shards;
+	
+	/**
+	 * Number of nearest neighbors used for classification.
+	 */
+	private final int kNumber;
+	
+	/**
+	 * Kernel of the distance function (it has to be the same as the kernel of workers).
+	 */
+	private final DistanceKernel distanceKernel;
+	
+	/**
+	 * Indicator whether adaptive distance measures are used.
+	 */
+	private final boolean useAdaptiveDistanceMeasures;
+	
+	/**
+	 * Vote of nearest neighbors.
+	 */
+	private final NeighborVote neighborVote;
+	
+	/**
+	 * Class identifiers and adaptive distance measures of all training patterns on their global indices (without vectors).
+	 */
+	private final TrainingData catalog;
+	
+	/**
+	 * Dimension of training vectors.
+	 */
+	private final int dimension;
+	
+	/**
+	 * Selectors merging nearest neighbors of the block of tested vectors.
+	 */
+	private final NeighborSelector[] neighborSelectors;
+	
+	/**
+	 * Indicator whether adaptive distance measures were already set to workers.
+	 */
+	private boolean trained;
+	
+	/**
+	 * Constructor for the coordinator. It connects to all workers and reads information about their shards.
+	 * Workers have to hold all shards of one training set (every shard once) with the same distance function.
+	 * @param workers			addresses of workers
+	 * @param kNumber			number of nearest neighbors used for classification
+	 * @param distanceKernel	kernel of the distance function
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used ({@code Classification.USE_ADM})
+	 * @param voteType			type of the vote of nearest neighbors ({@code NeighborVote.VOTE_*})
+	 * @throws IOException
+	 */
+	public ShardCoordinator(List<InetSocketAddress> workers, int kNumber, DistanceKernel distanceKernel, int useAdaptiveDistanceMeasure, int voteType) throws IOException {
+		if(kNumber < 1) throw new IllegalArgumentException("Number of nearest neighbors has to be positive: "+kNumber);
+		if(workers.isEmpty()) throw new IllegalArgumentException("There has to be at least one worker.");
+		
+		this.shards = new Shard[workers.size()];
+		this.kNumber = kNumber;
+		this.distanceKernel = distanceKernel;
+		this.useAdaptiveDistanceMeasures = (useAdaptiveDistanceMeasure == Classification.USE_ADM);
+		this.neighborVote = new NeighborVote(voteType, distanceKernel);
+		this.neighborSelectors = new NeighborSelector[SEARCH_BLOCK_SIZE];
+		this.trained = !useAdaptiveDistanceMeasures;
+		
+		for(int q = 0; q < SEARCH_BLOCK_SIZE; q++) {
+			neighborSelectors[q] = new NeighborSelector(kNumber);
+		}
+		
+		try {
+			for(InetSocketAddress worker : workers) {
+				Shard shard = new Shard(worker);
+				if(shard.shardCnt != shards.length) throw new IllegalArgumentException("Worker "+worker+" holds one of "+shard.shardCnt+" shards, but there are "+shards.length+" workers.");
+				if(shards[shard.index] != null) throw new IllegalArgumentException("Shard "+shard.index+" is held by several workers.");
+				if(shard.signature != distanceKernel.getSignature() || !distanceKernel.isSameFunction(shard.distanceType, shard.distanceParameters)) throw new IllegalArgumentException("Worker "+worker+" uses different distance function.");
+				shards[shard.index] = shard;
+			}
+			
+			this.catalog = createCatalog();
+			this.dimension = getDimension();
+		}
+		catch(IOException e) {
+			close();
+			throw e;
+		}
+		catch(RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Getter for the number of training patterns of all shards.
+	 * @return	number of training patterns
+	 */
+	public int size() {
+		return catalog.size();
+	}
+	
+	/**
+	 * Getter for the dictionary of class labels of all shards.
+	 * @return	dictionary of class labels
+	 */
+	public LabelDictionary getLabelDictionary() {
+		return catalog.getLabelDictionary();
+	}
+	
+	/**
+	 * Method preparing workers for classification. If adaptive distance measures are used, they are calculated across
+	 * all shards and set to workers. It's done only once.
+	 * @throws IOException
+	 */
+	public void train() throws IOException {
+		if(trained) return;
+		
+		double[][] ranks = new double[shards.length][];
+		
+		for(Shard shard : shards) {
+			shard.out.writeInt(ShardWorker.OP_LOCAL_MEASURES);
+			shard.out.flush();
+		}
+		
+		for(Shard shard : shards) {
+			shard.readStatus();
+			ranks[shard.index] = readDoubles(shard.in, shard.size);
+		}
+		
+		for(Shard shard : shards) {
+			for(int from = 0; from < shard.size; from += MEASURE_BLOCK_SIZE) {
+				findEnemies(shard, from, Math.min(shard.size, from + MEASURE_BLOCK_SIZE), ranks[shard.index]);
+			}
+		}
+		
+		for(Shard shard : shards) {
+			shard.out.writeInt(ShardWorker.OP_SET_MEASURES);
+			shard.out.writeInt(shard.size);
+			
+			for(int i = 0; i < shard.size; i++) {
+				double rank = ranks[shard.index][i];
+				double measure = (rank == Double.POSITIVE_INFINITY) ? Double.MAX_VALUE : distanceKernel.toDistance(rank);
+				
+				shard.out.writeDouble(measure);
+				catalog.setAdaptiveDistanceMeasure(i * shards.length + shard.index, measure);
+			}
+			
+			shard.out.flush();
+		}
+		
+		for(Shard shard : shards) {
+			shard.readStatus();
+		}
+		
+		trained = true;
+	}
+	
+	/**
+	 * Method classifying given patterns (it trains the coordinator first if it wasn't trained yet). Patterns are sent
+	 * to workers in blocks and their classes are determined from merged nearest neighbors.
+	 * @param patterns	tested patterns, which classes will be determined
+	 * @throws IOException
+	 * @throws IndexOutOfBoundsException if the pattern has different dimension than the training set
+	 */
+	public void classifyPatterns(List<Pattern> patterns) throws IOException, IndexOutOfBoundsException {
+		train();
+		
+		for(Pattern p : patterns) {
+			if(p.getVector().length != dimension) throw new IndexOutOfBoundsException("Dimension of the tested vector ("+p.getVector().length+") differs from the training set: "+dimension);
+		}
+		
+		for(int from = 0; from < patterns.size(); from += SEARCH_BLOCK_SIZE) {
+			classifyBlock(patterns, from, Math.min(patterns.size(), from + SEARCH_BLOCK_SIZE));
+		}
+	}
+	
+	/**
+	 * Method stopping all workers.
+	 * @throws IOException
+	 */
+	public void shutdownWorkers() throws IOException {
+		for(Shard shard : shards) {
+			shard.out.writeInt(ShardWorker.OP_SHUTDOWN);
+			shard.out.flush();
+		}
+		
+		for(Shard shard : shards) {
+			shard.readStatus();
+		}
+	}
+	
+	/**
+	 * Method closing connections to all workers.
+	 */
+	@Override
+	public void close() throws IOException {
+		for(Shard shard : shards) {
+			if(shard != null) shard.socket.close();
+		}
+	}
+	
+	/**
+	 * Method classifying one block of tested patterns. The block is sent to all workers, their nearest neighbors
+	 * are offered to selectors with global indices and the class is voted from merged neighbors.
+	 * @param patterns	tested patterns
+	 * @param from		index of the first classified pattern
+	 * @param to		index after the last classified pattern
+	 * @throws IOException
+	 */
+	private void classifyBlock(List<Pattern> patterns, int from, int to) throws IOException {
+		for(Shard shard : shards) {
+			if(shard.size == 0) continue;
+			
+			shard.out.writeInt(ShardWorker.OP_SEARCH);
+			shard.out.writeInt(kNumber);
+			shard.out.writeInt(to - from);
+			
+			for(int q = from; q < to; q++) {
+				for(double value : patterns.get(q).getVector()) {
+					shard.out.writeDouble(value);
+				}
+			}
+			
+			shard.out.flush();
+		}
+		
+		for(int q = 0; q < to - from; q++) {
+			neighborSelectors[q].reset();
+		}
+		
+		for(Shard shard : shards) {
+			if(shard.size == 0) continue;
+			
+			shard.readStatus();
+			
+			for(int q = 0; q < to - from; q++) {
+				int neighborCnt = shard.in.readInt();
+				
+				for(int n = 0; n < neighborCnt; n++) {
+					int localIndex = shard.in.readInt();
+					neighborSelectors[q].offer(localIndex * shards.length + shard.index, shard.in.readDouble());
+				}
+			}
+		}
+		
+		for(int q = 0; q < to - from; q++) {
+			NeighborSelector neighborSelector = neighborSelectors[q];
+			neighborSelector.sortNeighbors();
+			patterns.get(from + q).setPatternClass(neighborVote.voteClass(catalog, neighborSelector.getIndices(), neighborSelector.getDistances(), neighborSelector.size()));
+		}
+	}
+	
+	/**
+	 * Method lowering ranking distances of the range of patterns of one shard to the nearest pattern with different class
+	 * by patterns of all other shards. Vectors of the range are read from its worker and sent to other workers with
+	 * current distances as limits.
+	 * @param shard	shard with the patterns
+	 * @param from	local index of the first pattern
+	 * @param to	local index after the last pattern
+	 * @param ranks	ranking distances of all patterns of the shard (lowered by this method)
+	 * @throws IOException
+	 */
+	private void findEnemies(Shard shard, int from, int to, double[] ranks) throws IOException {
+		shard.out.writeInt(ShardWorker.OP_VECTORS);
+		shard.out.writeInt(from);
+		shard.out.writeInt(to);
+		shard.out.flush();
+		shard.readStatus();
+		
+		double[][] vectors = ShardWorker.readVectors(shard.in, to - from, dimension);
+		
+		for(Shard other : shards) {
+			if(other == shard || other.size == 0) continue;
+			
+			other.out.writeInt(ShardWorker.OP_ENEMIES);
+			other.out.writeInt(to - from);
+			
+			for(int i = from; i < to; i++) {
+				other.out.writeInt(other.getLocalClassId(catalog.getClassId(i * shards.length + shard.index)));
+				other.out.writeDouble(ranks[i]);
+				
+				for(double value : vectors[i - from]) {
+					other.out.writeDouble(value);
+				}
+			}
+			
+			other.out.flush();
+		}
+		
+		for(Shard other : shards) {
+			if(other == shard || other.size == 0) continue;
+			
+			other.readStatus();
+			
+			for(int i = from; i < to; i++) {
+				ranks[i] = Math.min(ranks[i], other.in.readDouble());
+			}
+		}
+	}
+	
+	/**
+	 * Method creating the catalog of all training patterns from class identifiers of shards. Pattern {@code i}
+	 * of the shard {@code s} gets the global index {@code i * N + s}, local class identifiers are translated
+	 * to the common dictionary.
+	 * @return	catalog with class identifiers (adaptive distance measures are 1.0)
+	 */
+	private TrainingData createCatalog() {
+		int size = 0;
+		
+		for(Shard shard : shards) {
+			size += shard.size;
+		}
+		
+		for(Shard shard : shards) {
+			int expectedSize = (size - shard.index + shards.length - 1) / shards.length;
+			if(shard.size != expectedSize) throw new IllegalArgumentException("Shard "+shard.index+" has "+shard.size+" patterns, expected "+expectedSize+".");
+		}
+		
+		LabelDictionary labelDictionary = new LabelDictionary();
+		int[] classIds = new int[size];
+		
+		for(Shard shard : shards) {
+			int[] globalClassIds = new int[shard.labels.size()];
+			
+			for(int c = 0; c < globalClassIds.length; c++) {
+				globalClassIds[c] = labelDictionary.addLabel(shard.labels.get(c));
+			}
+			
+			for(int i = 0; i < shard.size; i++) {
+				classIds[i * shards.length + shard.index] = globalClassIds[shard.classIds[i]];
+			}
+			
+			shard.setGlobalClassIds(globalClassIds);
+		}
+		
+		return new TrainingData(0, new double[0], classIds, labelDictionary.getLabels());
+	}
+	
+	/**
+	 * Method returning the dimension of training vectors. All shards with patterns have to have the same dimension.
+	 * @return	dimension of training vectors
+	 */
+	private int getDimension() {
+		int shardDimension = -1;
+		
+		for(Shard shard : shards) {
+			if(shard.size == 0) continue;
+			if(shardDimension >= 0 && shard.dimension != shardDimension) throw new IndexOutOfBoundsException("Shard "+shard.index+" has different dimension: "+shard.dimension);
+			shardDimension = shard.dimension;
+		}
+		
+		return shardDimension;
+	}
+	
+	/**
+	 * Method reading given number of doubles from the stream.
+	 * @param in	input stream of the connection
+	 * @param cnt	number of doubles
+	 * @return	read doubles
+	 * @throws IOException
+	 */
+	private static double[] readDoubles(DataInputStream in, int cnt) throws IOException {
+		double[] values = new double[cnt];
+		
+		for(int i = 0; i < cnt; i++) {
+			values[i] = in.readDouble();
+		}
+		
+		return values;
+	}
+	
+	/**
+	 * Instance of this class is the connection to one worker with information about its shard.
+	 */
+	private static class Shard {
+		
+		/**
+		 * Socket of the connection.
+		 */
+		private final Socket socket;
+		
+		/**
+		 * Input stream of the connection.
+		 */
+		private final DataInputStream in;
+		
+		/**
+		 * Output stream of the connection.
+		 */
+		private final DataOutputStream out;
+		
+		/**
+		 * Index of the shard.
+		 */
+		private final int index;
+		
+		/**
+		 * Number of shards known to the worker.
+		 */
+		private final int shardCnt;
+		
+		/**
+		 * Number of patterns of the shard.
+		 */
+		private final int size;
+		
+		/**
+		 * Dimension of vectors of the shard.
+		 */
+		private final int dimension;
+		
+		/**
+		 * Signature of the distance kernel of the worker.
+		 */
+		private final int signature;
+		
+		/**
+		 * Type of the distance function of the worker.
+		 */
+		private final int distanceType;
+		
+		/**
+		 * Parameters of the distance function of the worker.
+		 */
+		private final double[] distanceParameters;
+		
+		/**
+		 * Class labels of the shard in the order of their local identifiers.
+		 */
+		private final List<String> labels;
+		
+		/**
+		 * Local class identifiers of patterns of the shard.
+		 */
+		private final int[] classIds;
+		
+		/**
+		 * Local class identifiers on indices of global identifiers (-1 for classes, which aren't in the shard).
+		 */
+		private int[] localClassIds;
+		
+		/**
+		 * Constructor for the connection. It connects to the worker and reads information about its shard.
+		 * @param address	address of the worker
+		 * @throws IOException
+		 */
+		public Shard(InetSocketAddress address) throws IOException {
+			this.socket = new Socket();
+			socket.connect(address);
+			socket.setTcpNoDelay(true);
+			
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), ShardWorker.STREAM_BUFFER_SIZE));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), ShardWorker.STREAM_BUFFER_SIZE));
+			
+			try {
+				out.writeInt(ShardWorker.OP_INFO);
+				out.flush();
+				readStatus(address.toString());
+				
+				this.index = in.readInt();
+				this.shardCnt = in.readInt();
+				this.size = in.readInt();
+				this.dimension = in.readInt();
+				this.signature = in.readInt();
+				this.distanceType = in.readInt();
+				
+				int parameterCnt = in.readInt();
+				if(parameterCnt < 0) throw new IOException("Worker "+address+" sent invalid number of parameters: "+parameterCnt);
+				this.distanceParameters = new double[parameterCnt];
+				
+				for(int i = 0; i < parameterCnt; i++) {
+					distanceParameters[i] = in.readDouble();
+				}
+				
+				this.labels = new ArrayList<String>();
+				
+				int labelCnt = in.readInt();
+				
+				for(int c = 0; c < labelCnt; c++) {
+					labels.add(in.readUTF());
+				}
+				
+				this.classIds = new int[size];
+				
+				for(int i = 0; i < size; i++) {
+					classIds[i] = in.readInt();
+				}
+			}
+			catch(IOException e) {
+				socket.close();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Method storing translation of global class identifiers to local ones.
+		 * @param globalClassIds	global class identifiers on indices of local identifiers
+		 */
+		public void setGlobalClassIds(int[] globalClassIds) {
+			int globalClassCnt = 0;
+			
+			for(int globalClassId : globalClassIds) {
+				globalClassCnt = Math.max(globalClassCnt, globalClassId + 1);
+			}
+			
+			localClassIds = new int[globalClassCnt];
+			Arrays.fill(localClassIds, -1);
+			
+			for(int c = 0; c < globalClassIds.length; c++) {
+				localClassIds[globalClassIds[c]] = c;
+			}
+		}
+		
+		/**
+		 * Method returning the local class identifier of given global one.
+		 * @param globalClassId	global class identifier
+		 * @return	local class identifier (-1 if the class isn't in the shard)
+		 */
+		public int getLocalClassId(int globalClassId) {
+			return (globalClassId < localClassIds.length) ? localClassIds[globalClassId] : -1;
+		}
+		
+		/**
+		 * Method reading the status of the answer.
+		 * @throws IOException if the request failed
+		 */
+		public void readStatus() throws IOException {
+			readStatus("of shard "+index);
+		}
+		
+		/**
+		 * Method reading the status of the answer.
+		 * @param name	name of the worker in the error message
+		 * @throws IOException if the request failed
+		 */
+		private void readStatus(String name) throws IOException {
+			if(in.readInt() != ShardWorker.STATUS_OK) throw new IOException("Worker "+name+" failed: "+in.readUTF());
+		}
+	}
+}
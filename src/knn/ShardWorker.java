@@ -0,0 +1,563 @@
+package knn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Instance of this class is a worker holding one shard of the distributed training set. Training patterns are split
+ * among {@code N} shards in turns (pattern {@code i} belongs to the shard {@code i mod N} with the local index {@code i / N}),
+ * so every worker loads only its patterns and the global index of the pattern can be restored by the coordinator.
+ * The worker answers requests of the {@code ShardCoordinator} in the binary protocol (every request starts with
+ * the operation code, every answer with the status followed by the result or the error message):
+ * {@code OP_INFO} returns the shard, its size, dimension, kernel signature, type and parameters, class labels and class identifiers of patterns,
+ * {@code OP_SEARCH} returns {@code K} nearest local patterns (local index and ranking distance) of every vector of the block,
+ * {@code OP_LOCAL_MEASURES} returns ranking distances to the nearest pattern with different class inside the shard,
+ * {@code OP_VECTORS} returns vectors of the range of patterns, {@code OP_ENEMIES} returns ranking distances of foreign patterns
+ * to the nearest local pattern with different class (only distances below the passed limit are calculated exactly),
+ * {@code OP_SET_MEASURES} sets final adaptive distance measures of the shard and {@code OP_SHUTDOWN} stops the worker.
+ * Every connection is served by its own thread, the spatial index is built at the first search with current measures.
+ * @author Vladimr Lznika
+ *
+ */
+public class ShardWorker implements Closeable {
+	
+	/**
+	 * Operation returning information about the shard.
+	 */
+	static final int OP_INFO = 1;
+	
+	/**
+	 * Operation searching nearest local patterns of the block of vectors.
+	 */
+	static final int OP_SEARCH = 2;
+	
+	/**
+	 * Operation calculating adaptive distance measures inside the shard.
+	 */
+	static final int OP_LOCAL_MEASURES = 3;
+	
+	/**
+	 * Operation returning vectors of the range of local patterns.
+	 */
+	static final int OP_VECTORS = 4;
+	
+	/**
+	 * Operation finding nearest local patterns with different class for foreign patterns.
+	 */
+	static final int OP_ENEMIES = 5;
+	
+	/**
+	 * Operation setting adaptive distance measures of the shard.
+	 */
+	static final int OP_SET_MEASURES = 6;
+	
+	/**
+	 * Operation stopping the worker.
+	 */
+	static final int OP_SHUTDOWN = 7;
+	
+	/**
+	 * Status of the answer to the successful request.
+	 */
+	static final int STATUS_OK = 0;
+	
+	/**
+	 * Status of the answer to the failed request (followed by the error message).
+	 */
+	static final int STATUS_ERROR = 1;
+	
+	/**
+	 * Size of buffers of the connection streams.
+	 */
+	static final int STREAM_BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Training patterns of the shard.
+	 */
+	private final TrainingData trainingData;
+	
+	/**
+	 * Index of the shard.
+	 */
+	private final int shard;
+	
+	/**
+	 * Number of shards.
+	 */
+	private final int shardCnt;
+	
+	/**
+	 * Kernel of the distance function.
+	 */
+	private final DistanceKernel distanceKernel;
+	
+	/**
+	 * Type of the spatial index ({@code SpatialIndex.INDEX_*}).
+	 */
+	private final int indexType;
+	
+	/**
+	 * Number of candidates explored by the approximate spatial index.
+	 */
+	private final int searchEffort;
+	
+	/**
+	 * Number of threads used for the calculation of adaptive distance measures inside the shard.
+	 */
+	private final int parallelism;
+	
+	/**
+	 * Socket accepting connections of coordinators.
+	 */
+	private final ServerSocket serverSocket;
+	
+	/**
+	 * Indicator whether adaptive distance measures were set.
+	 */
+	private boolean useAdaptiveDistanceMeasures;
+	
+	/**
+	 * Model searching nearest patterns of the shard (null until the first search after measures were set).
+	 */
+	private ClassificationModel model;
+	
+	/**
+	 * Indicator whether the worker was closed.
+	 */
+	private volatile boolean closed;
+	
+	/**
+	 * Constructor for the worker. It binds the socket to given port of the loopback address.
+	 * @param trainingData		training patterns of the shard
+	 * @param shard				index of the shard
+	 * @param shardCnt			number of shards
+	 * @param distanceKernel	kernel of the distance function
+	 * @param indexType			type of the spatial index ({@code SpatialIndex.INDEX_*})
+	 * @param searchEffort		number of candidates explored by the approximate spatial index
+	 * @param parallelism		number of threads used for the calculation of adaptive distance measures
+	 * @param port				port of the worker (0 - any free port)
+	 * @throws IOException
+	 */
+	public ShardWorker(TrainingData trainingData, int shard, int shardCnt, DistanceKernel distanceKernel, int indexType, int searchEffort, int parallelism, int port) throws IOException {
+		if(shardCnt < 1 || shard < 0 || shard >= shardCnt) throw new IllegalArgumentException("Wrong index of the shard: "+shard+" of "+shardCnt);
+		if(trainingData.size() > 0) distanceKernel.checkDimension(trainingData.getDimension());
+		
+		this.trainingData = trainingData;
+		this.shard = shard;
+		this.shardCnt = shardCnt;
+		this.distanceKernel = distanceKernel;
+		this.indexType = indexType;
+		this.searchEffort = searchEffort;
+		this.parallelism = parallelism;
+		this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		this.useAdaptiveDistanceMeasures = false;
+		this.closed = false;
+	}
+	
+	/**
+	 * Method reading patterns of one shard from the file with the training set. The text file is read as a stream
+	 * and only patterns of the shard are stored, the binary dataset is read whole and patterns of the shard are copied.
+	 * @param file		file with the training set
+	 * @param shard		index of the shard
+	 * @param shardCnt	number of shards
+	 * @return	training patterns of the shard
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	public static TrainingData readShard(File file, int shard, int shardCnt) throws IOException, NumberFormatException {
+		TrainingData shardData = new TrainingData();
+		
+		if(BinaryDataset.isBinaryDataset(file)) {
+			TrainingData trainingData = BinaryDataset.read(file);
+			
+			for(int i = shard; i < trainingData.size(); i += shardCnt) {
+				shardData.addPattern(trainingData.getVector(i), trainingData.getPatternClass(i));
+			}
+			
+			return shardData;
+		}
+		
+		PatternReader reader = new PatternReader(file);
+		
+		try {
+			for(int i = 0; reader.next(); i++) {
+				if(i % shardCnt == shard) shardData.addPattern(reader.getVector(), reader.getPatternClass());
+			}
+		}
+		finally {
+			reader.close();
+		}
+		
+		return shardData;
+	}
+	
+	/**
+	 * Getter for the port, on which the worker listens.
+	 * @return the port
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Method running the worker. It accepts connections (every connection is served by its own thread)
+	 * until the worker is closed.
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+		System.out.println("Worker of shard "+shard+"/"+shardCnt+" ("+trainingData.size()+" patterns) listening on port "+getPort()+".");
+		
+		try {
+			while(!closed) {
+				final Socket socket;
+				
+				try {
+					socket = serverSocket.accept();
+				}
+				catch(SocketException e) {
+					if(closed) break;
+					throw e;
+				}
+				
+				Thread connection = new Thread("shard-connection-"+socket.getPort()) {
+					@Override
+					public void run() {
+						serveConnection(socket);
+					}
+				};
+				connection.setDaemon(true);
+				connection.start();
+			}
+		}
+		finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Method closing the worker, so it doesn't accept new connections.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+	}
+	
+	/**
+	 * Method serving one connection. Requests are answered one by one in the order, in which they came.
+	 * Request, which fails after it was read, is answered with the error status and the connection continues.
+	 * @param socket	socket of the connection
+	 */
+	private void serveConnection(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE));
+			
+			while(true) {
+				int operation;
+				
+				try {
+					operation = in.readInt();
+				}
+				catch(EOFException e) {
+					break;
+				}
+				
+				if(operation == OP_SHUTDOWN) {
+					out.writeInt(STATUS_OK);
+					out.flush();
+					close();
+					break;
+				}
+				
+				try {
+					answer(operation, in, out);
+				}
+				catch(RuntimeException e) {
+					writeError(out, e.getClass().getSimpleName()+": "+e.getMessage());
+				}
+				
+				out.flush();
+			}
+		}
+		catch(IOException e) {
+			if(!closed) System.err.println("Connection failed: \n" + e.getMessage());
+		}
+		finally {
+			try {
+				socket.close();
+			}
+			catch(IOException e) {
+				System.err.println("Connection failed: \n" + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Method reading the request with given operation and writing its answer. The whole request is read before
+	 * the answer is written, so the coordinator may send requests to all workers before it reads their answers.
+	 * @param operation	operation code of the request ({@code OP_*})
+	 * @param in		input stream of the connection
+	 * @param out		output stream of the connection
+	 * @throws IOException
+	 */
+	private void answer(int operation, DataInputStream in, DataOutputStream out) throws IOException {
+		switch(operation) {
+		case OP_INFO:
+			writeInfo(out);
+			break;
+		case OP_SEARCH:
+			search(in, out);
+			break;
+		case OP_LOCAL_MEASURES:
+			writeLocalMeasures(out);
+			break;
+		case OP_VECTORS:
+			writeVectors(in, out);
+			break;
+		case OP_ENEMIES:
+			findEnemies(in, out);
+			break;
+		case OP_SET_MEASURES:
+			setMeasures(in, out);
+			break;
+		default:
+			throw new IOException("Unknown operation of the request: "+operation);
+		}
+	}
+	
+	/**
+	 * Method writing information about the shard: index of the shard, number of shards, number of patterns, dimension,
+	 * signature, type and parameters of the distance kernel, class labels and class identifiers of all patterns.
+	 * @param out	output stream of the connection
+	 * @throws IOException
+	 */
+	private void writeInfo(DataOutputStream out) throws IOException {
+		LabelDictionary labelDictionary = trainingData.getLabelDictionary();
+		double[] parameters = distanceKernel.getParameters();
+		
+		out.writeInt(STATUS_OK);
+		out.writeInt(shard);
+		out.writeInt(shardCnt);
+		out.writeInt(trainingData.size());
+		out.writeInt(Math.max(trainingData.getDimension(), 0));
+		out.writeInt(distanceKernel.getSignature());
+		out.writeInt(distanceKernel.getType());
+		out.writeInt(parameters.length);
+		
+		for(double parameter : parameters) {
+			out.writeDouble(parameter);
+		}
+		
+		out.writeInt(labelDictionary.size());
+		
+		for(int c = 0; c < labelDictionary.size(); c++) {
+			out.writeUTF(labelDictionary.getLabel(c));
+		}
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			out.writeInt(trainingData.getClassId(i));
+		}
+	}
+	
+	/**
+	 * Method searching nearest local patterns of the block of vectors (number of neighbors {@code K}, number of vectors
+	 * and their values). For every vector it writes the number of found neighbors and their local indices with ranking
+	 * distances (divided by adaptive distance measures if they were set) sorted from the nearest one.
+	 * @param in	input stream of the connection
+	 * @param out	output stream of the connection
+	 * @throws IOException
+	 */
+	private void search(DataInputStream in, DataOutputStream out) throws IOException {
+		int kNumber = in.readInt();
+		int vectorCnt = in.readInt();
+		double[][] vectors = readVectors(in, vectorCnt, Math.max(trainingData.getDimension(), 0));
+		
+		if(kNumber < 1) {
+			writeError(out, "Number of nearest neighbors has to be positive: "+kNumber);
+			return;
+		}
+		
+		ClassificationModel currentModel = getModel();
+		NeighborSelector[] neighborSelectors = new NeighborSelector[vectorCnt];
+		
+		for(int q = 0; q < vectorCnt; q++) {
+			neighborSelectors[q] = new NeighborSelector(kNumber);
+		}
+		
+		currentModel.searchBatch(vectors, vectorCnt, neighborSelectors);
+		out.writeInt(STATUS_OK);
+		
+		for(NeighborSelector neighborSelector : neighborSelectors) {
+			neighborSelector.sortNeighbors();
+			out.writeInt(neighborSelector.size());
+			
+			for(int n = 0; n < neighborSelector.size(); n++) {
+				out.writeInt(neighborSelector.getIndex(n));
+				out.writeDouble(neighborSelector.getDistance(n));
+			}
+		}
+	}
+	
+	/**
+	 * Method writing ranking distances of all local patterns to their nearest local pattern with different class
+	 * (positive infinity if the shard has no such pattern). They are calculated by the {@code AdaptiveDistanceMeasures}.
+	 * @param out	output stream of the connection
+	 * @throws IOException
+	 */
+	private void writeLocalMeasures(DataOutputStream out) throws IOException {
+		double[] measures = new AdaptiveDistanceMeasures(trainingData, distanceKernel, indexType, parallelism).calculate();
+		
+		out.writeInt(STATUS_OK);
+		
+		for(double measure : measures) {
+			out.writeDouble((measure == Double.MAX_VALUE) ? Double.POSITIVE_INFINITY : distanceKernel.toRank(measure));
+		}
+	}
+	
+	/**
+	 * Method writing vectors of the range of local patterns (index of the first pattern and index after the last one).
+	 * @param in	input stream of the connection
+	 * @param out	output stream of the connection
+	 * @throws IOException
+	 */
+	private void writeVectors(DataInputStream in, DataOutputStream out) throws IOException {
+		int from = in.readInt();
+		int to = in.readInt();
+		
+		if(from < 0 || to > trainingData.size() || from > to) {
+			writeError(out, "Wrong range of patterns: "+from+"-"+to);
+			return;
+		}
+		
+		double[] vectors = trainingData.getVectors();
+		out.writeInt(STATUS_OK);
+		
+		for(int i = trainingData.getOffset(from); i < trainingData.getOffset(to); i++) {
+			out.writeDouble(vectors[i]);
+		}
+	}
+	
+	/**
+	 * Method finding nearest local patterns with different class for foreign patterns (number of patterns and for every
+	 * pattern its local class identifier (-1 if the class isn't in the shard), ranking distance limit and vector).
+	 * For every pattern it writes the ranking distance to the nearest local pattern with different class
+	 * or positive infinity if no such pattern is nearer than the limit. Local patterns are scanned linearly and
+	 * the calculation is abandoned as soon as the distance exceeds the nearest one found so far.
+	 * @param in	input stream of the connection
+	 * @param out	output stream of the connection
+	 * @throws IOException
+	 */
+	private void findEnemies(DataInputStream in, DataOutputStream out) throws IOException {
+		int patternCnt = in.readInt();
+		int dimension = Math.max(trainingData.getDimension(), 0);
+		int[] classIds = new int[patternCnt];
+		double[] limits = new double[patternCnt];
+		double[][] vectors = new double[patternCnt][];
+		
+		for(int p = 0; p < patternCnt; p++) {
+			classIds[p] = in.readInt();
+			limits[p] = in.readDouble();
+			vectors[p] = readVectors(in, 1, dimension)[0];
+		}
+		
+		double[] allVectors = trainingData.getVectors();
+		out.writeInt(STATUS_OK);
+		
+		for(int p = 0; p < patternCnt; p++) {
+			double nearestRank = limits[p];
+			
+			for(int i = 0; i < trainingData.size(); i++) {
+				if(trainingData.isRemoved(i) || trainingData.getClassId(i) == classIds[p]) continue;
+				
+				double rank = distanceKernel.rank(vectors[p], 0, allVectors, trainingData.getOffset(i), dimension, nearestRank);
+				if(rank < nearestRank) nearestRank = rank;
+			}
+			
+			out.writeDouble((nearestRank < limits[p]) ? nearestRank : Double.POSITIVE_INFINITY);
+		}
+	}
+	
+	/**
+	 * Method setting adaptive distance measures (real distances) of all local patterns. The model is built again
+	 * with the new measures at the next search.
+	 * @param in	input stream of the connection
+	 * @param out	output stream of the connection
+	 * @throws IOException
+	 */
+	private void setMeasures(DataInputStream in, DataOutputStream out) throws IOException {
+		double[] measures = new double[in.readInt()];
+		
+		for(int i = 0; i < measures.length; i++) {
+			measures[i] = in.readDouble();
+		}
+		
+		if(measures.length != trainingData.size()) {
+			writeError(out, "Number of measures ("+measures.length+") differs from the size of the shard: "+trainingData.size());
+			return;
+		}
+		
+		synchronized(this) {
+			for(int i = 0; i < measures.length; i++) {
+				trainingData.setAdaptiveDistanceMeasure(i, measures[i]);
+			}
+			
+			useAdaptiveDistanceMeasures = true;
+			model = null;
+		}
+		
+		out.writeInt(STATUS_OK);
+	}
+	
+	/**
+	 * Method returning the model searching nearest patterns of the shard. It's built at the first call after
+	 * adaptive distance measures were set.
+	 * @return	the model
+	 */
+	private synchronized ClassificationModel getModel() {
+		if(model == null) model = new ClassificationModel(trainingData, distanceKernel, indexType, searchEffort, useAdaptiveDistanceMeasures);
+		return model;
+	}
+	
+	/**
+	 * Method reading given number of vectors from the stream.
+	 * @param in			input stream of the connection
+	 * @param vectorCnt		number of vectors
+	 * @param dimension		dimension of vectors
+	 * @return	read vectors
+	 * @throws IOException
+	 */
+	static double[][] readVectors(DataInputStream in, int vectorCnt, int dimension) throws IOException {
+		double[][] vectors = new double[vectorCnt][dimension];
+		
+		for(int q = 0; q < vectorCnt; q++) {
+			for(int d = 0; d < dimension; d++) {
+				vectors[q][d] = in.readDouble();
+			}
+		}
+		
+		return vectors;
+	}
+	
+	/**
+	 * Method writing the answer to the failed request.
+	 * @param out		output stream of the connection
+	 * @param message	error message
+	 * @throws IOException
+	 */
+	private static void writeError(DataOutputStream out, String message) throws IOException {
+		out.writeInt(STATUS_ERROR);
+		out.writeUTF(message);
+	}
+}
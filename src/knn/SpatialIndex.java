@@ -0,0 +1,478 @@
+package knn;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Abstract class for spatial indexes built over the training data, which answer queries for {@code K} nearest neighbors
+ * with branch-and-bound pruning. Every node of the index knows a lower bound of the ranking distance from the tested
+ * vector to its patterns and the maximal adaptive distance measure of its patterns, so the whole node is skipped
+ * if none of its patterns can be nearer than the worst neighbor held by the selector. Indexes return the same neighbors
+ * as the linear scan of the training data (including resolution of ties by the lower index), except for approximate indexes,
+ * which may miss some of them.
+ * Index is only read during queries, so it can be used from several threads at once. When the training data are updated,
+ * the copy of the index can exclude patterns or lower their adaptive distance measures without rebuilding the nodes
+ * (nodes only need an upper bound of the measures of their patterns).
+ * @author Vladimr Lznika
+ *
+ */
+public abstract class SpatialIndex implements Cloneable {
+	
+	/**
+	 * Constant value indicating no index will be used (training data are scanned linearly).
+	 */
+	public static final int INDEX_NONE = 0;
+	
+	/**
+	 * Constant value indicating the KD-tree will be used.
+	 */
+	public static final int INDEX_KD_TREE = 1;
+	
+	/**
+	 * Constant value indicating the ball tree will be used.
+	 */
+	public static final int INDEX_BALL_TREE = 2;
+	
+	/**
+	 * Constant value indicating the index will be chosen based on the dimension of the training data.
+	 */
+	public static final int INDEX_AUTO = 3;
+	
+	/**
+	 * Constant value indicating the approximate HNSW graph will be used.
+	 */
+	public static final int INDEX_HNSW = 4;
+	
+	/**
+	 * Constant value indicating the linear scan of vectors stored in single precision (with exact re-ranking) will be used.
+	 */
+	public static final int INDEX_FLOAT = 5;
+	
+	/**
+	 * Constant value indicating the linear scan of vectors quantized to 16-bit codes (with exact re-ranking) will be used.
+	 */
+	public static final int INDEX_INT16 = 6;
+	
+	/**
+	 * Constant value indicating the linear scan of vectors quantized to 8-bit codes (with exact re-ranking) will be used.
+	 */
+	public static final int INDEX_INT8 = 7;
+	
+	/**
+	 * Highest dimension, for which the KD-tree is chosen automatically (ball tree is used above it).
+	 */
+	private static final int KD_TREE_MAX_DIMENSION = 16;
+	
+	/**
+	 * Maximal number of patterns in the leaf node.
+	 */
+	protected static final int LEAF_SIZE = 16;
+	
+	/**
+	 * Ranking adaptive distance measure of patterns, which aren't in the index (or were excluded from it).
+	 */
+	protected static final double NOT_INDEXED = -1.0;
+	
+	/**
+	 * Indexed training data.
+	 */
+	protected final TrainingData trainingData;
+	
+	/**
+	 * Kernel of the distance function.
+	 */
+	protected final DistanceKernel distanceKernel;
+	
+	/**
+	 * Whether distances are divided by adaptive distance measures of the patterns.
+	 */
+	protected final boolean useAdaptiveDistanceMeasures;
+	
+	/**
+	 * Adaptive distance measures of the training patterns converted to the ranking distance
+	 * ({@code NOT_INDEXED} for patterns, which aren't in the index).
+	 */
+	protected double[] rankMeasures;
+	
+	/**
+	 * Indices of the training patterns ordered so that patterns of every node form a continuous range.
+	 */
+	protected final int[] permutation;
+	
+	/**
+	 * Constructor for the index. It stores the training data and prepares arrays shared by all indexes.
+	 * @param trainingData					training data to index
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indices						indices of indexed training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 */
+	protected SpatialIndex(TrainingData trainingData, DistanceKernel distanceKernel, int[] indices, boolean useAdaptiveDistanceMeasures) {
+		this.trainingData = trainingData;
+		this.distanceKernel = distanceKernel;
+		this.useAdaptiveDistanceMeasures = useAdaptiveDistanceMeasures;
+		this.rankMeasures = new double[trainingData.size()];
+		this.permutation = indices.clone();
+		
+		Arrays.fill(rankMeasures, NOT_INDEXED);
+		
+		for(int i : indices) {
+			rankMeasures[i] = useAdaptiveDistanceMeasures ? distanceKernel.toRank(trainingData.getAdaptiveDistanceMeasure(i)) : 1.0;
+		}
+	}
+	
+	/**
+	 * Constructor for the index restored from the snapshot (arrays aren't copied).
+	 * @param trainingData					indexed training data
+	 * @param distanceKernel				kernel of the distance function
+	 * @param permutation					indices of the training patterns in the order of the nodes
+	 * @param rankMeasures					ranking adaptive distance measures of the training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 */
+	protected SpatialIndex(TrainingData trainingData, DistanceKernel distanceKernel, int[] permutation, double[] rankMeasures, boolean useAdaptiveDistanceMeasures) {
+		this.trainingData = trainingData;
+		this.distanceKernel = distanceKernel;
+		this.useAdaptiveDistanceMeasures = useAdaptiveDistanceMeasures;
+		this.rankMeasures = rankMeasures;
+		this.permutation = permutation;
+	}
+	
+	/**
+	 * Method building the index of given type. Indexes have to be built after adaptive distance measures were set.
+	 * @param indexType			type of the index ({@code INDEX_*})
+	 * @param trainingData		training data to index
+	 * @param distanceKernel	kernel of the distance function
+	 * @return	built index or null for {@code INDEX_NONE}
+	 */
+	public static SpatialIndex build(int indexType, TrainingData trainingData, DistanceKernel distanceKernel) {
+		int[] indices = new int[trainingData.size()];
+		
+		for(int i = 0; i < indices.length; i++) {
+			indices[i] = i;
+		}
+		
+		return build(indexType, trainingData, distanceKernel, indices, true);
+	}
+	
+	/**
+	 * Method building the index of given type over the subset of the training data.
+	 * Approximate indexes explore the default number of candidates.
+	 * @param indexType						type of the index ({@code INDEX_*})
+	 * @param trainingData					training data to index
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indices						indices of indexed training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 * @return	built index or null for {@code INDEX_NONE}
+	 */
+	public static SpatialIndex build(int indexType, TrainingData trainingData, DistanceKernel distanceKernel, int[] indices, boolean useAdaptiveDistanceMeasures) {
+		return build(indexType, trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures, HnswGraph.DEFAULT_EF);
+	}
+	
+	/**
+	 * Method building the index of given type over the subset of the training data.
+	 * @param indexType						type of the index ({@code INDEX_*})
+	 * @param trainingData					training data to index
+	 * @param distanceKernel				kernel of the distance function
+	 * @param indices						indices of indexed training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures of the patterns
+	 * @param searchEffort					number of candidates explored by approximate indexes (ignored by exact indexes)
+	 * @return	built index or null for {@code INDEX_NONE} (and for {@code INDEX_AUTO} if no exact index suits the distance)
+	 * @throws IllegalArgumentException if the index can't be used with the distance function (e.g. the ball tree
+	 * with the distance, which isn't a metric)
+	 */
+	public static SpatialIndex build(int indexType, TrainingData trainingData, DistanceKernel distanceKernel, int[] indices, boolean useAdaptiveDistanceMeasures, int searchEffort) {
+		switch(indexType) {
+		case INDEX_NONE:
+			return null;
+		case INDEX_KD_TREE:
+			if(!distanceKernel.hasBoxBound()) throw new IllegalArgumentException("KD-tree needs the distance bounded by the distance to the box.");
+			return new KdTree(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+		case INDEX_BALL_TREE:
+			if(!distanceKernel.isMetric()) throw new IllegalArgumentException("Ball tree needs the metric distance.");
+			return new BallTree(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+		case INDEX_AUTO:
+			if(distanceKernel.hasBoxBound() && (trainingData.getDimension() <= KD_TREE_MAX_DIMENSION || !distanceKernel.isMetric())) {
+				return new KdTree(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+			}
+			
+			if(distanceKernel.isMetric()) return new BallTree(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+			return null;
+		case INDEX_HNSW:
+			return new HnswGraph(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures, searchEffort);
+		case INDEX_FLOAT:
+		case INDEX_INT16:
+		case INDEX_INT8:
+			if(!distanceKernel.isMetric()) throw new IllegalArgumentException("Compact vectors need the metric distance to bound their errors.");
+			return new CompactVectorScan(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures, indexType);
+		default:
+			throw new IllegalArgumentException("Unknown type of the index: "+indexType);
+		}
+	}
+	
+	/**
+	 * Method reading the index written by {@code writeSnapshot}. Nodes are restored as they were written, so the index
+	 * isn't built again.
+	 * @param input				input of the snapshot
+	 * @param trainingData		indexed training data
+	 * @param distanceKernel	kernel of the distance function
+	 * @return	restored index or null for {@code INDEX_NONE}
+	 * @throws IOException if the snapshot is damaged
+	 */
+	static SpatialIndex readSnapshot(ModelSnapshot.Input input, TrainingData trainingData, DistanceKernel distanceKernel) throws IOException {
+		int indexType = input.readInt();
+		if(indexType == INDEX_NONE) return null;
+		
+		boolean useAdaptiveDistanceMeasures = (input.readInt() != 0);
+		int[] permutation = input.readInts();
+		double[] rankMeasures = input.readDoubles();
+		
+		if(rankMeasures.length > trainingData.size()) throw new IOException("Snapshot is damaged (index doesn't match the training data).");
+		
+		for(int i : permutation) {
+			if(i < 0 || i >= trainingData.size()) throw new IOException("Snapshot is damaged (index doesn't match the training data).");
+		}
+		
+		switch(indexType) {
+		case INDEX_KD_TREE:
+			return new KdTree(trainingData, distanceKernel, permutation, rankMeasures, useAdaptiveDistanceMeasures, input);
+		case INDEX_BALL_TREE:
+			return new BallTree(trainingData, distanceKernel, permutation, rankMeasures, useAdaptiveDistanceMeasures, input);
+		case INDEX_HNSW:
+			return new HnswGraph(trainingData, distanceKernel, permutation, rankMeasures, useAdaptiveDistanceMeasures, input);
+		case INDEX_FLOAT:
+		case INDEX_INT16:
+		case INDEX_INT8:
+			return new CompactVectorScan(trainingData, distanceKernel, permutation, rankMeasures, useAdaptiveDistanceMeasures, indexType, input);
+		default:
+			throw new IOException("Snapshot is damaged (unknown type of the index: "+indexType+").");
+		}
+	}
+	
+	/**
+	 * Method returning whether the index of given type returns exact nearest neighbors.
+	 * @param indexType	type of the index ({@code INDEX_*})
+	 * @return	false for approximate indexes
+	 */
+	public static boolean isExact(int indexType) {
+		return indexType != INDEX_HNSW;
+	}
+	
+	/**
+	 * Method returning whether the index of given type can be built for the distance function
+	 * (the same conditions, under which {@code build} throws the {@code IllegalArgumentException}).
+	 * @param indexType			type of the index ({@code INDEX_*})
+	 * @param distanceKernel	kernel of the distance function
+	 * @return	false if the index needs the box bound or the metric, which the distance doesn't have
+	 */
+	public static boolean suits(int indexType, DistanceKernel distanceKernel) {
+		switch(indexType) {
+		case INDEX_KD_TREE:
+			return distanceKernel.hasBoxBound();
+		case INDEX_BALL_TREE:
+		case INDEX_FLOAT:
+		case INDEX_INT16:
+		case INDEX_INT8:
+			return distanceKernel.isMetric();
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Method offering {@code K} nearest training patterns of given vector to the selector. Offered distances are ranking
+	 * distances divided by the ranking adaptive distance measure (the same values as in the linear scan).
+	 * The selector isn't reset nor sorted by this method.
+	 * @param vector			tested vector (its dimension has to be checked by the caller)
+	 * @param neighborSelector	selector, which will hold the neighbors
+	 */
+	public abstract void search(double[] vector, NeighborSelector neighborSelector);
+	
+	/**
+	 * Method returning the type of the index.
+	 * @return	type of the index ({@code INDEX_*}, never {@code INDEX_AUTO})
+	 */
+	public abstract int getType();
+	
+	/**
+	 * Method writing the index to the snapshot: its type, the permutation, measures of the patterns and the nodes.
+	 * @param output	output of the snapshot
+	 * @throws IOException
+	 */
+	void writeSnapshot(ModelSnapshot.Output output) throws IOException {
+		output.writeInt(getType());
+		output.writeInt(useAdaptiveDistanceMeasures ? 1 : 0);
+		output.writeInts(permutation, permutation.length);
+		output.writeDoubles(rankMeasures, rankMeasures.length);
+		writeNodes(output);
+	}
+	
+	/**
+	 * Method writing the nodes of the index to the snapshot, so the constructor restoring the index can read them.
+	 * @param output	output of the snapshot
+	 * @throws IOException
+	 */
+	protected abstract void writeNodes(ModelSnapshot.Output output) throws IOException;
+	
+	/**
+	 * Method checking nodes of the tree restored from the snapshot. Ranges of nodes have to lie in the permutation
+	 * and inner nodes have two children placed after them (nodes are created in pre-order), so the search always ends.
+	 * @param nodeCnt	number of nodes
+	 * @param nodeFrom	first positions of nodes in the permutation
+	 * @param nodeTo	positions after the last ones of nodes in the permutation
+	 * @param nodeLeft	left children of nodes (-1 for leaves)
+	 * @param nodeRight	right children of nodes (-1 for leaves)
+	 * @throws IOException if the snapshot is damaged
+	 */
+	protected void checkTreeNodes(int nodeCnt, int[] nodeFrom, int[] nodeTo, int[] nodeLeft, int[] nodeRight) throws IOException {
+		for(int node = 0; node < nodeCnt; node++) {
+			if(nodeFrom[node] < 0 || nodeFrom[node] > nodeTo[node] || nodeTo[node] > permutation.length) {
+				throw new IOException("Snapshot is damaged (range of the node "+node+" exceeds the index).");
+			}
+			
+			boolean leaf = (nodeLeft[node] < 0 && nodeRight[node] < 0);
+			boolean inner = (nodeLeft[node] > node && nodeLeft[node] < nodeCnt && nodeRight[node] > node && nodeRight[node] < nodeCnt);
+			
+			if(!leaf && !inner) throw new IOException("Snapshot is damaged (invalid children of the node "+node+").");
+		}
+	}
+	
+	/**
+	 * Method returning whether the training pattern is in the index.
+	 * @param index	index of the training pattern
+	 * @return	true if the pattern is in the index and it wasn't excluded
+	 */
+	public boolean contains(int index) {
+		return index < rankMeasures.length && rankMeasures[index] != NOT_INDEXED;
+	}
+	
+	/**
+	 * Method returning the copy of the index, which can be changed by {@code exclude} and {@code lowerAdaptiveDistanceMeasure}
+	 * without affecting queries of this index. Nodes are shared, only measures of the patterns are copied.
+	 * @return	copy of the index
+	 */
+	public SpatialIndex copy() {
+		try {
+			SpatialIndex index = (SpatialIndex)clone();
+			index.rankMeasures = rankMeasures.clone();
+			return index;
+		}
+		catch(CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Method excluding the training pattern from the index, so it isn't offered by following queries.
+	 * It can be called only for copies, which aren't used for queries yet.
+	 * @param index	index of the training pattern
+	 */
+	public void exclude(int index) {
+		if(index < rankMeasures.length) rankMeasures[index] = NOT_INDEXED;
+	}
+	
+	/**
+	 * Method lowering the adaptive distance measure of the pattern in the index. Measures can't be raised,
+	 * because bounds of the nodes aren't updated (patterns with raised measure have to be excluded).
+	 * It can be called only for copies, which aren't used for queries yet.
+	 * @param index						index of the training pattern
+	 * @param adaptiveDistanceMeasure	new adaptive distance measure of the pattern
+	 */
+	public void lowerAdaptiveDistanceMeasure(int index, double adaptiveDistanceMeasure) {
+		if(!useAdaptiveDistanceMeasures || !contains(index)) return;
+		
+		double rankMeasure = distanceKernel.toRank(adaptiveDistanceMeasure);
+		if(rankMeasure > rankMeasures[index]) throw new IllegalArgumentException("Adaptive distance measure in the index can't be raised.");
+		rankMeasures[index] = rankMeasure;
+	}
+	
+	/**
+	 * Method offering the training patterns of given range of the permutation to the selector
+	 * (evaluated distances are counted in it).
+	 * @param vector			tested vector
+	 * @param from				first position in the permutation
+	 * @param to				position after the last one in the permutation
+	 * @param neighborSelector	selector, which will hold the neighbors
+	 */
+	protected void scan(double[] vector, int from, int to, NeighborSelector neighborSelector) {
+		double[] vectors = trainingData.getVectors();
+		int dimension = trainingData.getDimension();
+		int evaluatedCnt = 0;
+		
+		for(int p = from; p < to; p++) {
+			int i = permutation[p];
+			if(rankMeasures[i] == NOT_INDEXED) continue;
+			
+			double rank = distanceKernel.rank(vector, 0, vectors, trainingData.getOffset(i), dimension, neighborSelector.worstDistance() * rankMeasures[i]);
+			evaluatedCnt++;
+			
+			if(rank != Double.POSITIVE_INFINITY) neighborSelector.offer(i, rank / rankMeasures[i]);
+		}
+		
+		neighborSelector.countDistances(evaluatedCnt);
+	}
+	
+	/**
+	 * Method returning the maximal ranking adaptive distance measure of patterns in given range of the permutation.
+	 * @param from	first position in the permutation
+	 * @param to	position after the last one in the permutation
+	 * @return	maximal ranking adaptive distance measure
+	 */
+	protected double getMaxRankMeasure(int from, int to) {
+		double max = 0.0;
+		
+		for(int p = from; p < to; p++) {
+			if(rankMeasures[permutation[p]] > max) max = rankMeasures[permutation[p]];
+		}
+		
+		return max;
+	}
+	
+	/**
+	 * Method reordering given range of the permutation (and corresponding keys), so the key on the position {@code nth}
+	 * is the one that would be there in the sorted range, keys before it are lower or equal and keys after it are higher or equal.
+	 * @param keys	keys of the positions in the permutation
+	 * @param from	first position of the range
+	 * @param to	position after the last one of the range
+	 * @param nth	position which should hold its sorted key
+	 */
+	protected void select(double[] keys, int from, int to, int nth) {
+		int left = from;
+		int right = to - 1;
+		
+		while(right > left) {
+			double pivot = keys[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			
+			while(i <= j) {
+				while(keys[i] < pivot) i++;
+				while(keys[j] > pivot) j--;
+				
+				if(i <= j) {
+					swap(keys, i, j);
+					i++;
+					j--;
+				}
+			}
+			
+			if(nth <= j) right = j;
+			else if(nth >= i) left = i;
+			else return;
+		}
+	}
+	
+	/**
+	 * Method swapping two positions of the permutation and corresponding keys.
+	 * @param keys	keys of the positions in the permutation
+	 * @param i		first position
+	 * @param j		second position
+	 */
+	private void swap(double[] keys, int i, int j) {
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		
+		int index = permutation[i];
+		permutation[i] = permutation[j];
+		permutation[j] = index;
+	}
+}
@@ -0,0 +1,332 @@
+package knn;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Instance of this class holds the training set in columnar primitive arrays. Vectors of all patterns are stored
+ * in one contiguous row-major array (vector of the pattern {@code i} starts at {@code i * dimension}),
+ * classes are stored as identifiers from the label dictionary and adaptive distance measures in separate array.
+ * Patterns are appended while the set is being loaded, after that the data are only read (with exception
+ * of adaptive distance measures set during the training). Patterns removed later are only marked as removed,
+ * so indices of other patterns don't change.
+ * @author Vladimr Lznika
+ *
+ */
+public class TrainingData {
+	
+	/**
+	 * Initial capacity (number of patterns) used when it's not specified.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	/**
+	 * Dimension of the vectors (-1 until the first pattern is added).
+	 */
+	private int dimension;
+	
+	/**
+	 * Number of patterns in the set.
+	 */
+	private int size;
+	
+	/**
+	 * Row-major matrix with vectors of the patterns.
+	 */
+	private double[] vectors;
+	
+	/**
+	 * Identifiers of the pattern classes.
+	 */
+	private int[] classIds;
+	
+	/**
+	 * Adaptive distance measures of the patterns (1.0 if not calculated).
+	 */
+	private double[] adaptiveDistanceMeasures;
+	
+	/**
+	 * Indicators whether the patterns were removed (null if no pattern was removed).
+	 */
+	private boolean[] removed;
+	
+	/**
+	 * Number of removed patterns.
+	 */
+	private int removedCnt;
+	
+	/**
+	 * Dictionary of the class labels.
+	 */
+	private final LabelDictionary labelDictionary;
+	
+	/**
+	 * Constructor for the empty training set with default capacity.
+	 */
+	public TrainingData() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Constructor for the empty training set.
+	 * @param capacity	expected number of patterns
+	 */
+	public TrainingData(int capacity) {
+		this.dimension = -1;
+		this.size = 0;
+		this.vectors = new double[0];
+		this.classIds = new int[Math.max(capacity, 1)];
+		this.adaptiveDistanceMeasures = new double[Math.max(capacity, 1)];
+		this.labelDictionary = new LabelDictionary();
+	}
+	
+	/**
+	 * Constructor creating the training set from already filled arrays (they aren't copied).
+	 * Adaptive distance measures are set to 1.0.
+	 * @param dimension	dimension of the vectors
+	 * @param vectors	row-major matrix with vectors of the patterns
+	 * @param classIds	identifiers of the pattern classes (indices to the list of labels)
+	 * @param labels	class labels in the order of their identifiers
+	 */
+	public TrainingData(int dimension, double[] vectors, int[] classIds, List<String> labels) {
+		this.dimension = dimension;
+		this.size = classIds.length;
+		this.vectors = vectors;
+		this.classIds = classIds;
+		this.adaptiveDistanceMeasures = new double[Math.max(classIds.length, 1)];
+		this.labelDictionary = new LabelDictionary();
+		
+		Arrays.fill(adaptiveDistanceMeasures, 1.0);
+		
+		for(String label : labels) {
+			labelDictionary.addLabel(label);
+		}
+	}
+	
+	/**
+	 * Constructor creating the training set from the list of training patterns.
+	 * Classes and adaptive distance measures are taken from the patterns.
+	 * @param trainingSet	list with training patterns
+	 * @throws IndexOutOfBoundsException if patterns have different dimensions
+	 */
+	public TrainingData(List<Pattern> trainingSet) throws IndexOutOfBoundsException {
+		this(trainingSet.size());
+		
+		for(Pattern p : trainingSet) {
+			addPattern(p.getVector(), p.getPatternClass(), p.getAdaptiveDistanceMeasure());
+		}
+	}
+	
+	/**
+	 * Constructor for the copy of the training data, which may be changed while the original is still being read
+	 * (the original mustn't be changed anymore). Adaptive distance measures, removed patterns and labels are copied.
+	 * Vectors and classes are shared until the copy has to enlarge them, because the copy only appends them
+	 * after the patterns of the original, which aren't read through the original.
+	 * @param trainingData	copied training data
+	 */
+	public TrainingData(TrainingData trainingData) {
+		this.dimension = trainingData.dimension;
+		this.size = trainingData.size;
+		this.vectors = trainingData.vectors;
+		this.classIds = trainingData.classIds;
+		this.adaptiveDistanceMeasures = trainingData.adaptiveDistanceMeasures.clone();
+		this.removed = (trainingData.removed == null) ? null : trainingData.removed.clone();
+		this.removedCnt = trainingData.removedCnt;
+		this.labelDictionary = new LabelDictionary(trainingData.labelDictionary);
+	}
+	
+	/**
+	 * Method appending the pattern to the training set. Its adaptive distance measure is set to 1.0.
+	 * @param vector		vector of the pattern
+	 * @param patternClass	class of the pattern
+	 * @return	index of the added pattern
+	 * @throws IndexOutOfBoundsException if the vector has different dimension than previous ones
+	 */
+	public int addPattern(double[] vector, String patternClass) throws IndexOutOfBoundsException {
+		return addPattern(vector, patternClass, 1.0);
+	}
+	
+	/**
+	 * Method appending the pattern to the training set.
+	 * @param vector					vector of the pattern
+	 * @param patternClass				class of the pattern
+	 * @param adaptiveDistanceMeasure	adaptive distance measure of the pattern
+	 * @return	index of the added pattern
+	 * @throws IndexOutOfBoundsException if the vector has different dimension than previous ones
+	 */
+	public int addPattern(double[] vector, String patternClass, double adaptiveDistanceMeasure) throws IndexOutOfBoundsException {
+		if(dimension < 0) {
+			dimension = vector.length;
+			vectors = new double[classIds.length * dimension];
+		}
+		else checkDimension(vector);
+		
+		ensureCapacity(size + 1);
+		System.arraycopy(vector, 0, vectors, size * dimension, dimension);
+		classIds[size] = labelDictionary.addLabel(patternClass);
+		adaptiveDistanceMeasures[size] = adaptiveDistanceMeasure;
+		
+		return size++;
+	}
+	
+	/**
+	 * Method marking the pattern as removed. Removed pattern keeps its index (and its values),
+	 * but it mustn't be used as a neighbor or as a pattern with different class.
+	 * @param index	index of the pattern
+	 */
+	public void removePattern(int index) {
+		if(removed == null) removed = new boolean[classIds.length];
+		if(!removed[index]) removedCnt++;
+		removed[index] = true;
+	}
+	
+	/**
+	 * Method returning whether the pattern was removed.
+	 * @param index	index of the pattern
+	 * @return	true if the pattern was removed
+	 */
+	public boolean isRemoved(int index) {
+		return removed != null && removed[index];
+	}
+	
+	/**
+	 * Getter for the number of removed patterns.
+	 * @return the removedCnt
+	 */
+	public int getRemovedCnt() {
+		return removedCnt;
+	}
+	
+	/**
+	 * Method checking that given vector has the same dimension as vectors of the training set.
+	 * @param vector	vector to check
+	 * @throws IndexOutOfBoundsException if the vector has different dimension
+	 */
+	public void checkDimension(double[] vector) throws IndexOutOfBoundsException {
+		if(dimension >= 0 && vector.length != dimension) {
+			throw new IndexOutOfBoundsException("Can't calculate distance between vectors!\n"
+					+ "Vector 1 length: "+vector.length+", Vector 2 length: "+dimension+".");
+		}
+	}
+	
+	/**
+	 * Getter for the number of patterns (including removed ones).
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Getter for the dimension of the vectors (0 for the empty set).
+	 * @return the dimension
+	 */
+	public int getDimension() {
+		return Math.max(dimension, 0);
+	}
+	
+	/**
+	 * Getter for the row-major matrix with vectors. Only first {@code size * dimension} values are valid.
+	 * @return the vectors
+	 */
+	public double[] getVectors() {
+		return vectors;
+	}
+	
+	/**
+	 * Method returning the offset of the pattern vector in the matrix of vectors.
+	 * @param index	index of the pattern
+	 * @return	offset of the first value of the vector
+	 */
+	public int getOffset(int index) {
+		return index * dimension;
+	}
+	
+	/**
+	 * Method returning the copy of the pattern vector.
+	 * @param index	index of the pattern
+	 * @return	vector of the pattern
+	 */
+	public double[] getVector(int index) {
+		return Arrays.copyOfRange(vectors, index * dimension, (index + 1) * dimension);
+	}
+	
+	/**
+	 * Method returning the class identifier of the pattern.
+	 * @param index	index of the pattern
+	 * @return	class identifier
+	 */
+	public int getClassId(int index) {
+		return classIds[index];
+	}
+	
+	/**
+	 * Method returning the class label of the pattern.
+	 * @param index	index of the pattern
+	 * @return	class label
+	 */
+	public String getPatternClass(int index) {
+		return labelDictionary.getLabel(classIds[index]);
+	}
+	
+	/**
+	 * Method returning the adaptive distance measure of the pattern.
+	 * @param index	index of the pattern
+	 * @return	adaptive distance measure
+	 */
+	public double getAdaptiveDistanceMeasure(int index) {
+		return adaptiveDistanceMeasures[index];
+	}
+	
+	/**
+	 * Method setting the adaptive distance measure of the pattern.
+	 * @param index						index of the pattern
+	 * @param adaptiveDistanceMeasure	adaptive distance measure to set
+	 */
+	public void setAdaptiveDistanceMeasure(int index, double adaptiveDistanceMeasure) {
+		adaptiveDistanceMeasures[index] = adaptiveDistanceMeasure;
+	}
+	
+	/**
+	 * Method calculating the fingerprint of the training data from their vectors and class labels.
+	 * It's used to recognize, whether stored values (like adaptive distance measures) belong to these data.
+	 * @return	64-bit hash of the data
+	 */
+	public long getFingerprint() {
+		long hash = 1125899906842597L;
+		hash = 31 * hash + size;
+		hash = 31 * hash + getDimension();
+		
+		for(int i = 0; i < size * getDimension(); i++) {
+			hash = 31 * hash + Double.doubleToLongBits(vectors[i]);
+		}
+		
+		for(int i = 0; i < size; i++) {
+			hash = 31 * hash + getPatternClass(i).hashCode();
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 * Getter for the dictionary of class labels.
+	 * @return the labelDictionary
+	 */
+	public LabelDictionary getLabelDictionary() {
+		return labelDictionary;
+	}
+	
+	/**
+	 * Method enlarging arrays, so they can hold given number of patterns.
+	 * @param capacity	required number of patterns
+	 */
+	private void ensureCapacity(int capacity) {
+		if(capacity <= classIds.length) return;
+		
+		int newCapacity = Math.max(capacity, classIds.length + (classIds.length >> 1));
+		vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+		classIds = Arrays.copyOf(classIds, newCapacity);
+		adaptiveDistanceMeasures = Arrays.copyOf(adaptiveDistanceMeasures, newCapacity);
+		if(removed != null) removed = Arrays.copyOf(removed, newCapacity);
+	}
+}
@@ -0,0 +1,343 @@
+package knn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Instance of this class reduces the training set before the classification, so queries scan fewer patterns.
+ * It offers three methods:
+ * the condensed nearest neighbor (Hart) keeps only patterns needed to classify all training patterns correctly
+ * by the 1-NN rule (patterns are visited from the class border given by their adaptive distance measures, so the border
+ * gets into the condensed set first and the set is smaller than for the random order);
+ * the edited nearest neighbor (Wilson) removes patterns misclassified by the majority of their {@code K} nearest
+ * neighbors (it removes noise and smooths the border, but keeps redundant patterns);
+ * the pruning by adaptive distance measures keeps patterns with the largest measures and removes patterns lying inside
+ * the sphere of a kept pattern of the same class (the sphere contains no pattern of other class).
+ * Adaptive distance measures are calculated by the {@code AdaptiveDistanceMeasures} with the chosen spatial index
+ * and number of threads, nearest neighbors of the edited nearest neighbor are searched by the {@code ClassificationModel}.
+ * @author Vladimr Lznika
+ *
+ */
+public class TrainingSetReduction {
+	
+	/**
+	 * Constant value indicating the condensed nearest neighbor will be used.
+	 */
+	public static final int REDUCTION_CNN = 1;
+	
+	/**
+	 * Constant value indicating the edited nearest neighbor will be used.
+	 */
+	public static final int REDUCTION_ENN = 2;
+	
+	/**
+	 * Constant value indicating the pruning by adaptive distance measures will be used.
+	 */
+	public static final int REDUCTION_ADM = 3;
+	
+	/**
+	 * Reduced training data.
+	 */
+	private final TrainingData trainingData;
+	
+	/**
+	 * Kernel of the distance function.
+	 */
+	private final DistanceKernel distanceKernel;
+	
+	/**
+	 * Number of nearest neighbors voting in the edited nearest neighbor.
+	 */
+	private final int kNumber;
+	
+	/**
+	 * Type of the spatial index used for searching nearest neighbors ({@code SpatialIndex.INDEX_*}).
+	 */
+	private final int indexType;
+	
+	/**
+	 * Number of threads used for searching nearest neighbors.
+	 */
+	private final int parallelism;
+	
+	/**
+	 * Constructor for the reduction.
+	 * @param trainingData		reduced training data (they aren't changed)
+	 * @param distanceKernel	kernel of the distance function
+	 * @param kNumber			number of nearest neighbors voting in the edited nearest neighbor
+	 * @param indexType			type of the spatial index used for searching nearest neighbors
+	 * @param parallelism		number of threads used for searching nearest neighbors
+	 */
+	public TrainingSetReduction(TrainingData trainingData, DistanceKernel distanceKernel, int kNumber, int indexType, int parallelism) {
+		if(kNumber < 1) throw new IllegalArgumentException("Number of nearest neighbors has to be positive: "+kNumber);
+		if(parallelism < 1) throw new IllegalArgumentException("Number of threads has to be positive: "+parallelism);
+		
+		this.trainingData = trainingData;
+		this.distanceKernel = distanceKernel;
+		this.kNumber = kNumber;
+		this.indexType = indexType;
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Method creating the reduced training data by given method.
+	 * @param method	reduction method ({@code REDUCTION_*})
+	 * @return	new training data with kept patterns (in their original order)
+	 * @throws IndexOutOfBoundsException
+	 */
+	public TrainingData reduce(int method) throws IndexOutOfBoundsException {
+		int[] kept = select(method);
+		TrainingData reducedData = new TrainingData(kept.length);
+		
+		for(int i : kept) {
+			reducedData.addPattern(trainingData.getVector(i), trainingData.getPatternClass(i));
+		}
+		
+		return reducedData;
+	}
+	
+	/**
+	 * Method selecting training patterns kept by given method. Removed patterns are never kept.
+	 * @param method	reduction method ({@code REDUCTION_*})
+	 * @return	indices of kept patterns in ascending order
+	 * @throws IndexOutOfBoundsException
+	 */
+	public int[] select(int method) throws IndexOutOfBoundsException {
+		int[] kept;
+		
+		switch(method) {
+		case REDUCTION_CNN:
+			kept = condense();
+			break;
+		case REDUCTION_ENN:
+			kept = edit();
+			break;
+		case REDUCTION_ADM:
+			kept = pruneByAdaptiveDistanceMeasures();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown reduction method: "+method);
+		}
+		
+		Arrays.sort(kept);
+		return kept;
+	}
+	
+	/**
+	 * Method selecting patterns by the condensed nearest neighbor. Patterns are visited in ascending order of their adaptive
+	 * distance measures and every pattern misclassified by the nearest pattern of the condensed set is added to it.
+	 * Passes are repeated until no pattern is added.
+	 * @return	indices of kept patterns
+	 * @throws IndexOutOfBoundsException
+	 */
+	private int[] condense() throws IndexOutOfBoundsException {
+		Integer[] order = getOrderByMeasures(true);
+		if(order.length == 0) return new int[0];
+		
+		double[] vectors = trainingData.getVectors();
+		int dimension = trainingData.getDimension();
+		boolean[] condensed = new boolean[trainingData.size()];
+		int[] kept = new int[order.length];
+		int keptCnt = 0;
+		boolean added = true;
+		
+		kept[keptCnt++] = order[0];
+		condensed[order[0]] = true;
+		
+		while(added) {
+			added = false;
+			
+			for(int i : order) {
+				if(condensed[i]) continue;
+				
+				int offset = trainingData.getOffset(i);
+				int nearest = -1;
+				double nearestRank = Double.POSITIVE_INFINITY;
+				
+				for(int k = 0; k < keptCnt; k++) {
+					double rank = distanceKernel.rank(vectors, offset, vectors, trainingData.getOffset(kept[k]), dimension, nearestRank);
+					
+					if(rank < nearestRank || nearest < 0) {
+						nearest = kept[k];
+						nearestRank = rank;
+					}
+				}
+				
+				if(trainingData.getClassId(nearest) != trainingData.getClassId(i)) {
+					kept[keptCnt++] = i;
+					condensed[i] = true;
+					added = true;
+				}
+			}
+		}
+		
+		return Arrays.copyOf(kept, keptCnt);
+	}
+	
+	/**
+	 * Method selecting patterns by the edited nearest neighbor. Every pattern is classified by the majority
+	 * of its {@code K} nearest neighbors (without itself) and kept only if it's classified correctly.
+	 * Patterns are split to parts classified by individual threads.
+	 * @return	indices of kept patterns
+	 * @throws IndexOutOfBoundsException
+	 */
+	private int[] edit() throws IndexOutOfBoundsException {
+		final ClassificationModel model = new ClassificationModel(trainingData, distanceKernel, indexType, HnswGraph.DEFAULT_EF, false);
+		final boolean[] correct = new boolean[trainingData.size()];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		int partSize = (trainingData.size() + parallelism - 1) / parallelism;
+		
+		for(int from = 0; from < trainingData.size(); from += partSize) {
+			final int partFrom = from;
+			final int partTo = Math.min(trainingData.size(), from + partSize);
+			
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					editPart(model, partFrom, partTo, correct);
+					return null;
+				}
+			});
+		}
+		
+		invokeAll(tasks);
+		
+		int[] kept = new int[trainingData.size()];
+		int keptCnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(correct[i]) kept[keptCnt++] = i;
+		}
+		
+		return Arrays.copyOf(kept, keptCnt);
+	}
+	
+	/**
+	 * Method classifying one part of training patterns for the edited nearest neighbor.
+	 * @param model		model searching nearest neighbors in all training patterns
+	 * @param from		index of the first classified pattern
+	 * @param to		index after the last classified pattern
+	 * @param correct	indicators whether patterns are classified correctly (set for the part)
+	 */
+	private void editPart(ClassificationModel model, int from, int to, boolean[] correct) {
+		NeighborSelector neighborSelector = new NeighborSelector(kNumber + 1);
+		NeighborVote neighborVote = new NeighborVote(NeighborVote.VOTE_MAJORITY, distanceKernel);
+		int[] neighbors = new int[kNumber + 1];
+		
+		for(int i = from; i < to; i++) {
+			if(trainingData.isRemoved(i)) continue;
+			
+			neighborSelector.reset();
+			model.search(trainingData.getVector(i), neighborSelector);
+			neighborSelector.sortNeighbors();
+			
+			int neighborCnt = 0;
+			
+			for(int n = 0; n < neighborSelector.size() && neighborCnt < kNumber; n++) {
+				if(neighborSelector.getIndex(n) != i) neighbors[neighborCnt++] = neighborSelector.getIndex(n);
+			}
+			
+			correct[i] = (neighborCnt == 0) || neighborVote.vote(trainingData, neighbors, null, neighborCnt) == trainingData.getClassId(i);
+		}
+	}
+	
+	/**
+	 * Method selecting patterns by adaptive distance measures. Patterns are visited in descending order of their measures
+	 * and every pattern, which doesn't lie inside the sphere of a kept pattern of the same class (with the radius
+	 * given by its measure), is kept.
+	 * @return	indices of kept patterns
+	 * @throws IndexOutOfBoundsException
+	 */
+	private int[] pruneByAdaptiveDistanceMeasures() throws IndexOutOfBoundsException {
+		double[] measures = new AdaptiveDistanceMeasures(trainingData, distanceKernel, indexType, parallelism).calculate();
+		Integer[] order = getOrderByMeasures(measures, false);
+		double[] vectors = trainingData.getVectors();
+		int dimension = trainingData.getDimension();
+		int[] kept = new int[order.length];
+		int keptCnt = 0;
+		
+		for(int i : order) {
+			int offset = trainingData.getOffset(i);
+			boolean covered = false;
+			
+			for(int k = 0; k < keptCnt && !covered; k++) {
+				if(trainingData.getClassId(kept[k]) != trainingData.getClassId(i)) continue;
+				
+				double radiusRank = distanceKernel.toRank(measures[kept[k]]);
+				covered = distanceKernel.rank(vectors, offset, vectors, trainingData.getOffset(kept[k]), dimension, radiusRank) < radiusRank;
+			}
+			
+			if(!covered) kept[keptCnt++] = i;
+		}
+		
+		return Arrays.copyOf(kept, keptCnt);
+	}
+	
+	/**
+	 * Method returning indices of patterns, which aren't removed, sorted by their adaptive distance measures
+	 * (calculated by this method).
+	 * @param ascending	whether patterns are sorted from the lowest measure
+	 * @return	sorted indices of patterns
+	 * @throws IndexOutOfBoundsException
+	 */
+	private Integer[] getOrderByMeasures(boolean ascending) throws IndexOutOfBoundsException {
+		return getOrderByMeasures(new AdaptiveDistanceMeasures(trainingData, distanceKernel, indexType, parallelism).calculate(), ascending);
+	}
+	
+	/**
+	 * Method returning indices of patterns, which aren't removed, sorted by given adaptive distance measures
+	 * (patterns with equal measures are sorted by their index).
+	 * @param measures	adaptive distance measures of all patterns
+	 * @param ascending	whether patterns are sorted from the lowest measure
+	 * @return	sorted indices of patterns
+	 */
+	private Integer[] getOrderByMeasures(final double[] measures, final boolean ascending) {
+		Integer[] order = new Integer[trainingData.size() - trainingData.getRemovedCnt()];
+		int cnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(!trainingData.isRemoved(i)) order[cnt++] = i;
+		}
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				int result = ascending ? Double.compare(measures[i1], measures[i2]) : Double.compare(measures[i2], measures[i1]);
+				return (result != 0) ? result : Integer.compare(i1, i2);
+			}
+		});
+		
+		return order;
+	}
+	
+	/**
+	 * Method running given tasks in the {@code ForkJoinPool} with the set parallelism.
+	 * @param tasks	tasks to run
+	 */
+	private void invokeAll(List<Callable<Void>> tasks) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		
+		try {
+			for(Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Reduction of the training set was interrupted.", e);
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package knn;
+
+import java.util.Arrays;
+
+/**
+ * Kernel calculating the Euclidean distance with weights of features ({@code sqrt(sum w * (x - y)^2)}). Its ranking
+ * distance is the weighted sum of squares without the square root. Weights have to be non-negative, so the distance
+ * stays a metric (features with zero weight are ignored). The limit is checked once per four dimensions.
+ * @author Vladimr Lznika
+ *
+ */
+public class WeightedEuclideanKernel extends DistanceKernel {
+	
+	/**
+	 * Weights of features.
+	 */
+	private final double[] weights;
+	
+	/**
+	 * Constructor for the kernel.
+	 * @param weights	weights of features (they are copied)
+	 */
+	public WeightedEuclideanKernel(double[] weights) {
+		for(double weight : weights) {
+			if(!(weight >= 0.0) || Double.isInfinite(weight)) throw new IllegalArgumentException("Weights of features have to be non-negative numbers: "+weight);
+		}
+		
+		this.weights = weights.clone();
+	}
+	
+	/**
+	 * Getter for weights of features.
+	 * @return	copy of the weights
+	 */
+	public double[] getWeights() {
+		return weights.clone();
+	}
+	
+	@Override
+	public int getType() {
+		return Classification.DISTANCE_WEIGHTED;
+	}
+	
+	@Override
+	public int getSignature() {
+		return 31 * getType() + Arrays.hashCode(weights);
+	}
+	
+	@Override
+	public double[] getParameters() {
+		return weights.clone();
+	}
+	
+	@Override
+	public void checkDimension(int dimension) throws IndexOutOfBoundsException {
+		if(dimension != weights.length) throw new IndexOutOfBoundsException("Number of weights ("+weights.length+") differs from the dimension: "+dimension);
+	}
+	
+	@Override
+	public double rank(double[] vectors1, int offset1, double[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = vectors1[offset1 + i] - vectors2[offset2 + i];
+			sum += weights[i] * diff * diff;
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] vector, float[] vectors2, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = vector[i] - vectors2[offset2 + i];
+			sum += weights[i] * diff * diff;
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, short[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = (scaledVector[i] - codes[offset2 + i]) * scales[i];
+			sum += weights[i] * diff * diff;
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double rank(double[] scaledVector, double[] scales, byte[] codes, int offset2, int dimension, double rankLimit) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = (scaledVector[i] - codes[offset2 + i]) * scales[i];
+			sum += weights[i] * diff * diff;
+			if((i & 3) == 3 && sum > rankLimit) return Double.POSITIVE_INFINITY;
+		}
+		
+		return (sum > rankLimit) ? Double.POSITIVE_INFINITY : sum;
+	}
+	
+	@Override
+	public double boxRank(double[] vector, double[] boxMin, double[] boxMax, int boxOffset, int dimension) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < dimension; i++) {
+			double diff = 0.0;
+			if(vector[i] < boxMin[boxOffset + i]) diff = boxMin[boxOffset + i] - vector[i];
+			else if(vector[i] > boxMax[boxOffset + i]) diff = vector[i] - boxMax[boxOffset + i];
+			sum += weights[i] * diff * diff;
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public double toDistance(double rank) {
+		return Math.sqrt(rank);
+	}
+	
+	@Override
+	public double toRank(double distance) {
+		return distance * distance;
+	}
+}
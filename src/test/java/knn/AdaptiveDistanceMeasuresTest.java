@@ -0,0 +1,121 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@code AdaptiveDistanceMeasures} - measures found via spatial indexes and by several threads have to be
+ * the same as measures found by the scan of all pairs, saved measures have to be loaded only for the same training data
+ * and distance function.
+ * @author Vladimr Lznika
+ *
+ */
+public class AdaptiveDistanceMeasuresTest {
+	
+	/**
+	 * Folder for files with measures.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Method comparing measures calculated via exact indexes and by several threads with the serial scan of all pairs
+	 * on data with distinct distances and on grid data with duplicates (measures in zero distance).
+	 */
+	@Test
+	public void measuresByIndexMatchPairs() {
+		Random random = new Random(31);
+		TrainingData[] datasets = {TestData.createGaussian(random, 600, 4), TestData.createGrid(random, 600, 3, 4)};
+		DistanceKernel[] distanceKernels = {new EuclideanKernel(), new ManhattanKernel()};
+		
+		for(TrainingData trainingData : datasets) {
+			for(DistanceKernel distanceKernel : distanceKernels) {
+				double[] expected = new AdaptiveDistanceMeasures(trainingData, distanceKernel, SpatialIndex.INDEX_NONE, 1).calculate();
+				
+				assertArrayEquals(expected, new AdaptiveDistanceMeasures(trainingData, distanceKernel, SpatialIndex.INDEX_NONE, 4).calculate(), 0.0);
+				
+				for(int indexType : new int[] {SpatialIndex.INDEX_KD_TREE, SpatialIndex.INDEX_BALL_TREE, SpatialIndex.INDEX_AUTO}) {
+					for(int parallelism : new int[] {1, 3}) {
+						String message = TestData.getName(distanceKernel) + ", index " + indexType + ", threads " + parallelism;
+						assertArrayEquals(message, expected, new AdaptiveDistanceMeasures(trainingData, distanceKernel, indexType, parallelism).calculate(), 0.0);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method checking that the automatic index type scans all pairs for the distance, for which no exact index can be built.
+	 */
+	@Test
+	public void autoIndexWithoutExactIndexScansPairs() {
+		TrainingData trainingData = TestData.createGaussian(new Random(33), 400, 4);
+		DistanceKernel distanceKernel = new CosineKernel();
+		double[] expected = new AdaptiveDistanceMeasures(trainingData, distanceKernel, SpatialIndex.INDEX_NONE, 1).calculate();
+		
+		for(int parallelism : new int[] {1, 3}) {
+			assertArrayEquals(expected, new AdaptiveDistanceMeasures(trainingData, distanceKernel, SpatialIndex.INDEX_AUTO, parallelism).calculate(), 0.0);
+		}
+	}
+	
+	/**
+	 * Method checking the measure of the pattern, which has no pattern of different class, and measures
+	 * of two patterns of different classes.
+	 */
+	@Test
+	public void measureIsDistanceToNearestEnemy() {
+		TrainingData trainingData = new TrainingData();
+		trainingData.addPattern(new double[] {0.0, 0.0}, "a");
+		trainingData.addPattern(new double[] {3.0, 4.0}, "b");
+		trainingData.addPattern(new double[] {0.0, 1.0}, "a");
+		
+		assertArrayEquals(new double[] {5.0, 3.0 * Math.sqrt(2.0), 3.0 * Math.sqrt(2.0)},
+				new AdaptiveDistanceMeasures(trainingData, new EuclideanKernel(), SpatialIndex.INDEX_NONE, 1).calculate(), 1e-12);
+		
+		TrainingData oneClass = new TrainingData();
+		oneClass.addPattern(new double[] {0.0}, "a");
+		oneClass.addPattern(new double[] {1.0}, "a");
+		
+		assertArrayEquals(new double[] {Double.MAX_VALUE, Double.MAX_VALUE}, new AdaptiveDistanceMeasures(oneClass, new EuclideanKernel(), SpatialIndex.INDEX_KD_TREE, 1).calculate(), 0.0);
+	}
+	
+	/**
+	 * Method saving measures and loading them for the same and for different training data and distance functions.
+	 * @throws IOException
+	 */
+	@Test
+	public void loadsMeasuresOnlyForSameDataAndDistance() throws IOException {
+		Random random = new Random(32);
+		TrainingData trainingData = TestData.createGaussian(random, 200, 3);
+		DistanceKernel distanceKernel = new MinkowskiKernel(3.0);
+		TestData.setAdaptiveDistanceMeasures(trainingData, distanceKernel);
+		
+		File file = folder.newFile();
+		AdaptiveDistanceMeasures.save(file, trainingData, distanceKernel);
+		
+		double[] loaded = AdaptiveDistanceMeasures.load(file, trainingData, new MinkowskiKernel(3.0));
+		assertEquals(trainingData.size(), loaded.length);
+		
+		for(int i = 0; i < loaded.length; i++) {
+			assertEquals(trainingData.getAdaptiveDistanceMeasure(i), loaded[i], 0.0);
+		}
+		
+		assertNull(AdaptiveDistanceMeasures.load(file, trainingData, new MinkowskiKernel(4.0)));
+		assertNull(AdaptiveDistanceMeasures.load(file, trainingData, new EuclideanKernel()));
+		
+		TrainingData changedData = new TrainingData(trainingData);
+		changedData.addPattern(new double[] {0.0, 0.0, 0.0}, "class0");
+		
+		assertNull(AdaptiveDistanceMeasures.load(file, changedData, distanceKernel));
+		assertNull(AdaptiveDistanceMeasures.load(file, TestData.createGaussian(new Random(33), 200, 3), distanceKernel));
+	}
+}
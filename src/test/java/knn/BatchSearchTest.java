@@ -0,0 +1,84 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Randomized test of the {@code BatchSearch} against the brute force. It has to return the same neighbors with the same
+ * ranking distances as the brute force for every distance kernel (the Euclidean distance uses the expansion).
+ * @author Vladimr Lznika
+ *
+ */
+public class BatchSearchTest {
+	
+	/**
+	 * Method comparing the batch search with the brute force for all distance kernels (the Euclidean distance
+	 * uses the expansion of squared distances) on data with and without ties and with removed patterns.
+	 */
+	@Test
+	public void matchesBruteForce() {
+		for(int dimension : new int[] {2, 4, 30}) {
+			Random random = new Random(200 + dimension);
+			TrainingData[] datasets = {TestData.createGaussian(random, 3000, dimension), TestData.createGrid(random, 3000, dimension, SpatialIndexTest.GRID_LEVELS)};
+			
+			for(int d = 0; d < datasets.length; d++) {
+				TrainingData trainingData = datasets[d];
+				double[][] queries = TestData.createQueries(random, trainingData, SpatialIndexTest.QUERY_CNT, d == 1, SpatialIndexTest.GRID_LEVELS);
+				
+				for(DistanceKernel distanceKernel : TestData.createKernels(random, dimension)) {
+					TrainingData searchedData = new TrainingData(trainingData);
+					if(d == 0) TestData.setAdaptiveDistanceMeasures(searchedData, distanceKernel);
+					
+					for(int i = 0; i < searchedData.size(); i += 7) {
+						searchedData.removePattern(i);
+					}
+					
+					checkBatchSearch(searchedData, distanceKernel, queries);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method comparing neighbors found by the batch search with the brute force over patterns, which weren't removed.
+	 * @param trainingData		training data with adaptive distance measures
+	 * @param distanceKernel	kernel of the distance function
+	 * @param queries			tested vectors
+	 */
+	private static void checkBatchSearch(TrainingData trainingData, DistanceKernel distanceKernel, double[][] queries) {
+		int[] indices = new int[trainingData.size() - trainingData.getRemovedCnt()];
+		int cnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(!trainingData.isRemoved(i)) indices[cnt++] = i;
+		}
+		
+		BatchSearch batchSearch = new BatchSearch(trainingData, distanceKernel);
+		
+		for(int kNumber : SpatialIndexTest.K_NUMBERS) {
+			NeighborSelector[] neighborSelectors = new NeighborSelector[queries.length];
+			
+			for(int q = 0; q < queries.length; q++) {
+				neighborSelectors[q] = new NeighborSelector(kNumber);
+			}
+			
+			batchSearch.search(queries, queries.length, neighborSelectors);
+			
+			double[] distances = new double[kNumber];
+			
+			for(int q = 0; q < queries.length; q++) {
+				int[] expected = TestData.findNearest(trainingData, distanceKernel, indices, true, queries[q], kNumber, distances);
+				NeighborSelector neighborSelector = neighborSelectors[q];
+				neighborSelector.sortNeighbors();
+				
+				String message = TestData.getName(distanceKernel) + ", dimension " + trainingData.getDimension() + ", K " + kNumber + ", query " + q;
+				assertArrayEquals(message, expected, Arrays.copyOf(neighborSelector.getIndices(), neighborSelector.size()));
+				assertArrayEquals(message, Arrays.copyOf(distances, expected.length), Arrays.copyOf(neighborSelector.getDistances(), neighborSelector.size()), 0.0);
+			}
+		}
+	}
+}
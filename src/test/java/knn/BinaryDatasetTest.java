@@ -0,0 +1,142 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@code BinaryDataset} - training data have to be read as they were written and damaged headers
+ * have to be rejected by the {@code IOException}.
+ * @author Vladimr Lznika
+ *
+ */
+public class BinaryDatasetTest {
+	
+	/**
+	 * Folder for dataset files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Method writing random training data with non-ASCII labels and comparing them with read ones.
+	 * @throws IOException
+	 */
+	@Test
+	public void readsWrittenTrainingData() throws IOException {
+		Random random = new Random(9);
+		TrainingData trainingData = new TrainingData();
+		String[] labels = {"setosa", "tda", "luouk k", ""};
+		
+		for(int i = 0; i < 1000; i++) {
+			double[] vector = new double[7];
+			
+			for(int d = 0; d < vector.length; d++) {
+				vector[d] = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+			}
+			
+			trainingData.addPattern(vector, labels[random.nextInt(labels.length)]);
+		}
+		
+		File file = folder.newFile();
+		BinaryDataset.write(file, trainingData);
+		
+		assertTrue(BinaryDataset.isBinaryDataset(file));
+		
+		TrainingData readData = BinaryDataset.read(file);
+		List<Pattern> patterns = BinaryDataset.readPatterns(file);
+		
+		assertEquals(trainingData.size(), readData.size());
+		assertEquals(trainingData.getDimension(), readData.getDimension());
+		assertEquals(trainingData.size(), patterns.size());
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			assertArrayEquals(trainingData.getVector(i), readData.getVector(i), 0.0);
+			assertEquals(trainingData.getPatternClass(i), readData.getPatternClass(i));
+			assertEquals(1.0, readData.getAdaptiveDistanceMeasure(i), 0.0);
+			assertArrayEquals(trainingData.getVector(i), patterns.get(i).getVector(), 0.0);
+			assertEquals(trainingData.getPatternClass(i), patterns.get(i).getCorrectClass());
+		}
+	}
+	
+	/**
+	 * Method checking that the text dataset isn't taken for the binary one.
+	 * @throws IOException
+	 */
+	@Test
+	public void recognizesTextDataset() throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), "1.0,2.0;a\n".getBytes("UTF-8"));
+		
+		assertFalse(BinaryDataset.isBinaryDataset(file));
+	}
+	
+	/**
+	 * Method damaging single values of the header and the class identifier of the pattern and checking that
+	 * all damaged files are rejected.
+	 * @throws IOException
+	 */
+	@Test
+	public void rejectsDamagedFiles() throws IOException {
+		TrainingData trainingData = new TrainingData();
+		trainingData.addPattern(new double[] {1.0, 2.0}, "a");
+		trainingData.addPattern(new double[] {3.0, 4.0}, "b");
+		
+		File file = folder.newFile();
+		BinaryDataset.write(file, trainingData);
+		byte[] content = Files.readAllBytes(file.toPath());
+		
+		checkDamaged(content, 0, 0);
+		checkDamaged(content, 4, -1);
+		checkDamaged(content, 4, 3);
+		checkDamaged(content, 8, -2);
+		checkDamaged(content, 8, Integer.MAX_VALUE);
+		checkDamaged(content, 12, -1);
+		checkDamaged(content, 12, 1 << 28);
+		checkDamaged(content, 16, 1 << 20);
+		checkDamaged(content, content.length - 4, 2);
+		checkDamaged(content, content.length - 4, -1);
+	}
+	
+	/**
+	 * Method writing the copy of the file with one changed little-endian int and checking that it can't be read.
+	 * @param content	content of the valid file
+	 * @param position	position of the changed int
+	 * @param value		new value of the int
+	 * @throws IOException
+	 */
+	private void checkDamaged(byte[] content, int position, int value) throws IOException {
+		File file = folder.newFile();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		
+		try {
+			raf.write(content);
+			raf.seek(position);
+			raf.writeInt(Integer.reverseBytes(value));
+		}
+		finally {
+			raf.close();
+		}
+		
+		try {
+			BinaryDataset.read(file);
+			fail("Damaged file was read (value " + value + " at " + position + ").");
+		}
+		catch(IOException e) {
+			// expected
+		}
+	}
+}
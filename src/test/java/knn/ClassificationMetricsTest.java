@@ -0,0 +1,112 @@
+package knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code ClassificationMetrics} and the {@code LatencyHistogram} - every classified pattern has to be counted
+ * once with all evaluated distances, percentiles of the histogram have to be near exact percentiles of recorded values.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationMetricsTest {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 5;
+	
+	/**
+	 * Method classifying patterns by the linear scan (in batches and one by one) and checking counts of queries,
+	 * distances and phases and the summary.
+	 * @throws IOException
+	 */
+	@Test
+	public void countsQueriesAndDistances() throws IOException {
+		Random random = new Random(71);
+		TrainingData trainingData = TestData.createGaussian(random, 700, 4);
+		TrainingData testingData = TestData.createGaussian(random, 500, 4);
+		
+		for(int parallelism : new int[] {1, 3}) {
+			ClassificationMetrics metrics = new ClassificationMetrics();
+			Classification classification = new Classification(new TrainingData(trainingData), TestData.toPatterns(testingData), K_NUMBER,
+					Classification.DISTANCE_EUCLIDEAN, Classification.USE_ADM, parallelism);
+			classification.setMetrics(metrics);
+			classification.classify();
+			
+			for(int i = 0; i < 20; i++) {
+				classification.classifyPattern(new Pattern(testingData.getVector(i), null));
+			}
+			
+			long queryCnt = testingData.size() + 20;
+			
+			assertEquals(queryCnt, metrics.getQueryCnt());
+			assertEquals(queryCnt, metrics.getQueryLatency().getCount());
+			assertEquals(queryCnt * trainingData.size(), metrics.getDistanceCnt());
+			assertTrue(metrics.getPhaseNanos(ClassificationMetrics.PHASE_ADM) > 0);
+			assertTrue(metrics.getPhaseNanos(ClassificationMetrics.PHASE_SEARCH) > 0);
+			assertTrue(metrics.getPhaseNanos(ClassificationMetrics.PHASE_CLASSIFY) > 0);
+			assertEquals(0, metrics.getPhaseNanos(ClassificationMetrics.PHASE_WRITE));
+			
+			StringWriter writer = new StringWriter();
+			metrics.writeSummary(writer);
+			Map<String, String> summary = new HashMap<String, String>();
+			
+			for(String line : writer.toString().split("\n")) {
+				String[] lineSplit = line.split("=", 2);
+				summary.put(lineSplit[0], lineSplit[1]);
+			}
+			
+			assertEquals(String.valueOf(queryCnt), summary.get("queries"));
+			assertEquals(String.valueOf(queryCnt * trainingData.size()), summary.get("distance.evaluations"));
+			assertEquals(String.valueOf(queryCnt), summary.get("phase.search.count"));
+			assertEquals("1", summary.get("phase.adm.count"));
+			assertEquals("1", summary.get("phase.index.count"));
+			assertEquals("0", summary.get("phase.write.count"));
+			assertTrue(summary.containsKey("latency.max.us"));
+		}
+	}
+	
+	/**
+	 * Method recording random latencies and comparing the count, mean, maximum and percentiles with exact values.
+	 * Percentiles are upper bounds of buckets, so they may be higher by the width of the bucket (1/16 of the value).
+	 */
+	@Test
+	public void histogramMatchesExactValues() {
+		Random random = new Random(72);
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[10000];
+		long sum = 0;
+		
+		for(int i = 0; i < values.length; i++) {
+			values[i] = (long)Math.exp(random.nextDouble() * 25);
+			histogram.record(values[i]);
+			sum += values[i];
+		}
+		
+		histogram.record(-5);
+		values = Arrays.copyOf(values, values.length + 1);
+		Arrays.sort(values);
+		
+		assertEquals(values.length, histogram.getCount());
+		assertEquals((double)sum / values.length, histogram.getMean(), 1e-6);
+		assertEquals(values[values.length - 1], histogram.getMax());
+		
+		for(double fraction : new double[] {0.0001, 0.1, 0.5, 0.9, 0.99, 0.999, 1.0}) {
+			long exact = values[(int)Math.ceil(fraction * values.length) - 1];
+			long percentile = histogram.getPercentile(fraction);
+			
+			assertTrue(fraction + ": " + percentile + " < " + exact, percentile >= exact);
+			assertTrue(fraction + ": " + percentile + " > " + exact, percentile <= exact + exact / 16 + 1);
+		}
+	}
+}
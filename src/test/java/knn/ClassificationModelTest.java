@@ -0,0 +1,168 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of updates of the {@code ClassificationModel} - the classifier updated by added and removed patterns has to find
+ * the same neighbors with the same distances and adaptive distance measures as the classifier trained again on the remaining patterns.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationModelTest {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 5;
+	
+	/**
+	 * Number of rounds of updates.
+	 */
+	private static final int ROUND_CNT = 12;
+	
+	/**
+	 * Number of patterns added in one round.
+	 */
+	private static final int ADDED_CNT = 40;
+	
+	/**
+	 * Number of patterns removed in one round.
+	 */
+	private static final int REMOVED_CNT = 30;
+	
+	/**
+	 * Number of queries checked after every round.
+	 */
+	private static final int QUERY_CNT = 40;
+	
+	/**
+	 * Method updating the classifier in rounds and comparing it with the retrained classifier after every round
+	 * for several indexes with and without adaptive distance measures.
+	 */
+	@Test
+	public void updatesMatchRetraining() {
+		int[] indexTypes = {SpatialIndex.INDEX_NONE, SpatialIndex.INDEX_KD_TREE, SpatialIndex.INDEX_BALL_TREE};
+		
+		for(int indexType : indexTypes) {
+			for(int useAdaptiveDistanceMeasure = 0; useAdaptiveDistanceMeasure <= Classification.USE_ADM; useAdaptiveDistanceMeasure++) {
+				checkUpdates(new Random(61 + indexType), indexType, useAdaptiveDistanceMeasure);
+			}
+		}
+	}
+	
+	/**
+	 * Method updating the classifier in rounds and comparing it with the retrained classifier after every round.
+	 * @param random		random generator
+	 * @param indexType		type of the index
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used
+	 */
+	private static void checkUpdates(Random random, int indexType, int useAdaptiveDistanceMeasure) {
+		TrainingData trainingData = TestData.createGaussian(random, 400, 4);
+		Classification updated = createClassification(new TrainingData(trainingData), indexType, useAdaptiveDistanceMeasure);
+		updated.train();
+		
+		List<Integer> liveIndices = new ArrayList<Integer>();
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			liveIndices.add(i);
+		}
+		
+		for(int round = 0; round < ROUND_CNT; round++) {
+			TrainingData addedData = TestData.createGaussian(random, ADDED_CNT, 4);
+			int[] added = updated.addPatterns(TestData.toTrainingPatterns(addedData));
+			
+			for(int index : added) {
+				liveIndices.add(index);
+			}
+			
+			int[] removed = new int[REMOVED_CNT];
+			
+			for(int i = 0; i < removed.length; i++) {
+				removed[i] = liveIndices.remove(random.nextInt(liveIndices.size()));
+			}
+			
+			updated.removePatterns(removed);
+			
+			String message = "Index " + indexType + ", ADM " + useAdaptiveDistanceMeasure + ", round " + round;
+			compare(message, random, updated, liveIndices, indexType, useAdaptiveDistanceMeasure);
+		}
+	}
+	
+	/**
+	 * Method comparing the updated classifier with the classifier trained on its remaining patterns. Remaining patterns
+	 * keep their order, so patterns in the same distance are sorted in the same way by both classifiers.
+	 * @param message		message of failed assertions
+	 * @param random		random generator
+	 * @param updated		updated classifier
+	 * @param liveIndices	indices of remaining patterns in the updated classifier (in any order)
+	 * @param indexType		type of the index
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used
+	 */
+	private static void compare(String message, Random random, Classification updated, List<Integer> liveIndices, int indexType, int useAdaptiveDistanceMeasure) {
+		TrainingData updatedData = updated.getTrainingData();
+		TrainingData remainingData = new TrainingData();
+		int[] originalIndices = new int[liveIndices.size()];
+		int cnt = 0;
+		
+		for(int i = 0; i < updatedData.size(); i++) {
+			if(updatedData.isRemoved(i)) continue;
+			
+			remainingData.addPattern(updatedData.getVector(i), updatedData.getPatternClass(i));
+			originalIndices[cnt++] = i;
+		}
+		
+		assertEquals(message, liveIndices.size(), cnt);
+		
+		Classification retrained = createClassification(remainingData, indexType, useAdaptiveDistanceMeasure);
+		retrained.train();
+		
+		for(int i = 0; i < cnt; i++) {
+			assertEquals(message, remainingData.getAdaptiveDistanceMeasure(i), updatedData.getAdaptiveDistanceMeasure(originalIndices[i]), 0.0);
+		}
+		
+		List<Pattern> queries = TestData.toPatterns(TestData.createGaussian(random, QUERY_CNT, 4));
+		
+		for(Pattern query : queries) {
+			double[] expectedDistances = new double[K_NUMBER];
+			double[] distances = new double[K_NUMBER];
+			int[] expected = retrained.getNearestNeighbors(query, expectedDistances);
+			int[] neighbors = updated.getNearestNeighbors(query, distances);
+			
+			for(int i = 0; i < expected.length; i++) {
+				expected[i] = originalIndices[expected[i]];
+			}
+			
+			assertArrayEquals(message, expected, neighbors);
+			assertArrayEquals(message, expectedDistances, distances, 1e-12);
+			
+			Pattern updatedQuery = new Pattern(query.getVector(), null);
+			Pattern retrainedQuery = new Pattern(query.getVector(), null);
+			updated.classifyPattern(updatedQuery);
+			retrained.classifyPattern(retrainedQuery);
+			
+			assertEquals(message, retrainedQuery.getPatternClass(), updatedQuery.getPatternClass());
+		}
+	}
+	
+	/**
+	 * Method creating the classifier without testing patterns.
+	 * @param trainingData	training data
+	 * @param indexType		type of the index
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used
+	 * @return	new classifier
+	 */
+	private static Classification createClassification(TrainingData trainingData, int indexType, int useAdaptiveDistanceMeasure) {
+		Classification classification = new Classification(trainingData, new ArrayList<Pattern>(), K_NUMBER,
+				Classification.DISTANCE_EUCLIDEAN, useAdaptiveDistanceMeasure, 1);
+		classification.setIndexType(indexType);
+		
+		return classification;
+	}
+}
@@ -0,0 +1,136 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@code ClassificationPipeline} - patterns classified as a stream have to get the same classes in the same
+ * order as patterns classified at once, a failure of the worker thread has to be thrown to the caller.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationPipelineTest {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 5;
+	
+	/**
+	 * Folder for result files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Method comparing classes and the accuracy written by the pipeline with the classification of the whole testing set.
+	 * @throws IOException
+	 */
+	@Test
+	public void streamMatchesClassificationOfWholeSet() throws IOException {
+		Random random = new Random(41);
+		TrainingData trainingData = TestData.createGaussian(random, 1500, 5);
+		TrainingData testingData = TestData.createGaussian(random, 5000, 5);
+		
+		Classification classification = new Classification(new TrainingData(trainingData), TestData.toPatterns(testingData), K_NUMBER,
+				Classification.DISTANCE_EUCLIDEAN, Classification.USE_ADM, 1);
+		String[] expected = TestData.getPatternClasses(classification.classify());
+		int correctCnt = 0;
+		
+		for(int i = 0; i < expected.length; i++) {
+			if(expected[i].equals(testingData.getPatternClass(i))) correctCnt++;
+		}
+		
+		for(int workerCnt : new int[] {1, 3}) {
+			Classification streamed = new Classification(new TrainingData(trainingData), new ArrayList<Pattern>(), K_NUMBER,
+					Classification.DISTANCE_EUCLIDEAN, Classification.USE_ADM, 1);
+			File file = folder.newFile();
+			ResultWriter resultWriter = new ResultWriter(file, ResultWriter.FORMAT_TEXT, streamed.getTrainingData().getLabelDictionary(), workerCnt);
+			double accuracy;
+			
+			try {
+				accuracy = new ClassificationPipeline(streamed, workerCnt).run(createReader(testingData), resultWriter);
+			}
+			finally {
+				resultWriter.close();
+			}
+			
+			List<String> lines = Files.readAllLines(file.toPath(), Charset.defaultCharset());
+			String[] classes = new String[lines.size() - 1];
+			
+			for(int i = 0; i < classes.length; i++) {
+				classes[i] = lines.get(i).split(";")[1];
+			}
+			
+			assertArrayEquals("Workers " + workerCnt, expected, classes);
+			assertEquals(((double)correctCnt) / expected.length, accuracy, 0.0);
+		}
+	}
+	
+	/**
+	 * Method checking that the error thrown by the worker thread is thrown by the pipeline instead of waiting forever
+	 * for the batch, which would never be written.
+	 * @throws IOException
+	 */
+	@Test(timeout = 30000)
+	public void workerErrorIsThrown() throws IOException {
+		Random random = new Random(42);
+		TrainingData trainingData = TestData.createGaussian(random, 200, 3);
+		Classification classification = new Classification(trainingData, new ArrayList<Pattern>(), K_NUMBER, Classification.DISTANCE_EUCLIDEAN, 0, 1) {
+			@Override
+			public void classifyBatch(List<Pattern> patterns) {
+				throw new StackOverflowError("test");
+			}
+		};
+		ResultWriter resultWriter = new ResultWriter(folder.newFile(), ResultWriter.FORMAT_TEXT, trainingData.getLabelDictionary(), 2);
+		
+		try {
+			new ClassificationPipeline(classification, 2).run(createReader(TestData.createGaussian(random, 20000, 3)), resultWriter);
+			fail("Pipeline finished without the failure.");
+		}
+		catch(StackOverflowError e) {
+			assertEquals("test", e.getMessage());
+		}
+		finally {
+			resultWriter.close();
+		}
+	}
+	
+	/**
+	 * Method creating the reader of testing patterns in the text format.
+	 * @param testingData	testing patterns
+	 * @return	reader of the patterns
+	 */
+	private static PatternReader createReader(TrainingData testingData) {
+		StringBuilder text = new StringBuilder();
+		text.append(testingData.size()).append('\n');
+		
+		for(int i = 0; i < testingData.size(); i++) {
+			double[] vector = testingData.getVector(i);
+			
+			for(int d = 0; d < vector.length; d++) {
+				if(d > 0) text.append(',');
+				text.append(vector[d]);
+			}
+			
+			text.append(';').append(testingData.getPatternClass(i)).append('\n');
+		}
+		
+		return new PatternReader(Channels.newChannel(new ByteArrayInputStream(text.toString().getBytes(Charset.forName("UTF-8")))));
+	}
+}
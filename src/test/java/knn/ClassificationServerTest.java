@@ -0,0 +1,242 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code ClassificationServer} - answers have to be the same as classes determined by the classifier directly,
+ * updates of the training set have to affect only later lines of the connection and the failing classification has to be
+ * answered with the error.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationServerTest {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 5;
+	
+	/**
+	 * Charset of the protocol.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Method sending random vectors and wrong lines in one batch and comparing answers with the direct classification.
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void answersMatchClassification() throws Exception {
+		Random random = new Random(51);
+		TrainingData trainingData = TestData.createGaussian(random, 800, 4);
+		TrainingData testingData = TestData.createGaussian(random, 300, 4);
+		
+		Classification direct = new Classification(new TrainingData(trainingData), TestData.toPatterns(testingData), K_NUMBER,
+				Classification.DISTANCE_EUCLIDEAN, Classification.USE_ADM, 1);
+		String[] classes = TestData.getPatternClasses(direct.classify());
+		
+		List<String> lines = new ArrayList<String>();
+		List<String> expected = new ArrayList<String>();
+		
+		for(int i = 0; i < testingData.size(); i++) {
+			lines.add(toLine(testingData.getVector(i)) + ((i % 2 == 0) ? ";" + testingData.getPatternClass(i) : ""));
+			expected.add(classes[i]);
+		}
+		
+		lines.add("1.0,x,2.0,3.0");
+		lines.add("1.0,2.0");
+		lines.add("ADD 1.0,2.0,3.0,4.0");
+		lines.add("REMOVE 100000");
+		
+		Classification classification = new Classification(new TrainingData(trainingData), new ArrayList<Pattern>(), K_NUMBER,
+				Classification.DISTANCE_EUCLIDEAN, Classification.USE_ADM, 2);
+		ClassificationServer server = start(classification);
+		
+		try {
+			String[] answers = send(server.getPort(), lines);
+			
+			assertArrayEquals(expected.toArray(), Arrays.copyOf(answers, expected.size()));
+			
+			for(int i = expected.size(); i < answers.length; i++) {
+				assertTrue(answers[i], answers[i].startsWith("ERROR "));
+			}
+		}
+		finally {
+			server.close();
+		}
+	}
+	
+	/**
+	 * Method checking that the added pattern is used for later lines of the same connection (1-NN of its own vector)
+	 * and that the previous nearest pattern is used again after it's removed.
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void updatesAffectLaterLines() throws Exception {
+		Random random = new Random(52);
+		TrainingData trainingData = TestData.createGaussian(random, 500, 3);
+		Classification classification = new Classification(new TrainingData(trainingData), new ArrayList<Pattern>(), 1,
+				Classification.DISTANCE_EUCLIDEAN, 0, 1);
+		classification.setIndexType(SpatialIndex.INDEX_KD_TREE);
+		
+		double[] vector = {0.123, -0.456, 0.789};
+		String nearestClass = trainingData.getPatternClass(TestData.findNearest(trainingData, new EuclideanKernel(),
+				TestData.getIndices(trainingData, 0), false, vector, 1, new double[1])[0]);
+		String line = toLine(vector);
+		
+		ClassificationServer server = start(classification);
+		
+		try {
+			List<String> lines = new ArrayList<String>();
+			lines.add(line);
+			lines.add("ADD " + line + ";added");
+			lines.add(line);
+			lines.add("REMOVE " + trainingData.size());
+			lines.add(line);
+			
+			String[] answers = send(server.getPort(), lines);
+			
+			assertArrayEquals(new String[] {nearestClass, String.valueOf(trainingData.size()), "added", "OK", nearestClass}, answers);
+		}
+		finally {
+			server.close();
+		}
+	}
+	
+	/**
+	 * Method checking that requests are answered with the error while the classifier fails (even by the {@code Error})
+	 * and that the server answers normally after that.
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void failingClassificationIsAnswered() throws Exception {
+		Random random = new Random(53);
+		TrainingData trainingData = TestData.createGaussian(random, 300, 2);
+		final AtomicBoolean failing = new AtomicBoolean(false);
+		Classification classification = new Classification(trainingData, new ArrayList<Pattern>(), K_NUMBER, Classification.DISTANCE_EUCLIDEAN, 0, 1) {
+			@Override
+			public void classifyPatterns(List<Pattern> patterns) {
+				if(failing.get()) throw new OutOfMemoryError("test");
+				super.classifyPatterns(patterns);
+			}
+			
+			@Override
+			public void classifyPattern(Pattern testedPattern) {
+				if(failing.get()) throw new OutOfMemoryError("test");
+				super.classifyPattern(testedPattern);
+			}
+		};
+		ClassificationServer server = start(classification);
+		
+		try {
+			List<String> lines = new ArrayList<String>();
+			lines.add("0.5,0.5");
+			
+			String answer = send(server.getPort(), lines)[0];
+			assertTrue(answer, !answer.startsWith("ERROR "));
+			
+			failing.set(true);
+			assertTrue(send(server.getPort(), lines)[0].startsWith("ERROR Classification failed: "));
+			
+			failing.set(false);
+			assertEquals(answer, send(server.getPort(), lines)[0]);
+		}
+		finally {
+			server.close();
+		}
+	}
+	
+	/**
+	 * Method starting the server on any free port in its own thread.
+	 * @param classification	classifier of the server
+	 * @return	started server
+	 * @throws IOException
+	 */
+	private static ClassificationServer start(Classification classification) throws IOException {
+		final ClassificationServer server = new ClassificationServer(classification, 0);
+		Thread thread = new Thread("classification-server") {
+			@Override
+			public void run() {
+				try {
+					server.run();
+				}
+				catch(IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		
+		return server;
+	}
+	
+	/**
+	 * Method sending all lines at once by one connection and reading one answer per line.
+	 * @param port	port of the server
+	 * @param lines	request lines
+	 * @return	answers in the order of lines
+	 * @throws IOException
+	 */
+	private static String[] send(int port, List<String> lines) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		
+		try {
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), CHARSET);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+			StringBuilder request = new StringBuilder();
+			
+			for(String line : lines) {
+				request.append(line).append('\n');
+			}
+			
+			writer.write(request.toString());
+			writer.flush();
+			
+			String[] answers = new String[lines.size()];
+			
+			for(int i = 0; i < answers.length; i++) {
+				answers[i] = reader.readLine();
+			}
+			
+			return answers;
+		}
+		finally {
+			socket.close();
+		}
+	}
+	
+	/**
+	 * Method creating the request line of the vector.
+	 * @param vector	vector
+	 * @return	values separated by commas
+	 */
+	private static String toLine(double[] vector) {
+		StringBuilder line = new StringBuilder();
+		
+		for(int d = 0; d < vector.length; d++) {
+			if(d > 0) line.append(',');
+			line.append(vector[d]);
+		}
+		
+		return line.toString();
+	}
+}
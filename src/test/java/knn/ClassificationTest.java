@@ -0,0 +1,84 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code Classification} - patterns classified by several threads have to get the same classes
+ * as patterns classified serially.
+ * @author Vladimr Lznika
+ *
+ */
+public class ClassificationTest {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 7;
+	
+	/**
+	 * Method comparing the parallel classification with the serial one with and without adaptive distance measures
+	 * and for several indexes (threads share the trained model and use their own scratch states).
+	 */
+	@Test
+	public void parallelClassificationMatchesSerial() {
+		Random random = new Random(21);
+		TrainingData trainingData = TestData.createGaussian(random, 2000, 6);
+		TrainingData testingData = TestData.createGaussian(random, 3000, 6);
+		int[] indexTypes = {SpatialIndex.INDEX_NONE, SpatialIndex.INDEX_KD_TREE, SpatialIndex.INDEX_BALL_TREE};
+		
+		for(int indexType : indexTypes) {
+			for(int useAdaptiveDistanceMeasure = 0; useAdaptiveDistanceMeasure <= Classification.USE_ADM; useAdaptiveDistanceMeasure++) {
+				String[] expected = classify(trainingData, testingData, indexType, useAdaptiveDistanceMeasure, 1);
+				
+				for(int parallelism : new int[] {2, 4}) {
+					String message = "Index " + indexType + ", ADM " + useAdaptiveDistanceMeasure + ", threads " + parallelism;
+					assertArrayEquals(message, expected, classify(trainingData, testingData, indexType, useAdaptiveDistanceMeasure, parallelism));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method checking that the classifier with the cosine distance, adaptive distance measures and the automatic index type
+	 * (no exact index suits the cosine distance) classifies patterns in the same way as the linear scan.
+	 */
+	@Test
+	public void cosineWithAutoIndexMatchesLinearScan() {
+		Random random = new Random(22);
+		TrainingData trainingData = TestData.createGaussian(random, 800, 5);
+		List<Pattern> testingSet = TestData.toPatterns(TestData.createGaussian(random, 500, 5));
+		String[][] classes = new String[2][];
+		int[] indexTypes = {SpatialIndex.INDEX_NONE, SpatialIndex.INDEX_AUTO};
+		
+		for(int i = 0; i < indexTypes.length; i++) {
+			Classification classification = new Classification(new TrainingData(trainingData), testingSet, K_NUMBER,
+					Classification.DISTANCE_COSINE, Classification.USE_ADM, 2);
+			classification.setIndexType(indexTypes[i]);
+			classes[i] = TestData.getPatternClasses(classification.classify());
+		}
+		
+		assertArrayEquals(classes[0], classes[1]);
+	}
+	
+	/**
+	 * Method classifying the testing data by the new classifier.
+	 * @param trainingData		training data (copied, so measures of other classifiers aren't changed)
+	 * @param testingData		testing data
+	 * @param indexType			type of the index
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used
+	 * @param parallelism		number of threads
+	 * @return	determined classes of the testing patterns
+	 */
+	private static String[] classify(TrainingData trainingData, TrainingData testingData, int indexType, int useAdaptiveDistanceMeasure, int parallelism) {
+		Classification classification = new Classification(new TrainingData(trainingData), TestData.toPatterns(testingData), K_NUMBER,
+				Classification.DISTANCE_EUCLIDEAN, useAdaptiveDistanceMeasure, parallelism);
+		classification.setIndexType(indexType);
+		
+		return TestData.getPatternClasses(classification.classify());
+	}
+}
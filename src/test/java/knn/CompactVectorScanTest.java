@@ -0,0 +1,34 @@
+package knn;
+
+import org.junit.Test;
+
+/**
+ * Randomized tests of the {@code CompactVectorScan} against the brute force. Compact vectors only filter candidates,
+ * which are ranked again by exact vectors, so neighbors and their ranking distances have to be the same
+ * as found by the brute force for every precision and every metric kernel.
+ * @author Vladimr Lznika
+ *
+ */
+public class CompactVectorScanTest {
+	
+	/**
+	 * Types of compact vector scans.
+	 */
+	private static final int[] COMPACT_INDEX_TYPES = {SpatialIndex.INDEX_FLOAT, SpatialIndex.INDEX_INT16, SpatialIndex.INDEX_INT8};
+	
+	/**
+	 * Method comparing compact scans with the brute force on data with distinct distances.
+	 */
+	@Test
+	public void compactScansMatchBruteForce() {
+		SpatialIndexTest.checkOnGaussianData(COMPACT_INDEX_TYPES);
+	}
+	
+	/**
+	 * Method comparing compact scans with the brute force on data with many ties.
+	 */
+	@Test
+	public void compactScansBreakTiesByIndex() {
+		SpatialIndexTest.checkOnGridData(COMPACT_INDEX_TYPES);
+	}
+}
@@ -0,0 +1,136 @@
+package knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code CrossValidation} - the leave-one-out cross-validation (every fold has one pattern) has to count
+ * the same correctly classified patterns as classifiers trained on all other patterns for every variant of the grid.
+ * @author Vladimr Lznika
+ *
+ */
+public class CrossValidationTest {
+	
+	/**
+	 * Maximal number of nearest neighbors of the grid.
+	 */
+	private static final int MAX_K_NUMBER = 4;
+	
+	/**
+	 * Method comparing the default grid (all distance functions without parameters) with classifiers trained on all other
+	 * patterns, also with the index, which can't be built for all distance functions.
+	 */
+	@Test
+	public void defaultGridMatchesLeaveOneOut() {
+		TrainingData trainingData = TestData.createGaussian(new Random(91), 60, 3);
+		CrossValidation crossValidation = new CrossValidation(trainingData, trainingData.size(), MAX_K_NUMBER, 3);
+		List<CrossValidation.Result> results = crossValidation.run();
+		
+		int[] distanceTypes = {Classification.DISTANCE_EUCLIDEAN, Classification.DISTANCE_MANHATTAN, Classification.DISTANCE_CHEBYSHEV, Classification.DISTANCE_COSINE};
+		List<DistanceKernel> distanceKernels = new ArrayList<DistanceKernel>();
+		
+		for(int distanceType : distanceTypes) {
+			distanceKernels.add(DistanceKernel.forType(distanceType));
+		}
+		
+		checkResults(trainingData, distanceKernels, results);
+		
+		crossValidation.setIndexType(SpatialIndex.INDEX_KD_TREE);
+		List<CrossValidation.Result> indexResults = crossValidation.run();
+		assertEquals(results.size(), indexResults.size());
+		
+		for(int i = 0; i < results.size(); i++) {
+			assertEquals(results.get(i).getCorrectCnt(), indexResults.get(i).getCorrectCnt());
+		}
+	}
+	
+	/**
+	 * Method checking that only the set distance function (with its parameter) is evaluated.
+	 */
+	@Test
+	public void setDistanceFunctionMatchesLeaveOneOut() {
+		TrainingData trainingData = TestData.createGaussian(new Random(92), 50, 4);
+		CrossValidation crossValidation = new CrossValidation(trainingData, trainingData.size(), MAX_K_NUMBER, 2);
+		List<DistanceKernel> distanceKernels = Collections.<DistanceKernel>singletonList(new MinkowskiKernel(4.0));
+		crossValidation.setDistanceKernels(distanceKernels);
+		
+		checkResults(trainingData, distanceKernels, crossValidation.run());
+	}
+	
+	/**
+	 * Method checking that the first of the best results is returned.
+	 */
+	@Test
+	public void bestResultIsFirstOfHighest() {
+		List<CrossValidation.Result> results = new ArrayList<CrossValidation.Result>();
+		results.add(new CrossValidation.Result(Classification.DISTANCE_EUCLIDEAN, 0, 1, 7, 10));
+		results.add(new CrossValidation.Result(Classification.DISTANCE_EUCLIDEAN, 0, 2, 9, 10));
+		results.add(new CrossValidation.Result(Classification.DISTANCE_MANHATTAN, 1, 1, 9, 10));
+		results.add(new CrossValidation.Result(Classification.DISTANCE_MANHATTAN, 1, 2, 8, 10));
+		
+		assertSame(results.get(1), CrossValidation.getBestResult(results));
+		assertEquals(0.9, results.get(1).getAccuracy(), 0.0);
+	}
+	
+	/**
+	 * Method checking that results cover given distance functions, both settings of adaptive distance measures
+	 * and all {@code K} in this order and that they count the same correct classes as classifiers trained on all other patterns.
+	 * @param trainingData		training data
+	 * @param distanceKernels	kernels of evaluated distance functions
+	 * @param results			results of the leave-one-out cross-validation
+	 */
+	private static void checkResults(TrainingData trainingData, List<DistanceKernel> distanceKernels, List<CrossValidation.Result> results) {
+		assertEquals(distanceKernels.size() * 2 * MAX_K_NUMBER, results.size());
+		int r = 0;
+		
+		for(DistanceKernel distanceKernel : distanceKernels) {
+			for(int useAdaptiveDistanceMeasure = 0; useAdaptiveDistanceMeasure <= Classification.USE_ADM; useAdaptiveDistanceMeasure++) {
+				for(int k = 1; k <= MAX_K_NUMBER; k++) {
+					CrossValidation.Result result = results.get(r++);
+					String message = TestData.getName(distanceKernel) + ", ADM " + useAdaptiveDistanceMeasure + ", K " + k;
+					
+					assertEquals(message, distanceKernel.getType(), result.getDistanceType());
+					assertEquals(message, useAdaptiveDistanceMeasure, result.getUseAdaptiveDistanceMeasure());
+					assertEquals(message, k, result.getKNumber());
+					assertEquals(message, countLeaveOneOut(trainingData, distanceKernel, useAdaptiveDistanceMeasure, k), result.getCorrectCnt());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method classifying every training pattern by the classifier trained on all other patterns.
+	 * @param trainingData		training data
+	 * @param distanceKernel	kernel of the distance function
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used
+	 * @param kNumber			number of nearest neighbors
+	 * @return	number of correctly classified patterns
+	 */
+	private static int countLeaveOneOut(TrainingData trainingData, DistanceKernel distanceKernel, int useAdaptiveDistanceMeasure, int kNumber) {
+		int correctCnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			TrainingData otherData = new TrainingData();
+			
+			for(int j = 0; j < trainingData.size(); j++) {
+				if(j != i) otherData.addPattern(trainingData.getVector(j), trainingData.getPatternClass(j));
+			}
+			
+			List<Pattern> testingSet = Arrays.asList(new Pattern(trainingData.getVector(i), trainingData.getPatternClass(i)));
+			Classification classification = new Classification(otherData, testingSet, kNumber, distanceKernel, useAdaptiveDistanceMeasure, 1);
+			Pattern classified = classification.classify().get(0);
+			
+			if(classified.getPatternClass().equals(classified.getCorrectClass())) correctCnt++;
+		}
+		
+		return correctCnt;
+	}
+}
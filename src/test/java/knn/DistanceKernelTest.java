@@ -0,0 +1,283 @@
+package knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of distance kernels - distances of all kernels and all representations of vectors (double, float and quantized)
+ * have to be the same as distances of reference formulas, limits and box bounds have to hold and kernels have to be
+ * recognized by their types and parameters.
+ * @author Vladimr Lznika
+ *
+ */
+public class DistanceKernelTest {
+	
+	/**
+	 * Number of random pairs of vectors for every kernel.
+	 */
+	private static final int PAIR_CNT = 2000;
+	
+	/**
+	 * Maximal relative difference from the reference distance.
+	 */
+	private static final double TOLERANCE = 1e-12;
+	
+	/**
+	 * Method comparing distances of random vectors (of dimensions, which aren't multiples of unrolled loops)
+	 * with reference formulas and checking limits and conversions of ranking distances.
+	 */
+	@Test
+	public void distancesMatchReferenceFormulas() {
+		Random random = new Random(111);
+		
+		for(int dimension = 1; dimension <= 13; dimension++) {
+			for(DistanceKernel distanceKernel : TestData.createKernels(random, dimension)) {
+				String name = TestData.getName(distanceKernel) + ", dimension " + dimension;
+				
+				for(int p = 0; p < PAIR_CNT / 13; p++) {
+					double[] vector1 = createVector(random, dimension);
+					double[] vector2 = createVector(random, dimension);
+					double expected = referenceDistance(distanceKernel, vector1, vector2);
+					
+					double[] vectors = new double[3 + 2 * dimension];
+					System.arraycopy(vector1, 0, vectors, 1, dimension);
+					System.arraycopy(vector2, 0, vectors, 3 + dimension, dimension);
+					
+					assertClose(name, expected, distanceKernel.distance(vector1, 0, vector2, 0, dimension));
+					assertClose(name, expected, distanceKernel.distance(vectors, 1, vectors, 3 + dimension, dimension));
+					
+					double rank = distanceKernel.rank(vector1, 0, vector2, 0, dimension, Double.POSITIVE_INFINITY);
+					assertClose(name, rank, distanceKernel.toRank(distanceKernel.toDistance(rank)));
+					assertEquals(name, rank, distanceKernel.rank(vector1, 0, vector2, 0, dimension, rank), 0.0);
+					if(rank > 0.0) assertEquals(name, Double.POSITIVE_INFINITY, distanceKernel.rank(vector1, 0, vector2, 0, dimension, rank * 0.999), 0.0);
+					
+					float[] floatVectors = new float[1 + dimension];
+					double[] floatValues = new double[dimension];
+					
+					for(int d = 0; d < dimension; d++) {
+						floatVectors[1 + d] = (float)vector2[d];
+						floatValues[d] = floatVectors[1 + d];
+					}
+					
+					assertClose(name, distanceKernel.rank(vector1, 0, floatValues, 0, dimension, Double.POSITIVE_INFINITY),
+							distanceKernel.rank(vector1, floatVectors, 1, dimension, Double.POSITIVE_INFINITY));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method comparing ranking distances to quantized vectors with ranking distances to decoded vectors
+	 * and checking that the cosine kernel (which can't be used with compact vectors) refuses quantized vectors.
+	 */
+	@Test
+	public void quantizedRanksMatchDecodedVectors() {
+		Random random = new Random(112);
+		
+		for(int dimension = 1; dimension <= 13; dimension++) {
+			for(DistanceKernel distanceKernel : TestData.createKernels(random, dimension)) {
+				String name = TestData.getName(distanceKernel) + ", dimension " + dimension;
+				double[] vector = createVector(random, dimension);
+				double[] scales = new double[dimension];
+				double[] scaledVector = new double[dimension];
+				short[] shortCodes = new short[2 + dimension];
+				byte[] byteCodes = new byte[2 + dimension];
+				double[] shortDecoded = new double[dimension];
+				double[] byteDecoded = new double[dimension];
+				
+				for(int d = 0; d < dimension; d++) {
+					scales[d] = 0.001 + random.nextDouble() * 0.1;
+					scaledVector[d] = vector[d] / scales[d];
+					shortCodes[2 + d] = (short)(random.nextInt(65536) - 32768);
+					byteCodes[2 + d] = (byte)(random.nextInt(256) - 128);
+					shortDecoded[d] = shortCodes[2 + d] * scales[d];
+					byteDecoded[d] = byteCodes[2 + d] * scales[d];
+				}
+				
+				if(distanceKernel.getType() == Classification.DISTANCE_COSINE) {
+					try {
+						distanceKernel.rank(scaledVector, scales, shortCodes, 2, dimension, Double.POSITIVE_INFINITY);
+						fail(name + " calculated the distance from quantized vectors.");
+					}
+					catch(UnsupportedOperationException e) {
+						// expected
+					}
+					
+					continue;
+				}
+				
+				assertClose(name, distanceKernel.rank(vector, 0, shortDecoded, 0, dimension, Double.POSITIVE_INFINITY),
+						distanceKernel.rank(scaledVector, scales, shortCodes, 2, dimension, Double.POSITIVE_INFINITY));
+				assertClose(name, distanceKernel.rank(vector, 0, byteDecoded, 0, dimension, Double.POSITIVE_INFINITY),
+						distanceKernel.rank(scaledVector, scales, byteCodes, 2, dimension, Double.POSITIVE_INFINITY));
+			}
+		}
+	}
+	
+	/**
+	 * Method checking that the ranking distance to the box isn't higher than ranking distances to vectors inside it
+	 * and that it's zero for the vector inside the box.
+	 */
+	@Test
+	public void boxRankBoundsVectorsInside() {
+		Random random = new Random(113);
+		int dimension = 5;
+		
+		for(DistanceKernel distanceKernel : TestData.createKernels(random, dimension)) {
+			if(!distanceKernel.hasBoxBound()) continue;
+			
+			String name = TestData.getName(distanceKernel);
+			
+			for(int b = 0; b < PAIR_CNT; b++) {
+				double[] boxMin = new double[1 + dimension];
+				double[] boxMax = new double[1 + dimension];
+				double[] inside = new double[dimension];
+				
+				for(int d = 0; d < dimension; d++) {
+					boxMin[1 + d] = random.nextGaussian();
+					boxMax[1 + d] = boxMin[1 + d] + random.nextDouble();
+					inside[d] = boxMin[1 + d] + random.nextDouble() * (boxMax[1 + d] - boxMin[1 + d]);
+				}
+				
+				double[] vector = createVector(random, dimension);
+				double boxRank = distanceKernel.boxRank(vector, boxMin, boxMax, 1, dimension);
+				
+				assertTrue(name, boxRank <= distanceKernel.rank(vector, 0, inside, 0, dimension, Double.POSITIVE_INFINITY) * (1 + TOLERANCE));
+				assertEquals(name, 0.0, distanceKernel.boxRank(inside, boxMin, boxMax, 1, dimension), 0.0);
+			}
+		}
+	}
+	
+	/**
+	 * Method checking that kernels are recognized by their types and parameters and that {@code forType} creates
+	 * the same kernel from them.
+	 */
+	@Test
+	public void kernelsAreRecognizedByTypeAndParameters() {
+		Random random = new Random(114);
+		
+		for(DistanceKernel distanceKernel : TestData.createKernels(random, 4)) {
+			String name = TestData.getName(distanceKernel);
+			DistanceKernel created = DistanceKernel.forType(distanceKernel.getType(), distanceKernel.getParameters());
+			
+			assertEquals(name, distanceKernel.getClass(), created.getClass());
+			assertEquals(name, distanceKernel.getSignature(), created.getSignature());
+			assertTrue(name, created.isSameFunction(distanceKernel.getType(), distanceKernel.getParameters()));
+			assertFalse(name, distanceKernel.isSameFunction(distanceKernel.getType() % 6 + 1, distanceKernel.getParameters()));
+		}
+		
+		assertTrue(new MinkowskiKernel(3.0).isSameFunction(Classification.DISTANCE_MINKOWSKI, new double[] {3.0}));
+		assertFalse(new MinkowskiKernel(3.0).isSameFunction(Classification.DISTANCE_MINKOWSKI, new double[] {4.0}));
+		assertFalse(new MinkowskiKernel(3.0).getSignature() == new MinkowskiKernel(4.0).getSignature());
+		assertTrue(new WeightedEuclideanKernel(new double[] {1.0, 2.0}).isSameFunction(Classification.DISTANCE_WEIGHTED, new double[] {1.0, 2.0}));
+		assertFalse(new WeightedEuclideanKernel(new double[] {1.0, 2.0}).isSameFunction(Classification.DISTANCE_WEIGHTED, new double[] {2.0, 1.0}));
+		assertFalse(new EuclideanKernel().isSameFunction(Classification.DISTANCE_WEIGHTED, new double[] {1.0, 1.0}));
+		assertEquals(MinkowskiKernel.DEFAULT_POWER, ((MinkowskiKernel)DistanceKernel.forType(Classification.DISTANCE_MINKOWSKI)).getPower(), 0.0);
+		assertEquals(EuclideanKernel.class, DistanceKernel.forType(0).getClass());
+		
+		try {
+			DistanceKernel.forType(Classification.DISTANCE_WEIGHTED);
+			fail("Weighted kernel was created without weights.");
+		}
+		catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Method calculating the distance by the reference formula of the kernel type.
+	 * @param distanceKernel	kernel with parameters of the distance
+	 * @param vector1			first vector
+	 * @param vector2			second vector
+	 * @return	distance between the vectors
+	 */
+	private static double referenceDistance(DistanceKernel distanceKernel, double[] vector1, double[] vector2) {
+		double[] parameters = distanceKernel.getParameters();
+		double sum = 0.0;
+		double max = 0.0;
+		double dot = 0.0;
+		double norm1 = 0.0;
+		double norm2 = 0.0;
+		
+		for(int d = 0; d < vector1.length; d++) {
+			double diff = vector1[d] - vector2[d];
+			
+			switch(distanceKernel.getType()) {
+			case Classification.DISTANCE_MANHATTAN:
+				sum += Math.abs(diff);
+				break;
+			case Classification.DISTANCE_CHEBYSHEV:
+				max = Math.max(max, Math.abs(diff));
+				break;
+			case Classification.DISTANCE_MINKOWSKI:
+				sum += Math.pow(Math.abs(diff), parameters[0]);
+				break;
+			case Classification.DISTANCE_WEIGHTED:
+				sum += parameters[d] * diff * diff;
+				break;
+			default:
+				sum += diff * diff;
+			}
+			
+			dot += vector1[d] * vector2[d];
+			norm1 += vector1[d] * vector1[d];
+			norm2 += vector2[d] * vector2[d];
+		}
+		
+		switch(distanceKernel.getType()) {
+		case Classification.DISTANCE_MANHATTAN:
+			return sum;
+		case Classification.DISTANCE_CHEBYSHEV:
+			return max;
+		case Classification.DISTANCE_MINKOWSKI:
+			return Math.pow(sum, 1.0 / parameters[0]);
+		case Classification.DISTANCE_COSINE:
+			return (norm1 == 0.0 || norm2 == 0.0) ? 1.0 : Math.max(0.0, Math.min(2.0, 1.0 - dot / Math.sqrt(norm1 * norm2)));
+		default:
+			return Math.sqrt(sum);
+		}
+	}
+	
+	/**
+	 * Method creating the random vector. Some vectors are zero (the cosine distance of them is 1)
+	 * and some values are equal to zero or very large.
+	 * @param random	random generator
+	 * @param dimension	dimension of the vector
+	 * @return	random vector
+	 */
+	private static double[] createVector(Random random, int dimension) {
+		double[] vector = new double[dimension];
+		if(random.nextInt(20) == 0) return vector;
+		
+		for(int d = 0; d < dimension; d++) {
+			switch(random.nextInt(10)) {
+			case 0:
+				vector[d] = 0.0;
+				break;
+			case 1:
+				vector[d] = random.nextGaussian() * 1e6;
+				break;
+			default:
+				vector[d] = random.nextGaussian();
+			}
+		}
+		
+		return vector;
+	}
+	
+	/**
+	 * Method comparing the value with the expected value with the relative tolerance.
+	 * @param message	message of the failed assertion
+	 * @param expected	expected value
+	 * @param actual	actual value
+	 */
+	private static void assertClose(String message, double expected, double actual) {
+		assertEquals(message, expected, actual, Math.max(Math.abs(expected), Double.MIN_NORMAL) * TOLERANCE);
+	}
+}
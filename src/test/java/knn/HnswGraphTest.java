@@ -0,0 +1,74 @@
+package knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Randomized test of the approximate {@code HnswGraph} against the brute force.
+ * @author Vladimr Lznika
+ *
+ */
+public class HnswGraphTest {
+	
+	/**
+	 * Minimal average recall of the graph.
+	 */
+	private static final double MIN_RECALL = 0.9;
+	
+	/**
+	 * Method checking that the HNSW graph finds most of the exact neighbors for every distance kernel. Candidates
+	 * are found by the ranking distance, so the recall is measured without adaptive distance measures, with them
+	 * the distances of found neighbors have to be divided by their measures.
+	 */
+	@Test
+	public void findsMostNeighbors() {
+		int dimension = 8;
+		Random random = new Random(7);
+		TrainingData trainingData = TestData.createGaussian(random, 2000, dimension);
+		double[][] queries = TestData.createQueries(random, trainingData, SpatialIndexTest.QUERY_CNT, false, 0);
+		
+		for(DistanceKernel distanceKernel : TestData.createKernels(random, dimension)) {
+			TrainingData measuredData = new TrainingData(trainingData);
+			TestData.setAdaptiveDistanceMeasures(measuredData, distanceKernel);
+			
+			int[] indices = TestData.getIndices(measuredData, 0);
+			SpatialIndex index = SpatialIndex.build(SpatialIndex.INDEX_HNSW, measuredData, distanceKernel, indices, false, HnswGraph.DEFAULT_EF);
+			SpatialIndex measuredIndex = SpatialIndex.build(SpatialIndex.INDEX_HNSW, measuredData, distanceKernel, indices, true, HnswGraph.DEFAULT_EF);
+			NeighborSelector neighborSelector = new NeighborSelector(10);
+			double[] distances = new double[10];
+			int found = 0;
+			
+			for(double[] query : queries) {
+				int[] expected = TestData.findNearest(measuredData, distanceKernel, indices, false, query, 10, distances);
+				
+				neighborSelector.reset();
+				index.search(query, neighborSelector);
+				neighborSelector.sortNeighbors();
+				
+				for(int i = 0; i < neighborSelector.size(); i++) {
+					for(int e : expected) {
+						if(neighborSelector.getIndex(i) == e) found++;
+					}
+				}
+				
+				neighborSelector.reset();
+				measuredIndex.search(query, neighborSelector);
+				neighborSelector.sortNeighbors();
+				
+				assertEquals(10, neighborSelector.size());
+				
+				for(int i = 0; i < neighborSelector.size(); i++) {
+					int neighbor = neighborSelector.getIndex(i);
+					assertEquals(TestData.getName(distanceKernel), TestData.rank(measuredData, distanceKernel, neighbor, true, query), neighborSelector.getDistance(i), 0.0);
+				}
+			}
+			
+			double recall = found / (10.0 * queries.length);
+			assertTrue(TestData.getName(distanceKernel) + ": recall " + recall, recall >= MIN_RECALL);
+		}
+	}
+}
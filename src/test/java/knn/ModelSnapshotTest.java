@@ -0,0 +1,161 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@code ModelSnapshot} - the classifier restored from the snapshot has to find the same neighbors
+ * with the same distances as the classifier, which wrote it, for every type of the index (also after patterns were
+ * added and removed), damaged snapshots have to be rejected by the {@code IOException}.
+ * @author Vladimr Lznika
+ *
+ */
+public class ModelSnapshotTest {
+	
+	/**
+	 * Types of indexes written to snapshots.
+	 */
+	private static final int[] INDEX_TYPES = {SpatialIndex.INDEX_NONE, SpatialIndex.INDEX_KD_TREE, SpatialIndex.INDEX_BALL_TREE,
+			SpatialIndex.INDEX_HNSW, SpatialIndex.INDEX_FLOAT, SpatialIndex.INDEX_INT16, SpatialIndex.INDEX_INT8};
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 5;
+	
+	/**
+	 * Folder for snapshot files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Method comparing classifiers restored from snapshots with the original ones.
+	 * @throws IOException
+	 */
+	@Test
+	public void restoredClassifierFindsSameNeighbors() throws IOException {
+		Random random = new Random(11);
+		int dimension = 5;
+		TrainingData trainingData = TestData.createGaussian(random, 800, dimension);
+		TrainingData testingData = TestData.createGaussian(random, 200, dimension);
+		List<Pattern> addedPatterns = TestData.toTrainingPatterns(TestData.createGaussian(random, 30, dimension));
+		DistanceKernel[] distanceKernels = {new EuclideanKernel(), new MinkowskiKernel(3.0), TestData.createKernels(random, dimension).get(6)};
+		
+		for(DistanceKernel distanceKernel : distanceKernels) {
+			for(int indexType : INDEX_TYPES) {
+				for(int useAdaptiveDistanceMeasure = 0; useAdaptiveDistanceMeasure <= Classification.USE_ADM; useAdaptiveDistanceMeasure++) {
+					Classification classification = new Classification(new TrainingData(trainingData), TestData.toPatterns(testingData), K_NUMBER, distanceKernel, useAdaptiveDistanceMeasure, 1);
+					classification.setIndexType(indexType);
+					classification.train();
+					classification.addPatterns(addedPatterns);
+					classification.removePatterns(new int[] {3, 100, 801});
+					
+					File file = folder.newFile();
+					classification.saveSnapshot(file);
+					
+					ModelSnapshot snapshot = ModelSnapshot.read(file);
+					Classification restored = new Classification(snapshot, TestData.toPatterns(testingData), 1);
+					String message = TestData.getName(distanceKernel) + ", index " + indexType + ", ADM " + useAdaptiveDistanceMeasure;
+					
+					assertEquals(message, K_NUMBER, snapshot.getKNumber());
+					assertEquals(message, useAdaptiveDistanceMeasure, snapshot.getUseAdaptiveDistanceMeasure());
+					assertArrayEquals(message, TestData.getPatternClasses(classification.classify()), TestData.getPatternClasses(restored.classify()));
+					
+					for(int i = 0; i < testingData.size(); i++) {
+						Pattern pattern = new Pattern(testingData.getVector(i), testingData.getPatternClass(i));
+						double[] distances = new double[K_NUMBER];
+						double[] restoredDistances = new double[K_NUMBER];
+						
+						assertArrayEquals(message, classification.getNearestNeighbors(pattern, distances), restored.getNearestNeighbors(pattern, restoredDistances));
+						assertArrayEquals(message, distances, restoredDistances, 0.0);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method checking that truncated snapshots and snapshots with damaged words are rejected. Damaged words
+	 * may also give a valid snapshot (e.g. changed vector), but reading mustn't fail otherwise.
+	 * @throws IOException
+	 */
+	@Test
+	public void rejectsDamagedSnapshots() throws IOException {
+		Random random = new Random(12);
+		TrainingData trainingData = TestData.createGaussian(random, 300, 3);
+		
+		for(int indexType : INDEX_TYPES) {
+			Classification classification = new Classification(trainingData, TestData.toPatterns(trainingData), K_NUMBER, new EuclideanKernel(), Classification.USE_ADM, 1);
+			classification.setIndexType(indexType);
+			
+			File file = folder.newFile();
+			classification.saveSnapshot(file);
+			byte[] content = Files.readAllBytes(file.toPath());
+			
+			for(int length = 0; length < content.length; length += 1 + random.nextInt(64)) {
+				File damaged = writeFile(content, length, -1, 0);
+				
+				try {
+					ModelSnapshot.read(damaged);
+					fail("Truncated snapshot was read (index " + indexType + ", length " + length + ").");
+				}
+				catch(IOException e) {
+					// expected
+				}
+			}
+			
+			for(int round = 0; round < 300; round++) {
+				int position = 4 * random.nextInt(content.length / 4);
+				int value = random.nextBoolean() ? -1 - random.nextInt(3) : random.nextInt(2000);
+				
+				try {
+					ModelSnapshot.read(writeFile(content, content.length, position, value));
+				}
+				catch(IOException e) {
+					// expected
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method writing the (truncated) copy of the snapshot with optionally changed word.
+	 * @param content	content of the valid snapshot
+	 * @param length	length of the copy
+	 * @param position	position of the changed word (-1 for none)
+	 * @param value		new value of the word
+	 * @return	file with the copy
+	 * @throws IOException
+	 */
+	private File writeFile(byte[] content, int length, int position, int value) throws IOException {
+		File file = folder.newFile();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		
+		try {
+			raf.write(content, 0, length);
+			
+			if(position >= 0) {
+				raf.seek(position);
+				raf.writeInt(value);
+			}
+		}
+		finally {
+			raf.close();
+		}
+		
+		return file;
+	}
+}
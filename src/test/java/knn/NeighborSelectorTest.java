@@ -0,0 +1,114 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code NeighborSelector} - selected neighbors have to be the same as the beginning of the full sort
+ * of offered candidates by distances and indices.
+ * @author Vladimr Lznika
+ *
+ */
+public class NeighborSelectorTest {
+	
+	/**
+	 * Method offering random candidates with many equal distances in random order and comparing selected
+	 * neighbors with the full sort.
+	 */
+	@Test
+	public void selectsSameNeighborsAsFullSort() {
+		Random random = new Random(1);
+		NeighborSelector neighborSelector = new NeighborSelector(1);
+		
+		for(int round = 0; round < 2000; round++) {
+			int capacity = 1 + random.nextInt(20);
+			int candidateCnt = random.nextInt(60);
+			int distinctDistances = 1 + random.nextInt(10);
+			
+			if(neighborSelector.getCapacity() != capacity) neighborSelector = new NeighborSelector(capacity);
+			neighborSelector.reset();
+			
+			final double[] distances = new double[candidateCnt];
+			Integer[] order = new Integer[candidateCnt];
+			
+			for(int i = 0; i < candidateCnt; i++) {
+				distances[i] = random.nextInt(distinctDistances) * 0.5;
+				order[i] = i;
+			}
+			
+			int[] offerOrder = shuffle(random, candidateCnt);
+			
+			for(int i : offerOrder) {
+				neighborSelector.offer(i, distances[i]);
+			}
+			
+			neighborSelector.sortNeighbors();
+			
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer index1, Integer index2) {
+					int result = Double.compare(distances[index1], distances[index2]);
+					return (result != 0) ? result : Integer.compare(index1, index2);
+				}
+			});
+			
+			int size = Math.min(capacity, candidateCnt);
+			int[] expectedIndices = new int[size];
+			double[] expectedDistances = new double[size];
+			
+			for(int i = 0; i < size; i++) {
+				expectedIndices[i] = order[i];
+				expectedDistances[i] = distances[order[i]];
+			}
+			
+			assertEquals(size, neighborSelector.size());
+			assertArrayEquals("Round " + round, expectedIndices, Arrays.copyOf(neighborSelector.getIndices(), size));
+			assertArrayEquals("Round " + round, expectedDistances, Arrays.copyOf(neighborSelector.getDistances(), size), 0.0);
+		}
+	}
+	
+	/**
+	 * Method checking the distance a candidate has to beat and the result of offers.
+	 */
+	@Test
+	public void rejectsCandidatesWorseThanWorstHeld() {
+		NeighborSelector neighborSelector = new NeighborSelector(2);
+		
+		assertEquals(Double.POSITIVE_INFINITY, neighborSelector.worstDistance(), 0.0);
+		assertEquals(true, neighborSelector.offer(5, 2.0));
+		assertEquals(Double.POSITIVE_INFINITY, neighborSelector.worstDistance(), 0.0);
+		assertEquals(true, neighborSelector.offer(3, 1.0));
+		assertEquals(2.0, neighborSelector.worstDistance(), 0.0);
+		assertEquals(false, neighborSelector.offer(7, 2.0));
+		assertEquals(true, neighborSelector.offer(4, 2.0));
+		assertEquals(false, neighborSelector.offer(6, 3.0));
+		
+		neighborSelector.sortNeighbors();
+		
+		assertArrayEquals(new int[] {3, 4}, Arrays.copyOf(neighborSelector.getIndices(), 2));
+	}
+	
+	/**
+	 * Method returning the random permutation of indices.
+	 * @param random	random generator
+	 * @param cnt		number of indices
+	 * @return	permutation of indices from 0 to {@code cnt - 1}
+	 */
+	private static int[] shuffle(Random random, int cnt) {
+		int[] permutation = new int[cnt];
+		
+		for(int i = 0; i < cnt; i++) {
+			int j = random.nextInt(i + 1);
+			permutation[i] = permutation[j];
+			permutation[j] = i;
+		}
+		
+		return permutation;
+	}
+}
@@ -0,0 +1,178 @@
+package knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code NeighborVote} - classes have to be the same as classes determined by straightforward sums of weights
+ * for all types of the vote, ties have to be won by the class with the nearest neighbor.
+ * @author Vladimr Lznika
+ *
+ */
+public class NeighborVoteTest {
+	
+	/**
+	 * Number of random votes of every type.
+	 */
+	private static final int VOTE_CNT = 3000;
+	
+	/**
+	 * Maximal number of voting neighbors.
+	 */
+	private static final int MAX_NEIGHBOR_CNT = 12;
+	
+	/**
+	 * Method comparing random votes (reusing one instance for every type) with the reference vote. Distances are rounded,
+	 * so ties and zero distances occur.
+	 */
+	@Test
+	public void voteMatchesReference() {
+		Random random = new Random(101);
+		TrainingData trainingData = new TrainingData();
+		
+		for(int i = 0; i < 200; i++) {
+			trainingData.addPattern(new double[] {i}, "class" + random.nextInt(5));
+			trainingData.setAdaptiveDistanceMeasure(i, 0.5 + random.nextInt(4));
+		}
+		
+		DistanceKernel distanceKernel = new EuclideanKernel();
+		int[] voteTypes = {NeighborVote.VOTE_MAJORITY, NeighborVote.VOTE_INVERSE_DISTANCE, NeighborVote.VOTE_GAUSSIAN, NeighborVote.VOTE_ADM};
+		
+		for(int voteType : voteTypes) {
+			NeighborVote neighborVote = new NeighborVote(voteType, distanceKernel);
+			
+			for(int v = 0; v < VOTE_CNT; v++) {
+				int neighborCnt = 1 + random.nextInt(MAX_NEIGHBOR_CNT);
+				int[] neighbors = new int[neighborCnt];
+				double[] distances = new double[neighborCnt];
+				
+				for(int i = 0; i < neighborCnt; i++) {
+					neighbors[i] = random.nextInt(trainingData.size());
+					distances[i] = random.nextInt(6) / 2.0;
+				}
+				
+				Arrays.sort(distances);
+				
+				for(int cnt = 1; cnt <= neighborCnt; cnt++) {
+					String message = "Vote " + voteType + ", neighbors " + Arrays.toString(neighbors) + ", distances " + Arrays.toString(distances) + ", count " + cnt;
+					assertEquals(message, voteReference(trainingData, distanceKernel, voteType, neighbors, distances, cnt),
+							neighborVote.voteClass(trainingData, neighbors, distances, cnt));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method checking that ties of all types of the vote are won by the class with the nearest neighbor,
+	 * not by the last or the first class.
+	 */
+	@Test
+	public void tieGoesToClassOfNearestNeighbor() {
+		TrainingData trainingData = new TrainingData();
+		trainingData.addPattern(new double[] {0.0}, "a");
+		trainingData.addPattern(new double[] {1.0}, "b");
+		trainingData.addPattern(new double[] {2.0}, "c");
+		trainingData.addPattern(new double[] {3.0}, "b");
+		trainingData.addPattern(new double[] {4.0}, "a");
+		trainingData.addPattern(new double[] {5.0}, "c");
+		
+		int[] neighbors = {3, 0, 4, 1, 2, 5};
+		double[] distances = {1.0, 1.0, 1.0, 1.0, 1.0, 1.0};
+		
+		for(int voteType = NeighborVote.VOTE_MAJORITY; voteType <= NeighborVote.VOTE_ADM; voteType++) {
+			NeighborVote neighborVote = new NeighborVote(voteType, new EuclideanKernel());
+			
+			assertEquals("b", neighborVote.voteClass(trainingData, neighbors, distances, 2));
+			assertEquals("b", neighborVote.voteClass(trainingData, neighbors, distances, 4));
+			assertEquals("b", neighborVote.voteClass(trainingData, neighbors, distances, 6));
+			assertEquals("a", neighborVote.voteClass(trainingData, new int[] {4, 5, 1}, distances, 3));
+		}
+	}
+	
+	/**
+	 * Method checking weighted votes, which differ from the majority, the vote of classes added after the first vote
+	 * and the vote without neighbors.
+	 */
+	@Test
+	public void weightsChangeMajority() {
+		TrainingData trainingData = new TrainingData();
+		trainingData.addPattern(new double[] {0.0}, "near");
+		trainingData.addPattern(new double[] {0.1}, "near");
+		trainingData.addPattern(new double[] {1.0}, "far");
+		trainingData.addPattern(new double[] {1.1}, "far");
+		trainingData.addPattern(new double[] {1.2}, "far");
+		trainingData.setAdaptiveDistanceMeasure(0, 2.0);
+		trainingData.setAdaptiveDistanceMeasure(1, 2.0);
+		
+		int[] neighbors = {0, 1, 2, 3, 4};
+		double[] distances = {0.01, 0.01, 1.0, 1.0, 1.0};
+		
+		assertEquals("far", new NeighborVote(NeighborVote.VOTE_MAJORITY, new EuclideanKernel()).voteClass(trainingData, neighbors, distances, 5));
+		assertEquals("near", new NeighborVote(NeighborVote.VOTE_INVERSE_DISTANCE, new EuclideanKernel()).voteClass(trainingData, neighbors, distances, 5));
+		assertEquals("near", new NeighborVote(NeighborVote.VOTE_GAUSSIAN, new EuclideanKernel()).voteClass(trainingData, neighbors, distances, 5));
+		assertEquals("near", new NeighborVote(NeighborVote.VOTE_ADM, new EuclideanKernel()).voteClass(trainingData, neighbors, distances, 5));
+		
+		NeighborVote neighborVote = new NeighborVote(NeighborVote.VOTE_MAJORITY, new EuclideanKernel());
+		assertEquals("far", neighborVote.voteClass(trainingData, neighbors, null, 5));
+		
+		trainingData.addPattern(new double[] {3.0}, "new");
+		trainingData.addPattern(new double[] {4.0}, "new");
+		
+		assertEquals("new", neighborVote.voteClass(trainingData, new int[] {5, 2, 6}, null, 3));
+		assertEquals(-1, neighborVote.vote(trainingData, new int[0], null, 0));
+		assertNull(neighborVote.voteClass(trainingData, new int[0], null, 0));
+	}
+	
+	/**
+	 * Method determining the class by straightforward sums of weights of classes in the order of their nearest neighbors.
+	 * @param trainingData		training data of the neighbors
+	 * @param distanceKernel	kernel of the distance function
+	 * @param voteType			type of the vote
+	 * @param neighbors			indices of neighbors
+	 * @param distances			ranking distances of neighbors
+	 * @param neighborCnt		number of voting neighbors
+	 * @return	determined class
+	 */
+	private static String voteReference(TrainingData trainingData, DistanceKernel distanceKernel, int voteType, int[] neighbors, double[] distances, int neighborCnt) {
+		Map<String, Double> scores = new LinkedHashMap<String, Double>();
+		double width = distanceKernel.toDistance(distances[neighborCnt - 1]);
+		
+		for(int i = 0; i < neighborCnt; i++) {
+			double distance = distanceKernel.toDistance(distances[i]);
+			double weight;
+			
+			switch(voteType) {
+			case NeighborVote.VOTE_INVERSE_DISTANCE:
+				weight = (distances[0] == 0.0) ? ((distance == 0.0) ? 1.0 : 0.0) : 1.0 / distance;
+				break;
+			case NeighborVote.VOTE_GAUSSIAN:
+				weight = (width == 0.0) ? 1.0 : Math.exp(-0.5 * (distance / width) * (distance / width));
+				break;
+			case NeighborVote.VOTE_ADM:
+				weight = trainingData.getAdaptiveDistanceMeasure(neighbors[i]);
+				break;
+			default:
+				weight = 1.0;
+			}
+			
+			String patternClass = trainingData.getPatternClass(neighbors[i]);
+			Double score = scores.get(patternClass);
+			scores.put(patternClass, ((score == null) ? 0.0 : score) + weight);
+		}
+		
+		String selected = null;
+		
+		for(Map.Entry<String, Double> entry : scores.entrySet()) {
+			if(selected == null || entry.getValue() > scores.get(selected)) selected = entry.getKey();
+		}
+		
+		return selected;
+	}
+}
@@ -0,0 +1,133 @@
+package knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code PatternReader} - values parsed by its fast parser have to be the same as values
+ * of {@code Double.parseDouble} for numbers written in all usual forms, lines have to be read across refills
+ * of its buffer.
+ * @author Vladimr Lznika
+ *
+ */
+public class PatternReaderTest {
+	
+	/**
+	 * Number of read lines (the input is several times larger than the buffer of the reader).
+	 */
+	private static final int LINE_CNT = 30000;
+	
+	/**
+	 * Method reading random numbers in random textual forms and comparing them with {@code Double.parseDouble}.
+	 * @throws IOException
+	 */
+	@Test
+	public void parsesSameValuesAsParseDouble() throws IOException {
+		Random random = new Random(3);
+		int dimension = 6;
+		List<String[]> values = new ArrayList<String[]>(LINE_CNT);
+		List<String> labels = new ArrayList<String>(LINE_CNT);
+		StringBuilder text = new StringBuilder();
+		
+		text.append(LINE_CNT).append('\n');
+		
+		for(int line = 0; line < LINE_CNT; line++) {
+			String[] lineValues = new String[dimension];
+			
+			for(int d = 0; d < dimension; d++) {
+				lineValues[d] = createNumber(random);
+				if(d > 0) text.append(',');
+				text.append(lineValues[d]);
+			}
+			
+			String label = "tda" + random.nextInt(5);
+			text.append(';').append(label).append((line % 3 == 0) ? "\r\n" : "\n");
+			
+			if(line % 1000 == 0) text.append('\n');
+			
+			values.add(lineValues);
+			labels.add(label);
+		}
+		
+		PatternReader reader = new PatternReader(Channels.newChannel(new ByteArrayInputStream(text.toString().getBytes(Charset.forName("UTF-8")))));
+		
+		try {
+			for(int line = 0; line < LINE_CNT; line++) {
+				assertTrue(reader.next());
+				
+				double[] vector = reader.getVector();
+				assertEquals(dimension, vector.length);
+				
+				for(int d = 0; d < dimension; d++) {
+					String value = values.get(line)[d];
+					assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)), Double.doubleToLongBits(vector[d]));
+				}
+				
+				assertEquals(labels.get(line), reader.getPatternClass());
+			}
+			
+			assertFalse(reader.next());
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Method checking that invalid numbers are rejected like by {@code Double.parseDouble}.
+	 * @throws IOException
+	 */
+	@Test(expected = NumberFormatException.class)
+	public void rejectsInvalidNumbers() throws IOException {
+		PatternReader reader = new PatternReader(Channels.newChannel(new ByteArrayInputStream("1.5,2..5;a\n".getBytes(Charset.forName("UTF-8")))));
+		
+		try {
+			reader.next();
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Method creating the random number in one of textual forms - the output of {@code Double.toString},
+	 * short decimals with and without the exponent, integers, numbers with many digits and surrounding spaces.
+	 * @param random	random generator
+	 * @return	textual form of the number
+	 */
+	private static String createNumber(Random random) {
+		String sign = random.nextInt(4) == 0 ? "-" : (random.nextInt(10) == 0 ? "+" : "");
+		
+		switch(random.nextInt(8)) {
+		case 0:
+			return Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20));
+		case 1:
+			return sign + BigDecimal.valueOf(random.nextInt(100000), random.nextInt(8)).toPlainString();
+		case 2:
+			return sign + Math.abs(random.nextLong() % 1000000000000000L) + "e" + (random.nextInt(60) - 30);
+		case 3:
+			return sign + random.nextInt(1000);
+		case 4:
+			return sign + BigDecimal.valueOf(random.nextLong(), random.nextInt(25)).abs().toPlainString();
+		case 5:
+			return String.format(Locale.ROOT, "%s%.6f", sign, random.nextDouble() * 100);
+		case 6:
+			return " " + sign + "0" + random.nextInt(100) + "." + random.nextInt(100) + "E" + (random.nextBoolean() ? "+" : "-") + random.nextInt(5) + "\t";
+		default:
+			return sign + "." + random.nextInt(10000);
+		}
+	}
+}
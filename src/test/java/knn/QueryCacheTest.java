@@ -0,0 +1,143 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code QueryCache} - classes have to be returned only for the same vector, parameters and model,
+ * the number of entries has to be limited by the capacity and the classifier has to determine the same classes
+ * with the cache as without it, also after the training set is updated.
+ * @author Vladimr Lznika
+ *
+ */
+public class QueryCacheTest {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 3;
+	
+	/**
+	 * Method checking hits and misses for the same and different vectors, parameters and models.
+	 */
+	@Test
+	public void returnsClassOnlyForSameKeyAndModel() {
+		TrainingData trainingData = TestData.createGaussian(new Random(81), 50, 2);
+		ClassificationModel model = new ClassificationModel(trainingData, new EuclideanKernel(), SpatialIndex.INDEX_NONE, 0, false);
+		ClassificationModel otherModel = new ClassificationModel(trainingData, new EuclideanKernel(), SpatialIndex.INDEX_NONE, 0, false);
+		QueryCache cache = new QueryCache(100);
+		
+		cache.put(createKey(1.0, 2.0), model, "a");
+		cache.put(createKey(3.0, 4.0), model, null);
+		
+		assertEquals("a", cache.get(createKey(1.0, 2.0), model));
+		assertNull(cache.get(createKey(3.0, 4.0), model));
+		assertNull(cache.get(createKey(1.0, 2.5), model));
+		assertNull(cache.get(new QueryCache.Key(new double[] {1.0, 2.0}, K_NUMBER + 1, 0, false, 0), model));
+		assertNull(cache.get(new QueryCache.Key(new double[] {1.0, 2.0}, K_NUMBER, 1, false, 0), model));
+		assertNull(cache.get(new QueryCache.Key(new double[] {1.0, 2.0}, K_NUMBER, 0, true, 0), model));
+		assertNull(cache.get(new QueryCache.Key(new double[] {1.0, 2.0}, K_NUMBER, 0, false, 1), model));
+		assertEquals(1, cache.size());
+		
+		assertNull(cache.get(createKey(1.0, 2.0), otherModel));
+		assertEquals(0, cache.size());
+		assertNull(cache.get(createKey(1.0, 2.0), model));
+		
+		assertEquals(1, cache.getHitCnt());
+		assertEquals(8, cache.getMissCnt());
+	}
+	
+	/**
+	 * Method putting more entries than the capacity and checking that the least recently used entry is evicted.
+	 */
+	@Test
+	public void evictsEntriesOverCapacity() {
+		QueryCache cache = new QueryCache(40);
+		
+		for(int i = 0; i < 1000; i++) {
+			cache.put(createKey(i, -i), null, "c" + i);
+		}
+		
+		assertTrue(cache.size() <= 40);
+		assertEquals(1000 - cache.size(), cache.getEvictionCnt());
+		assertEquals("c999", cache.get(createKey(999, -999), null));
+		
+		QueryCache smallCache = new QueryCache(1);
+		smallCache.put(createKey(1.0, 1.0), null, "a");
+		smallCache.put(createKey(2.0, 2.0), null, "b");
+		
+		assertNull(smallCache.get(createKey(1.0, 1.0), null));
+		assertEquals("b", smallCache.get(createKey(2.0, 2.0), null));
+		assertEquals(1, smallCache.getEvictionCnt());
+		
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+	
+	/**
+	 * Method comparing the classification with the cache (repeated in several rounds) with the classification without it
+	 * and checking that added patterns (the nearest patterns of all testing patterns with the new class) invalidate cached classes.
+	 */
+	@Test
+	public void cachedClassificationMatchesUncached() {
+		Random random = new Random(82);
+		TrainingData trainingData = TestData.createGaussian(random, 600, 3);
+		TrainingData testingData = TestData.createGaussian(random, 300, 3);
+		
+		Classification uncached = createClassification(new TrainingData(trainingData), testingData);
+		String[] expected = TestData.getPatternClasses(uncached.classify());
+		
+		QueryCache cache = new QueryCache(1000);
+		Classification cached = createClassification(new TrainingData(trainingData), testingData);
+		cached.setQueryCache(cache);
+		
+		for(int round = 0; round < 3; round++) {
+			assertArrayEquals(expected, TestData.getPatternClasses(cached.classify()));
+		}
+		
+		assertEquals(2 * testingData.size(), cache.getHitCnt());
+		assertEquals(testingData.size(), cache.getMissCnt());
+		
+		List<Pattern> added = new ArrayList<Pattern>();
+		
+		for(int i = 0; i < testingData.size(); i++) {
+			added.add(new Pattern(testingData.getVector(i), "added", "added"));
+		}
+		
+		cached.addPatterns(added);
+		assertEquals(0, cache.size());
+		
+		String[] classes = TestData.getPatternClasses(cached.classify());
+		
+		for(String patternClass : classes) {
+			assertEquals("added", patternClass);
+		}
+	}
+	
+	/**
+	 * Method creating the key of the vector with the Euclidean distance, without adaptive distance measures and with the majority vote.
+	 * @param values	values of the vector
+	 * @return	key of the vector
+	 */
+	private static QueryCache.Key createKey(double... values) {
+		return new QueryCache.Key(values, K_NUMBER, 0, false, 0);
+	}
+	
+	/**
+	 * Method creating the 1-NN classifier.
+	 * @param trainingData	training data
+	 * @param testingData	testing data
+	 * @return	new classifier
+	 */
+	private static Classification createClassification(TrainingData trainingData, TrainingData testingData) {
+		return new Classification(trainingData, TestData.toPatterns(testingData), 1, Classification.DISTANCE_EUCLIDEAN, 0, 1);
+	}
+}
@@ -0,0 +1,144 @@
+package knn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@code ResultWriter} - text results have to be the same as the lines built by {@code Arrays.toString}
+ * and {@code Double.toString} (as the classification wrote them before), also when chunks are formatted in parallel.
+ * @author Vladimr Lznika
+ *
+ */
+public class ResultWriterTest {
+	
+	/**
+	 * Number of written patterns (several chunks).
+	 */
+	private static final int PATTERN_CNT = 5000;
+	
+	/**
+	 * Folder for result files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Method comparing the text result of random patterns with lines built by {@code Arrays.toString}.
+	 * @throws IOException
+	 */
+	@Test
+	public void textResultMatchesArraysToString() throws IOException {
+		List<Pattern> patterns = createPatterns(new Random(5));
+		StringBuilder expected = new StringBuilder();
+		
+		for(Pattern pattern : patterns) {
+			expected.append(Arrays.toString(pattern.getVector())).append(';').append(pattern.getPatternClass()).append(';').append(pattern.getCorrectClass()).append('\n');
+		}
+		
+		expected.append("Accuracy result: ").append(0.75 * 100).append('%');
+		
+		for(int parallelism : new int[] {1, 4}) {
+			assertEquals(expected.toString(), writeResult(patterns, ResultWriter.FORMAT_TEXT, parallelism));
+		}
+	}
+	
+	/**
+	 * Method comparing the CSV result of random patterns with lines built by {@code Double.toString}.
+	 * @throws IOException
+	 */
+	@Test
+	public void csvResultMatchesDoubleToString() throws IOException {
+		List<Pattern> patterns = createPatterns(new Random(6));
+		StringBuilder expected = new StringBuilder();
+		
+		for(Pattern pattern : patterns) {
+			for(double value : pattern.getVector()) {
+				expected.append(Double.toString(value)).append(',');
+			}
+			
+			expected.append(pattern.getPatternClass()).append(',').append(pattern.getCorrectClass()).append('\n');
+		}
+		
+		for(int parallelism : new int[] {1, 4}) {
+			assertEquals(expected.toString(), writeResult(patterns, ResultWriter.FORMAT_CSV, parallelism));
+		}
+	}
+	
+	/**
+	 * Method writing the result with given format and returning its content.
+	 * @param patterns		written patterns
+	 * @param format		format of the result
+	 * @param parallelism	number of threads formatting chunks
+	 * @return	content of the result file
+	 * @throws IOException
+	 */
+	private String writeResult(List<Pattern> patterns, int format, int parallelism) throws IOException {
+		File file = folder.newFile();
+		ResultWriter writer = new ResultWriter(file, format, new LabelDictionary(), parallelism);
+		
+		writer.write(patterns.subList(0, PATTERN_CNT / 2));
+		writer.write(patterns.subList(PATTERN_CNT / 2, PATTERN_CNT));
+		writer.finish(0.75);
+		
+		return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+	}
+	
+	/**
+	 * Method creating classified patterns with random values - short decimals (formatted by the fast path),
+	 * values with many digits, very small and large values and special values.
+	 * @param random	random generator
+	 * @return	list of patterns
+	 */
+	private static List<Pattern> createPatterns(Random random) {
+		List<Pattern> patterns = new ArrayList<Pattern>(PATTERN_CNT);
+		
+		for(int i = 0; i < PATTERN_CNT; i++) {
+			double[] vector = new double[1 + random.nextInt(8)];
+			
+			for(int d = 0; d < vector.length; d++) {
+				vector[d] = createValue(random);
+			}
+			
+			patterns.add(new Pattern(vector, "class" + random.nextInt(3), "class" + random.nextInt(3)));
+		}
+		
+		return patterns;
+	}
+	
+	/**
+	 * Method creating one random value.
+	 * @param random	random generator
+	 * @return	random value
+	 */
+	private static double createValue(Random random) {
+		double sign = random.nextBoolean() ? 1.0 : -1.0;
+		
+		switch(random.nextInt(6)) {
+		case 0:
+			return sign * random.nextInt(100000) / Math.pow(10, random.nextInt(8));
+		case 1:
+			return sign * random.nextDouble() * Math.pow(10, random.nextInt(12) - 4);
+		case 2:
+			return sign * random.nextDouble() * Math.pow(10, random.nextInt(600) - 300);
+		case 3:
+			return sign * (random.nextLong() % 10000000000000000L) / Math.pow(10, random.nextInt(16));
+		case 4:
+			double[] special = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 1e-3, 1e7, 9999999.999999998};
+			return special[random.nextInt(special.length)];
+		default:
+			return sign * Math.round(random.nextGaussian() * 1000) / 100.0;
+		}
+	}
+}
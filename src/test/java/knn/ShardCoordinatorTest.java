@@ -0,0 +1,117 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the sharded classification - the coordinator merging neighbors of workers in this JVM has to classify
+ * patterns as the classification of the whole training set (with the same adaptive distance measures calculated
+ * across shards).
+ * @author Vladimr Lznika
+ *
+ */
+public class ShardCoordinatorTest {
+	
+	/**
+	 * Number of nearest neighbors.
+	 */
+	private static final int K_NUMBER = 5;
+	
+	/**
+	 * Method comparing the sharded classification with the classification in one JVM for several numbers of shards,
+	 * distance functions and indexes of workers, with and without adaptive distance measures.
+	 * @throws Exception
+	 */
+	@Test
+	public void shardedClassificationMatchesSingleJvm() throws Exception {
+		Random random = new Random(13);
+		int dimension = 4;
+		TrainingData trainingData = TestData.createGaussian(random, 900, dimension);
+		TrainingData testingData = TestData.createGaussian(random, 300, dimension);
+		DistanceKernel[] distanceKernels = {new EuclideanKernel(), new ManhattanKernel(), TestData.createKernels(random, dimension).get(6)};
+		int[] indexTypes = {SpatialIndex.INDEX_NONE, SpatialIndex.INDEX_KD_TREE, SpatialIndex.INDEX_BALL_TREE};
+		
+		for(DistanceKernel distanceKernel : distanceKernels) {
+			for(int shardCnt = 1; shardCnt <= 4; shardCnt++) {
+				for(int useAdaptiveDistanceMeasure = 0; useAdaptiveDistanceMeasure <= Classification.USE_ADM; useAdaptiveDistanceMeasure++) {
+					Classification classification = new Classification(new TrainingData(trainingData), TestData.toPatterns(testingData), K_NUMBER, distanceKernel, useAdaptiveDistanceMeasure, 1);
+					String[] expected = TestData.getPatternClasses(classification.classify());
+					
+					List<Pattern> patterns = TestData.toPatterns(testingData);
+					classifySharded(trainingData, patterns, shardCnt, distanceKernel, indexTypes[shardCnt % indexTypes.length], useAdaptiveDistanceMeasure);
+					
+					assertArrayEquals(TestData.getName(distanceKernel) + ", shards " + shardCnt + ", ADM " + useAdaptiveDistanceMeasure, expected, TestData.getPatternClasses(patterns));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method classifying patterns by workers holding shards of the training data (in threads of this JVM).
+	 * @param trainingData		training data
+	 * @param patterns			classified patterns
+	 * @param shardCnt			number of shards
+	 * @param distanceKernel	kernel of the distance function
+	 * @param indexType			type of the index of workers
+	 * @param useAdaptiveDistanceMeasure	whether adaptive distance measures are used
+	 * @throws Exception
+	 */
+	private static void classifySharded(TrainingData trainingData, List<Pattern> patterns, int shardCnt, DistanceKernel distanceKernel, int indexType, int useAdaptiveDistanceMeasure) throws Exception {
+		ShardWorker[] workers = new ShardWorker[shardCnt];
+		Thread[] threads = new Thread[shardCnt];
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		
+		try {
+			for(int s = 0; s < shardCnt; s++) {
+				TrainingData shardData = new TrainingData();
+				
+				for(int i = s; i < trainingData.size(); i += shardCnt) {
+					shardData.addPattern(trainingData.getVector(i), trainingData.getPatternClass(i));
+				}
+				
+				final ShardWorker worker = new ShardWorker(shardData, s, shardCnt, distanceKernel, indexType, HnswGraph.DEFAULT_EF, 1, 0);
+				workers[s] = worker;
+				addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker.getPort()));
+				
+				threads[s] = new Thread("shard-worker-" + s) {
+					@Override
+					public void run() {
+						try {
+							worker.run();
+						}
+						catch(IOException e) {
+							e.printStackTrace();
+						}
+					}
+				};
+				threads[s].setDaemon(true);
+				threads[s].start();
+			}
+			
+			ShardCoordinator coordinator = new ShardCoordinator(addresses, K_NUMBER, distanceKernel, useAdaptiveDistanceMeasure, NeighborVote.VOTE_MAJORITY);
+			
+			try {
+				coordinator.train();
+				coordinator.classifyPatterns(patterns);
+				coordinator.shutdownWorkers();
+			}
+			finally {
+				coordinator.close();
+			}
+		}
+		finally {
+			for(int s = 0; s < shardCnt; s++) {
+				if(workers[s] != null) workers[s].close();
+				if(threads[s] != null) threads[s].join();
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Randomized tests of the KD-tree and the ball tree against the brute force. Exact indexes have to return the same
+ * neighbors with the same ranking distances (including ties broken by indices) for every distance kernel, which
+ * they support, and they have to reject other kernels.
+ * @author Vladimr Lznika
+ *
+ */
+public class SpatialIndexTest {
+	
+	/**
+	 * Types of tree indexes.
+	 */
+	private static final int[] TREE_INDEX_TYPES = {SpatialIndex.INDEX_KD_TREE, SpatialIndex.INDEX_BALL_TREE};
+	
+	/**
+	 * Tested numbers of neighbors.
+	 */
+	static final int[] K_NUMBERS = {1, 7, 40};
+	
+	/**
+	 * Number of tested vectors of every case.
+	 */
+	static final int QUERY_CNT = 60;
+	
+	/**
+	 * Number of distinct values of features of grid data.
+	 */
+	static final int GRID_LEVELS = 4;
+	
+	/**
+	 * Method comparing tree indexes with the brute force on data with distinct distances.
+	 */
+	@Test
+	public void treesMatchBruteForce() {
+		checkOnGaussianData(TREE_INDEX_TYPES);
+	}
+	
+	/**
+	 * Method comparing tree indexes with the brute force on data with many ties.
+	 */
+	@Test
+	public void treesBreakTiesByIndex() {
+		checkOnGridData(TREE_INDEX_TYPES);
+	}
+	
+	/**
+	 * Method comparing exact indexes with the brute force on data with distinct distances, with and without
+	 * adaptive distance measures and with some patterns left out of the index.
+	 * @param indexTypes	types of compared indexes
+	 */
+	static void checkOnGaussianData(int[] indexTypes) {
+		for(int dimension : new int[] {2, 5, 20}) {
+			Random random = new Random(dimension);
+			TrainingData trainingData = TestData.createGaussian(random, 700, dimension);
+			double[][] queries = TestData.createQueries(random, trainingData, QUERY_CNT, false, 0);
+			
+			for(DistanceKernel distanceKernel : TestData.createKernels(random, dimension)) {
+				TrainingData measuredData = new TrainingData(trainingData);
+				TestData.setAdaptiveDistanceMeasures(measuredData, distanceKernel);
+				
+				for(int indexType : indexTypes) {
+					checkIndex(measuredData, distanceKernel, indexType, TestData.getIndices(measuredData, 0), true, queries);
+					checkIndex(measuredData, distanceKernel, indexType, TestData.getIndices(measuredData, 5), false, queries);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method comparing exact indexes with the brute force on grid data, where many patterns are in the same distance
+	 * (ties have to be broken by lower indices like in the full sort).
+	 * @param indexTypes	types of compared indexes
+	 */
+	static void checkOnGridData(int[] indexTypes) {
+		for(int dimension : new int[] {1, 3, 6}) {
+			Random random = new Random(100 + dimension);
+			TrainingData trainingData = TestData.createGrid(random, 500, dimension, GRID_LEVELS);
+			double[][] queries = TestData.createQueries(random, trainingData, QUERY_CNT, true, GRID_LEVELS);
+			
+			for(DistanceKernel distanceKernel : TestData.createKernels(random, dimension)) {
+				for(int indexType : indexTypes) {
+					checkIndex(trainingData, distanceKernel, indexType, TestData.getIndices(trainingData, 0), false, queries);
+					checkIndex(trainingData, distanceKernel, indexType, TestData.getIndices(trainingData, 3), false, queries);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method comparing neighbors found by the index of given type with the brute force. The index has to be built
+	 * if it supports the distance kernel.
+	 * @param trainingData		training data
+	 * @param distanceKernel	kernel of the distance function
+	 * @param indexType			type of the index
+	 * @param indices			indices of indexed patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures
+	 * @param queries			tested vectors
+	 */
+	static void checkIndex(TrainingData trainingData, DistanceKernel distanceKernel, int indexType, int[] indices, boolean useAdaptiveDistanceMeasures, double[][] queries) {
+		boolean supported = (indexType == SpatialIndex.INDEX_KD_TREE) ? distanceKernel.hasBoxBound() : distanceKernel.isMetric();
+		SpatialIndex index;
+		
+		try {
+			index = SpatialIndex.build(indexType, trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures);
+		}
+		catch(IllegalArgumentException e) {
+			assertFalse(TestData.getName(distanceKernel) + " isn't supported by index " + indexType, supported);
+			return;
+		}
+		
+		assertTrue(TestData.getName(distanceKernel) + " is supported by index " + indexType, supported);
+		
+		for(int kNumber : K_NUMBERS) {
+			NeighborSelector neighborSelector = new NeighborSelector(kNumber);
+			double[] distances = new double[kNumber];
+			
+			for(int q = 0; q < queries.length; q++) {
+				int[] expected = TestData.findNearest(trainingData, distanceKernel, indices, useAdaptiveDistanceMeasures, queries[q], kNumber, distances);
+				
+				neighborSelector.reset();
+				index.search(queries[q], neighborSelector);
+				neighborSelector.sortNeighbors();
+				
+				String message = TestData.getName(distanceKernel) + ", index " + indexType + ", K " + kNumber + ", query " + q;
+				assertArrayEquals(message, expected, Arrays.copyOf(neighborSelector.getIndices(), neighborSelector.size()));
+				assertArrayEquals(message, Arrays.copyOf(distances, expected.length), Arrays.copyOf(neighborSelector.getDistances(), neighborSelector.size()), 0.0);
+			}
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package knn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class creating random datasets for tests and finding their nearest neighbors by the brute force
+ * (full sort of all training patterns by ranking distances and indices).
+ * @author Vladimr Lznika
+ *
+ */
+final class TestData {
+	
+	/**
+	 * Number of classes of random datasets.
+	 */
+	static final int CLASS_CNT = 3;
+	
+	/**
+	 * Constructor hidden, the class has only static methods.
+	 */
+	private TestData() {
+	}
+	
+	/**
+	 * Method creating training data with classes drawn from normal distributions with unit variance and means shifted
+	 * along the diagonal (distances are distinct almost surely).
+	 * @param random	random generator
+	 * @param size		number of patterns
+	 * @param dimension	dimension of vectors
+	 * @return	random training data
+	 */
+	static TrainingData createGaussian(Random random, int size, int dimension) {
+		TrainingData trainingData = new TrainingData(size);
+		double[] vector = new double[dimension];
+		
+		for(int i = 0; i < size; i++) {
+			int classId = random.nextInt(CLASS_CNT);
+			
+			for(int d = 0; d < dimension; d++) {
+				vector[d] = classId * 0.7 + random.nextGaussian();
+			}
+			
+			trainingData.addPattern(vector, "class" + classId);
+		}
+		
+		return trainingData;
+	}
+	
+	/**
+	 * Method creating training data with small positive integer values, so many patterns are in the same distance
+	 * (and some of them are duplicates).
+	 * @param random	random generator
+	 * @param size		number of patterns
+	 * @param dimension	dimension of vectors
+	 * @param levels	number of distinct values of every feature
+	 * @return	random training data
+	 */
+	static TrainingData createGrid(Random random, int size, int dimension, int levels) {
+		TrainingData trainingData = new TrainingData(size);
+		double[] vector = new double[dimension];
+		
+		for(int i = 0; i < size; i++) {
+			for(int d = 0; d < dimension; d++) {
+				vector[d] = 1 + random.nextInt(levels);
+			}
+			
+			trainingData.addPattern(vector, "class" + random.nextInt(CLASS_CNT));
+		}
+		
+		return trainingData;
+	}
+	
+	/**
+	 * Method creating tested vectors - random vectors like the ones of the training data and copies
+	 * of some training vectors (their nearest neighbor is in zero distance).
+	 * @param random		random generator
+	 * @param trainingData	training data
+	 * @param cnt			number of tested vectors
+	 * @param grid			whether the training data were created by {@code createGrid} with given levels
+	 * @param levels		number of distinct values of every feature of grid data
+	 * @return	tested vectors
+	 */
+	static double[][] createQueries(Random random, TrainingData trainingData, int cnt, boolean grid, int levels) {
+		int dimension = trainingData.getDimension();
+		double[][] queries = new double[cnt][];
+		
+		for(int q = 0; q < cnt; q++) {
+			if(q % 4 == 0) {
+				queries[q] = trainingData.getVector(random.nextInt(trainingData.size()));
+				continue;
+			}
+			
+			queries[q] = new double[dimension];
+			
+			for(int d = 0; d < dimension; d++) {
+				queries[q][d] = grid ? 1 + random.nextInt(levels) : 0.7 + 1.5 * random.nextGaussian();
+			}
+		}
+		
+		return queries;
+	}
+	
+	/**
+	 * Method creating distance kernels of all types for given dimension.
+	 * @param random	random generator (for weights of the weighted Euclidean distance)
+	 * @param dimension	dimension of vectors
+	 * @return	distance kernels
+	 */
+	static List<DistanceKernel> createKernels(Random random, int dimension) {
+		double[] weights = new double[dimension];
+		
+		for(int d = 0; d < dimension; d++) {
+			weights[d] = 0.25 + random.nextInt(8) * 0.25;
+		}
+		
+		List<DistanceKernel> kernels = new ArrayList<DistanceKernel>();
+		kernels.add(new EuclideanKernel());
+		kernels.add(new ManhattanKernel());
+		kernels.add(new ChebyshevKernel());
+		kernels.add(new MinkowskiKernel(3.0));
+		kernels.add(new MinkowskiKernel(0.5));
+		kernels.add(new CosineKernel());
+		kernels.add(new WeightedEuclideanKernel(weights));
+		
+		return kernels;
+	}
+	
+	/**
+	 * Method returning the name of the distance kernel for messages of assertions.
+	 * @param distanceKernel	distance kernel
+	 * @return	name of the kernel with its parameters
+	 */
+	static String getName(DistanceKernel distanceKernel) {
+		return distanceKernel.getClass().getSimpleName() + Arrays.toString(distanceKernel.getParameters());
+	}
+	
+	/**
+	 * Method setting adaptive distance measures of all training patterns.
+	 * @param trainingData		training data
+	 * @param distanceKernel	kernel of the distance function
+	 */
+	static void setAdaptiveDistanceMeasures(TrainingData trainingData, DistanceKernel distanceKernel) {
+		double[] measures = new AdaptiveDistanceMeasures(trainingData, distanceKernel, SpatialIndex.INDEX_NONE, 1).calculate();
+		
+		for(int i = 0; i < measures.length; i++) {
+			trainingData.setAdaptiveDistanceMeasure(i, measures[i]);
+		}
+	}
+	
+	/**
+	 * Method returning all indices of the training data except every {@code step}-th one.
+	 * @param trainingData	training data
+	 * @param step			step of skipped indices (0 to skip none)
+	 * @return	array with indices
+	 */
+	static int[] getIndices(TrainingData trainingData, int step) {
+		int[] indices = new int[trainingData.size()];
+		int cnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(step == 0 || i % step != 0) indices[cnt++] = i;
+		}
+		
+		return Arrays.copyOf(indices, cnt);
+	}
+	
+	/**
+	 * Method finding {@code K} nearest neighbors by the full sort of given training patterns. Ranking distances
+	 * are calculated like in {@code ClassificationModel} (divided by adaptive distance measures converted to ranks),
+	 * patterns in the same distance are sorted by their indices.
+	 * @param trainingData		training data
+	 * @param distanceKernel	kernel of the distance function
+	 * @param indices			indices of searched training patterns
+	 * @param useAdaptiveDistanceMeasures	whether distances are divided by adaptive distance measures
+	 * @param vector			tested vector
+	 * @param kNumber			number of returned neighbors
+	 * @param distances			array for ranking distances of returned neighbors
+	 * @return	indices of nearest training patterns from the nearest one
+	 */
+	static int[] findNearest(TrainingData trainingData, DistanceKernel distanceKernel, int[] indices, boolean useAdaptiveDistanceMeasures, double[] vector, int kNumber, double[] distances) {
+		final double[] ranks = new double[trainingData.size()];
+		Integer[] order = new Integer[indices.length];
+		
+		for(int i = 0; i < indices.length; i++) {
+			ranks[indices[i]] = rank(trainingData, distanceKernel, indices[i], useAdaptiveDistanceMeasures, vector);
+			order[i] = indices[i];
+		}
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer index1, Integer index2) {
+				int result = Double.compare(ranks[index1], ranks[index2]);
+				return (result != 0) ? result : Integer.compare(index1, index2);
+			}
+		});
+		
+		int[] nearest = new int[Math.min(kNumber, order.length)];
+		
+		for(int i = 0; i < nearest.length; i++) {
+			nearest[i] = order[i];
+			distances[i] = ranks[order[i]];
+		}
+		
+		return nearest;
+	}
+	
+	/**
+	 * Method calculating the ranking distance of the training pattern like {@code ClassificationModel}.
+	 * @param trainingData		training data
+	 * @param distanceKernel	kernel of the distance function
+	 * @param index				index of the training pattern
+	 * @param useAdaptiveDistanceMeasures	whether the distance is divided by the adaptive distance measure
+	 * @param vector			tested vector
+	 * @return	ranking distance of the pattern
+	 */
+	static double rank(TrainingData trainingData, DistanceKernel distanceKernel, int index, boolean useAdaptiveDistanceMeasures, double[] vector) {
+		double rank = distanceKernel.rank(vector, 0, trainingData.getVectors(), trainingData.getOffset(index), trainingData.getDimension(), Double.POSITIVE_INFINITY);
+		return useAdaptiveDistanceMeasures ? rank / distanceKernel.toRank(trainingData.getAdaptiveDistanceMeasure(index)) : rank;
+	}
+	
+	/**
+	 * Method converting the training data to tested patterns (their class is the correct class).
+	 * @param trainingData	converted training data
+	 * @return	list of tested patterns
+	 */
+	static List<Pattern> toPatterns(TrainingData trainingData) {
+		List<Pattern> patterns = new ArrayList<Pattern>(trainingData.size());
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			patterns.add(new Pattern(trainingData.getVector(i), trainingData.getPatternClass(i)));
+		}
+		
+		return patterns;
+	}
+	
+	/**
+	 * Method converting the training data to training patterns (their class is set as the pattern class
+	 * and the correct class).
+	 * @param trainingData	converted training data
+	 * @return	list of training patterns
+	 */
+	static List<Pattern> toTrainingPatterns(TrainingData trainingData) {
+		List<Pattern> patterns = new ArrayList<Pattern>(trainingData.size());
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			patterns.add(new Pattern(trainingData.getVector(i), trainingData.getPatternClass(i), trainingData.getPatternClass(i)));
+		}
+		
+		return patterns;
+	}
+	
+	/**
+	 * Method returning classes determined for given patterns.
+	 * @param patterns	classified patterns
+	 * @return	array with pattern classes
+	 */
+	static String[] getPatternClasses(List<Pattern> patterns) {
+		String[] classes = new String[patterns.size()];
+		
+		for(int i = 0; i < classes.length; i++) {
+			classes[i] = patterns.get(i).getPatternClass();
+		}
+		
+		return classes;
+	}
+}
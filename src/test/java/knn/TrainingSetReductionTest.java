@@ -0,0 +1,253 @@
+package knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@code TrainingSetReduction} - the condensed set has to classify all training patterns correctly by the 1-NN rule,
+ * the edited set has to keep exactly patterns classified correctly by their {@code K} nearest neighbors, spheres of patterns
+ * kept by adaptive distance measures have to cover all pruned patterns of their class and no pattern of other class,
+ * removed patterns have to be never kept and all spatial indexes and numbers of threads have to select the same patterns.
+ * @author Vladimr Lznika
+ *
+ */
+public class TrainingSetReductionTest {
+	
+	/**
+	 * Number of nearest neighbors voting in the edited nearest neighbor.
+	 */
+	private static final int K_NUMBER = 3;
+	
+	/**
+	 * Reduction methods.
+	 */
+	private static final int[] METHODS = {TrainingSetReduction.REDUCTION_CNN, TrainingSetReduction.REDUCTION_ENN, TrainingSetReduction.REDUCTION_ADM};
+	
+	/**
+	 * Method checking the condensed set of data with removed patterns: every other pattern has its nearest kept pattern
+	 * in the same class.
+	 */
+	@Test
+	public void condensedSetClassifiesTrainingSet() {
+		TrainingData trainingData = createData(new Random(121), 400, 3);
+		
+		for(DistanceKernel distanceKernel : TestData.createKernels(new Random(122), 3)) {
+			String name = TestData.getName(distanceKernel);
+			int[] kept = new TrainingSetReduction(trainingData, distanceKernel, K_NUMBER, SpatialIndex.INDEX_NONE, 1).select(TrainingSetReduction.REDUCTION_CNN);
+			
+			checkKept(name, trainingData, kept);
+			assertTrue(name, kept.length < getPresentCnt(trainingData));
+			
+			for(int i = 0; i < trainingData.size(); i++) {
+				if(trainingData.isRemoved(i)) continue;
+				
+				int nearest = TestData.findNearest(trainingData, distanceKernel, kept, false, trainingData.getVector(i), 1, new double[1])[0];
+				assertEquals(name + ", pattern " + i, trainingData.getClassId(i), trainingData.getClassId(nearest));
+			}
+		}
+	}
+	
+	/**
+	 * Method comparing the edited set of data with removed patterns with patterns classified correctly by the majority
+	 * of their {@code K} nearest neighbors found by the full sort (without the pattern itself).
+	 */
+	@Test
+	public void editedSetMatchesMajorityOfNeighbors() {
+		TrainingData trainingData = createData(new Random(123), 400, 3);
+		int[] present = getPresentIndices(trainingData);
+		
+		for(DistanceKernel distanceKernel : TestData.createKernels(new Random(124), 3)) {
+			String name = TestData.getName(distanceKernel);
+			NeighborVote neighborVote = new NeighborVote(NeighborVote.VOTE_MAJORITY, distanceKernel);
+			int[] expected = new int[present.length];
+			int expectedCnt = 0;
+			
+			for(int i : present) {
+				int[] nearest = TestData.findNearest(trainingData, distanceKernel, present, false, trainingData.getVector(i), K_NUMBER + 1, new double[K_NUMBER + 1]);
+				int[] neighbors = new int[K_NUMBER];
+				int neighborCnt = 0;
+				
+				for(int n = 0; n < nearest.length && neighborCnt < K_NUMBER; n++) {
+					if(nearest[n] != i) neighbors[neighborCnt++] = nearest[n];
+				}
+				
+				if(neighborVote.vote(trainingData, neighbors, null, neighborCnt) == trainingData.getClassId(i)) expected[expectedCnt++] = i;
+			}
+			
+			int[] kept = new TrainingSetReduction(trainingData, distanceKernel, K_NUMBER, SpatialIndex.INDEX_NONE, 1).select(TrainingSetReduction.REDUCTION_ENN);
+			
+			checkKept(name, trainingData, kept);
+			assertArrayEquals(name, Arrays.copyOf(expected, expectedCnt), kept);
+			assertTrue(name, kept.length < present.length);
+		}
+	}
+	
+	/**
+	 * Method checking patterns kept by adaptive distance measures of data with removed patterns: spheres of kept patterns
+	 * (with the radius given by the distance to their nearest enemy) contain no enemy and every pruned pattern lies inside
+	 * the sphere of a kept pattern of its class.
+	 */
+	@Test
+	public void measuredSpheresCoverPrunedPatterns() {
+		TrainingData trainingData = createData(new Random(125), 400, 3);
+		int[] present = getPresentIndices(trainingData);
+		
+		for(DistanceKernel distanceKernel : TestData.createKernels(new Random(126), 3)) {
+			String name = TestData.getName(distanceKernel);
+			int[] kept = new TrainingSetReduction(trainingData, distanceKernel, K_NUMBER, SpatialIndex.INDEX_NONE, 1).select(TrainingSetReduction.REDUCTION_ADM);
+			
+			checkKept(name, trainingData, kept);
+			assertTrue(name, kept.length < present.length);
+			
+			double[] measures = new double[trainingData.size()];
+			
+			for(int k : kept) {
+				measures[k] = Double.POSITIVE_INFINITY;
+				
+				for(int i : present) {
+					if(trainingData.getClassId(i) != trainingData.getClassId(k)) measures[k] = Math.min(measures[k], distance(trainingData, distanceKernel, i, k));
+				}
+			}
+			
+			for(int i : present) {
+				if(Arrays.binarySearch(kept, i) >= 0) continue;
+				
+				boolean covered = false;
+				
+				for(int k : kept) {
+					if(trainingData.getClassId(i) == trainingData.getClassId(k) && distance(trainingData, distanceKernel, i, k) < measures[k] * (1 + 1e-9)) covered = true;
+				}
+				
+				assertTrue(name + ", pattern " + i, covered);
+			}
+		}
+	}
+	
+	/**
+	 * Method comparing patterns selected with all exact spatial indexes and with several threads with patterns selected
+	 * by the linear scan, also for the cosine distance, for which no exact index can be built.
+	 */
+	@Test
+	public void indexesSelectSamePatterns() {
+		TrainingData trainingData = createData(new Random(127), 500, 4);
+		int[] indexTypes = {SpatialIndex.INDEX_KD_TREE, SpatialIndex.INDEX_BALL_TREE, SpatialIndex.INDEX_AUTO};
+		DistanceKernel[] distanceKernels = {new EuclideanKernel(), new ManhattanKernel(), new CosineKernel()};
+		
+		for(DistanceKernel distanceKernel : distanceKernels) {
+			for(int method : METHODS) {
+				String name = TestData.getName(distanceKernel) + ", method " + method;
+				int[] expected = new TrainingSetReduction(trainingData, distanceKernel, K_NUMBER, SpatialIndex.INDEX_NONE, 1).select(method);
+				
+				assertArrayEquals(name + ", threads 3", expected, new TrainingSetReduction(trainingData, distanceKernel, K_NUMBER, SpatialIndex.INDEX_NONE, 3).select(method));
+				
+				for(int indexType : indexTypes) {
+					if(!SpatialIndex.suits(indexType, distanceKernel) && indexType != SpatialIndex.INDEX_AUTO) continue;
+					
+					for(int parallelism : new int[] {1, 3}) {
+						TrainingSetReduction reduction = new TrainingSetReduction(trainingData, distanceKernel, K_NUMBER, indexType, parallelism);
+						assertArrayEquals(name + ", index " + indexType + ", threads " + parallelism, expected, reduction.select(method));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Method checking that the reduced training data contain kept patterns in their original order.
+	 */
+	@Test
+	public void reducedDataContainKeptPatterns() {
+		TrainingData trainingData = createData(new Random(128), 300, 2);
+		
+		for(int method : METHODS) {
+			TrainingSetReduction reduction = new TrainingSetReduction(trainingData, new EuclideanKernel(), K_NUMBER, SpatialIndex.INDEX_KD_TREE, 2);
+			int[] kept = reduction.select(method);
+			TrainingData reducedData = reduction.reduce(method);
+			
+			assertEquals(kept.length, reducedData.size());
+			
+			for(int i = 0; i < kept.length; i++) {
+				assertArrayEquals(trainingData.getVector(kept[i]), reducedData.getVector(i), 0.0);
+				assertEquals(trainingData.getPatternClass(kept[i]), reducedData.getPatternClass(i));
+			}
+		}
+	}
+	
+	/**
+	 * Method creating Gaussian training data (classes overlap, so the edited set differs from the training set)
+	 * with every seventh pattern removed.
+	 * @param random	random generator
+	 * @param size		number of patterns
+	 * @param dimension	dimension of vectors
+	 * @return	new training data
+	 */
+	private static TrainingData createData(Random random, int size, int dimension) {
+		TrainingData trainingData = TestData.createGaussian(random, size, dimension);
+		
+		for(int i = 0; i < trainingData.size(); i += 7) {
+			trainingData.removePattern(i);
+		}
+		
+		return trainingData;
+	}
+	
+	/**
+	 * Method checking that kept patterns are sorted, unique and not removed.
+	 * @param message		message of the failed assertion
+	 * @param trainingData	reduced training data
+	 * @param kept			indices of kept patterns
+	 */
+	private static void checkKept(String message, TrainingData trainingData, int[] kept) {
+		assertTrue(message, kept.length > 0);
+		
+		for(int i = 0; i < kept.length; i++) {
+			assertFalse(message + ", pattern " + kept[i], trainingData.isRemoved(kept[i]));
+			if(i > 0) assertTrue(message, kept[i - 1] < kept[i]);
+		}
+	}
+	
+	/**
+	 * Method returning indices of patterns, which aren't removed.
+	 * @param trainingData	training data
+	 * @return	array with indices
+	 */
+	private static int[] getPresentIndices(TrainingData trainingData) {
+		int[] indices = new int[getPresentCnt(trainingData)];
+		int cnt = 0;
+		
+		for(int i = 0; i < trainingData.size(); i++) {
+			if(!trainingData.isRemoved(i)) indices[cnt++] = i;
+		}
+		
+		return indices;
+	}
+	
+	/**
+	 * Method returning the number of patterns, which aren't removed.
+	 * @param trainingData	training data
+	 * @return	number of patterns
+	 */
+	private static int getPresentCnt(TrainingData trainingData) {
+		return trainingData.size() - trainingData.getRemovedCnt();
+	}
+	
+	/**
+	 * Method calculating the distance between two training patterns.
+	 * @param trainingData		training data
+	 * @param distanceKernel	kernel of the distance function
+	 * @param index1			index of the first pattern
+	 * @param index2			index of the second pattern
+	 * @return	distance between the patterns
+	 */
+	private static double distance(TrainingData trainingData, DistanceKernel distanceKernel, int index1, int index2) {
+		double[] vectors = trainingData.getVectors();
+		return distanceKernel.distance(vectors, trainingData.getOffset(index1), vectors, trainingData.getOffset(index2), trainingData.getDimension());
+	}
+}